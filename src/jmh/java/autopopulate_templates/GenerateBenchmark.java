@@ -0,0 +1,107 @@
+package autopopulate_templates;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a whole run for one option: parse the CSV file, render every row and write the output,
+ * either to one file per row or to a single JSON Lines file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GenerateBenchmark {
+
+  @Param({"10000", "1000000"})
+  public int rows;
+
+  @Param({"FILES", "JSONL"})
+  public RunSettings.SinkType sink;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private Path file;
+  private Path outputDir;
+  private CompiledTemplate template;
+
+  /**
+   * Writes the CSV file and compiles the template once for all iterations.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void writeFile() throws IOException {
+    this.file = SyntheticData.writeCsv(Files.createTempFile("generate-benchmark", ".csv"),
+        this.rows, SyntheticData.Shape.NARROW, false);
+    this.template = CompiledTemplate.compile(SyntheticData.template(8, 1000,
+        SyntheticData.Shape.NARROW.getColumns()));
+  }
+
+  /**
+   * Creates an empty output directory for each run.
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  @Setup(Level.Iteration)
+  public void createOutputDir() throws IOException {
+    this.outputDir = Files.createTempDirectory("generate-benchmark");
+  }
+
+  /**
+   * Deletes the output of a run.
+   *
+   * @throws IOException if the output cannot be deleted
+   */
+  @TearDown(Level.Iteration)
+  public void deleteOutputDir() throws IOException {
+    try (Stream<Path> outputs = Files.list(this.outputDir)) {
+      for (Path output : (Iterable<Path>) outputs::iterator) {
+        Files.delete(output);
+      }
+    }
+    Files.delete(this.outputDir);
+  }
+
+  /**
+   * Deletes the CSV file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  /**
+   * Generates one document per row.
+   *
+   * @throws IOException if reading or writing fails
+   */
+  @Benchmark
+  public void generateOutput() throws IOException {
+    RunSettings settings = new RunSettings();
+    settings.setSinkType(this.sink);
+    String dir = this.outputDir.toString() + File.separator;
+    TemplateWriter writer = new TemplateWriter(this.template, "email", dir);
+    writer.useSink(OutputSinks.open(settings, dir, "email"));
+    try (CsvRowReader rowReader = new CsvRowReader(this.file.toString())) {
+      new BatchGenerator(rowReader, Collections.singletonList(writer), this.threads).run();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures how long it takes CsvFileProcessor to load a whole CSV file into memory. The file is
+ * held in full, so the largest size is left out of the defaults.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark {
+
+  @Param({"10000", "1000000"})
+  public int rows;
+
+  @Param({"NARROW", "WIDE"})
+  public SyntheticData.Shape shape;
+
+  @Param({"false", "true"})
+  public boolean quoted;
+
+  private Path file;
+
+  /**
+   * Writes the CSV file once for all iterations.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void writeFile() throws IOException {
+    this.file = SyntheticData.writeCsv(Files.createTempFile("load-benchmark", ".csv"),
+        this.rows, this.shape, this.quoted);
+  }
+
+  /**
+   * Deletes the CSV file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  /**
+   * Loads the whole file with CsvFileProcessor.
+   *
+   * @return the loaded file
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public CsvFileProcessor load() throws IOException {
+    return new CsvFileProcessor(this.file.toString());
+  }
+}
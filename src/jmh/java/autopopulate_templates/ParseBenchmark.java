@@ -0,0 +1,128 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how long it takes to parse every row of a CSV file with each of the row sources. One
+ * benchmark call reads the whole file. Rows are consumed one at a time, so even the largest files
+ * run in a small heap; see LoadBenchmark for loading a whole file into memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  public int rows;
+
+  @Param({"NARROW", "WIDE"})
+  public SyntheticData.Shape shape;
+
+  @Param({"false", "true"})
+  public boolean quoted;
+
+  private static final Set<String> PROJECTION = Set.of("col0", "col1", "col2", "col3", "col5",
+      "col7"); // as many columns as a typical template uses
+
+  private Path file;
+
+  /**
+   * Writes the CSV file once for all iterations.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void writeFile() throws IOException {
+    this.file = SyntheticData.writeCsv(Files.createTempFile("parse-benchmark", ".csv"),
+        this.rows, this.shape, this.quoted);
+  }
+
+  /**
+   * Deletes the CSV file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  /**
+   * Streams the file through CsvRowReader.
+   *
+   * @param blackhole consumes the rows
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public void stream(Blackhole blackhole) throws IOException {
+    consume(new CsvRowReader(this.file.toString()), blackhole);
+  }
+
+  /**
+   * Streams the file through CsvRowReader, creating Strings only for the columns a typical
+   * template uses.
+   *
+   * @param blackhole consumes the rows
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public void streamProjected(Blackhole blackhole) throws IOException {
+    CsvRowReader reader = new CsvRowReader(this.file.toString());
+    reader.project(PROJECTION);
+    consume(reader, blackhole);
+  }
+
+  /**
+   * Parses the mapped file with MappedCsvReader.
+   *
+   * @param blackhole consumes the rows
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public void mapped(Blackhole blackhole) throws IOException {
+    consume(new MappedCsvReader(this.file.toString()), blackhole);
+  }
+
+  /**
+   * Parses the mapped file with ParallelCsvReader on every available core.
+   *
+   * @param blackhole consumes the rows
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public void parallel(Blackhole blackhole) throws IOException {
+    consume(new ParallelCsvReader(this.file.toString(),
+        Runtime.getRuntime().availableProcessors()), blackhole);
+  }
+
+  /**
+   * Reads every row of a source and closes it.
+   *
+   * @param source    the open source
+   * @param blackhole consumes the rows
+   * @throws IOException if the file cannot be read
+   */
+  private static void consume(CsvRowSource source, Blackhole blackhole) throws IOException {
+    try (CsvRowSource rows = source) {
+      String[] row;
+      while ((row = rows.readRow()) != null) {
+        blackhole.consume(row);
+      }
+    }
+  }
+}
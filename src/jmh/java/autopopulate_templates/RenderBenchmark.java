@@ -0,0 +1,69 @@
+package autopopulate_templates;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures how fast one row is rendered into a document, for small and large templates with few
+ * and many placeholders. This is the step TemplateWriter takes for every row and option.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+
+  private static final int COLUMNS = 64;
+
+  @Param({"200", "20000"})
+  public int templateChars;
+
+  @Param({"4", "64"})
+  public int placeholders;
+
+  private CompiledTemplate template;
+  private String[] row;
+  private Map<String, String> rowMap;
+  private StringBuilder buffer;
+
+  /**
+   * Compiles the template and builds the row once.
+   */
+  @Setup
+  public void compile() {
+    CsvHeaders headers = SyntheticData.headers(COLUMNS);
+    this.template = CompiledTemplate.compile(
+        SyntheticData.template(this.placeholders, this.templateChars, COLUMNS)).bind(headers);
+    this.row = SyntheticData.row(1, COLUMNS);
+    this.rowMap = headers.toMap(this.row);
+    this.buffer = new StringBuilder();
+  }
+
+  /**
+   * Renders into a reused buffer, as TemplateWriter does.
+   *
+   * @return the buffer
+   */
+  @Benchmark
+  public StringBuilder renderTo() {
+    this.buffer.setLength(0);
+    return this.template.renderTo(this.row, this.buffer);
+  }
+
+  /**
+   * Renders a row stored as a map into a new String, as the in-memory path does.
+   *
+   * @return the document
+   */
+  @Benchmark
+  public String renderMap() {
+    return this.template.render(this.rowMap);
+  }
+}
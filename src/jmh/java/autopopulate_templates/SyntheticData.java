@@ -0,0 +1,159 @@
+package autopopulate_templates;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates the CSV files and templates the benchmarks run on. Columns are named col0, col1, ...,
+ * and every value is made from its row and column numbers, so files of any size can be written
+ * without holding them in memory.
+ */
+public final class SyntheticData {
+
+  /**
+   * The number of columns of a CSV file.
+   */
+  public enum Shape {
+    /**
+     * A few short columns, like a mailing list.
+     */
+    NARROW(8),
+    /**
+     * Many columns, most of which a template does not use.
+     */
+    WIDE(64);
+
+    private final int columns;
+
+    /**
+     * Constructs a Shape.
+     *
+     * @param columns the number of columns
+     */
+    Shape(int columns) {
+      this.columns = columns;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+      return columns;
+    }
+  }
+
+  /**
+   * Constructs nothing, this class only has static methods.
+   */
+  private SyntheticData() {
+  }
+
+  /**
+   * Writes a CSV file with a header line and the given number of rows. Quoted files quote every
+   * value, and every tenth row has a comma and a line break inside a quoted value.
+   *
+   * @param file   the file to write
+   * @param rows   the number of rows after the header
+   * @param shape  the number of columns
+   * @param quoted true to quote every value
+   * @return the file
+   * @throws IOException if the file cannot be written
+   */
+  public static Path writeCsv(Path file, int rows, Shape shape, boolean quoted)
+      throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int col = 0; col < shape.getColumns(); col++) {
+        out.write(col == 0 ? "col0" : ",col" + col);
+      }
+      out.write('\n');
+      for (int row = 1; row <= rows; row++) {
+        for (int col = 0; col < shape.getColumns(); col++) {
+          if (col > 0) {
+            out.write(',');
+          }
+          if (quoted) {
+            out.write('"');
+            out.write(value(row, col));
+            if (row % 10 == 0 && col == 1) {
+              out.write(", \"\"quoted\"\"\nsecond line");
+            }
+            out.write('"');
+          } else {
+            out.write(value(row, col));
+          }
+        }
+        out.write('\n');
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Builds a template with the given number of placeholders, spread over the first columns, and
+   * about the given amount of literal text between them.
+   *
+   * @param placeholders the number of [[col]] placeholders
+   * @param literalChars the total number of literal characters
+   * @param columns      the number of columns the placeholders may refer to
+   * @return the template text
+   */
+  public static String template(int placeholders, int literalChars, int columns) {
+    String filler = "Dear customer, thank you for your business with us this year. ";
+    int segmentLength = literalChars / (placeholders + 1);
+    StringBuilder template = new StringBuilder();
+    for (int i = 0; i <= placeholders; i++) {
+      for (int written = 0; written < segmentLength; written += filler.length()) {
+        template.append(filler, 0, Math.min(filler.length(), segmentLength - written));
+      }
+      if (i < placeholders) {
+        template.append("[[col").append(i % columns).append("]]");
+      }
+    }
+    return template.toString();
+  }
+
+  /**
+   * Builds the values of one row, in column order, as the parsers would return them.
+   *
+   * @param row     the 1-based row number
+   * @param columns the number of columns
+   * @return the row values
+   */
+  public static String[] row(int row, int columns) {
+    String[] values = new String[columns];
+    for (int col = 0; col < columns; col++) {
+      values[col] = value(row, col);
+    }
+    return values;
+  }
+
+  /**
+   * Builds the header names col0, col1, ... of a file.
+   *
+   * @param columns the number of columns
+   * @return the headers
+   */
+  public static CsvHeaders headers(int columns) {
+    String[] names = new String[columns];
+    for (int col = 0; col < columns; col++) {
+      names[col] = "col" + col;
+    }
+    return new CsvHeaders(names);
+  }
+
+  /**
+   * Builds one value.
+   *
+   * @param row the 1-based row number
+   * @param col the 0-based column number
+   * @return the value
+   */
+  private static String value(int row, int col) {
+    return "value-" + row + "-" + col;
+  }
+}
@@ -0,0 +1,311 @@
+package autopopulate_templates;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams rendered documents into a single ZIP or tar archive instead of one small file each.
+ * With millions of rows this avoids the inode and directory metadata cost of millions of files,
+ * and downstream systems can read one archive much faster than a huge directory.
+ * <p>
+ * ZIP entries are deflated when compression is on and stored otherwise; a compressed tar archive
+ * is gzipped as a whole. Entries are written in the order they are added, and adding is
+ * synchronized so several rendering threads can share one archive.
+ */
+public class ArchiveOutput implements OutputSink {
+
+  /**
+   * The archive file format.
+   */
+  public enum Format {
+    /**
+     * A ZIP archive, with extension .zip.
+     */
+    ZIP,
+    /**
+     * A POSIX ustar archive, with extension .tar, or .tar.gz when compressed. Names longer than
+     * the 100 bytes of a ustar header are given in a pax extended header.
+     */
+    TAR
+  }
+
+  private static final int TAR_BLOCK_SIZE = 512;
+  private static final int TAR_NAME_LENGTH = 100;
+  private static final long TAR_MAX_ENTRY_SIZE = 077777777777L; // 11 octal digits
+  private static final byte TAR_REGULAR_FILE = '0';
+  private static final byte TAR_PAX_HEADER = 'x'; // extended header for the next entry
+  private static final byte[] PAX_HEADER_NAME =
+      "PaxHeader".getBytes(StandardCharsets.US_ASCII);
+
+  private final String archivePath;
+  private final Format format;
+  private final boolean compress;
+  private final OutputStream out;
+  private final ZipOutputStream zipOut; // null for tar archives
+  private final DocumentEncoder encoder;
+
+  /**
+   * Creates the archive file and opens it for writing.
+   *
+   * @param pathWithoutExtension the archive path, to which the format's extension is appended.
+   * @param format               the archive format.
+   * @param compress             whether to compress the archive.
+   * @throws IOException if the archive file cannot be created.
+   */
+  public ArchiveOutput(String pathWithoutExtension, Format format, boolean compress)
+      throws IOException {
+    this.archivePath = pathWithoutExtension + extensionOf(format, compress);
+    this.format = format;
+    this.compress = compress;
+    this.encoder = new DocumentEncoder();
+    OutputStream fileOut;
+    try {
+      fileOut = new BufferedOutputStream(new FileOutputStream(this.archivePath));
+    } catch (FileNotFoundException e) {
+      throw new FileNotFoundException("Directory not found: " + this.archivePath);
+    }
+    if (format == Format.ZIP) {
+      this.zipOut = new ZipOutputStream(fileOut, StandardCharsets.UTF_8);
+      this.zipOut.setMethod(compress ? ZipOutputStream.DEFLATED : ZipOutputStream.STORED);
+      this.out = this.zipOut;
+    } else {
+      this.zipOut = null;
+      this.out = compress ? new GZIPOutputStream(fileOut) : fileOut;
+    }
+  }
+
+  /**
+   * Returns the file extension used for the given format.
+   *
+   * @param format   the archive format.
+   * @param compress whether the archive is compressed.
+   * @return the extension, including the leading dot.
+   */
+  public static String extensionOf(Format format, boolean compress) {
+    if (format == Format.ZIP) {
+      return ".zip";
+    }
+    return compress ? ".tar.gz" : ".tar";
+  }
+
+  /**
+   * Returns the path of the archive file.
+   *
+   * @return the archive path as a String.
+   */
+  public String getArchivePath() {
+    return archivePath;
+  }
+
+  /**
+   * Add one document to the archive as an entry.
+   *
+   * @param entryName the name of the entry, e.g. email-1.txt.
+   * @param document  the rendered document.
+   * @throws IOException if writing to the archive fails.
+   */
+  @Override
+  public synchronized void write(String entryName, CharSequence document) throws IOException {
+    try {
+      ByteBuffer bytes = this.encoder.encode(document);
+      int length = bytes.limit();
+      if (this.format == Format.ZIP) {
+        ZipEntry entry = new ZipEntry(entryName);
+        if (!this.compress) { // stored entries must declare their size and checksum up front
+          CRC32 crc = new CRC32();
+          crc.update(bytes.array(), bytes.arrayOffset(), length);
+          entry.setSize(length);
+          entry.setCrc(crc.getValue());
+        }
+        this.zipOut.putNextEntry(entry);
+        this.zipOut.write(bytes.array(), bytes.arrayOffset(), length);
+        this.zipOut.closeEntry();
+      } else {
+        byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+        byte[] header = tarHeader(entryName, ustarName(name), length, TAR_REGULAR_FILE);
+        if (name.length > TAR_NAME_LENGTH) {
+          byte[] pax = paxRecord("path", name);
+          this.out.write(tarHeader(entryName, PAX_HEADER_NAME, pax.length, TAR_PAX_HEADER));
+          this.out.write(pax);
+          this.out.write(new byte[padding(pax.length)]);
+        }
+        this.out.write(header);
+        this.out.write(bytes.array(), bytes.arrayOffset(), length);
+        this.out.write(new byte[padding(length)]);
+      }
+    } catch (IOException e) {
+      throw new IOException("Error writing " + entryName + " to archive: " + this.archivePath, e);
+    }
+  }
+
+  /**
+   * Finish the archive and close the file.
+   *
+   * @throws IOException if the archive cannot be finished.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.format == Format.TAR) {
+      this.out.write(new byte[2 * TAR_BLOCK_SIZE]); // end-of-archive marker
+    }
+    this.out.close();
+  }
+
+  /**
+   * Build the 512-byte ustar header of an entry.
+   *
+   * @param entryName the name of the entry, for messages.
+   * @param name      the name to put in the header, at most 100 bytes.
+   * @param size      the size of the entry in bytes.
+   * @param type      the type flag of the entry.
+   * @return the header block.
+   * @throws IOException if the size does not fit in a ustar header.
+   */
+  private static byte[] tarHeader(String entryName, byte[] name, long size, byte type)
+      throws IOException {
+    if (size > TAR_MAX_ENTRY_SIZE) {
+      throw new IOException("Entry too large for a tar archive: " + entryName);
+    }
+    byte[] header = new byte[TAR_BLOCK_SIZE];
+    System.arraycopy(name, 0, header, 0, name.length);
+    putOctal(header, 100, 8, 0644); // mode
+    putOctal(header, 108, 8, 0); // uid
+    putOctal(header, 116, 8, 0); // gid
+    putOctal(header, 124, 12, size);
+    putOctal(header, 136, 12, System.currentTimeMillis() / 1000); // mtime
+    header[156] = type;
+    putAscii(header, 257, "ustar\0");
+    putAscii(header, 263, "00");
+
+    // the checksum is computed with its own field filled with spaces
+    for (int i = 148; i < 156; i++) {
+      header[i] = ' ';
+    }
+    long checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xff;
+    }
+    putOctal(header, 148, 7, checksum);
+    return header;
+  }
+
+  /**
+   * Returns as much of a name as fits in a ustar header without splitting a UTF-8 character. A
+   * longer name is given in full in a pax header, which readers prefer.
+   *
+   * @param name the name in UTF-8.
+   * @return the name, or its first 100 bytes at most.
+   */
+  private static byte[] ustarName(byte[] name) {
+    if (name.length <= TAR_NAME_LENGTH) {
+      return name;
+    }
+    int end = TAR_NAME_LENGTH;
+    while ((name[end] & 0xc0) == 0x80) { // a continuation byte cannot start a character
+      end--;
+    }
+    return Arrays.copyOf(name, end);
+  }
+
+  /**
+   * Build one pax extended header record, "length key=value\n", where the length is the number
+   * of bytes of the whole record including its own digits.
+   *
+   * @param key   the keyword, e.g. path.
+   * @param value the value in UTF-8.
+   * @return the record.
+   */
+  static byte[] paxRecord(String key, byte[] value) {
+    int rest = 1 + key.length() + 1 + value.length + 1; // space, key, '=', value and newline
+    int length = rest + Integer.toString(rest).length();
+    if (Integer.toString(length).length() > Integer.toString(rest).length()) {
+      length++; // the digits themselves pushed the length to one more digit
+    }
+    byte[] record = new byte[length];
+    byte[] prefix = (length + " " + key + "=").getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(prefix, 0, record, 0, prefix.length);
+    System.arraycopy(value, 0, record, prefix.length, value.length);
+    record[length - 1] = '\n';
+    return record;
+  }
+
+  /**
+   * Write a zero-padded, NUL-terminated octal number into a header field.
+   *
+   * @param header the header block.
+   * @param offset the offset of the field.
+   * @param length the length of the field, including the terminating NUL.
+   * @param value  the value to write.
+   */
+  private static void putOctal(byte[] header, int offset, int length, long value) {
+    String octal = Long.toOctalString(value);
+    int digits = length - 1;
+    for (int i = 0; i < digits; i++) {
+      int fromEnd = digits - 1 - i;
+      header[offset + i] = (byte) (fromEnd < octal.length()
+          ? octal.charAt(octal.length() - 1 - fromEnd) : '0');
+    }
+    header[offset + digits] = 0;
+  }
+
+  /**
+   * Write an ASCII string into a header field.
+   *
+   * @param header the header block.
+   * @param offset the offset of the field.
+   * @param value  the value to write.
+   */
+  private static void putAscii(byte[] header, int offset, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+
+  /**
+   * Returns the number of zero bytes that pad an entry to a whole number of tar blocks.
+   *
+   * @param size the size of the entry in bytes.
+   * @return the padding length.
+   */
+  private static int padding(long size) {
+    int remainder = (int) (size % TAR_BLOCK_SIZE);
+    return remainder == 0 ? 0 : TAR_BLOCK_SIZE - remainder;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ArchiveOutput that = (ArchiveOutput) o;
+    return compress == that.compress && Objects.equals(archivePath, that.archivePath)
+        && format == that.format;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(archivePath, format, compress);
+  }
+
+  @Override
+  public String toString() {
+    return "ArchiveOutput{" +
+        "archivePath='" + archivePath + '\'' +
+        ", format=" + format +
+        ", compress=" + compress +
+        '}';
+  }
+}
@@ -0,0 +1,179 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes output files on virtual threads, one task per file, so that thousands of blocking writes
+ * can be in flight on slow or network-backed disks without a large pool of platform threads. It
+ * wraps the sink that does the actual writing, normally a FileChannelSink.
+ * <p>
+ * The number of files open at once is bounded by a semaphore. A caller submitting a file while
+ * the limit is reached waits for a write to finish, which also bounds how many rendered documents
+ * are held in memory. Failures are collected and rethrown by the next submit() or by close(),
+ * which waits for every pending write. flush() waits only for the writes pending when it is
+ * called, so callers that keep submitting cannot hold it up.
+ * <p>
+ * Virtual threads need Java 21. On older runtimes a cached pool of platform threads is used
+ * instead, still bounded by the same open-file limit.
+ */
+public class AsyncFileWriter implements OutputSink {
+
+  private final OutputSink delegate;
+  private final ExecutorService executor;
+  private final Semaphore openFiles;
+  private final int maxOpenFiles;
+  private final AtomicReference<IOException> failure;
+  private final Set<CompletableFuture<Void>> pending;
+
+  /**
+   * Constructs an AsyncFileWriter.
+   *
+   * @param delegate     the sink each background task writes its document to.
+   * @param maxOpenFiles the maximum number of files being written at the same time, at least 1.
+   */
+  public AsyncFileWriter(OutputSink delegate, int maxOpenFiles) {
+    this.delegate = delegate;
+    this.executor = newVirtualThreadExecutor();
+    this.openFiles = new Semaphore(maxOpenFiles);
+    this.maxOpenFiles = maxOpenFiles;
+    this.failure = new AtomicReference<>();
+    this.pending = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Start writing a document in the background, waiting first if the open-file limit is reached.
+   * The document is copied, as the caller may reuse its buffer.
+   *
+   * @param name     the name of the document, e.g. email-1.txt.
+   * @param document the rendered document.
+   * @throws IOException if an earlier write failed, or if interrupted while waiting.
+   */
+  @Override
+  public void write(String name, CharSequence document) throws IOException {
+    this.throwIfFailed();
+    try {
+      this.openFiles.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting to write: " + name, e);
+    }
+    String output = document.toString();
+    CompletableFuture<Void> task = CompletableFuture.runAsync(() -> {
+      try {
+        this.delegate.write(name, output);
+      } catch (IOException e) {
+        this.failure.compareAndSet(null, e);
+      } finally {
+        this.openFiles.release();
+      }
+    }, this.executor);
+    this.pending.add(task);
+    task.whenComplete((result, e) -> this.pending.remove(task));
+  }
+
+  /**
+   * Wait for every write submitted so far to finish. Writes submitted meanwhile by other threads
+   * are not waited for.
+   *
+   * @throws IOException if any write failed, or if interrupted while waiting.
+   */
+  @Override
+  public void flush() throws IOException {
+    for (CompletableFuture<Void> task : new ArrayList<>(this.pending)) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for files to be written", e);
+      } catch (ExecutionException e) {
+        // the task records its own failure, rethrown below
+      }
+    }
+    this.delegate.flush();
+    this.throwIfFailed();
+  }
+
+  /**
+   * Wait for every pending write to finish, then close the wrapped sink.
+   *
+   * @throws IOException if any write failed, or if interrupted while waiting.
+   */
+  @Override
+  public void close() throws IOException {
+    this.executor.shutdown();
+    try {
+      this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.executor.shutdownNow();
+      throw new IOException("Interrupted while waiting for files to be written", e);
+    }
+    this.delegate.close();
+    this.throwIfFailed();
+  }
+
+  /**
+   * Rethrow the first failure of a background write, if any.
+   *
+   * @throws IOException the first failure.
+   */
+  private void throwIfFailed() throws IOException {
+    IOException e = this.failure.get();
+    if (e != null) {
+      throw e;
+    }
+  }
+
+  /**
+   * Create an executor that starts a new virtual thread per task, falling back to a cached pool of
+   * platform threads when the runtime has no virtual threads.
+   *
+   * @return the executor.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    AsyncFileWriter that = (AsyncFileWriter) o;
+    return maxOpenFiles == that.maxOpenFiles && Objects.equals(delegate, that.delegate)
+        && Objects.equals(executor, that.executor);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(delegate, executor, maxOpenFiles);
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncFileWriter{" +
+        "delegate=" + delegate +
+        ", maxOpenFiles=" + maxOpenFiles +
+        '}';
+  }
+}
@@ -0,0 +1,47 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces small state files, such as checkpoints, manifests and cached templates, so that a
+ * reader sees either the old file or the new one, never a partly written file.
+ */
+public final class AtomicFiles {
+
+  /**
+   * Not instantiable, all methods are static.
+   */
+  private AtomicFiles() {
+  }
+
+  /**
+   * Returns the temporary file to write the new content of a file to before replace() is called.
+   *
+   * @param file the file to be replaced
+   * @return a file next to it
+   */
+  public static Path tempFileFor(Path file) {
+    return file.resolveSibling(file.getFileName() + ".tmp");
+  }
+
+  /**
+   * Moves a completely written temporary file over the file it replaces, atomically where the file
+   * system allows it.
+   *
+   * @param temp the temporary file, from tempFileFor(Path)
+   * @param file the file to replace
+   * @throws IOException if the file cannot be moved
+   */
+  public static void replace(Path temp, Path file) throws IOException {
+    try {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
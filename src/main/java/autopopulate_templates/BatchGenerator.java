@@ -0,0 +1,443 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives one pass over the rows of a CSV file and feeds every row to each of a list of
+ * TemplateWriters. When emails and letters are requested for the same CSV file, the file is read
+ * and parsed once and both documents are rendered from the same row before the next row is read.
+ * <p>
+ * With more than one thread, rows are still read in order on the calling thread, but are handed
+ * in batches to a pool of workers that render and write them. Every row keeps the file number it
+ * was given when read, so the output names are the same as in a sequential run. The number of
+ * batches in flight is bounded, so memory use stays flat however large the file is.
+ */
+public class BatchGenerator {
+
+  private static final int BATCH_SIZE = 256; // rows handed to a worker at a time
+  private static final int BATCHES_PER_THREAD = 2; // in-flight batches allowed per worker
+
+  private final CsvRowSource rowReader;
+  private final List<TemplateWriter> writers;
+  private final int threads;
+  private RunMetrics metrics; // null unless the run is measured
+  private ProgressReporter progress; // null unless progress is reported
+  private Checkpointer checkpointer; // null unless the run can be resumed
+  private ManifestTracker manifest; // null unless the run is incremental
+  private RejectsFile rejects; // null unless malformed rows are set aside
+  private boolean[] upToDate; // per writer, whether documents of unchanged rows are kept
+  private long rowsRead;
+
+  /**
+   * Constructs a sequential BatchGenerator over an open reader and the writers to feed.
+   *
+   * @param rowReader an open reader positioned after the header line.
+   * @param writers   the writers that render and write every row, one per requested option.
+   */
+  public BatchGenerator(CsvRowSource rowReader, List<TemplateWriter> writers) {
+    this(rowReader, writers, 1);
+  }
+
+  /**
+   * Constructs a BatchGenerator over an open reader and the writers to feed, rendering and writing
+   * on the given number of threads.
+   *
+   * @param rowReader an open reader positioned after the header line.
+   * @param writers   the writers that render and write every row, one per requested option.
+   * @param threads   the number of worker threads, 1 to work on the calling thread only.
+   */
+  public BatchGenerator(CsvRowSource rowReader, List<TemplateWriter> writers, int threads) {
+    this.rowReader = rowReader;
+    this.writers = new ArrayList<>(writers);
+    this.threads = threads;
+  }
+
+  /**
+   * Record reading times into the given metrics, and have every writer record its rendering and
+   * writing times into them too.
+   *
+   * @param metrics the metrics of the run.
+   */
+  void useMetrics(RunMetrics metrics) {
+    this.metrics = metrics;
+    for (TemplateWriter writer : this.writers) {
+      writer.useMetrics(metrics);
+    }
+  }
+
+  /**
+   * Report the progress of the run to the given reporter.
+   *
+   * @param progress the reporter.
+   */
+  void useProgress(ProgressReporter progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * Skip the rows done according to the checkpointer's checkpoint, and keep the checkpoint up to
+   * date while the remaining rows are written. The checkpoint is removed once all rows are done.
+   *
+   * @param checkpointer the checkpointer.
+   */
+  void useCheckpointer(Checkpointer checkpointer) {
+    this.checkpointer = checkpointer;
+  }
+
+  /**
+   * Only render and write the documents whose row or template changed since the run recorded in
+   * the tracker's manifest, delete the documents of rows that are gone, and record a new manifest.
+   * Cannot be combined with a checkpointer, as every row must be read to record the manifest.
+   *
+   * @param manifest the manifest tracker.
+   */
+  void useManifest(ManifestTracker manifest) {
+    this.manifest = manifest;
+  }
+
+  /**
+   * Set malformed rows aside in the rejects file and carry on with the next row, instead of
+   * failing on the first one. Rejected rows take no file number, so documents are numbered by
+   * the valid rows only. Cannot be combined with a checkpointer, which counts valid rows only.
+   *
+   * @param rejects the rejects file.
+   */
+  void useRejects(RejectsFile rejects) {
+    this.rejects = rejects;
+  }
+
+  /**
+   * Read every remaining row and have each writer render and write it. Output files are numbered
+   * from 1 in row order, separately for each writer. When resuming from a checkpoint, the rows it
+   * records as done are skipped and numbering continues after them. In an incremental run, only
+   * documents that are out of date are written.
+   *
+   * @throws IOException throws when failed in reading a row or writing to file.
+   */
+  public void run() throws IOException {
+    for (TemplateWriter writer : this.writers) {
+      writer.bindHeaders(this.rowReader.getCsvHeaders());
+    }
+    if (this.rejects != null) {
+      this.rowReader.keepRecordText();
+    }
+    this.upToDate = new boolean[this.writers.size()];
+    if (this.manifest != null) {
+      this.manifest.bindHeaders(this.rowReader.getCsvHeaders());
+      for (int i = 0; i < this.writers.size(); i++) {
+        this.upToDate[i] = this.manifest.isTemplateUnchanged(this.writers.get(i).getOption());
+      }
+    }
+    int firstRow = 1;
+    if (this.checkpointer != null) {
+      firstRow += (int) this.skipDoneRows(this.checkpointer.getResumedRows());
+    }
+    if (this.progress != null) {
+      // rows done by the interrupted run are not this run's progress
+      this.progress.track(this.rowReader);
+    }
+    try {
+      if (this.threads > 1) {
+        this.runParallel(firstRow);
+      } else {
+        this.runSequential(firstRow);
+      }
+    } finally {
+      for (TemplateWriter writer : this.writers) {
+        writer.finish();
+      }
+    }
+    if (this.checkpointer != null) {
+      this.checkpointer.complete();
+    }
+    if (this.manifest != null) {
+      // documents of rows that are gone, or all of the previous run's if they have moved
+      boolean moved = this.manifest.isLayoutChanged();
+      ShardLayout previousLayout = this.manifest.getPreviousLayout();
+      for (TemplateWriter writer : this.writers) {
+        for (int n = moved ? 1 : this.manifest.getRowCount() + 1;
+            n <= this.manifest.getPreviousRowCount(); n++) {
+          if (n > this.manifest.getRowCount()) {
+            writer.deleteOutput(n);
+          }
+          if (moved) {
+            writer.deleteOutput(n, previousLayout);
+          }
+        }
+      }
+      this.manifest.complete();
+    }
+  }
+
+  /**
+   * Read, render and write every row on the calling thread.
+   *
+   * @param firstRow the file number of the first row read.
+   * @throws IOException throws when failed in reading a row or writing to file.
+   */
+  private void runSequential(int firstRow) throws IOException {
+    int fileNameCounter = firstRow;
+    String[] row;
+    while ((row = this.readRow()) != null) {
+      this.writeRow(fileNameCounter, row, this.isRowUnchanged(row));
+      this.rowsDone(fileNameCounter, 1);
+      fileNameCounter++;
+    }
+  }
+
+  /**
+   * Read rows on the calling thread and render and write them in batches on a worker pool. Stops
+   * reading as soon as a worker fails, and rethrows the first failure.
+   *
+   * @param firstRow the file number of the first row read.
+   * @throws IOException throws when failed in reading a row or writing to file.
+   */
+  private void runParallel(int firstRow) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+    Semaphore inFlight = new Semaphore(this.threads * BATCHES_PER_THREAD);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    try {
+      int fileNameCounter = firstRow;
+      List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+      BitSet unchanged = new BitSet(BATCH_SIZE);
+      String[] row;
+      while (failure.get() == null && (row = this.readRow()) != null) {
+        unchanged.set(batch.size(), this.isRowUnchanged(row));
+        batch.add(row);
+        if (batch.size() == BATCH_SIZE) {
+          this.submitBatch(pool, inFlight, failure, fileNameCounter, batch, unchanged);
+          fileNameCounter += batch.size();
+          batch = new ArrayList<>(BATCH_SIZE);
+          unchanged = new BitSet(BATCH_SIZE);
+        }
+      }
+      if (!batch.isEmpty() && failure.get() == null) {
+        this.submitBatch(pool, inFlight, failure, fileNameCounter, batch, unchanged);
+      }
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while generating output", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    rethrow(failure.get());
+  }
+
+  /**
+   * Read the next row, timing it if the run is measured, and now and then tell the progress
+   * reporter how far into the file it is.
+   *
+   * @return the next row, or null at the end of the file.
+   * @throws IOException throws when failed in reading a row.
+   */
+  private String[] readRow() throws IOException {
+    String[] row;
+    if (this.metrics == null) {
+      row = this.nextValidRow();
+    } else {
+      long start = System.nanoTime();
+      row = this.nextValidRow();
+      if (row != null) {
+        this.metrics.rowParsed(System.nanoTime() - start);
+      }
+    }
+    if (this.progress != null
+        && (row == null || ++this.rowsRead % ProgressReporter.SAMPLE_ROWS == 0)) {
+      this.progress.inputAt(this.rowsRead, this.rowReader.getBytesRead());
+    }
+    return row;
+  }
+
+  /**
+   * Skip the rows an interrupted run already generated. Where documents are checked for clashing
+   * names, the rows are read instead, and the names of their documents claimed again.
+   *
+   * @param rows the number of rows to skip.
+   * @return the number of rows skipped, less than rows only at the end of the file.
+   * @throws IOException throws when failed in reading a row.
+   */
+  private long skipDoneRows(long rows) throws IOException {
+    if (this.writers.stream().noneMatch(TemplateWriter::claimsNames)) {
+      return this.rowReader.skipRows(rows);
+    }
+    long skipped = 0;
+    while (skipped < rows) {
+      String[] row;
+      try {
+        row = this.rowReader.readRow();
+      } catch (MalformedRowException e) {
+        skipped++; // counted like skipRows() does, without a name to claim
+        continue;
+      }
+      if (row == null) {
+        break;
+      }
+      skipped++;
+      for (TemplateWriter writer : this.writers) {
+        writer.claimName((int) skipped, row);
+      }
+    }
+    return skipped;
+  }
+
+  /**
+   * Read the next row, setting malformed rows aside if there is a rejects file.
+   *
+   * @return the next well-formed row, or null at the end of the file.
+   * @throws IOException           throws when failed in reading a row or writing a rejected one.
+   * @throws MalformedRowException if a row is malformed and there is no rejects file.
+   */
+  private String[] nextValidRow() throws IOException {
+    while (true) {
+      try {
+        return this.rowReader.readRow();
+      } catch (MalformedRowException e) {
+        if (this.rejects == null) {
+          throw e;
+        }
+        this.rejects.reject(this.rowReader.getCsvFilePath(), e);
+        if (this.metrics != null) {
+          this.metrics.rowRejected();
+        }
+      }
+    }
+  }
+
+  /**
+   * Record a row just read in the manifest of an incremental run.
+   *
+   * @param row the row.
+   * @return true if the row is the same as in the previous run, false if not or not incremental.
+   */
+  private boolean isRowUnchanged(String[] row) {
+    return this.manifest != null && this.manifest.rowRead(row);
+  }
+
+  /**
+   * Hand one batch of rows to the pool, waiting first if too many batches are already in flight.
+   *
+   * @param pool            the worker pool.
+   * @param inFlight        permits for batches in flight.
+   * @param failure         holder for the first failure of any worker.
+   * @param fileNameCounter the file number of the first row in the batch.
+   * @param batch           the rows to render and write.
+   * @param unchanged       which rows of the batch are the same as in the previous run.
+   * @throws InterruptedException if interrupted while waiting for a permit.
+   */
+  private void submitBatch(ExecutorService pool, Semaphore inFlight,
+      AtomicReference<Throwable> failure, int fileNameCounter, List<String[]> batch,
+      BitSet unchanged) throws InterruptedException {
+    inFlight.acquire();
+    pool.execute(() -> {
+      try {
+        int written = 0;
+        while (written < batch.size() && failure.get() == null) {
+          this.writeRow(fileNameCounter + written, batch.get(written), unchanged.get(written));
+          written++;
+        }
+        if (written == batch.size()) {
+          this.rowsDone(fileNameCounter, written);
+        }
+      } catch (IOException | RuntimeException e) {
+        failure.compareAndSet(null, e);
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  /**
+   * Have every writer render and write one row, except writers whose document of the row is
+   * still up to date.
+   *
+   * @param fileNameCounter the 1-based number of the row, used in the file names.
+   * @param row             the values of the row in header order.
+   * @param unchanged       whether the row is the same as in the previous run.
+   * @throws IOException throws when failed in writing to file.
+   */
+  private void writeRow(int fileNameCounter, String[] row, boolean unchanged)
+      throws IOException {
+    for (int i = 0; i < this.writers.size(); i++) {
+      if (!unchanged || !this.upToDate[i]) {
+        this.writers.get(i).writeRow(fileNameCounter, row);
+      }
+    }
+    if (this.progress != null) {
+      this.progress.rowDone();
+    }
+  }
+
+  /**
+   * Tell the checkpointer that a range of rows is done, and save a checkpoint once the sinks have
+   * been flushed if one is due.
+   *
+   * @param firstRow the file number of the first row of the range.
+   * @param count    the number of rows in the range.
+   * @throws IOException throws when a sink cannot be flushed or the checkpoint cannot be saved.
+   */
+  private void rowsDone(int firstRow, int count) throws IOException {
+    if (this.checkpointer == null) {
+      return;
+    }
+    long rows = this.checkpointer.rowsDone(firstRow, count);
+    if (rows >= 0) {
+      for (TemplateWriter writer : this.writers) {
+        writer.flush();
+      }
+      this.checkpointer.save(rows);
+    }
+  }
+
+  /**
+   * Rethrow a failure captured on a worker thread on the calling thread.
+   *
+   * @param failure the failure, or null if there was none.
+   * @throws IOException if the failure was an IOException.
+   */
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BatchGenerator that = (BatchGenerator) o;
+    return threads == that.threads && Objects.equals(rowReader, that.rowReader)
+        && Objects.equals(writers, that.writers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(rowReader, writers, threads);
+  }
+
+  @Override
+  public String toString() {
+    return "BatchGenerator{" +
+        "rowReader=" + rowReader +
+        ", writers=" + writers +
+        ", threads=" + threads +
+        '}';
+  }
+}
@@ -0,0 +1,279 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * How far the generation of one CSV file has got: the number of leading rows whose documents have
+ * all been written, together with a fingerprint of the inputs those documents were made from. The
+ * fingerprint is the size and modification time of the CSV file and a SHA-256 hash of every
+ * option's template and filename pattern, so a checkpoint is only resumed from while the inputs,
+ * and the names of the documents already written, are unchanged.
+ * <p>
+ * Checkpoints are stored as properties files and replaced atomically, so a run that dies while
+ * writing one leaves the previous checkpoint in place.
+ */
+public class Checkpoint {
+
+  private static final String FILE_EXTENSION = ".checkpoint";
+  private static final String KEY_CSV_FILE = "csv.file";
+  private static final String KEY_CSV_SIZE = "csv.size";
+  private static final String KEY_CSV_MODIFIED = "csv.modified";
+  private static final String KEY_TEMPLATE_PREFIX = "template.";
+  private static final String KEY_PATTERN_PREFIX = "filename.pattern.";
+  private static final String KEY_ROWS_DONE = "rows.done";
+
+  private final String csvFilePath;
+  private final long csvSize;
+  private final long csvModified;
+  private final Map<String, String> templateHashes;
+  private final Map<String, String> patternHashes;
+  private final long rowsDone;
+
+  /**
+   * Constructs a Checkpoint.
+   *
+   * @param csvFilePath    the path of the CSV file
+   * @param csvSize        the size of the CSV file in bytes
+   * @param csvModified    the modification time of the CSV file in milliseconds
+   * @param templateHashes the SHA-256 hash of each option's template, by option
+   * @param rowsDone       the number of leading rows whose documents have all been written
+   */
+  public Checkpoint(String csvFilePath, long csvSize, long csvModified,
+      Map<String, String> templateHashes, long rowsDone) {
+    this(csvFilePath, csvSize, csvModified, templateHashes, Collections.emptyMap(), rowsDone);
+  }
+
+  /**
+   * Constructs a Checkpoint of options that name their documents with filename patterns.
+   *
+   * @param csvFilePath    the path of the CSV file
+   * @param csvSize        the size of the CSV file in bytes
+   * @param csvModified    the modification time of the CSV file in milliseconds
+   * @param templateHashes the SHA-256 hash of each option's template, by option
+   * @param patternHashes  the SHA-256 hash of each option's filename pattern, by option, for the
+   *                       options that have one
+   * @param rowsDone       the number of leading rows whose documents have all been written
+   */
+  public Checkpoint(String csvFilePath, long csvSize, long csvModified,
+      Map<String, String> templateHashes, Map<String, String> patternHashes, long rowsDone) {
+    this.csvFilePath = csvFilePath;
+    this.csvSize = csvSize;
+    this.csvModified = csvModified;
+    this.templateHashes = Collections.unmodifiableMap(new TreeMap<>(templateHashes));
+    this.patternHashes = Collections.unmodifiableMap(new TreeMap<>(patternHashes));
+    this.rowsDone = rowsDone;
+  }
+
+  /**
+   * Takes the fingerprint of a CSV file and the templates rendered from it, with no rows done.
+   *
+   * @param csvFilePath the path of the CSV file
+   * @param templates   the template of each option
+   * @return the checkpoint at the start of the file
+   * @throws IOException if the CSV file cannot be read
+   */
+  public static Checkpoint of(String csvFilePath, Map<String, CompiledTemplate> templates)
+      throws IOException {
+    return of(csvFilePath, templates, Collections.emptyMap());
+  }
+
+  /**
+   * Takes the fingerprint of a CSV file, the templates rendered from it and the filename
+   * patterns naming their documents, with no rows done.
+   *
+   * @param csvFilePath      the path of the CSV file
+   * @param templates        the template of each option
+   * @param filenamePatterns the filename pattern of each option that has one
+   * @return the checkpoint at the start of the file
+   * @throws IOException if the CSV file cannot be read
+   */
+  public static Checkpoint of(String csvFilePath, Map<String, CompiledTemplate> templates,
+      Map<String, String> filenamePatterns) throws IOException {
+    Path csv = Paths.get(csvFilePath);
+    Map<String, String> hashes = new TreeMap<>();
+    for (Map.Entry<String, CompiledTemplate> template : templates.entrySet()) {
+      hashes.put(template.getKey(), hash(template.getValue().getSource()));
+    }
+    Map<String, String> patternHashes = new TreeMap<>();
+    for (Map.Entry<String, String> pattern : filenamePatterns.entrySet()) {
+      patternHashes.put(pattern.getKey(), hash(pattern.getValue()));
+    }
+    return new Checkpoint(csvFilePath, Files.size(csv),
+        Files.getLastModifiedTime(csv).toMillis(), hashes, patternHashes, 0);
+  }
+
+  /**
+   * Returns where the checkpoint of a CSV file is kept: in the output directory, named after the
+   * CSV file.
+   *
+   * @param outputDir   the output directory, used as a prefix like for output files
+   * @param csvFilePath the path of the CSV file
+   * @return the path of the checkpoint file
+   */
+  public static Path pathFor(String outputDir, String csvFilePath) {
+    String csvName = Paths.get(csvFilePath).getFileName().toString();
+    int dot = csvName.lastIndexOf('.');
+    return Paths.get(outputDir + (dot > 0 ? csvName.substring(0, dot) : csvName)
+        + FILE_EXTENSION);
+  }
+
+  /**
+   * Reads a checkpoint file.
+   *
+   * @param file the checkpoint file
+   * @return the checkpoint, or null if there is no such file
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid checkpoint
+   */
+  public static Checkpoint read(Path file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    Map<String, String> hashes = new TreeMap<>();
+    Map<String, String> patternHashes = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      if (key.startsWith(KEY_TEMPLATE_PREFIX)) {
+        hashes.put(key.substring(KEY_TEMPLATE_PREFIX.length()), properties.getProperty(key));
+      } else if (key.startsWith(KEY_PATTERN_PREFIX)) {
+        patternHashes.put(key.substring(KEY_PATTERN_PREFIX.length()),
+            properties.getProperty(key));
+      }
+    }
+    try {
+      return new Checkpoint(properties.getProperty(KEY_CSV_FILE),
+          Long.parseLong(properties.getProperty(KEY_CSV_SIZE)),
+          Long.parseLong(properties.getProperty(KEY_CSV_MODIFIED)), hashes, patternHashes,
+          Long.parseLong(properties.getProperty(KEY_ROWS_DONE)));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a valid checkpoint file: " + file, e);
+    }
+  }
+
+  /**
+   * Writes the checkpoint to a file, replacing any previous one atomically where the file system
+   * allows it.
+   *
+   * @param file the checkpoint file
+   * @throws IOException if the file cannot be written
+   */
+  public void write(Path file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_CSV_FILE, this.csvFilePath);
+    properties.setProperty(KEY_CSV_SIZE, Long.toString(this.csvSize));
+    properties.setProperty(KEY_CSV_MODIFIED, Long.toString(this.csvModified));
+    for (Map.Entry<String, String> hash : this.templateHashes.entrySet()) {
+      properties.setProperty(KEY_TEMPLATE_PREFIX + hash.getKey(), hash.getValue());
+    }
+    for (Map.Entry<String, String> hash : this.patternHashes.entrySet()) {
+      properties.setProperty(KEY_PATTERN_PREFIX + hash.getKey(), hash.getValue());
+    }
+    properties.setProperty(KEY_ROWS_DONE, Long.toString(this.rowsDone));
+
+    Path temp = AtomicFiles.tempFileFor(file);
+    try (OutputStream out = Files.newOutputStream(temp)) {
+      properties.store(out, "Generation checkpoint, used by --resume");
+    }
+    AtomicFiles.replace(temp, file);
+  }
+
+  /**
+   * Returns a copy of this checkpoint with a different number of rows done.
+   *
+   * @param rows the number of leading rows whose documents have all been written
+   * @return the new checkpoint
+   */
+  public Checkpoint withRowsDone(long rows) {
+    return new Checkpoint(this.csvFilePath, this.csvSize, this.csvModified, this.templateHashes,
+        this.patternHashes, rows);
+  }
+
+  /**
+   * Tells whether two checkpoints were taken from the same CSV file, templates and filename
+   * patterns.
+   *
+   * @param other the other checkpoint
+   * @return true if the fingerprints are the same
+   */
+  public boolean hasSameInputs(Checkpoint other) {
+    return csvSize == other.csvSize && csvModified == other.csvModified
+        && Objects.equals(csvFilePath, other.csvFilePath)
+        && Objects.equals(templateHashes, other.templateHashes)
+        && Objects.equals(patternHashes, other.patternHashes);
+  }
+
+  /**
+   * Returns the number of leading rows whose documents have all been written.
+   *
+   * @return the number of rows done
+   */
+  public long getRowsDone() {
+    return rowsDone;
+  }
+
+  /**
+   * Hashes a text with SHA-256.
+   *
+   * @param text the text
+   * @return the hash as lowercase hex
+   */
+  static String hash(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    Checkpoint that = (Checkpoint) o;
+    return rowsDone == that.rowsDone && this.hasSameInputs(that);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(csvFilePath, csvSize, csvModified, templateHashes, patternHashes,
+        rowsDone);
+  }
+
+  @Override
+  public String toString() {
+    return "Checkpoint{" +
+        "csvFilePath='" + csvFilePath + '\'' +
+        ", csvSize=" + csvSize +
+        ", csvModified=" + csvModified +
+        ", templateHashes=" + templateHashes +
+        ", patternHashes=" + patternHashes +
+        ", rowsDone=" + rowsDone +
+        '}';
+  }
+}
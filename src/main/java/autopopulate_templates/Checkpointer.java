@@ -0,0 +1,118 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the checkpoint of a run up to date while rows are being written. With several threads,
+ * rows finish out of order, so finished ranges are collected until they join up with the rows
+ * already done; only rows below that low watermark are ever recorded as done.
+ * <p>
+ * Every interval rows the watermark is claimed for saving. The caller then flushes its sinks, so
+ * that every document up to the watermark has reached the file system, and only then saves the
+ * checkpoint with save(long).
+ */
+public class Checkpointer {
+
+  static final int DEFAULT_INTERVAL = 10000; // rows between two checkpoints
+
+  private final Path file;
+  private final Checkpoint inputs;
+  private final int interval;
+  private final long resumedRows;
+  private final TreeMap<Long, Long> finished; // first row to last row of ranges above watermark
+  private long watermark; // rows 1 to watermark are done
+  private long claimed; // highest watermark handed out for saving
+  private long saved; // highest watermark saved
+
+  /**
+   * Starts checkpointing into a file, resuming from the checkpoint already in it if there is one.
+   *
+   * @param file     the checkpoint file
+   * @param inputs   the fingerprint of the CSV file and templates of this run
+   * @param interval the number of rows between two checkpoints
+   * @throws IOException              if the existing checkpoint cannot be read
+   * @throws IllegalArgumentException if the existing checkpoint was made from other inputs
+   */
+  public Checkpointer(Path file, Checkpoint inputs, int interval) throws IOException {
+    Checkpoint existing = Checkpoint.read(file);
+    if (existing != null && !existing.hasSameInputs(inputs)) {
+      throw new IllegalArgumentException("The csv file or a template has changed since "
+          + file + " was written. Delete it to start over.");
+    }
+    this.file = file;
+    this.inputs = inputs;
+    this.interval = interval;
+    this.resumedRows = existing == null ? 0 : existing.getRowsDone();
+    this.finished = new TreeMap<>();
+    this.watermark = this.resumedRows;
+    this.claimed = this.resumedRows;
+    this.saved = this.resumedRows;
+  }
+
+  /**
+   * Returns the number of leading rows done by an earlier run, which this run can skip.
+   *
+   * @return the number of rows to skip
+   */
+  public long getResumedRows() {
+    return resumedRows;
+  }
+
+  /**
+   * Records that the documents of a range of rows have all been written.
+   *
+   * @param firstRow the 1-based number of the first row of the range
+   * @param count    the number of rows in the range
+   * @return the watermark to save now, after flushing the sinks, or -1 if no checkpoint is due
+   */
+  public synchronized long rowsDone(long firstRow, long count) {
+    this.finished.put(firstRow, firstRow + count - 1);
+    Map.Entry<Long, Long> next;
+    while ((next = this.finished.firstEntry()) != null && next.getKey() == this.watermark + 1) {
+      this.watermark = next.getValue();
+      this.finished.pollFirstEntry();
+    }
+    if (this.watermark - this.claimed < this.interval) {
+      return -1;
+    }
+    this.claimed = this.watermark;
+    return this.watermark;
+  }
+
+  /**
+   * Saves a watermark returned by rowsDone(long, long). A watermark lower than one already saved
+   * is ignored.
+   *
+   * @param rows the number of leading rows done
+   * @throws IOException if the checkpoint cannot be written
+   */
+  public synchronized void save(long rows) throws IOException {
+    if (rows > this.saved) {
+      this.inputs.withRowsDone(rows).write(this.file);
+      this.saved = rows;
+    }
+  }
+
+  /**
+   * Removes the checkpoint once every row has been written and the output is complete.
+   *
+   * @throws IOException if the checkpoint cannot be deleted
+   */
+  public synchronized void complete() throws IOException {
+    Files.deleteIfExists(this.file);
+  }
+
+  @Override
+  public String toString() {
+    return "Checkpointer{" +
+        "file=" + file +
+        ", resumedRows=" + resumedRows +
+        ", watermark=" + watermark +
+        ", saved=" + saved +
+        '}';
+  }
+}
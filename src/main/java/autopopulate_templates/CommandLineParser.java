@@ -23,6 +23,32 @@ public class CommandLineParser {
           + "--letter-template <path/to/file>  A filename for the letter template.\n"
           + "--output-dir <path/to/folder>     The folder to store all generated files. This option is required.\n"
           + "--csv-file <path/to/folder>       The CSV file to process. This option is required.\n"
+          + "--threads <n>                     Render and write files on n threads. Default is 1.\n"
+          + "--writer <sequential|virtual>     Write each file on the rendering thread, or on its own virtual thread. Default is sequential.\n"
+          + "--max-open-files <n>              With --writer virtual, the most files open at once. Default is 256.\n"
+          + "--sink <files|jsonl|stdout>       Write one file per document, one JSON Lines file per option, or JSON Lines to stdout. Default is files.\n"
+          + "--input <stream|mmap|parallel>    Read the CSV file through a Reader, or memory-map it and decode only the columns templates use (UTF-8 only), parsing on --threads threads with parallel. Default is stream.\n"
+          + "--archive <zip|tar>               Write all documents of an option into one archive instead of one file each.\n"
+          + "--compress                        Compress the archive given with --archive.\n"
+          + "--metrics <text|json>             Report counts, stage times, latencies and peak heap on stderr at the end.\n"
+          + "--progress <seconds>              Print rows done, throughput and time left on stderr every n seconds.\n"
+          + "--resume                          Checkpoint progress next to the output and continue from the last checkpoint after a crash. Files sink only.\n"
+          + "--email-filename <pattern>        Name each email after columns of its row, e.g. [[email]]-email.txt, instead of email-N.txt.\n"
+          + "--letter-filename <pattern>       Name each letter after columns of its row, e.g. [[last_name]]-[[first_name]].txt, instead of letter-N.txt.\n"
+          + "--shard-fanout <n>                Write at most n documents to each subdirectory, e.g. email/0001/email-1234.txt with 1000, instead of all into --output-dir. Files sink only.\n"
+          + "--dedup                           Write each distinct document once and list the rows that render the same in <option>.dedup in --output-dir, one 'duplicate<TAB>original' per line. Files sink only.\n"
+          + "--rejects-file <path/to/file>     Write malformed rows, with their line number and the reason, to this file and go on with the next row instead of stopping.\n"
+          + "--max-rejects <n>                 With --rejects-file, stop once more than this many rows are malformed. Default is no limit.\n"
+          + "--validate-only                   Only check that every template's placeholders are in the header line of its csv file, without generating output. --output-dir is not required.\n"
+          + "--incremental                     Keep a manifest of row and template hashes next to the output and only rewrite documents that changed. Files sink only.\n"
+          + "--template-cache <path/to/folder>  Store compiled templates in this folder and reuse them while the template files are unchanged.\n"
+          + "--server <port>                   Stay running and accept jobs on localhost:<port>: POST /jobs with one argument per line. No other option is required.\n"
+          + "--jobs-file <path/to/file>        Run the jobs listed in this file, one job's options per line, several at once. No other option is required.\n"
+          + "--token-file <path/to/file>       With --server, where to write the token that job requests must send in the X-Job-Token header. Default is jobs-server.token.\n"
+          + "--max-jobs <n>                    With --server or --jobs-file, the most jobs run at once. Default is 4.\n"
+          + "--total-threads <n>               With --server or --jobs-file, the threads shared by all running jobs. Default is the number of CPUs.\n"
+          + "--total-open-files <n>            With --server or --jobs-file, the most files all running jobs write at once. Default is 1024.\n"
+          + "--priority <n>                    In a job of --server or --jobs-file, jobs with a higher priority start first. Default is 0.\n"
           + "\nExamples:\n"
           + "--email --email-template email-template.txt --output-dir ./emails --csv-file customer.csv\n"
           + "--letter --letter-template letter-template.txt --output-dir ./letters --csv-file customer.csv";
@@ -33,11 +59,59 @@ public class CommandLineParser {
   private static final String OPTION_LETTER_TEMPLATE = "--letter-template";
   private static final String OPTION_OUTPUT_DIR = "--output-dir";
   private static final String OPTION_CSV_FILE = "--csv-file";
+  private static final String OPTION_THREADS = "--threads";
+  private static final String OPTION_WRITER = "--writer";
+  private static final String OPTION_MAX_OPEN_FILES = "--max-open-files";
+  private static final String OPTION_SINK = "--sink";
+  private static final String OPTION_INPUT = "--input";
+  private static final String OPTION_ARCHIVE = "--archive";
+  private static final String OPTION_COMPRESS = "--compress";
+  private static final String OPTION_METRICS = "--metrics";
+  private static final String OPTION_PROGRESS = "--progress";
+  private static final String OPTION_RESUME = "--resume";
+  private static final String OPTION_INCREMENTAL = "--incremental";
+  private static final String OPTION_VALIDATE_ONLY = "--validate-only";
+  private static final String OPTION_REJECTS_FILE = "--rejects-file";
+  private static final String OPTION_MAX_REJECTS = "--max-rejects";
+  private static final String OPTION_SHARD_FANOUT = "--shard-fanout";
+  private static final String OPTION_DEDUP = "--dedup";
+  private static final String OPTION_EMAIL_FILENAME = "--email-filename";
+  private static final String OPTION_LETTER_FILENAME = "--letter-filename";
+  private static final String OPTION_TEMPLATE_CACHE = "--template-cache";
+  private static final String OPTION_SERVER = "--server";
+  private static final String OPTION_MAX_JOBS = "--max-jobs";
+  private static final String OPTION_TOKEN_FILE = "--token-file";
+  private static final String OPTION_JOBS_FILE = "--jobs-file";
+  private static final String OPTION_TOTAL_THREADS = "--total-threads";
+  private static final String OPTION_TOTAL_OPEN_FILES = "--total-open-files";
+  private static final String OPTION_PRIORITY = "--priority";
   private static final String[] ALL_CL_OPTIONS = {OPTION_EMAIL, OPTION_EMAIL_TEMPLATE,
-      OPTION_LETTER, OPTION_LETTER_TEMPLATE, OPTION_OUTPUT_DIR, OPTION_CSV_FILE};
+      OPTION_LETTER, OPTION_LETTER_TEMPLATE, OPTION_OUTPUT_DIR, OPTION_CSV_FILE, OPTION_THREADS,
+      OPTION_WRITER, OPTION_MAX_OPEN_FILES, OPTION_SINK, OPTION_INPUT, OPTION_ARCHIVE,
+      OPTION_COMPRESS, OPTION_METRICS, OPTION_PROGRESS, OPTION_RESUME,
+      OPTION_INCREMENTAL, OPTION_TEMPLATE_CACHE, OPTION_SERVER, OPTION_MAX_JOBS,
+      OPTION_JOBS_FILE, OPTION_TOTAL_THREADS, OPTION_TOTAL_OPEN_FILES, OPTION_PRIORITY,
+      OPTION_VALIDATE_ONLY, OPTION_REJECTS_FILE, OPTION_MAX_REJECTS,
+      OPTION_SHARD_FANOUT, OPTION_EMAIL_FILENAME, OPTION_LETTER_FILENAME, OPTION_DEDUP,
+      OPTION_TOKEN_FILE};
+  private static final String WRITER_SEQUENTIAL = "sequential";
+  private static final String WRITER_VIRTUAL = "virtual";
+  private static final String SINK_FILES = "files";
+  private static final String SINK_JSONL = "jsonl";
+  private static final String SINK_STDOUT = "stdout";
+  private static final String INPUT_STREAM = "stream";
+  private static final String INPUT_MMAP = "mmap";
+  private static final String INPUT_PARALLEL = "parallel";
+  private static final String ARCHIVE_ZIP = "zip";
+  private static final String ARCHIVE_TAR = "tar";
+  private static final String METRICS_TEXT = "text";
+  private static final String METRICS_JSON = "json";
+  private static final int MAX_PORT = 65535;
+  private static final String FLAG_SET = "true"; // value stored for options without a value
   private static final String OPTION_EMAIL_SUBSTRING = "email"; // string to prefix filename
   private static final String OPTION_LETTER_SUBSTRING = "letter"; // string to prefix filename
   private ArrayList<Option> optionsList; // accessible to user i.e. getter available
+  private RunSettings runSettings; // settings shared by all options
 
   /**
    * Constructs a new CommandLineParser object with the provided command line arguments.
@@ -47,6 +121,7 @@ public class CommandLineParser {
    */
   public CommandLineParser(String[] args) throws IllegalArgumentException {
     optionsList = new ArrayList<>();
+    runSettings = new RunSettings();
     this.processCommandLineArgs(args);
   }
 
@@ -59,6 +134,15 @@ public class CommandLineParser {
     return optionsList;
   }
 
+  /**
+   * Returns the settings that apply to every option, such as the number of threads.
+   *
+   * @return the RunSettings of this run
+   */
+  public RunSettings getRunSettings() {
+    return runSettings;
+  }
+
   /**
    * Key step to process command-line arguments by parsing, validating, and creating Option list.
    *
@@ -68,8 +152,12 @@ public class CommandLineParser {
   private void processCommandLineArgs(String[] args) throws IllegalArgumentException {
     Map<String, String> optionMap = new HashMap<>(); // temporarily store <option, value> pairs
     this.parseArguments(args, optionMap); // parse CL and store in a map
-    this.validateArguments(optionMap); // validate whether the option combo are valid
-    this.populateOptionList(optionMap); // general the list of Options
+    // a server or a jobs file takes the options of each job from the job
+    if (!optionMap.containsKey(OPTION_SERVER) && !optionMap.containsKey(OPTION_JOBS_FILE)) {
+      this.validateArguments(optionMap); // validate whether the option combo are valid
+      this.populateOptionList(optionMap); // general the list of Options
+    }
+    this.populateRunSettings(optionMap); // settings shared by all options
   }
 
   /**
@@ -90,10 +178,38 @@ public class CommandLineParser {
         case OPTION_LETTER:
           optMap.put(OPTION_LETTER, OPTION_LETTER_SUBSTRING);
           break;
+        case OPTION_COMPRESS:
+        case OPTION_RESUME:
+        case OPTION_INCREMENTAL:
+        case OPTION_VALIDATE_ONLY:
+        case OPTION_DEDUP:
+          optMap.put(option, FLAG_SET);
+          break;
         case OPTION_EMAIL_TEMPLATE:
         case OPTION_LETTER_TEMPLATE:
         case OPTION_OUTPUT_DIR:
         case OPTION_CSV_FILE:
+        case OPTION_THREADS:
+        case OPTION_WRITER:
+        case OPTION_MAX_OPEN_FILES:
+        case OPTION_SINK:
+        case OPTION_INPUT:
+        case OPTION_ARCHIVE:
+        case OPTION_METRICS:
+        case OPTION_PROGRESS:
+        case OPTION_TEMPLATE_CACHE:
+        case OPTION_SERVER:
+        case OPTION_TOKEN_FILE:
+        case OPTION_MAX_JOBS:
+        case OPTION_JOBS_FILE:
+        case OPTION_TOTAL_THREADS:
+        case OPTION_TOTAL_OPEN_FILES:
+        case OPTION_PRIORITY:
+        case OPTION_REJECTS_FILE:
+        case OPTION_MAX_REJECTS:
+        case OPTION_SHARD_FANOUT:
+        case OPTION_EMAIL_FILENAME:
+        case OPTION_LETTER_FILENAME:
           parseArgumentsHelper(args, option, i, optMap);
           i++;
           break;
@@ -168,11 +284,22 @@ public class CommandLineParser {
           + GENERIC_ERROR_MSG;
       throw new IllegalArgumentException(errMsg);
     }
+    if (!optMap.containsKey(OPTION_EMAIL) && optMap.containsKey(OPTION_EMAIL_FILENAME)) {
+      String errMsg = "Option --email-filename provided but no --email option was given.\n"
+          + GENERIC_ERROR_MSG;
+      throw new IllegalArgumentException(errMsg);
+    }
+    if (!optMap.containsKey(OPTION_LETTER) && optMap.containsKey(OPTION_LETTER_FILENAME)) {
+      String errMsg = "Option --letter-filename provided but no --letter option was given.\n"
+          + GENERIC_ERROR_MSG;
+      throw new IllegalArgumentException(errMsg);
+    }
     if (!optMap.containsKey(OPTION_CSV_FILE)) {
       String errMsg = "Option --csv-file must be provided.\n" + GENERIC_ERROR_MSG;
       throw new IllegalArgumentException(errMsg);
     }
-    if (!optMap.containsKey(OPTION_OUTPUT_DIR)) {
+    // nothing is written when only validating
+    if (!optMap.containsKey(OPTION_OUTPUT_DIR) && !optMap.containsKey(OPTION_VALIDATE_ONLY)) {
       String errMsg = "Option --output-dir must be provided.\n" + GENERIC_ERROR_MSG;
       throw new IllegalArgumentException(errMsg);
     }
@@ -185,14 +312,336 @@ public class CommandLineParser {
    */
   private void populateOptionList(Map<String, String> optMap) {
     if (optMap.containsKey(OPTION_EMAIL)) {
-      optionsList.add(
-          new Option(optMap.get(OPTION_EMAIL), optMap.get(OPTION_CSV_FILE),
-              optMap.get(OPTION_EMAIL_TEMPLATE), optMap.get(OPTION_OUTPUT_DIR)));
+      Option email = new Option(optMap.get(OPTION_EMAIL), optMap.get(OPTION_CSV_FILE),
+          optMap.get(OPTION_EMAIL_TEMPLATE), optMap.get(OPTION_OUTPUT_DIR));
+      email.setFilenamePattern(optMap.get(OPTION_EMAIL_FILENAME));
+      optionsList.add(email);
     }
     if (optMap.containsKey(OPTION_LETTER)) {
-      optionsList.add(
-          new Option(optMap.get(OPTION_LETTER), optMap.get(OPTION_CSV_FILE),
-              optMap.get(OPTION_LETTER_TEMPLATE), optMap.get(OPTION_OUTPUT_DIR)));
+      Option letter = new Option(optMap.get(OPTION_LETTER), optMap.get(OPTION_CSV_FILE),
+          optMap.get(OPTION_LETTER_TEMPLATE), optMap.get(OPTION_OUTPUT_DIR));
+      letter.setFilenamePattern(optMap.get(OPTION_LETTER_FILENAME));
+      optionsList.add(letter);
+    }
+  }
+
+  /**
+   * Populates the runSettings from the validated options.
+   *
+   * @param optMap a Map containing the validated options
+   * @throws IllegalArgumentException if a setting has an invalid value
+   */
+  private void populateRunSettings(Map<String, String> optMap) throws IllegalArgumentException {
+    if (optMap.containsKey(OPTION_THREADS)) {
+      runSettings.setThreads(parsePositiveInt(OPTION_THREADS, optMap.get(OPTION_THREADS)));
+    }
+    if (optMap.containsKey(OPTION_WRITER)) {
+      runSettings.setWriterMode(parseWriterMode(optMap.get(OPTION_WRITER)));
+    }
+    if (optMap.containsKey(OPTION_MAX_OPEN_FILES)) {
+      runSettings.setMaxOpenFiles(
+          parsePositiveInt(OPTION_MAX_OPEN_FILES, optMap.get(OPTION_MAX_OPEN_FILES)));
+    }
+    if (optMap.containsKey(OPTION_SINK)) {
+      runSettings.setSinkType(parseSinkType(optMap.get(OPTION_SINK)));
+    }
+    if (optMap.containsKey(OPTION_INPUT)) {
+      runSettings.setInputMode(parseInputMode(optMap.get(OPTION_INPUT)));
+    }
+    if (optMap.containsKey(OPTION_ARCHIVE)) {
+      if (runSettings.getSinkType() != RunSettings.SinkType.FILES) {
+        throw new IllegalArgumentException(
+            "Options --archive and --sink cannot be combined.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setArchiveFormat(parseArchiveFormat(optMap.get(OPTION_ARCHIVE)));
+    }
+    if (optMap.containsKey(OPTION_COMPRESS)) {
+      if (!optMap.containsKey(OPTION_ARCHIVE)) {
+        throw new IllegalArgumentException(
+            "Option --compress provided but no --archive was given.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setCompressArchive(true);
+    }
+    if (optMap.containsKey(OPTION_METRICS)) {
+      runSettings.setMetricsFormat(parseMetricsFormat(optMap.get(OPTION_METRICS)));
+    }
+    if (optMap.containsKey(OPTION_PROGRESS)) {
+      runSettings.setProgressInterval(
+          parsePositiveInt(OPTION_PROGRESS, optMap.get(OPTION_PROGRESS)));
+    }
+    if (optMap.containsKey(OPTION_RESUME)) {
+      if (runSettings.getSinkType() != RunSettings.SinkType.FILES
+          || runSettings.getArchiveFormat() != null) {
+        throw new IllegalArgumentException(
+            "Option --resume cannot be combined with --sink or --archive.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setResume(true);
+    }
+    if (optMap.containsKey(OPTION_INCREMENTAL)) {
+      if (runSettings.getSinkType() != RunSettings.SinkType.FILES
+          || runSettings.getArchiveFormat() != null || runSettings.isResume()) {
+        throw new IllegalArgumentException(
+            "Option --incremental cannot be combined with --sink, --archive or --resume.\n"
+                + GENERIC_ERROR_MSG);
+      }
+      runSettings.setIncremental(true);
+    }
+    if ((optMap.containsKey(OPTION_EMAIL_FILENAME) || optMap.containsKey(OPTION_LETTER_FILENAME))
+        && (runSettings.isIncremental() || optMap.containsKey(OPTION_SHARD_FANOUT))) {
+      // both find a document by its number
+      throw new IllegalArgumentException("Options --email-filename and --letter-filename cannot "
+          + "be combined with --incremental or --shard-fanout.\n" + GENERIC_ERROR_MSG);
+    }
+    if (optMap.containsKey(OPTION_SHARD_FANOUT)) {
+      if (runSettings.getSinkType() != RunSettings.SinkType.FILES
+          || runSettings.getArchiveFormat() != null) {
+        throw new IllegalArgumentException(
+            "Option --shard-fanout cannot be combined with --sink or --archive.\n"
+                + GENERIC_ERROR_MSG);
+      }
+      runSettings.setShardFanout(
+          parsePositiveInt(OPTION_SHARD_FANOUT, optMap.get(OPTION_SHARD_FANOUT)));
+    }
+    if (optMap.containsKey(OPTION_DEDUP)) {
+      if (runSettings.getSinkType() != RunSettings.SinkType.FILES
+          || runSettings.getArchiveFormat() != null || runSettings.isResume()
+          || runSettings.isIncremental()) {
+        // the dedup manifest only lists the duplicates of the rows written in this run
+        throw new IllegalArgumentException("Option --dedup cannot be combined with --sink, "
+            + "--archive, --resume or --incremental.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setDedup(true);
+    }
+    if (optMap.containsKey(OPTION_VALIDATE_ONLY)) {
+      runSettings.setValidateOnly(true);
+    }
+    if (optMap.containsKey(OPTION_REJECTS_FILE)) {
+      if (runSettings.isResume()) {
+        // a checkpoint counts the rows written, which no longer tells where to resume reading
+        throw new IllegalArgumentException(
+            "Option --rejects-file cannot be combined with --resume.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setRejectsFile(optMap.get(OPTION_REJECTS_FILE));
+    }
+    if (optMap.containsKey(OPTION_MAX_REJECTS)) {
+      if (runSettings.getRejectsFile() == null) {
+        throw new IllegalArgumentException(
+            "Option --max-rejects provided but no --rejects-file was given.\n"
+                + GENERIC_ERROR_MSG);
+      }
+      runSettings.setMaxRejects(
+          parseNonNegativeInt(OPTION_MAX_REJECTS, optMap.get(OPTION_MAX_REJECTS)));
+    }
+    if (optMap.containsKey(OPTION_TEMPLATE_CACHE)) {
+      runSettings.setTemplateCacheDir(optMap.get(OPTION_TEMPLATE_CACHE));
+    }
+    if (optMap.containsKey(OPTION_SERVER)) {
+      int port = parsePositiveInt(OPTION_SERVER, optMap.get(OPTION_SERVER));
+      if (port > MAX_PORT) {
+        throw new IllegalArgumentException(
+            OPTION_SERVER + " must be a port up to " + MAX_PORT + " but was: " + port + "\n"
+                + GENERIC_ERROR_MSG);
+      }
+      runSettings.setServerPort(port);
+    }
+    if (optMap.containsKey(OPTION_TOKEN_FILE)) {
+      if (!optMap.containsKey(OPTION_SERVER)) {
+        throw new IllegalArgumentException(
+            "Option --token-file provided but no --server was given.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setServerTokenFile(optMap.get(OPTION_TOKEN_FILE));
+    }
+    if (optMap.containsKey(OPTION_JOBS_FILE)) {
+      if (optMap.containsKey(OPTION_SERVER)) {
+        throw new IllegalArgumentException(
+            "Options --jobs-file and --server cannot be combined.\n" + GENERIC_ERROR_MSG);
+      }
+      runSettings.setJobsFile(optMap.get(OPTION_JOBS_FILE));
+    }
+    for (String option : new String[]{OPTION_MAX_JOBS, OPTION_TOTAL_THREADS,
+        OPTION_TOTAL_OPEN_FILES}) {
+      if (optMap.containsKey(option) && !runSettings.startsJobs()) {
+        throw new IllegalArgumentException("Option " + option
+            + " provided but no --server or --jobs-file was given.\n" + GENERIC_ERROR_MSG);
+      }
+    }
+    if (optMap.containsKey(OPTION_MAX_JOBS)) {
+      runSettings.setMaxJobs(parsePositiveInt(OPTION_MAX_JOBS, optMap.get(OPTION_MAX_JOBS)));
+    }
+    if (optMap.containsKey(OPTION_TOTAL_THREADS)) {
+      runSettings.setTotalThreads(
+          parsePositiveInt(OPTION_TOTAL_THREADS, optMap.get(OPTION_TOTAL_THREADS)));
+    }
+    if (optMap.containsKey(OPTION_TOTAL_OPEN_FILES)) {
+      runSettings.setTotalOpenFiles(
+          parsePositiveInt(OPTION_TOTAL_OPEN_FILES, optMap.get(OPTION_TOTAL_OPEN_FILES)));
+    }
+    if (optMap.containsKey(OPTION_PRIORITY)) {
+      runSettings.setPriority(parseInt(OPTION_PRIORITY, optMap.get(OPTION_PRIORITY)));
+    }
+  }
+
+  /**
+   * Helper function to parse the value of the --metrics option.
+   *
+   * @param value the value to parse
+   * @return the matching RunMetrics.Format
+   * @throws IllegalArgumentException if the value is not a known format
+   */
+  private static RunMetrics.Format parseMetricsFormat(String value)
+      throws IllegalArgumentException {
+    switch (value) {
+      case METRICS_TEXT:
+        return RunMetrics.Format.TEXT;
+      case METRICS_JSON:
+        return RunMetrics.Format.JSON;
+      default:
+        throw new IllegalArgumentException(
+            OPTION_METRICS + " must be text or json but was: " + value + "\n" + GENERIC_ERROR_MSG);
+    }
+  }
+
+  /**
+   * Helper function to parse the value of the --sink option.
+   *
+   * @param value the value to parse
+   * @return the matching SinkType
+   * @throws IllegalArgumentException if the value is not a known sink
+   */
+  private static RunSettings.SinkType parseSinkType(String value)
+      throws IllegalArgumentException {
+    switch (value) {
+      case SINK_FILES:
+        return RunSettings.SinkType.FILES;
+      case SINK_JSONL:
+        return RunSettings.SinkType.JSONL;
+      case SINK_STDOUT:
+        return RunSettings.SinkType.STDOUT;
+      default:
+        throw new IllegalArgumentException(
+            OPTION_SINK + " must be files, jsonl or stdout but was: " + value + "\n"
+                + GENERIC_ERROR_MSG);
+    }
+  }
+
+  /**
+   * Helper function to parse the value of the --input option.
+   *
+   * @param value the value to parse
+   * @return the matching InputMode
+   * @throws IllegalArgumentException if the value is not a known input mode
+   */
+  private static RunSettings.InputMode parseInputMode(String value)
+      throws IllegalArgumentException {
+    switch (value) {
+      case INPUT_STREAM:
+        return RunSettings.InputMode.STREAM;
+      case INPUT_MMAP:
+        return RunSettings.InputMode.MAPPED;
+      case INPUT_PARALLEL:
+        return RunSettings.InputMode.PARALLEL;
+      default:
+        throw new IllegalArgumentException(
+            OPTION_INPUT + " must be stream, mmap or parallel but was: " + value + "\n"
+                + GENERIC_ERROR_MSG);
+    }
+  }
+
+  /**
+   * Helper function to parse the value of the --archive option.
+   *
+   * @param value the value to parse
+   * @return the matching archive format
+   * @throws IllegalArgumentException if the value is not a known format
+   */
+  private static ArchiveOutput.Format parseArchiveFormat(String value)
+      throws IllegalArgumentException {
+    switch (value) {
+      case ARCHIVE_ZIP:
+        return ArchiveOutput.Format.ZIP;
+      case ARCHIVE_TAR:
+        return ArchiveOutput.Format.TAR;
+      default:
+        throw new IllegalArgumentException(
+            OPTION_ARCHIVE + " must be zip or tar but was: " + value + "\n" + GENERIC_ERROR_MSG);
+    }
+  }
+
+  /**
+   * Helper function to parse the value of the --writer option.
+   *
+   * @param value the value to parse
+   * @return the matching WriterMode
+   * @throws IllegalArgumentException if the value is not a known writer
+   */
+  private static RunSettings.WriterMode parseWriterMode(String value)
+      throws IllegalArgumentException {
+    switch (value) {
+      case WRITER_SEQUENTIAL:
+        return RunSettings.WriterMode.SEQUENTIAL;
+      case WRITER_VIRTUAL:
+        return RunSettings.WriterMode.VIRTUAL;
+      default:
+        throw new IllegalArgumentException(
+            OPTION_WRITER + " must be sequential or virtual but was: " + value + "\n"
+                + GENERIC_ERROR_MSG);
+    }
+  }
+
+  /**
+   * Helper function to parse the value of a numeric option.
+   *
+   * @param option the option the value was given for
+   * @param value  the value to parse
+   * @return the value as a positive int
+   * @throws IllegalArgumentException if the value is not a positive integer
+   */
+  private static int parsePositiveInt(String option, String value)
+      throws IllegalArgumentException {
+    try {
+      int number = Integer.parseInt(value);
+      if (number > 0) {
+        return number;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to the error below
+    }
+    throw new IllegalArgumentException(
+        option + " must be a positive integer but was: " + value + "\n" + GENERIC_ERROR_MSG);
+  }
+
+  /**
+   * Helper function to parse the value of a count option, which may be 0.
+   *
+   * @param option the option the value was given for
+   * @param value  the value to parse
+   * @return the value as an int of at least 0
+   * @throws IllegalArgumentException if the value is not a non-negative integer
+   */
+  private static int parseNonNegativeInt(String option, String value)
+      throws IllegalArgumentException {
+    int number = parseInt(option, value);
+    if (number < 0) {
+      throw new IllegalArgumentException(
+          option + " cannot be negative but was: " + value + "\n" + GENERIC_ERROR_MSG);
+    }
+    return number;
+  }
+
+  /**
+   * Helper function to parse an integer option value, which may be negative.
+   *
+   * @param option the option the value belongs to, used in the error message
+   * @param value  the value to parse
+   * @return the parsed integer
+   * @throws IllegalArgumentException if the value is not an integer
+   */
+  private static int parseInt(String option, String value) throws IllegalArgumentException {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          option + " must be an integer but was: " + value + "\n" + GENERIC_ERROR_MSG);
     }
   }
 
@@ -205,7 +654,8 @@ public class CommandLineParser {
       return false;
     }
     CommandLineParser parser = (CommandLineParser) o;
-    return Objects.equals(optionsList, parser.optionsList);
+    return Objects.equals(optionsList, parser.optionsList)
+        && Objects.equals(runSettings, parser.runSettings);
   }
 
   @Override
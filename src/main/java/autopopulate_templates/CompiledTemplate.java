@@ -0,0 +1,239 @@
+package autopopulate_templates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A template that has been scanned once and split into literal text segments and the header keys
+ * of the [[key]] placeholders between them. Rendering a row is then a single append pass over the
+ * segments into a buffer sized for the result, instead of a regex scan and one String.replace per
+ * placeholder.
+ * <p>
+ * For a template with n placeholders there are always n + 1 literals, some of which may be empty:
+ * literal[0] key[0] literal[1] key[1] ... key[n-1] literal[n].
+ */
+public class CompiledTemplate {
+
+  private static final Pattern PLACEHOLDER_PATTERN =
+      Pattern.compile("\\[\\[(\\w+)\\]\\]"); // recognize [[]]
+
+  private final String source;
+  private final String[] literals;
+  private final String[] keys;
+  private final int[] slots; // column index of each key, null until bound to headers
+  private final Set<String> keySet; // distinct keys, in order of first appearance
+  private final int literalLength;
+
+  /**
+   * Constructs a compiled template from its already split parts.
+   *
+   * @param source   the original template text
+   * @param literals the literal segments, one more than there are keys
+   * @param keys     the placeholder keys, without the surrounding [[ ]]
+   * @param slots    the column index of each key, or null if not bound to headers
+   */
+  private CompiledTemplate(String source, String[] literals, String[] keys, int[] slots) {
+    this.source = source;
+    this.literals = literals;
+    this.keys = keys;
+    this.slots = slots;
+    this.keySet = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(keys)));
+    int length = 0;
+    for (String literal : literals) {
+      length += literal.length();
+    }
+    this.literalLength = length;
+  }
+
+  /**
+   * Scans the template text once and splits it into literals and placeholder keys.
+   *
+   * @param source the template text
+   * @return the compiled template
+   */
+  public static CompiledTemplate compile(String source) {
+    List<String> literals = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    Matcher matcher = PLACEHOLDER_PATTERN.matcher(source);
+    int literalStart = 0;
+    while (matcher.find()) {
+      literals.add(source.substring(literalStart, matcher.start()));
+      keys.add(matcher.group(1)); // from [[email]] to email
+      literalStart = matcher.end();
+    }
+    literals.add(source.substring(literalStart));
+    return new CompiledTemplate(source, literals.toArray(new String[0]),
+        keys.toArray(new String[0]), null);
+  }
+
+  /**
+   * Rebuilds a compiled template from parts taken from another one, e.g. read back from a cache,
+   * without scanning the template text again.
+   *
+   * @param source   the original template text
+   * @param literals the literal segments, one more than there are keys
+   * @param keys     the placeholder keys in order, as from getPlaceholderKeys()
+   * @return the compiled template
+   * @throws IllegalArgumentException if there is not exactly one more literal than keys
+   */
+  static CompiledTemplate fromParts(String source, String[] literals, String[] keys) {
+    if (literals.length != keys.length + 1) {
+      throw new IllegalArgumentException(
+          "Expected " + (keys.length + 1) + " literals but got " + literals.length);
+    }
+    return new CompiledTemplate(source, literals.clone(), keys.clone(), null);
+  }
+
+  /**
+   * Resolves every placeholder key to its column index in the given headers, so that rows stored
+   * as arrays can be rendered with render(String[]).
+   *
+   * @param headers the headers of the csv data that will be rendered.
+   * @return a copy of this template bound to the headers.
+   * @throws IllegalArgumentException if a placeholder key is not one of the headers.
+   */
+  public CompiledTemplate bind(CsvHeaders headers) {
+    int[] boundSlots = new int[this.keys.length];
+    for (int i = 0; i < this.keys.length; i++) {
+      boundSlots[i] = headers.indexOf(this.keys[i]);
+      if (boundSlots[i] < 0) {
+        throw new IllegalArgumentException(
+            "Placeholder '" + this.keys[i] + "' is not a header of the csv data.");
+      }
+    }
+    return new CompiledTemplate(this.source, this.literals, this.keys, boundSlots);
+  }
+
+  /**
+   * Get the original template text.
+   *
+   * @return the template as a String.
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Get the distinct placeholder keys referenced by the template, in order of first appearance.
+   *
+   * @return an unmodifiable Set of keys.
+   */
+  public Set<String> getKeys() {
+    return keySet;
+  }
+
+  /**
+   * Get the literal segments between the placeholders.
+   *
+   * @return a copy of the literals, one more than there are placeholders.
+   */
+  String[] getLiterals() {
+    return this.literals.clone();
+  }
+
+  /**
+   * Get the key of every placeholder in order, including repeated keys.
+   *
+   * @return a copy of the placeholder keys.
+   */
+  String[] getPlaceholderKeys() {
+    return this.keys.clone();
+  }
+
+  /**
+   * Render the template for one row.
+   *
+   * @param row a row of csv data with headers as keys.
+   * @return the rendered document as a String.
+   * @throws IllegalArgumentException if the row has no value for a placeholder key.
+   */
+  public String render(Map<String, String> row) {
+    String[] values = new String[this.keys.length];
+    int length = this.literalLength;
+    for (int i = 0; i < this.keys.length; i++) {
+      values[i] = row.get(this.keys[i]);
+      if (values[i] == null) {
+        throw new IllegalArgumentException(
+            "No value for placeholder '" + this.keys[i] + "' in row " + row);
+      }
+      length += values[i].length();
+    }
+
+    StringBuilder output = new StringBuilder(length);
+    for (int i = 0; i < this.keys.length; i++) {
+      output.append(this.literals[i]).append(values[i]);
+    }
+    return output.append(this.literals[this.keys.length]).toString();
+  }
+
+  /**
+   * Render the template for one row stored in header order. The template must have been bound to
+   * the row's headers with bind(CsvHeaders).
+   *
+   * @param row the values of one row of csv data, indexed like the bound headers.
+   * @return the rendered document as a String.
+   * @throws IllegalStateException if the template has not been bound to headers.
+   */
+  public String render(String[] row) {
+    return this.renderTo(row, new StringBuilder()).toString();
+  }
+
+  /**
+   * Render the template for one row stored in header order, appending to the given buffer. The
+   * buffer is grown once to fit the whole document, so it can be reused across rows without
+   * creating an intermediate String. The template must have been bound with bind(CsvHeaders).
+   *
+   * @param row    the values of one row of csv data, indexed like the bound headers.
+   * @param output the buffer to append the rendered document to.
+   * @return the buffer.
+   * @throws IllegalStateException if the template has not been bound to headers.
+   */
+  public StringBuilder renderTo(String[] row, StringBuilder output) {
+    if (this.slots == null) {
+      throw new IllegalStateException("Template must be bound to csv headers first.");
+    }
+    int length = this.literalLength;
+    for (int slot : this.slots) {
+      length += row[slot].length();
+    }
+
+    output.ensureCapacity(output.length() + length);
+    for (int i = 0; i < this.slots.length; i++) {
+      output.append(this.literals[i]).append(row[this.slots[i]]);
+    }
+    return output.append(this.literals[this.slots.length]);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    CompiledTemplate that = (CompiledTemplate) o;
+    return Objects.equals(source, that.source);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(source);
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledTemplate{" +
+        "literals=" + Arrays.toString(literals) +
+        ", keys=" + Arrays.toString(keys) +
+        '}';
+  }
+}
@@ -1,31 +1,28 @@
 package autopopulate_templates;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This class is responsible for reading and processing CSV files. It extracts data from the CSV
- * file and stores it as a list of maps, where each map represents a row in the CSV file with
- * headers as keys and corresponding cell values as values.
+ * file and stores each row as an array of values in header order, with the header names kept once
+ * in CsvHeaders. Callers that want each row as a map with headers as keys can still use
+ * getCsvData().
  * <p>
  * All methods in this class is private. Client(Main) only needs to call constructor with
  * csvFilePath as input to finish all tasks.
  */
 public class CsvFileProcessor {
 
-  private static final String CSV_PATTERN = "\"([^\"]*)\"|(?<=,|^)([^,]*)(?=,|$)"; // to match csv values
-
-  private List<Map<String, String>> csvData;
+  private List<String[]> rows;
+  private CsvHeaders headers;
 
   /**
    * Constructor for CsvFileProcessor.
@@ -34,117 +31,100 @@ public class CsvFileProcessor {
    * @throws IOException If there is an error reading the CSV file.
    */
   public CsvFileProcessor(String csvFilePath) throws IOException {
-    this.csvData = new ArrayList<>();
-    this.readAndProcessFile(csvFilePath);
+    this(csvFilePath, null);
+  }
+
+  /**
+   * Constructor for CsvFileProcessor that only keeps the values of some columns, e.g. the keys of
+   * the templates that will render the rows. The other columns are still counted, so a row with
+   * too few or too many values is rejected all the same, but their values are never turned into
+   * Strings and are null in the stored rows.
+   *
+   * @param csvFilePath The path of the CSV file to be processed.
+   * @param projection  The headers whose values are kept, or null to keep every column.
+   * @throws IOException If there is an error reading the CSV file.
+   */
+  public CsvFileProcessor(String csvFilePath, Set<String> projection) throws IOException {
+    this.rows = new ArrayList<>();
+    this.readAndProcessFile(csvFilePath, projection);
   }
 
   /**
-   * Getter for field csvData, as an ArrayList of maps.
+   * Getter for csv data, as a list of maps. The list is a read-only view over the stored rows, and
+   * each map is built only when that row is accessed.
    *
    * @return A list of maps, where each map represents a row in the CSV file with headers as keys
    * and corresponding cell values as values.
    */
   public List<Map<String, String>> getCsvData() {
-    return csvData;
+    return new AbstractList<Map<String, String>>() {
+      @Override
+      public Map<String, String> get(int index) {
+        return headers.toMap(rows.get(index));
+      }
+
+      @Override
+      public int size() {
+        return rows.size();
+      }
+    };
   }
 
   /**
-   * Getter for field headersOfCsv, as a HashSet of String.
+   * Getter for the rows, each as an array of values in header order.
    *
-   * @return a HashSet of String representing the headers
+   * @return an unmodifiable list of rows
    */
-  public Set<String> getHeadersOfCsv() {
-    return this.csvData.get(0).keySet();
+  public List<String[]> getRows() {
+    return Collections.unmodifiableList(rows);
   }
 
   /**
-   * Read and process the CSV file, populating the data into a list of maps.
+   * Getter for the headers with their column indices.
    *
-   * @param csvFilePath The path of the CSV file to be processed.
-   * @throws IOException If there is an error reading the CSV file.
+   * @return the headers as CsvHeaders
    */
-  private void readAndProcessFile(String csvFilePath) throws IOException {
-    try (BufferedReader bufferedReader =
-        new BufferedReader(new FileReader(csvFilePath))) {
-
-      // process headers, edge case of empty file already included
-      String headerLine = bufferedReader.readLine();
-      if (headerLine == null) {
-        bufferedReader.close();
-        throw new IOException("The provided CSV file is empty!");
-      }
-      String[] headers = this.getSeperatedValues(headerLine);
-
-      // process subsequent rows
-      String line;
-      while ((line = bufferedReader.readLine()) != null) {
-        // skip empty lines or lines that only contain whitespace
-        if (line.trim().isEmpty()) {continue;}
-
-        // process a valid line with values
-        String[] values = this.getSeperatedValues(line);
-        this.populateMap(headers, values);
-      }
-
-    } catch (FileNotFoundException e) {
-      throw new FileNotFoundException("File not found: " + csvFilePath);
-    } catch (IOException e) {
-      throw new IOException(
-          "Error reading the csv file: " + csvFilePath + " Error Message: " + e.getMessage());
-    }
+  public CsvHeaders getCsvHeaders() {
+    return headers;
   }
 
   /**
-   * Helper method to generate a map with headers and values.
+   * Getter for field headersOfCsv, as a Set of String in header-line order.
    *
-   * @param headers The array of headers extracted from the CSV file using getSeperatedValues().
-   * @param values  The array of values extracted from a CSV line using getSeperatedValues().
-   * @throws IllegalArgumentException If the number of headers and values do not match.
+   * @return a Set of String representing the headers
    */
-  private void populateMap(String[] headers, String[] values) {
-    if (headers.length != values.length) {
-      throw new IllegalArgumentException("Number of headers and values do not match!");
-    }
-    Map<String, String> lineToMap = new HashMap<>();
-    for (int i = 0; i < headers.length; i++) {
-      lineToMap.put(headers[i], values[i]);
-    }
-    csvData.add(lineToMap);
+  public Set<String> getHeadersOfCsv() {
+    return this.headers.getNames();
   }
 
   /**
-   * A helper method to extract info from a CSV String line and turn into an array of Strings based
-   * on the defined regex CSV_PATTERN.
+   * Read and process the CSV file, populating the data into a list of rows. Rows are pulled one at
+   * a time from a CsvRowReader, which is also usable on its own for files too big to hold in memory.
    *
-   * @param line The CSV line to be processed.
-   * @return An array of values extracted from the CSV line.
+   * @param csvFilePath The path of the CSV file to be processed.
+   * @param projection  The headers whose values are kept, or null to keep every column.
+   * @throws IOException If there is an error reading the CSV file.
    */
-  private String[] getSeperatedValues(String line) {
-    // list to store the extracted value
-    List<String> values = new ArrayList<>();
-
-    // create a pattern and a matcher
-    Pattern pattern = Pattern.compile(CSV_PATTERN);
-    Matcher matcher = pattern.matcher(line);
-
-    // find and add each element to the list
-    while (matcher.find()) {
-      String value = matcher.group().trim();
-
-      //  if it's an empty string, skip this line
-      if (value == null || value.isEmpty()) {
-        continue;
+  private void readAndProcessFile(String csvFilePath, Set<String> projection)
+      throws IOException {
+    try (CsvRowReader rowReader = new CsvRowReader(csvFilePath)) {
+      this.headers = rowReader.getCsvHeaders();
+      if (projection != null) {
+        rowReader.project(projection);
       }
 
-      // remove double quote if any
-      if (value.startsWith("\"") && value.endsWith("\"")) {
-        value = value.substring(1, value.length() - 1);
+      // process subsequent rows
+      String[] row;
+      while ((row = rowReader.readRow()) != null) {
+        rows.add(row);
       }
-      values.add(value);
-    }
 
-    // return the list of extracted values
-    return values.toArray(new String[0]);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new IOException(
+          "Error reading the csv file: " + csvFilePath + " Error Message: " + e.getMessage());
+    }
   }
 
   @Override
@@ -156,18 +136,18 @@ public class CsvFileProcessor {
       return false;
     }
     CsvFileProcessor that = (CsvFileProcessor) o;
-    return Objects.equals(csvData, that.csvData);
+    return Objects.equals(getCsvData(), that.getCsvData());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(csvData);
+    return Objects.hash(getCsvData());
   }
 
   @Override
   public String toString() {
     return "CsvFileProcessor{" +
-        "csvData=" + csvData +
+        "csvData=" + getCsvData() +
         '}';
   }
 }
\ No newline at end of file
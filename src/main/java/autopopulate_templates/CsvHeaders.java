@@ -0,0 +1,111 @@
+package autopopulate_templates;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The header line of a CSV file, mapped to column indices. Rows are stored as plain String arrays
+ * in header order, so the header names are kept once here instead of once per row, and compiled
+ * templates look values up by index instead of hashing a key for every placeholder.
+ */
+public class CsvHeaders {
+
+  private final String[] names;
+  private final Map<String, Integer> indices;
+
+  /**
+   * Constructs the headers from the fields of a CSV header record. Names are interned, and as with
+   * the map form of a row, the last occurrence wins if a name is repeated.
+   *
+   * @param names the header names in column order
+   */
+  public CsvHeaders(String[] names) {
+    this.names = new String[names.length];
+    this.indices = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      this.names[i] = names[i].intern();
+      this.indices.put(this.names[i], i);
+    }
+  }
+
+  /**
+   * Returns the number of columns.
+   *
+   * @return the number of columns
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * Returns the name of the column at the given index.
+   *
+   * @param index the 0-based column index
+   * @return the header name
+   */
+  public String getName(int index) {
+    return names[index];
+  }
+
+  /**
+   * Returns the index of the column with the given name.
+   *
+   * @param name the header name
+   * @return the 0-based column index, or -1 if there is no such column
+   */
+  public int indexOf(String name) {
+    Integer index = indices.get(name);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Returns the header names in column order.
+   *
+   * @return an unmodifiable Set of header names
+   */
+  public Set<String> getNames() {
+    return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(names)));
+  }
+
+  /**
+   * Builds a map with headers as keys for one row, for callers that still want the map form.
+   *
+   * @param row the row values in column order
+   * @return a new map from header name to value
+   */
+  public Map<String, String> toMap(String[] row) {
+    Map<String, String> rowToMap = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      rowToMap.put(names[i], row[i]);
+    }
+    return rowToMap;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    CsvHeaders that = (CsvHeaders) o;
+    return Arrays.equals(names, that.names);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(names);
+  }
+
+  @Override
+  public String toString() {
+    return "CsvHeaders{" +
+        "names=" + Arrays.toString(names) +
+        '}';
+  }
+}
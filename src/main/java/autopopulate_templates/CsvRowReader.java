@@ -0,0 +1,201 @@
+package autopopulate_templates;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+/**
+ * Reads a CSV file one row at a time. The header record is read when the reader is opened, and
+ * every call to readRow() parses exactly one more record, so only the current row is ever held in
+ * memory. Splitting records into values is delegated to CsvTokenizer, which after project(Set)
+ * only creates Strings for the columns templates reference.
+ * <p>
+ * This is the streaming counterpart of CsvFileProcessor, which uses this class to load the whole
+ * file into a list. Callers must close the reader once they are done with it.
+ */
+public class CsvRowReader implements CsvRowSource {
+
+  private final String csvFilePath;
+  private final CountingInputStream input;
+  private final CsvTokenizer tokenizer;
+  private final CsvHeaders headers;
+
+  /**
+   * Opens the CSV file and reads its header line.
+   *
+   * @param csvFilePath The path of the CSV file to be read.
+   * @throws FileNotFoundException If the CSV file does not exist.
+   * @throws IOException           If the file is empty or cannot be read.
+   */
+  public CsvRowReader(String csvFilePath) throws IOException {
+    this.csvFilePath = csvFilePath;
+    try {
+      this.input = new CountingInputStream(new FileInputStream(csvFilePath));
+    } catch (FileNotFoundException e) {
+      throw new FileNotFoundException("File not found: " + csvFilePath);
+    }
+    this.tokenizer = new CsvTokenizer(new InputStreamReader(this.input, Charset.defaultCharset()));
+
+    // process headers, edge case of empty file already included
+    String[] headerRecord = this.tokenizer.nextRecord();
+    if (headerRecord == null) {
+      this.tokenizer.close();
+      throw new IOException("The provided CSV file is empty!");
+    }
+    this.headers = new CsvHeaders(headerRecord);
+  }
+
+  /**
+   * Getter for the path of the CSV file being read.
+   *
+   * @return the path of the CSV file as a String
+   */
+  @Override
+  public String getCsvFilePath() {
+    return csvFilePath;
+  }
+
+  /**
+   * Getter for the headers of the CSV file, in the order they appear in the header line.
+   *
+   * @return an unmodifiable Set of String representing the headers
+   */
+  @Override
+  public Set<String> getHeaders() {
+    return this.headers.getNames();
+  }
+
+  /**
+   * Getter for the headers of the CSV file with their column indices.
+   *
+   * @return the headers as CsvHeaders
+   */
+  @Override
+  public CsvHeaders getCsvHeaders() {
+    return this.headers;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return this.input.count;
+  }
+
+  /**
+   * Read only the columns with the given headers from now on. The values of other columns are
+   * null in the rows returned by readRow().
+   *
+   * @param columns the headers referenced by the templates that will render the rows
+   */
+  @Override
+  public void keepRecordText() {
+    this.tokenizer.keepRecordText(true);
+  }
+
+  @Override
+  public void project(Set<String> columns) {
+    boolean[] projected = new boolean[this.headers.size()];
+    for (int i = 0; i < projected.length; i++) {
+      projected[i] = columns.contains(this.headers.getName(i));
+    }
+    this.tokenizer.project(projected);
+  }
+
+  /**
+   * Moves past rows by scanning them without creating any Strings.
+   *
+   * @param rows the number of rows to skip
+   * @return the number of rows skipped, less than rows only at the end of the file
+   * @throws IOException If there is an error reading the CSV file.
+   */
+  @Override
+  public long skipRows(long rows) throws IOException {
+    long skipped = 0;
+    while (skipped < rows && this.tokenizer.skipRecord()) {
+      skipped++;
+    }
+    return skipped;
+  }
+
+  /**
+   * Read and parse the next non-empty row of the CSV file.
+   *
+   * @return the cell values in header order, or null at the end of the file
+   * @throws IOException              If there is an error reading the CSV file.
+   * @throws MalformedRowException If the number of headers and values do not match.
+   */
+  @Override
+  public String[] readRow() throws IOException {
+    // blank lines are skipped by the tokenizer
+    String[] values = this.tokenizer.nextRecord();
+    if (values != null && values.length != this.headers.size()) {
+      throw new MalformedRowException(this.tokenizer.getRecordLineNumber(), values,
+          this.headers.size(), this.tokenizer.getRecordText());
+    }
+    return values;
+  }
+
+  /**
+   * Closes the underlying file.
+   *
+   * @throws IOException If the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    this.tokenizer.close();
+  }
+
+  @Override
+  public String toString() {
+    return "CsvRowReader{" +
+        "csvFilePath='" + csvFilePath + '\'' +
+        ", headers=" + getHeaders() +
+        '}';
+  }
+
+  /**
+   * Counts the bytes read through it.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    /**
+     * Constructs a CountingInputStream over another stream.
+     *
+     * @param in the stream to read from
+     */
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        this.count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        this.count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      this.count += skipped;
+      return skipped;
+    }
+  }
+}
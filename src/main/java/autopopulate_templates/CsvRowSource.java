@@ -0,0 +1,91 @@
+package autopopulate_templates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A source of CSV rows read one at a time after the header record. Rows are returned as arrays in
+ * header order, so they can be rendered by templates bound to getCsvHeaders().
+ * <p>
+ * CsvRowReader reads through a Reader, and MappedCsvReader tokenizes a memory-mapped file directly
+ * from its bytes. Callers must close the source once they are done with it.
+ */
+public interface CsvRowSource extends Closeable {
+
+  /**
+   * Getter for the path of the CSV file being read.
+   *
+   * @return the path of the CSV file as a String
+   */
+  String getCsvFilePath();
+
+  /**
+   * Getter for the headers of the CSV file, in the order they appear in the header line.
+   *
+   * @return an unmodifiable Set of String representing the headers
+   */
+  Set<String> getHeaders();
+
+  /**
+   * Getter for the headers of the CSV file with their column indices.
+   *
+   * @return the headers as CsvHeaders
+   */
+  CsvHeaders getCsvHeaders();
+
+  /**
+   * Returns how far into the CSV file the source has read, for reporting progress. The count may
+   * run ahead of the rows returned so far by the size of a read buffer.
+   *
+   * @return the number of bytes of the file read so far
+   */
+  long getBytesRead();
+
+  /**
+   * Limits the columns whose values are needed to the given headers. A source may then skip
+   * creating Strings for the other columns and leave null in their place. By default every column
+   * is read. Must be called before the first row is read.
+   *
+   * @param columns the headers referenced by the templates that will render the rows
+   */
+  default void project(Set<String> columns) {
+    // every column is read
+  }
+
+  /**
+   * Keeps the text of each row as it is in the file, so that a malformed row can be written to a
+   * rejects file as it is. Sources that can read the text back when a row turns out malformed
+   * need not keep it. Must be called before the first row is read.
+   */
+  default void keepRecordText() {
+    // the text is read back when needed
+  }
+
+  /**
+   * Moves past rows without returning them, for resuming a run. Sources skip rows more cheaply
+   * than reading them where they can; skipped rows are not checked against the headers.
+   *
+   * @param rows the number of rows to skip
+   * @return the number of rows skipped, less than rows only at the end of the file
+   * @throws IOException If there is an error reading the CSV file.
+   */
+  default long skipRows(long rows) throws IOException {
+    long skipped = 0;
+    while (skipped < rows && this.readRow() != null) {
+      skipped++;
+    }
+    return skipped;
+  }
+
+  /**
+   * Read and parse the next non-empty row of the CSV file. A row whose number of values does not
+   * match the headers is reported with a MalformedRowException, after which reading can go on
+   * with the next row.
+   *
+   * @return the cell values in header order, or null at the end of the file
+   * @throws IOException           If there is an error reading the CSV file.
+   * @throws MalformedRowException If the number of headers and values do not match.
+   */
+  String[] readRow() throws IOException;
+}
@@ -0,0 +1,412 @@
+package autopopulate_templates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits character input into CSV records following RFC 4180, scanning each character exactly
+ * once. Quoted fields may contain commas, line breaks and escaped quotes (""), and empty fields
+ * are kept so that column positions never shift.
+ * <p>
+ * To stay compatible with the files this project has always accepted, unquoted values are trimmed
+ * and lines holding nothing but whitespace are skipped. The read buffer, the field builder and the
+ * field array are reused between records; only the returned array and its Strings are new.
+ * <p>
+ * After project(boolean[]) only the selected columns are copied into the field builder and turned
+ * into Strings. The other columns are scanned over and left null, but still counted, so a record
+ * has as many fields as with every column read.
+ * <p>
+ * The text of each record as it is in the input is only kept after keepRecordText(true), for
+ * rejects files, and then only its first MalformedRowException.MAX_RECORD_CHARS characters or so,
+ * so that a record running to the end of the input never takes up more than that.
+ */
+public class CsvTokenizer implements Closeable {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int INITIAL_FIELD_CAPACITY = 16;
+  private static final int END_OF_FILE = -1;
+  private static final char DELIMITER = ',';
+  private static final char QUOTE = '"';
+
+  private final Reader reader;
+  private final char[] buffer;
+  private final StringBuilder field;
+  private final StringBuilder recordPrefix; // text of the current record from earlier buffers
+  private int recordStart; // where the current record starts in the buffer
+  private boolean keepText; // whether the record prefix is kept at all
+  private String[] fields;
+  private boolean[] projected; // null while every column is read
+  private int fieldCount;
+  private int position;
+  private int limit;
+  private long lineNumber;
+  private long recordLineNumber;
+
+  /**
+   * Constructs a tokenizer reading from the given Reader. The Reader does not need to be buffered,
+   * as the tokenizer keeps its own buffer.
+   *
+   * @param reader the source of CSV characters
+   */
+  public CsvTokenizer(Reader reader) {
+    this.reader = reader;
+    this.buffer = new char[BUFFER_SIZE];
+    this.field = new StringBuilder();
+    this.recordPrefix = new StringBuilder();
+    this.fields = new String[INITIAL_FIELD_CAPACITY];
+    this.lineNumber = 1;
+  }
+
+  /**
+   * Returns the 1-based line number on which the last record returned by nextRecord() started.
+   *
+   * @return the starting line number of the last record
+   */
+  public long getRecordLineNumber() {
+    return recordLineNumber;
+  }
+
+  /**
+   * Reads only some columns from now on. Fields of other columns are null in the records returned
+   * by nextRecord(), and so are fields past the end of the selection.
+   *
+   * @param projected whether each column is read, by column index, or null to read every column
+   */
+  public void project(boolean[] projected) {
+    this.projected = projected;
+  }
+
+  /**
+   * Keeps the text of each record as it is in the input from now on, to be returned by
+   * getRecordText(). Off by default, as it copies every record that spans two buffers.
+   *
+   * @param keep whether to keep the text
+   */
+  public void keepRecordText(boolean keep) {
+    this.keepText = keep;
+  }
+
+  /**
+   * Reads the next non-blank record.
+   *
+   * @return the fields of the record in column order, or null at the end of the input
+   * @throws IOException              if the underlying Reader fails
+   * @throws MalformedRowException if a quoted field is not closed before the end of the input
+   */
+  public String[] nextRecord() throws IOException {
+    while (true) {
+      this.fieldCount = 0;
+      this.startRecord();
+      boolean blank = true;
+      int terminator;
+      do {
+        if (this.projected == null || this.fieldCount < this.projected.length
+            && this.projected[this.fieldCount]) {
+          boolean quoted = this.readField();
+          terminator = this.readTerminator();
+          blank = blank && !quoted && terminator != DELIMITER && this.field.length() == 0;
+          this.addField(this.field.toString());
+        } else {
+          boolean empty = this.skipField();
+          terminator = this.readTerminator();
+          blank = blank && empty && terminator != DELIMITER;
+          this.addField(null);
+        }
+      } while (terminator == DELIMITER);
+
+      if (!blank) {
+        return Arrays.copyOf(this.fields, this.fieldCount);
+      }
+      if (terminator == END_OF_FILE) {
+        return null;
+      }
+      // otherwise a whitespace-only line, skip it
+    }
+  }
+
+  /**
+   * Moves past the next non-blank record without creating any Strings for it.
+   *
+   * @return false if there was no record left
+   * @throws IOException              if the underlying Reader fails
+   * @throws MalformedRowException if a quoted field is not closed before the end of the input
+   */
+  public boolean skipRecord() throws IOException {
+    while (true) {
+      this.startRecord();
+      boolean blank = true;
+      int terminator;
+      do {
+        boolean empty = this.skipField();
+        terminator = this.readTerminator();
+        blank = blank && empty && terminator != DELIMITER;
+      } while (terminator == DELIMITER);
+
+      if (!blank) {
+        return true;
+      }
+      if (terminator == END_OF_FILE) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns the text of the last record returned by nextRecord() as it is in the input, without
+   * its line break. Fields of columns that are not read are included. A record longer than
+   * MalformedRowException.MAX_RECORD_CHARS is only complete up to there.
+   *
+   * @return the text of the last record, or null unless keepRecordText(true) was called
+   */
+  public String getRecordText() {
+    if (!this.keepText) {
+      return null;
+    }
+    return stripLineBreak(new StringBuilder(this.recordPrefix)
+        .append(this.buffer, this.recordStart, this.position - this.recordStart).toString());
+  }
+
+  /**
+   * Removes the line break a record was ended with, if any.
+   *
+   * @param record the text of a record with its terminator
+   * @return the text without a final \n, \r\n or \r
+   */
+  static String stripLineBreak(String record) {
+    int end = record.length();
+    if (end > 0 && record.charAt(end - 1) == '\n') {
+      end--;
+    }
+    if (end > 0 && record.charAt(end - 1) == '\r') {
+      end--;
+    }
+    return record.substring(0, end);
+  }
+
+  /**
+   * Marks the current position as the start of a record.
+   */
+  private void startRecord() {
+    this.recordLineNumber = this.lineNumber;
+    this.recordPrefix.setLength(0);
+    this.recordStart = this.position;
+  }
+
+  /**
+   * Moves past one field, stopping before its terminator.
+   *
+   * @return true if the field was unquoted and held nothing but whitespace
+   * @throws IOException if the underlying Reader fails
+   */
+  private boolean skipField() throws IOException {
+    int c = this.skipSpaces();
+    boolean empty = c != QUOTE;
+    if (c == QUOTE) {
+      this.position++; // opening quote
+      while ((c = this.read()) != QUOTE || this.peek() == QUOTE) {
+        if (c == END_OF_FILE) {
+          throw MalformedRowException.unterminatedQuote(this.recordLineNumber,
+              this.getRecordText());
+        }
+        if (c == QUOTE) {
+          this.position++; // escaped quote
+        } else if (c == '\n') {
+          this.lineNumber++;
+        }
+      }
+    }
+    while ((c = this.peek()) != END_OF_FILE && c != DELIMITER && c != '\n' && c != '\r') {
+      empty = empty && Character.isWhitespace(c);
+      this.position++;
+    }
+    return empty;
+  }
+
+  /**
+   * Reads one field into the field builder, stopping before its terminator.
+   *
+   * @return true if the field was quoted
+   * @throws IOException if the underlying Reader fails
+   */
+  private boolean readField() throws IOException {
+    this.field.setLength(0);
+    int c = this.skipSpaces();
+    if (c != QUOTE) {
+      this.readUnquoted();
+      this.trimTrailingSpaces(0);
+      return false;
+    }
+
+    this.position++; // opening quote
+    while (true) {
+      c = this.read();
+      if (c == END_OF_FILE) {
+        throw MalformedRowException.unterminatedQuote(this.recordLineNumber,
+            this.getRecordText());
+      }
+      if (c == QUOTE) {
+        if (this.peek() != QUOTE) {
+          break;
+        }
+        this.position++; // escaped quote
+      } else if (c == '\n') {
+        this.lineNumber++;
+      }
+      this.field.append((char) c);
+    }
+
+    // anything between the closing quote and the delimiter is kept, minus trailing spaces
+    int closedAt = this.field.length();
+    this.readUnquoted();
+    this.trimTrailingSpaces(closedAt);
+    return true;
+  }
+
+  /**
+   * Appends characters to the field builder up to the next delimiter, line break or end of input,
+   * copying whole runs of the buffer at a time.
+   *
+   * @throws IOException if the underlying Reader fails
+   */
+  private void readUnquoted() throws IOException {
+    while (this.position < this.limit || this.fill()) {
+      int start = this.position;
+      while (this.position < this.limit) {
+        char ch = this.buffer[this.position];
+        if (ch == DELIMITER || ch == '\n' || ch == '\r') {
+          this.field.append(this.buffer, start, this.position - start);
+          return;
+        }
+        this.position++;
+      }
+      this.field.append(this.buffer, start, this.position - start);
+    }
+  }
+
+  /**
+   * Consumes the character that ended a field. A line break of \n, \r\n or \r counts as one.
+   *
+   * @return DELIMITER, '\n' for any line break, or END_OF_FILE
+   * @throws IOException if the underlying Reader fails
+   */
+  private int readTerminator() throws IOException {
+    int c = this.read();
+    if (c == '\r') {
+      if (this.peek() == '\n') {
+        this.position++;
+      }
+      c = '\n';
+    }
+    if (c == '\n') {
+      this.lineNumber++;
+    }
+    return c;
+  }
+
+  /**
+   * Skips spaces and tabs in front of a field.
+   *
+   * @return the first character that is not a space or tab, left unread, or END_OF_FILE
+   * @throws IOException if the underlying Reader fails
+   */
+  private int skipSpaces() throws IOException {
+    int c;
+    while ((c = this.peek()) == ' ' || c == '\t') {
+      this.position++;
+    }
+    return c;
+  }
+
+  /**
+   * Removes whitespace from the end of the field builder, but not before the given index.
+   *
+   * @param from the index before which nothing is removed
+   */
+  private void trimTrailingSpaces(int from) {
+    int end = this.field.length();
+    while (end > from && Character.isWhitespace(this.field.charAt(end - 1))) {
+      end--;
+    }
+    this.field.setLength(end);
+  }
+
+  /**
+   * Stores the next field of the current record.
+   *
+   * @param value the value of the field, or null if its column is not read
+   */
+  private void addField(String value) {
+    if (this.fieldCount == this.fields.length) {
+      this.fields = Arrays.copyOf(this.fields, this.fields.length * 2);
+    }
+    this.fields[this.fieldCount++] = value;
+  }
+
+  /**
+   * Reads one character.
+   *
+   * @return the character, or END_OF_FILE
+   * @throws IOException if the underlying Reader fails
+   */
+  private int read() throws IOException {
+    if (this.position >= this.limit && !this.fill()) {
+      return END_OF_FILE;
+    }
+    return this.buffer[this.position++];
+  }
+
+  /**
+   * Returns the next character without consuming it.
+   *
+   * @return the character, or END_OF_FILE
+   * @throws IOException if the underlying Reader fails
+   */
+  private int peek() throws IOException {
+    if (this.position >= this.limit && !this.fill()) {
+      return END_OF_FILE;
+    }
+    return this.buffer[this.position];
+  }
+
+  /**
+   * Refills the buffer from the Reader, first moving what it holds of the current record into the
+   * record prefix if the text is kept and the prefix is not full yet.
+   *
+   * @return false if the Reader is exhausted
+   * @throws IOException if the underlying Reader fails
+   */
+  private boolean fill() throws IOException {
+    // keep the part of the current record that is about to be overwritten, enough to still be
+    // truncated once a line break of up to two characters is stripped off its end
+    int room = MalformedRowException.MAX_RECORD_CHARS + 3 - this.recordPrefix.length();
+    if (this.keepText && room > 0) {
+      this.recordPrefix.append(this.buffer, this.recordStart,
+          Math.min(room, this.limit - this.recordStart));
+    }
+    this.recordStart = 0;
+    int read;
+    do {
+      read = this.reader.read(this.buffer, 0, this.buffer.length);
+    } while (read == 0);
+    if (read < 0) {
+      this.position = 0;
+      this.limit = 0;
+      return false;
+    }
+    this.position = 0;
+    this.limit = read;
+    return true;
+  }
+
+  /**
+   * Closes the underlying Reader.
+   *
+   * @throws IOException if the Reader cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+}
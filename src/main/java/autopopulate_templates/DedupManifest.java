@@ -0,0 +1,309 @@
+package autopopulate_templates;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders each distinct document of an option only once. Rows are projected onto the columns the
+ * template uses; rows with the same projection render to the same document, so only the first of
+ * them, the one with the lowest row number, is written, and every other one is recorded in this
+ * manifest instead, one line each: the name of the duplicate, a tab, and the name of the document
+ * it is identical to. Rows whose name is the same as their original's share its file and are not
+ * listed.
+ * <p>
+ * Rows may arrive out of order when generating on several threads. A row that arrives after an
+ * identical row with a higher number takes its place as the original; the document already
+ * written for the other row is then listed as a duplicate, and deleted by the writer once the
+ * sink is closed. Duplicates are spooled to a temporary file while rows are generated, and the
+ * manifest is written from it on close, when every original is known.
+ * <p>
+ * The distinct projections seen so far are kept in memory up to a limit. Past it, rows whose
+ * projection is new are rendered as usual without being remembered, so memory stays bounded when
+ * almost every row is distinct.
+ */
+public class DedupManifest implements Closeable {
+
+  static final int DEFAULT_MAX_ENTRIES = 1_000_000; // distinct documents remembered per option
+  private static final String FILE_EXTENSION = ".dedup";
+  private static final String SPOOL_EXTENSION = ".part";
+  private static final char SEPARATOR = '\t';
+
+  private final Path file;
+  private final Path spoolFile;
+  private final int maxEntries;
+  private final ConcurrentHashMap<List<String>, Original> originals;
+  private final List<Original> displaced; // originals replaced by a lower row, with their names
+  private final AtomicInteger nextId;
+  private final BufferedWriter spool;
+  private int[] columns; // indices of the columns the template uses
+  private long duplicates;
+
+  /**
+   * The document written for a set of identical rows.
+   */
+  private static final class Original {
+
+    private final int id;
+    private long rowNumber;
+    private String name;
+
+    /**
+     * Constructs an Original.
+     *
+     * @param id        the number of the set of rows, used in the spool file
+     * @param rowNumber the 1-based number of the row whose document is written
+     * @param name      the name of the document
+     */
+    private Original(int id, long rowNumber, String name) {
+      this.id = id;
+      this.rowNumber = rowNumber;
+      this.name = name;
+    }
+  }
+
+  /**
+   * What to do with a row's document, as found by match().
+   */
+  static final class Match {
+
+    private final boolean duplicate;
+    private final boolean sameName;
+    private final Original original;
+
+    /**
+     * Constructs a Match.
+     *
+     * @param duplicate whether the row's document is not to be written
+     * @param sameName  whether the row's name is already the name of its original
+     * @param original  the original of the row, or null if it is not remembered
+     */
+    private Match(boolean duplicate, boolean sameName, Original original) {
+      this.duplicate = duplicate;
+      this.sameName = sameName;
+      this.original = original;
+    }
+
+    /**
+     * Tells whether the row's document is identical to the one of a lower row, or already written
+     * under its name, and is not to be written.
+     *
+     * @return true if the row is a duplicate
+     */
+    boolean isDuplicate() {
+      return duplicate;
+    }
+
+    /**
+     * Tells whether the row's name is the name of a document already written for an identical
+     * row, so that the name needs no claiming and the duplicate no listing.
+     *
+     * @return true if the name is already its original's
+     */
+    boolean isSameName() {
+      return sameName;
+    }
+  }
+
+  /**
+   * Creates the manifest file, replacing the manifest of a previous run.
+   *
+   * @param file       the manifest file
+   * @param maxEntries the number of distinct documents remembered
+   * @throws IOException if the file cannot be created
+   */
+  public DedupManifest(Path file, int maxEntries) throws IOException {
+    this.file = file;
+    this.spoolFile = Paths.get(file + SPOOL_EXTENSION);
+    this.maxEntries = maxEntries;
+    this.originals = new ConcurrentHashMap<>();
+    this.displaced = Collections.synchronizedList(new ArrayList<>());
+    this.nextId = new AtomicInteger();
+    try {
+      this.spool = Files.newBufferedWriter(this.spoolFile, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      throw new IOException("Directory not found: " + file);
+    }
+  }
+
+  /**
+   * Returns where the manifest of an option is kept: in the output directory, named after the
+   * option.
+   *
+   * @param outputDir the output directory, used as a prefix like for output files
+   * @param option    the option, e.g. email
+   * @return the path of the manifest file
+   */
+  public static Path pathFor(String outputDir, String option) {
+    return Paths.get(outputDir + option + FILE_EXTENSION);
+  }
+
+  /**
+   * Prepares the manifest for rows stored in header order.
+   *
+   * @param headers the headers of the rows
+   * @param keys    the columns the template uses
+   */
+  void bindHeaders(CsvHeaders headers, Set<String> keys) {
+    this.columns = keys.stream().mapToInt(headers::indexOf).sorted().toArray();
+  }
+
+  /**
+   * Finds out whether a row renders the same as a row with a lower number. A row lower than the
+   * original found so far becomes the original instead.
+   *
+   * @param row       the values of the row in header order
+   * @param rowNumber the 1-based number of the row
+   * @param name      the name the row's document would be written to
+   * @return whether the row's document is to be written
+   */
+  Match match(String[] row, long rowNumber, String name) {
+    String[] projection = new String[this.columns.length];
+    for (int i = 0; i < projection.length; i++) {
+      projection[i] = row[this.columns[i]];
+    }
+    Match[] match = new Match[1];
+    this.originals.compute(Arrays.asList(projection), (key, original) -> {
+      if (original == null) {
+        if (this.originals.size() >= this.maxEntries) {
+          match[0] = new Match(false, false, null);
+          return null;
+        }
+        match[0] = new Match(false, false,
+            new Original(this.nextId.getAndIncrement(), rowNumber, name));
+        return match[0].original;
+      }
+      boolean sameName = original.name.equals(name);
+      if (original.rowNumber < rowNumber) {
+        match[0] = new Match(true, sameName, original);
+        return original;
+      }
+      if (sameName) {
+        // the document is already written under this row's name
+        original.rowNumber = rowNumber;
+        match[0] = new Match(true, true, original);
+        return original;
+      }
+      this.displaced.add(new Original(original.id, original.rowNumber, original.name));
+      original.rowNumber = rowNumber;
+      original.name = name;
+      match[0] = new Match(false, false, original);
+      return original;
+    });
+    return match[0];
+  }
+
+  /**
+   * Records a document that was not written because it is identical to the one of a lower row.
+   *
+   * @param name  the name of the document
+   * @param match the match of the document's row, a duplicate
+   * @throws IOException if the spool file cannot be written
+   */
+  synchronized void addDuplicate(String name, Match match) throws IOException {
+    this.spool.write(name);
+    this.spool.write(SEPARATOR);
+    this.spool.write(Integer.toString(match.original.id));
+    this.spool.newLine();
+  }
+
+  /**
+   * Returns the names of the documents written for rows that turned out not to be the lowest of
+   * their identical rows. They are listed as duplicates, and must be deleted once written.
+   *
+   * @return the names of the documents
+   */
+  List<String> getDisplaced() {
+    synchronized (this.displaced) {
+      List<String> names = new ArrayList<>(this.displaced.size());
+      for (Original original : this.displaced) {
+        names.add(original.name);
+      }
+      return names;
+    }
+  }
+
+  /**
+   * Returns the number of documents recorded as duplicates, once the manifest is closed.
+   *
+   * @return the number of duplicates
+   */
+  public synchronized long getDuplicates() {
+    return duplicates;
+  }
+
+  /**
+   * Writes the manifest, pointing every duplicate at the lowest of its identical rows, and
+   * deletes the spool file.
+   *
+   * @throws IOException if a file cannot be written
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    this.spool.close();
+    if (!Files.exists(this.spoolFile)) {
+      return;
+    }
+    String[] names = new String[this.nextId.get()];
+    for (Original original : this.originals.values()) {
+      names[original.id] = original.name;
+    }
+    try (BufferedReader in = Files.newBufferedReader(this.spoolFile, StandardCharsets.UTF_8);
+        BufferedWriter out = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8)) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        int separator = line.lastIndexOf(SEPARATOR);
+        this.writeDuplicate(out, line.substring(0, separator),
+            names[Integer.parseInt(line.substring(separator + 1))]);
+      }
+      synchronized (this.displaced) {
+        for (Original original : this.displaced) {
+          this.writeDuplicate(out, original.name, names[original.id]);
+        }
+      }
+    }
+    Files.delete(this.spoolFile);
+  }
+
+  /**
+   * Writes one line of the manifest, unless the duplicate has its original's name.
+   *
+   * @param out      the manifest file
+   * @param name     the name of the duplicate
+   * @param original the name of the document it is identical to
+   * @throws IOException if the file cannot be written
+   */
+  private void writeDuplicate(BufferedWriter out, String name, String original)
+      throws IOException {
+    if (name.equals(original)) {
+      return;
+    }
+    out.write(name);
+    out.write(SEPARATOR);
+    out.write(original);
+    out.newLine();
+    this.duplicates++;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "DedupManifest{" +
+        "file=" + file +
+        ", maxEntries=" + maxEntries +
+        ", distinct=" + originals.size() +
+        ", duplicates=" + duplicates +
+        '}';
+  }
+}
@@ -0,0 +1,117 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes rendered documents to UTF-8 through buffers that are reused from one document to the
+ * next, so no intermediate String or byte array is created per document. An encoder is not
+ * thread-safe; a sink either owns one or lends them out one write at a time.
+ */
+class DocumentEncoder {
+
+  private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+  private static final int INITIAL_HEAP_BUFFER_SIZE = 8 * 1024;
+
+  private final CharsetEncoder encoder;
+  private final ByteBuffer directBuffer;
+  private ByteBuffer heapBuffer;
+
+  /**
+   * Constructs a DocumentEncoder with its own buffers.
+   */
+  DocumentEncoder() {
+    this.encoder = StandardCharsets.UTF_8.newEncoder();
+    this.directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+    this.heapBuffer = ByteBuffer.allocate(INITIAL_HEAP_BUFFER_SIZE);
+  }
+
+  /**
+   * Encode a document straight into a channel, a direct buffer at a time.
+   *
+   * @param document the document to encode.
+   * @param channel  the channel to write to.
+   * @throws IOException if the channel fails or the document is not valid UTF-16.
+   */
+  void encodeTo(CharSequence document, WritableByteChannel channel) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(document);
+    this.encoder.reset();
+    this.directBuffer.clear();
+    CoderResult result;
+    while ((result = this.encoder.encode(chars, this.directBuffer, true)).isOverflow()) {
+      this.drainTo(channel);
+    }
+    if (result.isError()) {
+      result.throwException();
+    }
+    while (this.encoder.flush(this.directBuffer).isOverflow()) {
+      this.drainTo(channel);
+    }
+    this.drainTo(channel);
+  }
+
+  /**
+   * Write everything in the direct buffer to the channel and clear the buffer.
+   *
+   * @param channel the channel to write to.
+   * @throws IOException if the channel fails.
+   */
+  private void drainTo(WritableByteChannel channel) throws IOException {
+    this.directBuffer.flip();
+    while (this.directBuffer.hasRemaining()) {
+      channel.write(this.directBuffer);
+    }
+    this.directBuffer.clear();
+  }
+
+  /**
+   * Encode a document into the reused heap buffer, growing it if needed. The returned buffer is
+   * only valid until the next call.
+   *
+   * @param document the document to encode.
+   * @return the buffer, positioned at 0 with the encoded bytes up to its limit.
+   * @throws CharacterCodingException if the document is not valid UTF-16.
+   */
+  ByteBuffer encode(CharSequence document) throws CharacterCodingException {
+    CharBuffer chars = CharBuffer.wrap(document);
+    int maxBytes = (int) Math.ceil(document.length() * this.encoder.maxBytesPerChar());
+    if (this.heapBuffer.capacity() < maxBytes) {
+      this.heapBuffer = ByteBuffer.allocate(maxBytes);
+    }
+    this.heapBuffer.clear();
+    this.encoder.reset();
+    CoderResult result = this.encoder.encode(chars, this.heapBuffer, true);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    this.encoder.flush(this.heapBuffer);
+    this.heapBuffer.flip();
+    return this.heapBuffer;
+  }
+
+  /**
+   * Count the bytes a document takes in UTF-8 without encoding it.
+   *
+   * @param document the document to measure.
+   * @return the number of bytes.
+   */
+  static long utf8Length(CharSequence document) {
+    long length = document.length();
+    for (int i = 0; i < document.length(); i++) {
+      char c = document.charAt(i);
+      if (c >= 0x800) {
+        // surrogate pairs take 4 bytes for 2 chars, everything else 3 for 1
+        length += Character.isSurrogate(c) ? 1 : 2;
+      } else if (c >= 0x80) {
+        length++;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,130 @@
+package autopopulate_templates;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes every document to its own file in the output directory through an NIO FileChannel. The
+ * document is encoded as UTF-8 straight into a direct buffer, instead of going through a FileWriter
+ * in the platform charset.
+ * <p>
+ * Encoders and their buffers are borrowed from a pool for the length of one write rather than kept
+ * per thread, as AsyncFileWriter writes every document on a new virtual thread. The pool never
+ * makes a write wait: an encoder is created when none is free, and dropped on return when the pool
+ * already holds as many as it keeps, which should be the number of files written at once.
+ * <p>
+ * As everywhere else in this project, the output directory is used as a plain prefix, so it
+ * should end with a path separator.
+ */
+public class FileChannelSink implements OutputSink {
+
+  private final String outputDir;
+  private final BlockingQueue<DocumentEncoder> encoders; // idle encoders
+
+  /**
+   * Constructs a FileChannelSink writing into the given directory, keeping one idle encoder per
+   * processor.
+   *
+   * @param outputDir the prefix of every output file, normally a directory and a separator.
+   */
+  public FileChannelSink(String outputDir) {
+    this(outputDir, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a FileChannelSink writing into the given directory.
+   *
+   * @param outputDir    the prefix of every output file, normally a directory and a separator.
+   * @param idleEncoders the most encoders kept for reuse, at least 1, normally the maximum number
+   *                     of files written at the same time.
+   */
+  public FileChannelSink(String outputDir, int idleEncoders) {
+    this.outputDir = outputDir;
+    this.encoders = new ArrayBlockingQueue<>(idleEncoders);
+  }
+
+  /**
+   * Returns the number of encoders waiting to be reused, for tests.
+   *
+   * @return the number of idle encoders
+   */
+  int getIdleEncoderCount() {
+    return this.encoders.size();
+  }
+
+  /**
+   * Returns the prefix of every output file.
+   *
+   * @return the output directory as a String.
+   */
+  public String getOutputDir() {
+    return outputDir;
+  }
+
+  /**
+   * Write one document to the file outputDir + name, replacing any existing file.
+   *
+   * @param name     the name of the document, e.g. email-1.txt.
+   * @param document the rendered document.
+   * @throws IOException if the file cannot be written.
+   */
+  @Override
+  public void write(String name, CharSequence document) throws IOException {
+    String fileName = this.outputDir + name;
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DocumentEncoder encoder = this.encoders.poll();
+      if (encoder == null) {
+        encoder = new DocumentEncoder();
+      }
+      try {
+        encoder.encodeTo(document, channel);
+      } finally {
+        this.encoders.offer(encoder); // dropped if the pool is full
+      }
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("Directory not found: " + fileName);
+    } catch (IOException e) {
+      throw new IOException("Error writing to file: " + fileName, e);
+    }
+  }
+
+  /**
+   * Nothing to release, every file is closed as soon as it is written.
+   */
+  @Override
+  public void close() {
+    // every file is closed by write()
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    FileChannelSink that = (FileChannelSink) o;
+    return Objects.equals(outputDir, that.outputDir);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(outputDir);
+  }
+
+  @Override
+  public String toString() {
+    return "FileChannelSink{" +
+        "outputDir='" + outputDir + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,116 @@
+package autopopulate_templates;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Names the output of every row from the row's own values, e.g. [[email]]-letter.txt, instead of
+ * numbering it, so that downstream systems can find a member's document by name. The pattern is
+ * compiled once like a body template, and rendered for each row into a plain file name: path
+ * separators, characters that are not allowed in file names and a leading dot are replaced with
+ * an underscore, so that a value can never write outside the output directory.
+ * <p>
+ * Names are checked for clashes by the OutputNames of the output directory, which every option
+ * writing there shares.
+ */
+public class FilenamePattern {
+
+  private static final char REPLACEMENT = '_';
+  private static final String FORBIDDEN = "/\\:*?\"<>|";
+  private static final int MAX_NAME_BYTES = 255; // the limit of most file systems, in UTF-8
+
+  private final CompiledTemplate pattern;
+  private CompiledTemplate boundPattern;
+
+  /**
+   * Constructs a FilenamePattern.
+   *
+   * @param pattern the pattern, with [[column]] placeholders like a template
+   * @throws IllegalArgumentException if the pattern is empty
+   */
+  public FilenamePattern(String pattern) {
+    if (pattern.isEmpty()) {
+      throw new IllegalArgumentException("Filename pattern cannot be empty.");
+    }
+    this.pattern = CompiledTemplate.compile(pattern);
+  }
+
+  /**
+   * Returns the columns the pattern uses.
+   *
+   * @return the keys of the placeholders
+   */
+  public Set<String> getKeys() {
+    return this.pattern.getKeys();
+  }
+
+  /**
+   * Prepares the pattern for rows stored in header order.
+   *
+   * @param headers the headers of the rows that will be named
+   * @throws IllegalArgumentException if the pattern uses a key that is not a header
+   */
+  void bindHeaders(CsvHeaders headers) {
+    this.boundPattern = this.pattern.bind(headers);
+  }
+
+  /**
+   * Names the output of one row. Whether another document already has the name is checked by the
+   * caller, with OutputNames.
+   *
+   * @param row       the values of the row in header order
+   * @param rowNumber the 1-based number of the row, used in messages
+   * @return the file name
+   * @throws IllegalArgumentException if the name takes more than 255 bytes in UTF-8
+   */
+  String nameFor(String[] row, long rowNumber) {
+    String name = sanitize(this.boundPattern.render(row));
+    if (DocumentEncoder.utf8Length(name) > MAX_NAME_BYTES) {
+      throw new IllegalArgumentException("Output name of row " + rowNumber + " is longer than "
+          + MAX_NAME_BYTES + " bytes: " + name);
+    }
+    return name;
+  }
+
+  /**
+   * Turns a rendered pattern into a plain file name.
+   *
+   * @param name the rendered pattern
+   * @return the name with unsafe characters replaced, never empty
+   */
+  static String sanitize(String name) {
+    StringBuilder safe = new StringBuilder(name.length() + 1);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      safe.append(c < ' ' || c == 0x7f || FORBIDDEN.indexOf(c) >= 0 ? REPLACEMENT : c);
+    }
+    if (safe.length() == 0 || safe.charAt(0) == '.') {
+      safe.insert(0, REPLACEMENT); // no hidden files, and never . or ..
+    }
+    return safe.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    FilenamePattern that = (FilenamePattern) o;
+    return Objects.equals(pattern, that.pattern);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(pattern);
+  }
+
+  @Override
+  public String toString() {
+    return "FilenamePattern{" +
+        "pattern='" + pattern.getSource() + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,270 @@
+package autopopulate_templates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many generation jobs at once, each a list of Options with its RunSettings as built by
+ * CommandLineParser, while keeping the whole process within a budget of rendering threads and
+ * open files.
+ * <p>
+ * Waiting jobs are started in order of priority, highest first, then smallest input first, then
+ * in the order they were submitted. So among jobs of equal priority a small job never waits for a
+ * huge one to start, and with several jobs running a huge job does not hold up small ones. Each
+ * job gets at most its share of the rendering threads, the total divided by the number of jobs run
+ * at once, so the total is never exceeded. All jobs write their files through one shared limit on
+ * files being written at once, so running them together does not overload the disk.
+ */
+public class JobScheduler implements Closeable {
+
+  static final int DEFAULT_TOTAL_OPEN_FILES = 1024;
+
+  /**
+   * A job waiting to be run, and the result it will complete.
+   */
+  private static final class Job implements Comparable<Job> {
+
+    private final String name;
+    private final List<Option> options;
+    private final RunSettings settings;
+    private final int priority;
+    private final long inputBytes;
+    private final long sequence;
+    private final CompletableFuture<String> result;
+
+    /**
+     * Constructs a Job.
+     *
+     * @param name       the name of the job, used in messages
+     * @param options    the options of the job
+     * @param settings   the settings of the job
+     * @param priority   the priority of the job, higher first
+     * @param inputBytes the size of the job's input, smaller first
+     * @param sequence   the order in which the job was submitted
+     */
+    private Job(String name, List<Option> options, RunSettings settings, int priority,
+        long inputBytes, long sequence) {
+      this.name = name;
+      this.options = options;
+      this.settings = settings;
+      this.priority = priority;
+      this.inputBytes = inputBytes;
+      this.sequence = sequence;
+      this.result = new CompletableFuture<>();
+    }
+
+    @Override
+    public int compareTo(Job other) {
+      if (this.priority != other.priority) {
+        return Integer.compare(other.priority, this.priority);
+      }
+      if (this.inputBytes != other.inputBytes) {
+        return Long.compare(this.inputBytes, other.inputBytes);
+      }
+      return Long.compare(this.sequence, other.sequence);
+    }
+  }
+
+  private final int parallelism;
+  private final int threadsPerJob;
+  private final Semaphore openFiles;
+  private final PriorityBlockingQueue<Job> queue;
+  private final ExecutorService workers;
+  private long submitted;
+  private boolean closed;
+
+  /**
+   * Constructs a JobScheduler and starts its workers.
+   *
+   * @param parallelism    the number of jobs run at once, at least 1
+   * @param totalThreads   the number of rendering threads shared by all running jobs, at least 1
+   * @param totalOpenFiles the number of files all jobs may be writing at once, at least 1
+   * @throws IllegalArgumentException if a limit is less than 1
+   */
+  public JobScheduler(int parallelism, int totalThreads, int totalOpenFiles) {
+    if (parallelism < 1 || totalThreads < 1 || totalOpenFiles < 1) {
+      throw new IllegalArgumentException("Scheduler limits must be at least 1 but were: "
+          + parallelism + " jobs, " + totalThreads + " threads, " + totalOpenFiles + " files");
+    }
+    this.parallelism = parallelism;
+    this.threadsPerJob = Math.max(1, totalThreads / parallelism);
+    this.openFiles = new Semaphore(totalOpenFiles);
+    this.queue = new PriorityBlockingQueue<>();
+    this.workers = Executors.newFixedThreadPool(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      this.workers.execute(this::work);
+    }
+  }
+
+  /**
+   * Queues a job. Its number of threads is lowered to its share of the rendering threads if it
+   * asks for more.
+   *
+   * @param name     the name of the job, used in messages
+   * @param options  the options of the job
+   * @param settings the settings of the job, owned by the scheduler from now on
+   * @return the result of the job: its metrics report, or null if it is not measured
+   * @throws IllegalStateException if the scheduler is closed
+   */
+  public synchronized CompletableFuture<String> submit(String name, List<Option> options,
+      RunSettings settings) {
+    if (this.closed) {
+      throw new IllegalStateException("Scheduler is closed, cannot run job " + name);
+    }
+    Job job = new Job(name, options, settings, settings.getPriority(), inputBytes(options),
+        this.submitted++);
+    this.queue.add(job);
+    return job.result;
+  }
+
+  /**
+   * Takes jobs from the queue and runs them until the scheduler is closed and the queue empty.
+   */
+  private void work() {
+    try {
+      while (true) {
+        Job job = this.queue.take();
+        if (job.options == null) {
+          return; // the scheduler is closed and every job before this one is taken
+        }
+        this.run(job);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Runs one job on the calling worker and completes its result.
+   *
+   * @param job the job
+   */
+  private void run(Job job) {
+    job.settings.setThreads(Math.min(job.settings.getThreads(), this.threadsPerJob));
+    try {
+      job.result.complete(MainFileIO.runJob(job.options, job.settings, this.openFiles));
+    } catch (Exception | TemplateInformationNotMatchException e) {
+      job.result.completeExceptionally(e);
+    } catch (Error e) {
+      job.result.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Turns the failure of a job back into the exception generation threw, for callers waiting on
+   * its result.
+   *
+   * @param cause the failure the result was completed with
+   * @return the IOException to throw, if the failure was one
+   * @throws TemplateInformationNotMatchException if the failure was one
+   */
+  static IOException unwrap(Throwable cause) throws TemplateInformationNotMatchException {
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    if (cause instanceof TemplateInformationNotMatchException) {
+      throw (TemplateInformationNotMatchException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IOException(cause);
+  }
+
+  /**
+   * Sums the sizes of the csv files of a job's options.
+   *
+   * @param options the options of the job
+   * @return the size of the job's input in bytes, not counting files that cannot be read
+   */
+  private static long inputBytes(List<Option> options) {
+    Set<String> csvFiles = new HashSet<>();
+    long bytes = 0;
+    for (Option option : options) {
+      if (csvFiles.add(option.getCsvFilePath())) {
+        try {
+          bytes += Files.size(Paths.get(option.getCsvFilePath()));
+        } catch (IOException e) {
+          // the job itself reports the missing file
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the number of jobs run at once.
+   *
+   * @return the parallelism
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns the number of rendering threads each job may use at most.
+   *
+   * @return the threads per job
+   */
+  public int getThreadsPerJob() {
+    return threadsPerJob;
+  }
+
+  /**
+   * Returns the number of jobs waiting to be started.
+   *
+   * @return the number of queued jobs
+   */
+  public int getQueuedJobs() {
+    return this.queue.size();
+  }
+
+  /**
+   * Stops accepting jobs and waits for every queued and running job to finish.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      // a stop marker per worker, sorted after every real job
+      for (int i = 0; i < this.parallelism; i++) {
+        this.queue.add(new Job(null, null, null, Integer.MIN_VALUE, Long.MAX_VALUE,
+            Long.MAX_VALUE));
+      }
+    }
+    this.workers.shutdown();
+    try {
+      this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JobScheduler{" +
+        "parallelism=" + parallelism +
+        ", threadsPerJob=" + threadsPerJob +
+        ", availableFiles=" + openFiles.availablePermits() +
+        ", queuedJobs=" + queue.size() +
+        '}';
+  }
+}
@@ -0,0 +1,284 @@
+package autopopulate_templates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps the program resident and runs generation jobs sent to it over HTTP, so that a job does not
+ * pay for starting a JVM and warming up the JIT, and templates stay in the shared TemplateCache
+ * from one job to the next.
+ * <p>
+ * A job is a POST to /jobs whose body holds the job's command-line arguments, one per line, e.g.
+ * --email, --email-template, email-template.txt, and so on. They are parsed by CommandLineParser
+ * into the same options and settings as on the command line, and run by a JobScheduler, which
+ * shares rendering threads and open files between the jobs running at once. The response is sent
+ * once the job is done: 200 with the metrics report if one was requested, 400 for invalid
+ * arguments or templates, 500 if reading or writing failed, and 503 if as many jobs as allowed are
+ * already running or waiting. Bodies larger than 64 KiB are refused with 413.
+ * <p>
+ * The server only listens on the loopback interface, as jobs name files on this machine. Since
+ * a job reads and writes any file the process can, every request must also prove that it comes
+ * from someone allowed to read the token file: a random token is written there when the server
+ * is created, readable by its owner only, and must be sent in the X-Job-Token header. Requests
+ * that a web browser would send on behalf of a page are refused too. These are requests with an
+ * Origin header, and requests whose Host header names another host, as after DNS rebinding.
+ */
+public class JobServer implements Closeable {
+
+  private static final String JOBS_PATH = "/jobs";
+  private static final int ACCEPTED_PER_JOB = 2; // jobs accepted per job the scheduler runs
+  private static final int SPARE_HANDLERS = 2; // so busy requests are answered promptly
+  private static final int MAX_BODY_BYTES = 64 * 1024; // far more than any command line
+  private static final int TOKEN_BYTES = 32;
+  static final String TOKEN_HEADER = "X-Job-Token";
+  static final String DEFAULT_TOKEN_FILE = "jobs-server.token";
+
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final JobScheduler scheduler;
+  private final Semaphore jobSlots;
+  private final int maxJobs;
+  private final Path tokenFile;
+  private final byte[] token;
+
+  /**
+   * Constructs a JobServer listening on the loopback interface, and writes a new token to the
+   * token file. Jobs are only accepted once start() has been called.
+   *
+   * @param port      the port to listen on, or 0 for any free port
+   * @param scheduler the scheduler to run jobs on, which is not closed with the server
+   * @param tokenFile the file to write the token to, replacing any earlier one
+   * @throws IOException if the port cannot be bound or the token file cannot be written
+   */
+  public JobServer(int port, JobScheduler scheduler, Path tokenFile) throws IOException {
+    this.tokenFile = tokenFile;
+    this.token = newToken();
+    writeToken(tokenFile, this.token);
+    this.scheduler = scheduler;
+    this.maxJobs = scheduler.getParallelism() * ACCEPTED_PER_JOB;
+    this.jobSlots = new Semaphore(this.maxJobs);
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.handlers = Executors.newFixedThreadPool(this.maxJobs + SPARE_HANDLERS);
+    this.server.setExecutor(this.handlers);
+    this.server.createContext(JOBS_PATH, this::handle);
+  }
+
+  /**
+   * Makes a random token, as the text that is written to the token file and sent back.
+   *
+   * @return the bytes of the token's text
+   */
+  private static byte[] newToken() {
+    byte[] random = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(random);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(random)
+        .getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Writes the token to a new file that only its owner can read, where the file system allows it.
+   *
+   * @param tokenFile the token file
+   * @param token     the token
+   * @throws IOException if the file cannot be written
+   */
+  private static void writeToken(Path tokenFile, byte[] token) throws IOException {
+    Files.deleteIfExists(tokenFile);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString("rw-------")));
+    } else {
+      Files.createFile(tokenFile);
+    }
+    Files.write(tokenFile, token);
+  }
+
+  /**
+   * Starts accepting jobs on a background thread.
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Answers one request to /jobs.
+   *
+   * @param exchange the request and its response
+   * @throws IOException if the response cannot be sent
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, "Jobs must be sent with POST.");
+        return;
+      }
+      if (exchange.getRequestHeaders().containsKey("Origin") || !this.isLocalHost(
+          exchange.getRequestHeaders().getFirst("Host"))) {
+        respond(exchange, 403, "Jobs are only accepted from this machine, not from web pages.");
+        return;
+      }
+      String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+      if (token == null || !MessageDigest.isEqual(this.token,
+          token.getBytes(StandardCharsets.US_ASCII))) {
+        respond(exchange, 401, "Send the token from " + this.tokenFile + " in the "
+            + TOKEN_HEADER + " header.");
+        return;
+      }
+      if (!this.jobSlots.tryAcquire()) {
+        respond(exchange, 503, "Already accepted " + this.maxJobs + " jobs, try again later.");
+        return;
+      }
+      try {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+          respond(exchange, 413, "Jobs must be at most " + MAX_BODY_BYTES + " bytes.");
+          return;
+        }
+        respond(exchange, 200, runJob(parseArguments(new String(bytes, StandardCharsets.UTF_8))));
+      } catch (IllegalArgumentException | TemplateInformationNotMatchException e) {
+        respond(exchange, 400, e.getMessage());
+      } catch (IOException e) {
+        respond(exchange, 500, e.getMessage());
+      } catch (RuntimeException e) {
+        respond(exchange, 500, e.toString());
+      } finally {
+        this.jobSlots.release();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Tells whether the Host header of a request names this server by a loopback name, so that the
+   * request was not sent to another host's name that resolves here.
+   *
+   * @param host the Host header, or null if there is none
+   * @return true for localhost, 127.0.0.1 or [::1] with the server's port
+   */
+  private boolean isLocalHost(String host) {
+    if (host == null) {
+      return false;
+    }
+    String port = ":" + this.getPort();
+    String name = host.toLowerCase(Locale.ROOT);
+    return name.equals("localhost" + port) || name.equals("127.0.0.1" + port)
+        || name.equals("[::1]" + port);
+  }
+
+  /**
+   * Runs one job on the scheduler and waits for it to finish.
+   *
+   * @param args the command-line arguments of the job
+   * @return the text of the response
+   * @throws IOException                          if reading or writing fails
+   * @throws TemplateInformationNotMatchException if a template uses a key its csv file lacks
+   * @throws IllegalArgumentException             if the arguments are invalid
+   */
+  private String runJob(String[] args) throws IOException, TemplateInformationNotMatchException {
+    CommandLineParser parser = new CommandLineParser(args);
+    if (parser.getRunSettings().startsJobs()) {
+      throw new IllegalArgumentException("A job cannot start other jobs.");
+    }
+    String report;
+    try {
+      report = this.scheduler.submit("request", parser.getOptionsList(),
+          parser.getRunSettings()).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the job", e);
+    } catch (ExecutionException e) {
+      throw JobScheduler.unwrap(e.getCause());
+    }
+    return report == null ? "Done." : "Done.\n" + report;
+  }
+
+  /**
+   * Splits the body of a job request into command-line arguments, one per non-blank line.
+   *
+   * @param body the body of the request
+   * @return the arguments
+   */
+  static String[] parseArguments(String body) {
+    List<String> args = new ArrayList<>();
+    for (String line : body.split("\r?\n")) {
+      String arg = line.trim();
+      if (!arg.isEmpty()) {
+        args.add(arg);
+      }
+    }
+    return args.toArray(new String[0]);
+  }
+
+  /**
+   * Sends a plain text response.
+   *
+   * @param exchange the request and its response
+   * @param status   the HTTP status code
+   * @param text     the text of the response, without a final newline
+   * @throws IOException if the response cannot be sent
+   */
+  private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Stops accepting jobs and deletes the token file. Jobs already accepted are still run by the
+   * scheduler.
+   */
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.handlers.shutdown();
+    try {
+      Files.deleteIfExists(this.tokenFile);
+    } catch (IOException e) {
+      // the token is of no use once the server is closed
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JobServer{" +
+        "address=" + server.getAddress() +
+        ", tokenFile=" + tokenFile +
+        ", maxJobs=" + maxJobs +
+        ", runningJobs=" + (maxJobs - jobSlots.availablePermits()) +
+        '}';
+  }
+}
@@ -0,0 +1,97 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a jobs file for --jobs-file: one job per line, written as the job's command-line
+ * arguments separated by spaces, e.g.
+ * <pre>
+ * --email --email-template email.txt --output-dir ./out/ --csv-file "my customers.csv"
+ * </pre>
+ * Arguments containing spaces are put in double quotes. Blank lines and lines starting with # are
+ * skipped.
+ */
+public final class JobsFile {
+
+  private static final char QUOTE = '"';
+  private static final String COMMENT = "#";
+
+  /**
+   * Not instantiable, all methods are static.
+   */
+  private JobsFile() {
+  }
+
+  /**
+   * Reads the jobs of a jobs file.
+   *
+   * @param path the path of the jobs file
+   * @return the arguments of every job by the number of its line, in file order
+   * @throws IOException              if the file is missing or cannot be read
+   * @throws IllegalArgumentException if a quote is not closed
+   */
+  public static Map<Integer, String[]> read(String path) throws IOException {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(Paths.get(path));
+    } catch (NoSuchFileException e) {
+      throw new IOException("Directory not found: " + path);
+    }
+    Map<Integer, String[]> jobs = new LinkedHashMap<>();
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (!line.isEmpty() && !line.startsWith(COMMENT)) {
+        try {
+          jobs.put(i + 1, splitLine(line));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException(path + " line " + (i + 1) + ": " + e.getMessage());
+        }
+      }
+    }
+    return jobs;
+  }
+
+  /**
+   * Splits a line into arguments at spaces outside double quotes.
+   *
+   * @param line the line
+   * @return the arguments, without their quotes
+   * @throws IllegalArgumentException if a quote is not closed
+   */
+  static String[] splitLine(String line) {
+    List<String> args = new ArrayList<>();
+    StringBuilder arg = new StringBuilder();
+    boolean inArg = false;
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == QUOTE) {
+        quoted = !quoted;
+        inArg = true;
+      } else if (Character.isWhitespace(c) && !quoted) {
+        if (inArg) {
+          args.add(arg.toString());
+          arg.setLength(0);
+          inArg = false;
+        }
+      } else {
+        arg.append(c);
+        inArg = true;
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Quote not closed: " + line);
+    }
+    if (inArg) {
+      args.add(arg.toString());
+    }
+    return args.toArray(new String[0]);
+  }
+}
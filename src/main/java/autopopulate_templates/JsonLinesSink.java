@@ -0,0 +1,187 @@
+package autopopulate_templates;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Writes all documents into one JSON Lines (NDJSON) stream, one object per line in the form
+ * {"name":"email-1.txt","content":"..."}. The stream is either a single file next to the other
+ * outputs or standard output, so that documents can be piped straight into another program.
+ * <p>
+ * Each line is built in a reused StringBuilder and encoded to UTF-8 in a reused buffer. Writes are
+ * synchronized, so lines from several rendering threads never interleave.
+ */
+public class JsonLinesSink implements OutputSink {
+
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+  private static final String HEX_DIGITS = "0123456789abcdef";
+
+  private final String target;
+  private final OutputStream out;
+  private final boolean closeStream;
+  private final StringBuilder line;
+  private final DocumentEncoder encoder;
+
+  /**
+   * Constructs a JsonLinesSink writing to a new file, replacing any existing file.
+   *
+   * @param path the path of the .jsonl file.
+   * @throws IOException if the file cannot be created.
+   */
+  public JsonLinesSink(String path) throws IOException {
+    this(path, openFile(path), true);
+  }
+
+  /**
+   * Constructs a JsonLinesSink writing to a stream.
+   *
+   * @param target      a description of the stream, used in error messages.
+   * @param out         the stream to write to.
+   * @param closeStream whether close() should close the stream, or only flush it.
+   */
+  public JsonLinesSink(String target, OutputStream out, boolean closeStream) {
+    this.target = target;
+    this.out = out;
+    this.closeStream = closeStream;
+    this.line = new StringBuilder();
+    this.encoder = new DocumentEncoder();
+  }
+
+  /**
+   * Constructs a JsonLinesSink writing to standard output, which is flushed but left open.
+   *
+   * @return the new sink.
+   */
+  public static JsonLinesSink toStdout() {
+    return new JsonLinesSink("stdout", System.out, false);
+  }
+
+  /**
+   * Write one document as a JSON object on its own line.
+   *
+   * @param name     the name of the document, e.g. email-1.txt.
+   * @param document the rendered document.
+   * @throws IOException if the stream cannot be written.
+   */
+  @Override
+  public synchronized void write(String name, CharSequence document) throws IOException {
+    this.line.setLength(0);
+    this.line.append("{\"name\":");
+    appendJsonString(this.line, name);
+    this.line.append(",\"content\":");
+    appendJsonString(this.line, document);
+    this.line.append("}\n");
+    try {
+      ByteBuffer bytes = this.encoder.encode(this.line);
+      this.out.write(bytes.array(), bytes.arrayOffset(), bytes.limit());
+    } catch (IOException e) {
+      throw new IOException("Error writing " + name + " to: " + this.target, e);
+    }
+  }
+
+  /**
+   * Flush the buffered lines to the stream.
+   *
+   * @throws IOException if the stream cannot be flushed.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    this.out.flush();
+  }
+
+  /**
+   * Flush the stream, and close it unless it is standard output.
+   *
+   * @throws IOException if the stream cannot be flushed or closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.closeStream) {
+      this.out.close();
+    } else {
+      this.out.flush();
+    }
+  }
+
+  /**
+   * Append a value as a quoted JSON string, escaping quotes, backslashes and control characters.
+   *
+   * @param json  the builder to append to.
+   * @param value the value to append.
+   */
+  static void appendJsonString(StringBuilder json, CharSequence value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append("\\u00").append(HEX_DIGITS.charAt(c >> 4))
+                .append(HEX_DIGITS.charAt(c & 0xf));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * Open a buffered stream to a new file.
+   *
+   * @param path the path of the file.
+   * @return the stream.
+   * @throws FileNotFoundException if the directory does not exist.
+   */
+  private static OutputStream openFile(String path) throws FileNotFoundException {
+    try {
+      return new BufferedOutputStream(new FileOutputStream(path), STREAM_BUFFER_SIZE);
+    } catch (FileNotFoundException e) {
+      throw new FileNotFoundException("Directory not found: " + path);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    JsonLinesSink that = (JsonLinesSink) o;
+    return Objects.equals(target, that.target) && Objects.equals(out, that.out);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(target, out);
+  }
+
+  @Override
+  public String toString() {
+    return "JsonLinesSink{" +
+        "target='" + target + '\'' +
+        '}';
+  }
+}
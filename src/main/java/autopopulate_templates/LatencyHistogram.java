@@ -0,0 +1,114 @@
+package autopopulate_templates;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in nanoseconds into fixed buckets, so that percentiles can be read at the end
+ * of a run without keeping every sample. Values below 16 have a bucket each; above that, every
+ * power of two is split into 8 buckets, so a percentile is accurate to within 12.5%. Recording is
+ * lock-free and may be done from any number of threads.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS; // values below this are exact
+  private static final int LINEAR_BITS = 4; // bits of LINEAR_LIMIT - 1
+  private static final int BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final LongAdder total;
+
+  /**
+   * Constructs an empty histogram.
+   */
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new LongAdder();
+  }
+
+  /**
+   * Counts one latency.
+   *
+   * @param nanos the latency in nanoseconds, negative values count as 0
+   */
+  public void record(long nanos) {
+    this.counts.incrementAndGet(bucketOf(Math.max(nanos, 0)));
+    this.total.increment();
+  }
+
+  /**
+   * Returns the number of latencies counted.
+   *
+   * @return the number of latencies
+   */
+  public long getCount() {
+    return this.total.sum();
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the latencies counted so far.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in nanoseconds, or 0 if nothing was counted
+   */
+  public long getPercentile(double percentile) {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += this.counts.get(i);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank) {
+        return upperBoundOf(i);
+      }
+    }
+    return upperBoundOf(BUCKETS - 1);
+  }
+
+  /**
+   * Returns the bucket a value is counted in.
+   *
+   * @param value a value of at least 0
+   * @return the bucket index
+   */
+  static int bucketOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the largest value counted in a bucket.
+   *
+   * @param bucket the bucket index
+   * @return the largest value of the bucket
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+    long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + (subBucket + 1) * width - 1;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram{" +
+        "count=" + getCount() +
+        ", p50=" + getPercentile(50) +
+        ", p99=" + getPercentile(99) +
+        '}';
+  }
+}
@@ -2,12 +2,27 @@ package autopopulate_templates;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
 
 /**
  * The MainFileIO class provides a main method for taking arguments from command line, processing
  * CSV files, reading templates, and generating emails or letters based on a given template. The
  * processing steps include parsing command line options, reading from a CSV file, screening the
- * template, and finally writing the output.
+ * template, and finally writing the output. When several options share a CSV file, the file is
+ * parsed only once and every option's output is rendered from the same pass over its rows.
+ * <p>
+ * With --server or --jobs-file, many jobs are instead run by a JobScheduler, which shares
+ * rendering threads and open files between the jobs running at once.
  * <p>
  * This class catches and handles various exceptions including IllegalArgumentException,
  * FileNotFoundException, IOException, and TemplateInformationNotMatchException. The relevant error
@@ -31,21 +46,32 @@ public class MainFileIO {
     try {
       // parser the command line arguments and store as a list of option(s)
       CommandLineParser parser = new CommandLineParser(args);
+      RunSettings settings = parser.getRunSettings();
+      if (settings.getServerPort() != 0) {
+        JobScheduler scheduler = newScheduler(settings);
+        JobServer server = new JobServer(settings.getServerPort(), scheduler,
+            Paths.get(settings.getServerTokenFile()));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          server.close();
+          scheduler.close();
+        }));
+        System.out.println("Accepting jobs on http://localhost:" + server.getPort() + "/jobs with "
+            + "the token in " + settings.getServerTokenFile());
+        return;
+      }
+      if (settings.getJobsFile() != null) {
+        runJobsFile(settings);
+        return;
+      }
 
-      // for each option in the parser
-      for (Option option : parser.getOptionsList()) {
-
-        // process the database
-        CsvFileProcessor csvFileProcessor = new CsvFileProcessor(option.getCsvFilePath());
-
-        // read and screen template
-        TemplateReader templateReader = new TemplateReader(option.getTemplatePath(),
-            csvFileProcessor.getHeadersOfCsv());
-
-        // write and output emails and letters
-        TemplateWriter templateWriter = new TemplateWriter(templateReader.getTemplateStr(),
-            csvFileProcessor.getCsvData(), option.getOptionStr(), option.getOutputDir());
-        templateWriter.generateOutput();
+      // on stderr, so that it does not mix with documents written to stdout
+      String report = runJob(parser.getOptionsList(), settings);
+      if (report != null) {
+        System.err.println(report);
+      }
+      if (settings.isValidateOnly()) {
+        System.out.println("Every template matches the header of its csv file.");
       }
     } catch (IllegalArgumentException e) {
       System.out.println(e.getMessage());
@@ -61,5 +87,349 @@ public class MainFileIO {
       e.printStackTrace();
     }
   }
-}
 
+  /**
+   * Creates the scheduler that runs the jobs of a server or jobs file within the limits given on
+   * the command line.
+   *
+   * @param settings the settings of the server or jobs file.
+   * @return the scheduler, with its workers started.
+   */
+  private static JobScheduler newScheduler(RunSettings settings) {
+    return new JobScheduler(settings.getMaxJobs(), settings.getTotalThreads(),
+        settings.getTotalOpenFiles());
+  }
+
+  /**
+   * Run every job of a jobs file on a scheduler and print how each of them ended. Every line is
+   * parsed before any job starts, so a mistake in the file is reported without generating anything.
+   *
+   * @param settings the settings naming the jobs file and the limits of the scheduler.
+   * @throws IOException              if the jobs file cannot be read.
+   * @throws IllegalArgumentException if a line of the jobs file is not a valid job.
+   */
+  private static void runJobsFile(RunSettings settings) throws IOException {
+    Map<Integer, CommandLineParser> jobs = new LinkedHashMap<>();
+    for (Map.Entry<Integer, String[]> line : JobsFile.read(settings.getJobsFile()).entrySet()) {
+      String where = settings.getJobsFile() + " line " + line.getKey() + ": ";
+      CommandLineParser job;
+      try {
+        job = new CommandLineParser(line.getValue());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(where + e.getMessage());
+      }
+      if (job.getRunSettings().startsJobs()) {
+        throw new IllegalArgumentException(where + "A job cannot start other jobs.");
+      }
+      jobs.put(line.getKey(), job);
+    }
+
+    Map<Integer, CompletableFuture<String>> results = new LinkedHashMap<>();
+    try (JobScheduler scheduler = newScheduler(settings)) {
+      for (Map.Entry<Integer, CommandLineParser> job : jobs.entrySet()) {
+        results.put(job.getKey(), scheduler.submit("line " + job.getKey(),
+            job.getValue().getOptionsList(), job.getValue().getRunSettings()));
+      }
+    } // waits for every job to finish
+
+    for (Map.Entry<Integer, CompletableFuture<String>> result : results.entrySet()) {
+      try {
+        String report = result.getValue().join();
+        System.out.println("Job on line " + result.getKey() + ": done.");
+        if (report != null) {
+          System.err.println(report);
+        }
+      } catch (CompletionException e) {
+        System.out.println("Job on line " + result.getKey() + " failed: "
+            + e.getCause().getMessage());
+      }
+    }
+  }
+
+  /**
+   * Generate the output of every option of one job, then report its metrics if requested.
+   *
+   * @param options  the options of the job, as parsed from the command line.
+   * @param settings the settings shared by all options of the job.
+   * @return the metrics report in the requested format, or null if the job is not measured.
+   * @throws IOException                          if reading or writing fails.
+   * @throws TemplateInformationNotMatchException if a template uses a key its csv file lacks.
+   */
+  static String runJob(List<Option> options, RunSettings settings)
+      throws IOException, TemplateInformationNotMatchException {
+    return runJob(options, settings, null);
+  }
+
+  /**
+   * Generate the output of every option of one job, writing files under a limit shared with other
+   * jobs, then report its metrics if requested.
+   *
+   * @param options   the options of the job, as parsed from the command line.
+   * @param settings  the settings shared by all options of the job.
+   * @param openFiles the permits for files being written, shared with other jobs, or null.
+   * @return the metrics report in the requested format, or null if the job is not measured.
+   * @throws IOException                          if reading or writing fails.
+   * @throws TemplateInformationNotMatchException if a template uses a key its csv file lacks.
+   */
+  static String runJob(List<Option> options, RunSettings settings, Semaphore openFiles)
+      throws IOException, TemplateInformationNotMatchException {
+    RunMetrics metrics = settings.getMetricsFormat() == null ? null : new RunMetrics();
+    if (metrics != null) {
+      metrics.start();
+    }
+    try {
+      TemplateCache templateCache = settings.getTemplateCacheDir() == null
+          ? TemplateCache.shared()
+          : new TemplateCache(TemplateCache.DEFAULT_CAPACITY,
+              Paths.get(settings.getTemplateCacheDir()));
+
+      // every template is checked before any csv file is generated, so a typo in the template of
+      // the last csv file does not surface only after the others have been written
+      long validationStart = System.nanoTime();
+      validate(options, templateCache);
+      if (metrics != null) {
+        metrics.addTime(RunMetrics.Stage.VALIDATE, System.nanoTime() - validationStart);
+      }
+      if (settings.isValidateOnly()) {
+        return finishMetrics(metrics, settings);
+      }
+
+      // options sharing a csv file are generated together in a single pass over its rows
+      try (RejectsFile rejects = settings.getRejectsFile() == null ? null
+          : new RejectsFile(settings.getRejectsFile(), settings.getMaxRejects());
+          ProgressReporter progress = settings.getProgressInterval() == 0 ? null
+              : new ProgressReporter(settings.getProgressInterval(), System.err)) {
+        Map<String, OutputNames> names = namesByOutputDir(options);
+        for (Map.Entry<String, List<Option>> group : groupByCsvFile(options).entrySet()) {
+          generateForCsvFile(group.getKey(), group.getValue(), settings, templateCache, openFiles,
+              names, rejects, metrics, progress);
+        }
+      }
+
+      return finishMetrics(metrics, settings);
+    } finally {
+      if (metrics != null) {
+        // a failed job must not count as in progress, or no later job reports its peak heap
+        metrics.finish();
+      }
+    }
+  }
+
+  /**
+   * Stop measuring a job and format its metrics.
+   *
+   * @param metrics  the metrics of the job, or null if it is not measured.
+   * @param settings the settings of the job, naming the format.
+   * @return the metrics report in the requested format, or null if the job is not measured.
+   */
+  private static String finishMetrics(RunMetrics metrics, RunSettings settings) {
+    if (metrics == null) {
+      return null;
+    }
+    metrics.finish();
+    return metrics.format(settings.getMetricsFormat());
+  }
+
+  /**
+   * Check the template of every option against the header line of its csv file. Only the header
+   * line is read, so a template that does not match its csv file is reported at once, however
+   * large the file.
+   *
+   * @param options the options of the job.
+   * @param cache   the cache to take unchanged templates from, which then holds every template.
+   * @throws IOException                          if a csv file or template cannot be read.
+   * @throws TemplateInformationNotMatchException if a template uses a key its csv file lacks.
+   */
+  static void validate(List<Option> options, TemplateCache cache)
+      throws IOException, TemplateInformationNotMatchException {
+    for (Map.Entry<String, List<Option>> group : groupByCsvFile(options).entrySet()) {
+      Set<String> headers;
+      try (CsvRowReader headerReader = new CsvRowReader(group.getKey())) {
+        headers = headerReader.getHeaders();
+      }
+      for (Option option : group.getValue()) {
+        new TemplateReader(option.getTemplatePath(), headers, cache);
+        compileFilenamePattern(option, headers);
+      }
+    }
+  }
+
+  /**
+   * Group options by the csv file they read, keeping the command-line order within each group.
+   *
+   * @param options the options parsed from the command line.
+   * @return a map from csv file path to the options that use it.
+   */
+  private static Map<String, List<Option>> groupByCsvFile(List<Option> options) {
+    Map<String, List<Option>> groups = new LinkedHashMap<>();
+    for (Option option : options) {
+      groups.computeIfAbsent(option.getCsvFilePath(), path -> new ArrayList<>()).add(option);
+    }
+    return groups;
+  }
+
+  /**
+   * Make one set of claimed names for each output directory that an option with a filename
+   * pattern writes to. Every option writing there, named or numbered, checks its names against
+   * it, so no document overwrites another.
+   *
+   * @param options the options of the job.
+   * @return the names of each such output directory, keyed by its absolute path.
+   */
+  private static Map<String, OutputNames> namesByOutputDir(List<Option> options) {
+    Map<String, OutputNames> names = new HashMap<>();
+    for (Option option : options) {
+      if (option.getFilenamePattern() != null) {
+        names.computeIfAbsent(outputDirKey(option), dir -> new OutputNames());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Identify the output directory of an option, whatever way its path was written.
+   *
+   * @param option the option.
+   * @return the absolute path of the output directory.
+   */
+  private static String outputDirKey(Option option) {
+    return Paths.get(option.getOutputDir()).toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Screen every option's template against one csv file, then generate all of their outputs in a
+   * single streamed pass over its rows.
+   *
+   * @param csvFilePath the csv file shared by the options.
+   * @param options     the options to generate.
+   * @param settings    the settings shared by all options, such as the number of threads.
+   * @param cache       the cache to take compiled templates from.
+   * @param openFiles   the permits for files being written, shared with other jobs, or null.
+   * @param names       the claimed names of each output directory a filename pattern writes to.
+   * @param rejects     the file to set malformed rows aside in, or null to fail on the first.
+   * @param metrics     the metrics to record into, or null if the run is not measured.
+   * @param progress    the reporter to report progress to, or null if none is reported.
+   * @throws IOException                          if reading or writing fails.
+   * @throws TemplateInformationNotMatchException if a template uses a key the csv file lacks.
+   */
+  private static void generateForCsvFile(String csvFilePath, List<Option> options,
+      RunSettings settings, TemplateCache cache, Semaphore openFiles,
+      Map<String, OutputNames> names, RejectsFile rejects, RunMetrics metrics,
+      ProgressReporter progress)
+      throws IOException, TemplateInformationNotMatchException {
+    // open the database; rows are streamed rather than loaded up front
+    try (CsvRowSource rowReader = openCsvFile(csvFilePath, settings)) {
+      List<TemplateWriter> writers = new ArrayList<>();
+      Set<String> usedHeaders = new HashSet<>();
+      Map<String, CompiledTemplate> templates = new LinkedHashMap<>();
+      // the templates come from the cache filled by validate(), whose time is the validate stage
+      for (Option option : options) {
+        // read and screen template
+        TemplateReader templateReader = new TemplateReader(option.getTemplatePath(),
+            rowReader.getHeaders(), cache);
+        TemplateWriter writer = new TemplateWriter(templateReader.getCompiledTemplate(),
+            option.getOptionStr(), option.getOutputDir());
+        if (settings.getShardFanout() > 0) {
+          writer.useLayout(new ShardLayout(settings.getShardFanout()));
+        }
+        FilenamePattern filenamePattern = compileFilenamePattern(option, rowReader.getHeaders());
+        if (filenamePattern != null) {
+          writer.useFilenamePattern(filenamePattern);
+          usedHeaders.addAll(filenamePattern.getKeys());
+        }
+        if (names.containsKey(outputDirKey(option))) {
+          writer.useNames(names.get(outputDirKey(option)));
+        }
+        writers.add(writer);
+        usedHeaders.addAll(templateReader.getCompiledTemplate().getKeys());
+        templates.put(option.getOptionStr(), templateReader.getCompiledTemplate());
+      }
+      rowReader.project(usedHeaders);
+
+      // templates are all screened before any sink creates its files
+      for (int i = 0; i < writers.size(); i++) {
+        Option option = options.get(i);
+        writers.get(i).useSink(OutputSinks.open(settings, option.getOutputDir(),
+            option.getOptionStr(), openFiles));
+        if (settings.isDedup()) {
+          writers.get(i).useDedup(new DedupManifest(
+              DedupManifest.pathFor(option.getOutputDir(), option.getOptionStr()),
+              DedupManifest.DEFAULT_MAX_ENTRIES));
+        }
+      }
+
+      // write and output emails and letters, one row at a time
+      BatchGenerator generator = new BatchGenerator(rowReader, writers, settings.getThreads());
+      if (metrics != null) {
+        generator.useMetrics(metrics);
+      }
+      if (progress != null) {
+        generator.useProgress(progress);
+      }
+      if (rejects != null) {
+        generator.useRejects(rejects);
+      }
+      if (settings.isResume()) {
+        Map<String, String> filenamePatterns = new LinkedHashMap<>();
+        for (Option option : options) {
+          if (option.getFilenamePattern() != null) {
+            filenamePatterns.put(option.getOptionStr(), option.getFilenamePattern());
+          }
+        }
+        generator.useCheckpointer(new Checkpointer(
+            Checkpoint.pathFor(options.get(0).getOutputDir(), csvFilePath),
+            Checkpoint.of(csvFilePath, templates, filenamePatterns),
+            Checkpointer.DEFAULT_INTERVAL));
+      }
+      if (settings.isIncremental()) {
+        generator.useManifest(new ManifestTracker(
+            OutputManifest.pathFor(options.get(0).getOutputDir(), csvFilePath), templates,
+            settings.getShardFanout()));
+      }
+      generator.run();
+    }
+  }
+
+  /**
+   * Compile the filename pattern of an option and check it against the headers of its csv file.
+   *
+   * @param option  the option.
+   * @param headers the headers of the option's csv file.
+   * @return the pattern, or null if the option's output files are numbered.
+   * @throws TemplateInformationNotMatchException if the pattern uses a key the csv file lacks.
+   */
+  private static FilenamePattern compileFilenamePattern(Option option, Set<String> headers)
+      throws TemplateInformationNotMatchException {
+    if (option.getFilenamePattern() == null) {
+      return null;
+    }
+    FilenamePattern pattern = new FilenamePattern(option.getFilenamePattern());
+    for (String key : pattern.getKeys()) {
+      if (!headers.contains(key)) {
+        throw new TemplateInformationNotMatchException("The key words '" + key
+            + "' of the filename pattern not found in the given csv file.");
+      }
+    }
+    return pattern;
+  }
+
+  /**
+   * Open a csv file in the input mode of the settings.
+   *
+   * @param csvFilePath the csv file to open.
+   * @param settings    the settings of the run.
+   * @return the open source of rows, positioned after the header line.
+   * @throws IOException if the file is missing, empty or cannot be read.
+   */
+  private static CsvRowSource openCsvFile(String csvFilePath, RunSettings settings)
+      throws IOException {
+    switch (settings.getInputMode()) {
+      case MAPPED:
+        return new MappedCsvReader(csvFilePath);
+      case PARALLEL:
+        return new ParallelCsvReader(csvFilePath, settings.getThreads());
+      default:
+        return new CsvRowReader(csvFilePath);
+    }
+  }
+}
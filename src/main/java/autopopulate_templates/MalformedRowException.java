@@ -0,0 +1,149 @@
+package autopopulate_templates;
+
+/**
+ * Thrown by a CsvRowSource for a row whose number of values does not match the number of headers,
+ * whose quoted field is never closed, or that is too large for the source to read. The source has
+ * moved past the row when this is thrown, so a caller that tolerates bad rows can record it and
+ * carry on reading with the next row.
+ * <p>
+ * The text of the row is kept only up to MAX_RECORD_CHARS characters, followed by TRUNCATED when
+ * it is longer, as a row with an unterminated quote runs to the end of the file.
+ */
+public class MalformedRowException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+  static final int MAX_RECORD_CHARS = 64 * 1024; // characters of a row's text that are kept
+  static final String TRUNCATED = "...(truncated)";
+
+  private final long lineNumber;
+  private final String reason;
+  private final String[] values;
+  private final String record;
+
+  /**
+   * Constructs a MalformedRowException for a row whose text is not known.
+   *
+   * @param lineNumber the 1-based line number the row starts on
+   * @param values     the values read from the row
+   * @param headers    the number of headers of the CSV file
+   */
+  public MalformedRowException(long lineNumber, String[] values, int headers) {
+    this(lineNumber, values, headers, null);
+  }
+
+  /**
+   * Constructs a MalformedRowException.
+   *
+   * @param lineNumber the 1-based line number the row starts on
+   * @param values     the values read from the row
+   * @param headers    the number of headers of the CSV file
+   * @param record     the text of the row as it is in the file, or null if not known
+   */
+  public MalformedRowException(long lineNumber, String[] values, int headers, String record) {
+    this("Number of headers and values do not match! (line " + lineNumber + ")", lineNumber,
+        "expected " + headers + " values but found " + values.length, values,
+        record == null ? null : truncate(record));
+  }
+
+  /**
+   * Constructs a MalformedRowException with every detail given.
+   *
+   * @param message    the message
+   * @param lineNumber the 1-based line number the row starts on
+   * @param reason     why the row is malformed
+   * @param values     the values read from the row
+   * @param record     the text of the row, already truncated, or null if not known
+   */
+  private MalformedRowException(String message, long lineNumber, String reason,
+      String[] values, String record) {
+    super(message);
+    this.lineNumber = lineNumber;
+    this.reason = reason;
+    this.values = values;
+    this.record = record;
+  }
+
+  /**
+   * Constructs a MalformedRowException for a row with a quoted field that is not closed before
+   * the end of the file. Such a row takes up the rest of the file.
+   *
+   * @param lineNumber the 1-based line number the row starts on
+   * @param record     the text from the start of the row to the end of the file, or null
+   * @return the exception
+   */
+  static MalformedRowException unterminatedQuote(long lineNumber, String record) {
+    return new MalformedRowException(
+        "Unterminated quoted field starting on line " + lineNumber, lineNumber,
+        "unterminated quoted field", new String[0], record == null ? null : truncate(record));
+  }
+
+  /**
+   * Constructs a MalformedRowException for a row that is larger than a source can hold at once.
+   *
+   * @param lineNumber the 1-based line number the row starts on
+   * @param maxBytes   the largest row the source can read, in bytes
+   * @param record     the start of the row's text, marked as truncated however long it is
+   * @return the exception
+   */
+  static MalformedRowException tooLarge(long lineNumber, long maxBytes, String record) {
+    String truncated = record.length() > MAX_RECORD_CHARS ? truncate(record) : record + TRUNCATED;
+    return new MalformedRowException(
+        "Record starting on line " + lineNumber + " is larger than " + maxBytes + " bytes",
+        lineNumber, "record larger than " + maxBytes + " bytes", new String[0], truncated);
+  }
+
+  /**
+   * Cuts a row's text down to MAX_RECORD_CHARS characters, marking it as truncated, if it is
+   * longer.
+   *
+   * @param record the text of a row
+   * @return the text, at most MAX_RECORD_CHARS characters and the marker long
+   */
+  static String truncate(String record) {
+    if (record.length() <= MAX_RECORD_CHARS) {
+      return record;
+    }
+    int end = MAX_RECORD_CHARS;
+    if (Character.isHighSurrogate(record.charAt(end - 1))) {
+      end--; // never split a character in two
+    }
+    return record.substring(0, end) + TRUNCATED;
+  }
+
+  /**
+   * Returns the line number the row starts on.
+   *
+   * @return the 1-based line number
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Returns why the row is malformed, e.g. expected 7 values but found 8.
+   *
+   * @return the reason
+   */
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * Returns the values read from the row. Values of columns the source does not decode are null.
+   *
+   * @return the values
+   */
+  public String[] getValues() {
+    return values;
+  }
+
+  /**
+   * Returns the text of the row as it is in the file, without its line break, including the
+   * values of columns the source does not decode. A long text is truncated.
+   *
+   * @return the text of the row, or null if not known
+   */
+  public String getRecord() {
+    return record;
+  }
+}
@@ -0,0 +1,158 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Decides, row by row, which documents of an incremental run are still up to date, and records
+ * the manifest of the run as rows are read. A document is up to date when its option's template
+ * and the values of its row are the same as in the previous run's manifest.
+ * <p>
+ * Only the columns that some template uses are hashed, so changes to other columns do not cause
+ * documents to be rendered again. As the hashed columns are those of all templates together,
+ * adding or removing an option renders every row again once. So does changing the shard fanout,
+ * which moves every document; the documents left in the previous layout are then deleted.
+ */
+public class ManifestTracker {
+
+  private final Path file;
+  private final OutputManifest previous; // null when there was no previous run
+  private final OutputManifest current;
+  private final TreeSet<String> keys; // sorted, so hashes do not depend on the column order
+  private int[] columns;
+
+  /**
+   * Starts tracking a run, reading the manifest of the previous run if there is one.
+   *
+   * @param file      the manifest file
+   * @param templates the template of each option generated in this run
+   * @throws IOException              if the previous manifest cannot be read
+   * @throws IllegalArgumentException if the previous manifest is not valid
+   */
+  public ManifestTracker(Path file, Map<String, CompiledTemplate> templates) throws IOException {
+    this(file, templates, 0);
+  }
+
+  /**
+   * Starts tracking a run that writes documents in shards, reading the manifest of the previous
+   * run if there is one.
+   *
+   * @param file        the manifest file
+   * @param templates   the template of each option generated in this run
+   * @param shardFanout the shard fanout of this run, or 0 if documents are not sharded
+   * @throws IOException              if the previous manifest cannot be read
+   * @throws IllegalArgumentException if the previous manifest is not valid
+   */
+  public ManifestTracker(Path file, Map<String, CompiledTemplate> templates, int shardFanout)
+      throws IOException {
+    this.file = file;
+    this.previous = OutputManifest.read(file);
+    this.current = OutputManifest.of(templates, shardFanout);
+    this.keys = new TreeSet<>();
+    for (CompiledTemplate template : templates.values()) {
+      this.keys.addAll(template.getKeys());
+    }
+  }
+
+  /**
+   * Find the columns to hash in rows with the given headers. Must be called before
+   * rowRead(String[]).
+   *
+   * @param headers the headers of the rows that will be read
+   */
+  void bindHeaders(CsvHeaders headers) {
+    this.columns = new int[this.keys.size()];
+    int i = 0;
+    for (String key : this.keys) {
+      this.columns[i++] = headers.indexOf(key);
+    }
+  }
+
+  /**
+   * Tells whether the documents of an option are up to date wherever their row is unchanged.
+   *
+   * @param option the option, e.g. email
+   * @return true if the option's template and the layout are the same as in the previous run
+   */
+  public boolean isTemplateUnchanged(String option) {
+    return this.previous != null && !this.isLayoutChanged()
+        && Objects.equals(this.previous.getTemplateHash(option),
+        this.current.getTemplateHash(option));
+  }
+
+  /**
+   * Tells whether the previous run wrote its documents with another shard fanout, so that none of
+   * them is where this run writes it.
+   *
+   * @return true if there was a previous run with another fanout
+   */
+  public boolean isLayoutChanged() {
+    return this.previous != null
+        && this.previous.getShardFanout() != this.current.getShardFanout();
+  }
+
+  /**
+   * Returns the layout the previous run wrote its documents in.
+   *
+   * @return the layout, or null if documents were written into the output directory itself
+   */
+  public ShardLayout getPreviousLayout() {
+    return this.previous == null || this.previous.getShardFanout() == 0 ? null
+        : new ShardLayout(this.previous.getShardFanout());
+  }
+
+  /**
+   * Records the next row of the file in this run's manifest. Called by the reading thread only,
+   * once for every row in order.
+   *
+   * @param row the values of the row in header order
+   * @return true if the row has the same values as in the previous run
+   */
+  public boolean rowRead(String[] row) {
+    long hash = OutputManifest.hashRow(row, this.columns);
+    this.current.addRow(hash);
+    int number = this.current.getRowCount();
+    return this.previous != null && number <= this.previous.getRowCount()
+        && this.previous.getRowHash(number) == hash;
+  }
+
+  /**
+   * Returns the number of rows read so far in this run.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return this.current.getRowCount();
+  }
+
+  /**
+   * Returns the number of rows in the previous run, whose documents beyond this run's rows are
+   * stale.
+   *
+   * @return the number of rows, 0 if there was no previous run
+   */
+  public int getPreviousRowCount() {
+    return this.previous == null ? 0 : this.previous.getRowCount();
+  }
+
+  /**
+   * Saves this run's manifest once every document has been written.
+   *
+   * @throws IOException if the manifest cannot be written
+   */
+  public void complete() throws IOException {
+    this.current.write(this.file);
+  }
+
+  @Override
+  public String toString() {
+    return "ManifestTracker{" +
+        "file=" + file +
+        ", previous=" + previous +
+        ", current=" + current +
+        '}';
+  }
+}
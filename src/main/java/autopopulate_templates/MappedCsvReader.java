@@ -0,0 +1,591 @@
+package autopopulate_templates;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Reads a UTF-8 CSV file by memory-mapping it and splitting records directly from the mapped
+ * bytes, so the data is not copied through a Reader and a char buffer first. The parsing rules are
+ * those of CsvTokenizer: RFC 4180 quoting, unquoted values trimmed, and whitespace-only lines
+ * skipped.
+ * <p>
+ * After project(Set) only the columns a template references are decoded into Strings; the other
+ * columns are scanned over and left null in the returned rows. Files larger than the mapping
+ * window are mapped one window at a time. A new window always starts at the record being read, so
+ * a record is never split between windows. A record larger than the window is scanned over to its
+ * end and reported as a MalformedRowException, like any other row that cannot be read.
+ * <p>
+ * ParallelCsvReader also uses this class to parse the records of one byte range of a file it has
+ * already opened.
+ */
+public class MappedCsvReader implements CsvRowSource {
+
+  static final long DEFAULT_WINDOW_SIZE = 1L << 30; // bytes mapped at a time
+  private static final int INITIAL_SCRATCH_SIZE = 256;
+  private static final int INITIAL_FIELD_CAPACITY = 16;
+  private static final int END_OF_FILE = -1;
+  private static final int DELIMITER = ',';
+  private static final int QUOTE = '"';
+  // bytes of a record decoded for its text, enough for MalformedRowException.MAX_RECORD_CHARS
+  private static final int MAX_RECORD_BYTES = 4 * MalformedRowException.MAX_RECORD_CHARS;
+
+  private final String csvFilePath;
+  private final FileChannel channel;
+  private final long fileSize;
+  private final long windowSize;
+  private final long end; // no record starting at or after this offset is read
+  private final boolean ownsChannel;
+  private final CsvHeaders headers;
+  private boolean[] projected; // null while every column is decoded
+  private boolean skipping; // true while no column is decoded
+  private MappedByteBuffer window;
+  private long windowStart;
+  private int position;
+  private int limit;
+  private long recordStart;
+  private long fieldStart;
+  private long fieldEnd;
+  private byte[] scratch;
+  private String[] fields;
+  private int fieldCount;
+  private long lineNumber;
+  private long recordLineNumber;
+
+  /**
+   * Maps the CSV file and reads its header line.
+   *
+   * @param csvFilePath The path of the CSV file to be read.
+   * @throws FileNotFoundException If the CSV file does not exist.
+   * @throws IOException           If the file is empty or cannot be read.
+   */
+  public MappedCsvReader(String csvFilePath) throws IOException {
+    this(csvFilePath, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Maps the CSV file in windows of the given size and reads its header line.
+   *
+   * @param csvFilePath The path of the CSV file to be read.
+   * @param windowSize  The number of bytes mapped at a time, at most Integer.MAX_VALUE.
+   * @throws FileNotFoundException If the CSV file does not exist.
+   * @throws IOException           If the file is empty or cannot be read.
+   */
+  MappedCsvReader(String csvFilePath, long windowSize) throws IOException {
+    this.csvFilePath = csvFilePath;
+    this.windowSize = windowSize;
+    try {
+      this.channel = FileChannel.open(Paths.get(csvFilePath), StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("File not found: " + csvFilePath);
+    }
+    this.fileSize = this.channel.size();
+    this.end = Long.MAX_VALUE;
+    this.ownsChannel = true;
+    this.scratch = new byte[INITIAL_SCRATCH_SIZE];
+    this.fields = new String[INITIAL_FIELD_CAPACITY];
+    this.lineNumber = 1;
+
+    // process headers, edge case of empty file already included
+    String[] headerRecord = this.nextRecord();
+    if (headerRecord == null) {
+      this.close();
+      throw new IOException("The provided CSV file is empty!");
+    }
+    this.headers = new CsvHeaders(headerRecord);
+  }
+
+  /**
+   * Reads the records that start within a byte range of a file that is already open. The range
+   * must start at the beginning of a record; the last record read may run past its end.
+   *
+   * @param csvFilePath The path of the CSV file, for messages.
+   * @param channel     The open file, which is not closed by close().
+   * @param headers     The headers of the file.
+   * @param start       The offset of the first record in the range.
+   * @param end         The offset at or after which no record is read.
+   * @param firstLine   The 1-based line number at the start offset.
+   * @param windowSize  The number of bytes mapped at a time, at most Integer.MAX_VALUE.
+   * @throws IOException If the size of the file cannot be read.
+   */
+  MappedCsvReader(String csvFilePath, FileChannel channel, CsvHeaders headers, long start,
+      long end, long firstLine, long windowSize) throws IOException {
+    this.csvFilePath = csvFilePath;
+    this.channel = channel;
+    this.fileSize = channel.size();
+    this.windowSize = windowSize;
+    this.end = end;
+    this.ownsChannel = false;
+    this.headers = headers;
+    this.windowStart = start;
+    this.scratch = new byte[INITIAL_SCRATCH_SIZE];
+    this.fields = new String[INITIAL_FIELD_CAPACITY];
+    this.lineNumber = firstLine;
+  }
+
+  /**
+   * Returns the offset in the file of the next byte to be read. After readRow() has returned null,
+   * this is the offset just after the last record read.
+   *
+   * @return the offset of the next byte
+   */
+  long getOffset() {
+    return this.windowStart + this.position;
+  }
+
+  /**
+   * Returns the 1-based line number of the next byte to be read.
+   *
+   * @return the current line number
+   */
+  long getLineNumber() {
+    return this.lineNumber;
+  }
+
+  @Override
+  public long getBytesRead() {
+    return this.getOffset();
+  }
+
+  @Override
+  public String getCsvFilePath() {
+    return csvFilePath;
+  }
+
+  @Override
+  public Set<String> getHeaders() {
+    return this.headers.getNames();
+  }
+
+  @Override
+  public CsvHeaders getCsvHeaders() {
+    return this.headers;
+  }
+
+  /**
+   * Decode only the columns with the given headers from now on. The values of other columns are
+   * null in the rows returned by readRow().
+   *
+   * @param columns the headers referenced by the templates that will render the rows
+   */
+  @Override
+  public void project(Set<String> columns) {
+    this.projected = new boolean[this.headers.size()];
+    for (int i = 0; i < this.projected.length; i++) {
+      this.projected[i] = columns.contains(this.headers.getName(i));
+    }
+  }
+
+  @Override
+  public String[] readRow() throws IOException {
+    // blank lines are skipped by nextRecord
+    String[] values = this.nextRecord();
+    if (values != null && values.length != this.headers.size()) {
+      throw new MalformedRowException(this.recordLineNumber, values, this.headers.size(),
+          this.recordText());
+    }
+    return values;
+  }
+
+  /**
+   * Decodes the text of the record just read, without its line break, or only its first
+   * MAX_RECORD_BYTES bytes if it is longer. The record is always within the current window.
+   *
+   * @return the text of the record
+   */
+  private String recordText() {
+    long to = Math.min(this.getOffset(), this.recordStart + MAX_RECORD_BYTES);
+    return CsvTokenizer.stripLineBreak(this.decode(this.recordStart, to));
+  }
+
+  /**
+   * Moves past rows by scanning their bytes without decoding any of them.
+   *
+   * @param rows the number of rows to skip
+   * @return the number of rows skipped, less than rows only at the end of the file
+   * @throws IOException If the file cannot be mapped.
+   */
+  @Override
+  public long skipRows(long rows) throws IOException {
+    this.skipping = true;
+    try {
+      long skipped = 0;
+      while (skipped < rows && this.nextRecord() != null) {
+        skipped++;
+      }
+      return skipped;
+    } finally {
+      this.skipping = false;
+    }
+  }
+
+  /**
+   * Reads the next non-blank record.
+   *
+   * @return the fields of the record in column order, or null at the end of the file or range
+   * @throws IOException           if the file cannot be mapped
+   * @throws MalformedRowException if a quoted field is not closed before the end of the file, or
+   *                               a record does not fit in the mapping window
+   */
+  private String[] nextRecord() throws IOException {
+    while (true) {
+      this.fieldCount = 0;
+      this.recordStart = this.windowStart + this.position;
+      this.recordLineNumber = this.lineNumber;
+      if (this.recordStart >= this.end) {
+        return null;
+      }
+      boolean quoted = this.readField();
+      int terminator = this.readTerminator();
+      // only a record of a single empty unquoted field is blank
+      boolean blank = !quoted && terminator != DELIMITER && this.isFieldEmpty();
+      while (terminator == DELIMITER) {
+        this.readField();
+        terminator = this.readTerminator();
+      }
+
+      if (!blank) {
+        return Arrays.copyOf(this.fields, this.fieldCount);
+      }
+      if (terminator == END_OF_FILE) {
+        return null;
+      }
+      // otherwise a whitespace-only line, skip it
+    }
+  }
+
+  /**
+   * Reads one field, stopping before its terminator, and stores its value as the next field of the
+   * current record. The value is null if the column is not projected.
+   *
+   * @return true if the field was quoted
+   * @throws IOException if the file cannot be mapped
+   */
+  private boolean readField() throws IOException {
+    boolean decode = !this.skipping && (this.projected == null
+        || this.fieldCount < this.projected.length && this.projected[this.fieldCount]);
+    this.skipSpaces();
+    if (this.peek() != QUOTE) {
+      this.fieldStart = this.windowStart + this.position;
+      this.skipUnquoted();
+      this.fieldEnd = this.windowStart + this.position;
+      this.addField(decode ? trimTrailingSpaces(this.decode(this.fieldStart, this.fieldEnd)) : null);
+      return false;
+    }
+
+    this.position++; // opening quote
+    int length = 0;
+    while (true) {
+      int c = this.read();
+      if (c == END_OF_FILE) {
+        throw MalformedRowException.unterminatedQuote(this.recordLineNumber,
+            this.recordText());
+      }
+      if (c == QUOTE) {
+        if (this.peek() != QUOTE) {
+          break;
+        }
+        this.position++; // escaped quote
+      } else if (c == '\n') {
+        this.lineNumber++;
+      }
+      if (decode) {
+        length = this.appendScratch(length, (byte) c);
+      }
+    }
+
+    // anything between the closing quote and the delimiter is kept, minus trailing spaces
+    String value = decode ? new String(this.scratch, 0, length, StandardCharsets.UTF_8) : null;
+    this.fieldStart = this.windowStart + this.position;
+    this.skipUnquoted();
+    this.fieldEnd = this.windowStart + this.position;
+    if (decode && this.fieldEnd > this.fieldStart) {
+      value += trimTrailingSpaces(this.decode(this.fieldStart, this.fieldEnd));
+    }
+    this.addField(value);
+    return true;
+  }
+
+  /**
+   * Tells whether the first field of the current record, read unquoted, is empty once trimmed.
+   *
+   * @return true if the field is empty
+   */
+  private boolean isFieldEmpty() {
+    if (this.fields[0] != null) {
+      return this.fields[0].isEmpty();
+    }
+    return this.fieldEnd == this.fieldStart
+        || trimTrailingSpaces(this.decode(this.fieldStart, this.fieldEnd)).isEmpty();
+  }
+
+  /**
+   * Moves past the characters of an unquoted field, up to the next delimiter, line break or end of
+   * the file.
+   *
+   * @throws IOException if the file cannot be mapped
+   */
+  private void skipUnquoted() throws IOException {
+    while (this.position < this.limit || this.remap()) {
+      while (this.position < this.limit) {
+        byte b = this.window.get(this.position);
+        if (b == DELIMITER || b == '\n' || b == '\r') {
+          return;
+        }
+        this.position++;
+      }
+    }
+  }
+
+  /**
+   * Consumes the character that ended a field. A line break of \n, \r\n or \r counts as one.
+   *
+   * @return DELIMITER, '\n' for any line break, or END_OF_FILE
+   * @throws IOException if the file cannot be mapped
+   */
+  private int readTerminator() throws IOException {
+    int c = this.read();
+    if (c == '\r') {
+      if (this.peek() == '\n') {
+        this.position++;
+      }
+      c = '\n';
+    }
+    if (c == '\n') {
+      this.lineNumber++;
+    }
+    return c;
+  }
+
+  /**
+   * Skips spaces and tabs in front of a field.
+   *
+   * @throws IOException if the file cannot be mapped
+   */
+  private void skipSpaces() throws IOException {
+    int c;
+    while ((c = this.peek()) == ' ' || c == '\t') {
+      this.position++;
+    }
+  }
+
+  /**
+   * Decodes a range of the file as UTF-8. The range must lie within the current window.
+   *
+   * @param from the offset in the file of the first byte
+   * @param to   the offset in the file after the last byte
+   * @return the decoded String
+   */
+  private String decode(long from, long to) {
+    int length = (int) (to - from);
+    if (length == 0) {
+      return "";
+    }
+    if (this.scratch.length < length) {
+      this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+    }
+    this.window.position((int) (from - this.windowStart));
+    this.window.get(this.scratch, 0, length);
+    return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Appends one byte to the scratch buffer, growing it if needed.
+   *
+   * @param length the number of bytes already in the buffer
+   * @param b      the byte to append
+   * @return the new number of bytes in the buffer
+   */
+  private int appendScratch(int length, byte b) {
+    if (length == this.scratch.length) {
+      this.scratch = Arrays.copyOf(this.scratch, length * 2);
+    }
+    this.scratch[length] = b;
+    return length + 1;
+  }
+
+  /**
+   * Removes whitespace from the end of a value.
+   *
+   * @param value the value
+   * @return the value without trailing whitespace
+   */
+  private static String trimTrailingSpaces(String value) {
+    int end = value.length();
+    while (end > 0 && Character.isWhitespace(value.charAt(end - 1))) {
+      end--;
+    }
+    return value.substring(0, end);
+  }
+
+  /**
+   * Stores a value as the next field of the current record.
+   *
+   * @param value the value, or null if the column is not projected
+   */
+  private void addField(String value) {
+    if (this.fieldCount == this.fields.length) {
+      this.fields = Arrays.copyOf(this.fields, this.fields.length * 2);
+    }
+    this.fields[this.fieldCount++] = value;
+  }
+
+  /**
+   * Reads one byte.
+   *
+   * @return the byte as an unsigned value, or END_OF_FILE
+   * @throws IOException if the file cannot be mapped
+   */
+  private int read() throws IOException {
+    if (this.position >= this.limit && !this.remap()) {
+      return END_OF_FILE;
+    }
+    return this.window.get(this.position++) & 0xFF;
+  }
+
+  /**
+   * Returns the next byte without consuming it.
+   *
+   * @return the byte as an unsigned value, or END_OF_FILE
+   * @throws IOException if the file cannot be mapped
+   */
+  private int peek() throws IOException {
+    if (this.position >= this.limit && !this.remap()) {
+      return END_OF_FILE;
+    }
+    return this.window.get(this.position) & 0xFF;
+  }
+
+  /**
+   * Maps the next window of the file, starting at the record being read so that all of its fields
+   * stay addressable.
+   *
+   * @return false if the whole file has been read
+   * @throws IOException           if the file cannot be mapped
+   * @throws MalformedRowException if the record being read does not fit in one window
+   */
+  private boolean remap() throws IOException {
+    long offset = this.windowStart + this.position;
+    if (offset >= this.fileSize) {
+      return false;
+    }
+    if (this.window != null && this.recordStart == this.windowStart) {
+      throw this.skipOversizedRecord();
+    }
+    long length = Math.min(this.windowSize, this.fileSize - this.recordStart);
+    this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.recordStart, length);
+    this.windowStart = this.recordStart;
+    this.position = (int) (offset - this.windowStart);
+    this.limit = (int) length;
+    return true;
+  }
+
+  /**
+   * Scans from the start of a record that does not fit in one window to its end, mapping the file
+   * a window at a time, and leaves the reader just after it so reading can go on with the next
+   * record. The window holding the start of the record must still be mapped.
+   *
+   * @return the exception to report the record with, keeping as much of its text as the window
+   *     holds up to MAX_RECORD_BYTES
+   * @throws IOException if the file cannot be mapped
+   */
+  private MalformedRowException skipOversizedRecord() throws IOException {
+    String text = this.decode(this.recordStart,
+        this.recordStart + Math.min(this.limit, MAX_RECORD_BYTES));
+    // the same rules as readField and readTerminator, one byte at a time
+    final int fieldStart = 0;
+    final int unquoted = 1;
+    final int quoted = 2;
+    final int quoteInQuoted = 3; // a quote that either closes the field or escapes the next one
+    final int afterCr = 4; // a \r that ended the record, which may be followed by \n
+    int state = fieldStart;
+    long lines = this.recordLineNumber;
+    long recordEnd = this.fileSize;
+    long offset = this.recordStart;
+    scan:
+    while (offset < this.fileSize) {
+      long length = Math.min(this.windowSize, this.fileSize - offset);
+      MappedByteBuffer chunk = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      for (int i = 0; i < length; i++) {
+        byte b = chunk.get(i);
+        if (state == afterCr) {
+          recordEnd = offset + (b == '\n' ? i + 1 : i);
+          break scan;
+        }
+        if (state == quoteInQuoted) {
+          if (b == QUOTE) {
+            state = quoted;
+            continue;
+          }
+          state = unquoted;
+        }
+        if (state == fieldStart) {
+          if (b == ' ' || b == '\t') {
+            continue;
+          }
+          if (b == QUOTE) {
+            state = quoted;
+            continue;
+          }
+          state = unquoted;
+        }
+        if (state == quoted) {
+          if (b == QUOTE) {
+            state = quoteInQuoted;
+          } else if (b == '\n') {
+            lines++;
+          }
+        } else if (b == DELIMITER) {
+          state = fieldStart;
+        } else if (b == '\n') {
+          lines++;
+          recordEnd = offset + i + 1;
+          break scan;
+        } else if (b == '\r') {
+          lines++;
+          state = afterCr;
+        }
+      }
+      offset += length;
+    }
+
+    this.window = null;
+    this.windowStart = recordEnd;
+    this.position = 0;
+    this.limit = 0;
+    this.lineNumber = lines;
+    if (state == quoted) {
+      return MalformedRowException.unterminatedQuote(this.recordLineNumber, text);
+    }
+    return MalformedRowException.tooLarge(this.recordLineNumber, this.windowSize, text);
+  }
+
+  /**
+   * Closes the underlying file, unless it was opened by someone else. The mapping itself is
+   * released once it is garbage collected.
+   *
+   * @throws IOException If the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    this.window = null;
+    if (this.ownsChannel) {
+      this.channel.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MappedCsvReader{" +
+        "csvFilePath='" + csvFilePath + '\'' +
+        ", headers=" + getHeaders() +
+        '}';
+  }
+}
@@ -5,8 +5,8 @@ import java.util.Objects;
 /**
  * Represents a command line option as parsed by the CommandLineParser. An Option object stores all
  * the necessary information for further processing a specific template, including: (1) the option
- * as a string, (2) the path to the csv database, (3) the path to the txt template, and (4) the
- * targeted output directory.
+ * as a string, (2) the path to the csv database, (3) the path to the txt template, (4) the
+ * targeted output directory, and optionally (5) a pattern naming output files after csv columns.
  */
 public class Option {
 
@@ -14,6 +14,7 @@ public class Option {
   private String csvFilePath;
   private String templatePath;
   private String outputDir;
+  private String filenamePattern; // null to number output files
 
   /**
    * Constructs a new Option object.
@@ -66,6 +67,24 @@ public class Option {
     return outputDir;
   }
 
+  /**
+   * Returns the pattern output files are named with, e.g. [[email]]-letter.txt.
+   *
+   * @return the filename pattern as a String, or null if output files are numbered
+   */
+  public String getFilenamePattern() {
+    return filenamePattern;
+  }
+
+  /**
+   * Sets the pattern output files are named with, e.g. [[email]]-letter.txt.
+   *
+   * @param filenamePattern the filename pattern, or null to number output files
+   */
+  public void setFilenamePattern(String filenamePattern) {
+    this.filenamePattern = filenamePattern;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -77,12 +96,13 @@ public class Option {
     Option option = (Option) o;
     return Objects.equals(optionStr, option.optionStr) && Objects.equals(
         csvFilePath, option.csvFilePath) && Objects.equals(templatePath,
-        option.templatePath) && Objects.equals(outputDir, option.outputDir);
+        option.templatePath) && Objects.equals(outputDir, option.outputDir)
+        && Objects.equals(filenamePattern, option.filenamePattern);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(optionStr, csvFilePath, templatePath, outputDir);
+    return Objects.hash(optionStr, csvFilePath, templatePath, outputDir, filenamePattern);
   }
 
   @Override
@@ -92,6 +112,7 @@ public class Option {
         ", csvFilePath='" + csvFilePath + '\'' +
         ", templatePath='" + templatePath + '\'' +
         ", outputDir='" + outputDir + '\'' +
+        ", filenamePattern='" + filenamePattern + '\'' +
         '}';
   }
 }
@@ -0,0 +1,277 @@
+package autopopulate_templates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * What the output of one CSV file was generated from: a SHA-256 hash of every option's template
+ * and a 64-bit hash of the values of every row, in row order. The hash of row n stands for the
+ * documents numbered n, e.g. email-n.txt, so a later run can tell which documents are still up to
+ * date without reading them.
+ * <p>
+ * The manifest also records the shard fanout the documents were written with, 0 if they were
+ * written straight into the output directory, as a document is only up to date where it is.
+ * <p>
+ * Manifests are stored in a small binary file, eight bytes per row, and replaced atomically.
+ * Manifests written before the fanout was recorded are read as unsharded.
+ */
+public class OutputManifest {
+
+  private static final String FILE_EXTENSION = ".manifest";
+  private static final int MAGIC_UNSHARDED = 0x4d414e31; // "MAN1", without a shard fanout
+  private static final int MAGIC = 0x4d414e32; // "MAN2"
+  private static final int INITIAL_ROWS = 1024;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long NULL_VALUE = 0x9e3779b97f4a7c15L; // mixed in for a missing value
+
+  private final Map<String, String> templateHashes;
+  private final int shardFanout;
+  private long[] rowHashes;
+  private int rowCount;
+
+  /**
+   * Constructs an OutputManifest with no rows.
+   *
+   * @param templateHashes the SHA-256 hash of each option's template, by option
+   */
+  public OutputManifest(Map<String, String> templateHashes) {
+    this(templateHashes, 0);
+  }
+
+  /**
+   * Constructs an OutputManifest with no rows, for documents written in shards.
+   *
+   * @param templateHashes the SHA-256 hash of each option's template, by option
+   * @param shardFanout    the shard fanout of the documents, or 0 if they are not sharded
+   */
+  public OutputManifest(Map<String, String> templateHashes, int shardFanout) {
+    this.templateHashes = Collections.unmodifiableMap(new TreeMap<>(templateHashes));
+    this.shardFanout = shardFanout;
+    this.rowHashes = new long[INITIAL_ROWS];
+    this.rowCount = 0;
+  }
+
+  /**
+   * Starts the manifest of the templates rendered in this run, with no rows yet.
+   *
+   * @param templates the template of each option
+   * @return the empty manifest
+   */
+  public static OutputManifest of(Map<String, CompiledTemplate> templates) {
+    return of(templates, 0);
+  }
+
+  /**
+   * Starts the manifest of the templates rendered in this run into shards, with no rows yet.
+   *
+   * @param templates   the template of each option
+   * @param shardFanout the shard fanout of this run, or 0 if documents are not sharded
+   * @return the empty manifest
+   */
+  public static OutputManifest of(Map<String, CompiledTemplate> templates, int shardFanout) {
+    Map<String, String> hashes = new TreeMap<>();
+    for (Map.Entry<String, CompiledTemplate> template : templates.entrySet()) {
+      hashes.put(template.getKey(), Checkpoint.hash(template.getValue().getSource()));
+    }
+    return new OutputManifest(hashes, shardFanout);
+  }
+
+  /**
+   * Returns where the manifest of a CSV file is kept: in the output directory, named after the
+   * CSV file.
+   *
+   * @param outputDir   the output directory, used as a prefix like for output files
+   * @param csvFilePath the path of the CSV file
+   * @return the path of the manifest file
+   */
+  public static Path pathFor(String outputDir, String csvFilePath) {
+    String csvName = Paths.get(csvFilePath).getFileName().toString();
+    int dot = csvName.lastIndexOf('.');
+    return Paths.get(outputDir + (dot > 0 ? csvName.substring(0, dot) : csvName)
+        + FILE_EXTENSION);
+  }
+
+  /**
+   * Reads a manifest file.
+   *
+   * @param file the manifest file
+   * @return the manifest, or null if there is no such file
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid manifest
+   */
+  public static OutputManifest read(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      int magic = in.readInt();
+      if (magic != MAGIC && magic != MAGIC_UNSHARDED) {
+        throw new IllegalArgumentException("Not a valid manifest file: " + file);
+      }
+      int shardFanout = magic == MAGIC ? in.readInt() : 0;
+      int templates = in.readInt();
+      Map<String, String> hashes = new TreeMap<>();
+      for (int i = 0; i < templates; i++) {
+        hashes.put(in.readUTF(), in.readUTF());
+      }
+      OutputManifest manifest = new OutputManifest(hashes, shardFanout);
+      int rows = in.readInt();
+      manifest.rowHashes = new long[Math.max(rows, INITIAL_ROWS)];
+      for (int i = 0; i < rows; i++) {
+        manifest.rowHashes[i] = in.readLong();
+      }
+      manifest.rowCount = rows;
+      return manifest;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (EOFException e) {
+      throw new IllegalArgumentException("Not a valid manifest file: " + file, e);
+    }
+  }
+
+  /**
+   * Writes the manifest to a file, replacing any previous one atomically where the file system
+   * allows it.
+   *
+   * @param file the manifest file
+   * @throws IOException if the file cannot be written
+   */
+  public void write(Path file) throws IOException {
+    Path temp = AtomicFiles.tempFileFor(file);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(this.shardFanout);
+      out.writeInt(this.templateHashes.size());
+      for (Map.Entry<String, String> hash : this.templateHashes.entrySet()) {
+        out.writeUTF(hash.getKey());
+        out.writeUTF(hash.getValue());
+      }
+      out.writeInt(this.rowCount);
+      for (int i = 0; i < this.rowCount; i++) {
+        out.writeLong(this.rowHashes[i]);
+      }
+    }
+    AtomicFiles.replace(temp, file);
+  }
+
+  /**
+   * Appends the hash of the next row.
+   *
+   * @param hash the hash of the row, from hashRow(String[], int[])
+   */
+  public void addRow(long hash) {
+    if (this.rowCount == this.rowHashes.length) {
+      this.rowHashes = Arrays.copyOf(this.rowHashes, this.rowHashes.length * 2);
+    }
+    this.rowHashes[this.rowCount++] = hash;
+  }
+
+  /**
+   * Returns the number of rows in the manifest.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the hash of a row.
+   *
+   * @param row the 1-based number of the row
+   * @return the hash of the row
+   * @throws IndexOutOfBoundsException if there is no such row
+   */
+  public long getRowHash(int row) {
+    Objects.checkIndex(row - 1, this.rowCount);
+    return this.rowHashes[row - 1];
+  }
+
+  /**
+   * Returns the hash of an option's template.
+   *
+   * @param option the option, e.g. email
+   * @return the hash, or null if the option was not generated
+   */
+  public String getTemplateHash(String option) {
+    return this.templateHashes.get(option);
+  }
+
+  /**
+   * Returns the shard fanout the documents were written with.
+   *
+   * @return the fanout, or 0 if the documents are not sharded
+   */
+  public int getShardFanout() {
+    return shardFanout;
+  }
+
+  /**
+   * Hashes some of the values of a row with 64-bit FNV-1a. Values are separated by their length,
+   * so moving characters from one value to the next changes the hash.
+   *
+   * @param row     the values of the row in header order
+   * @param columns the indexes of the values to hash
+   * @return the hash of the values
+   */
+  static long hashRow(String[] row, int[] columns) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int column : columns) {
+      String value = row[column];
+      if (value == null) {
+        hash = (hash ^ NULL_VALUE) * FNV_PRIME;
+        continue;
+      }
+      for (int i = 0; i < value.length(); i++) {
+        hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+      }
+      hash = (hash ^ value.length()) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    OutputManifest that = (OutputManifest) o;
+    return rowCount == that.rowCount && shardFanout == that.shardFanout
+        && Objects.equals(templateHashes, that.templateHashes)
+        && Arrays.equals(rowHashes, 0, rowCount, that.rowHashes, 0, that.rowCount);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Objects.hash(templateHashes, shardFanout, rowCount);
+    for (int i = 0; i < this.rowCount; i++) {
+      result = 31 * result + Long.hashCode(this.rowHashes[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "OutputManifest{" +
+        "templateHashes=" + templateHashes +
+        ", shardFanout=" + shardFanout +
+        ", rowCount=" + rowCount +
+        '}';
+  }
+}
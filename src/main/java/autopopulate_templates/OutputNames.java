@@ -0,0 +1,161 @@
+package autopopulate_templates;
+
+import java.util.Locale;
+
+/**
+ * The names of the documents written to one output directory, so that two documents that would
+ * get the same name are reported instead of one silently overwriting the other. Options named by
+ * a FilenamePattern claim every name they write, and so do numbered options writing into the same
+ * directory, e.g. email-7.txt, as a pattern could render that name too. Names are compared
+ * ignoring case, as they would clash on case-insensitive file systems.
+ * <p>
+ * To keep the check fast and small at millions of rows, the names themselves are not kept but a
+ * 127-bit fingerprint of each, made of two independent 64-bit hashes, in an open-addressing table
+ * of longs, along with the number of the row that claimed it. Two different names are practically
+ * never mistaken for each other, and a clash is reported with the row of the earlier document.
+ */
+public class OutputNames {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final int INITIAL_CAPACITY = 1024; // a power of two
+
+  private long[] highHashes;
+  private long[] lowHashes; // always odd in a used slot, 0 marks a free slot
+  private long[] rowNumbers; // the row that claimed the name in each slot
+  private int usedCount;
+
+  /**
+   * Constructs OutputNames with no name claimed.
+   */
+  public OutputNames() {
+    this.highHashes = new long[INITIAL_CAPACITY];
+    this.lowHashes = new long[INITIAL_CAPACITY];
+    this.rowNumbers = new long[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Records a document name as used, and checks that no other document has it.
+   *
+   * @param name      the name of the document, relative to the output directory
+   * @param rowNumber the 1-based number of the row the document is for, used in messages
+   * @throws IllegalArgumentException if another document already has the name
+   */
+  public void claim(String name, long rowNumber) {
+    String key = name.toLowerCase(Locale.ROOT);
+    long earlierRow = this.claim(fnv1a(key), polynomial(key) | 1, rowNumber);
+    if (earlierRow != 0) {
+      throw new IllegalArgumentException("Output name of row " + rowNumber
+          + " is already used by the document of row " + earlierRow + ": " + name);
+    }
+  }
+
+  /**
+   * Records a name fingerprint as used.
+   *
+   * @param high      the first hash of the name
+   * @param low       the second hash of the name, odd
+   * @param rowNumber the row claiming the name
+   * @return 0 if the fingerprint was not used before, otherwise the row that claimed it
+   */
+  synchronized long claim(long high, long low, long rowNumber) {
+    if (4 * (this.usedCount + 1) > 3 * this.lowHashes.length) {
+      this.grow();
+    }
+    int mask = this.lowHashes.length - 1;
+    for (int slot = mix(high) & mask; ; slot = (slot + 1) & mask) {
+      if (this.lowHashes[slot] == 0) {
+        this.highHashes[slot] = high;
+        this.lowHashes[slot] = low;
+        this.rowNumbers[slot] = rowNumber;
+        this.usedCount++;
+        return 0;
+      }
+      if (this.highHashes[slot] == high && this.lowHashes[slot] == low) {
+        return this.rowNumbers[slot];
+      }
+    }
+  }
+
+  /**
+   * Doubles the table, keeping it at most three quarters full.
+   */
+  private void grow() {
+    long[] oldHigh = this.highHashes;
+    long[] oldLow = this.lowHashes;
+    long[] oldRows = this.rowNumbers;
+    this.highHashes = new long[oldLow.length * 2];
+    this.lowHashes = new long[oldLow.length * 2];
+    this.rowNumbers = new long[oldLow.length * 2];
+    int mask = this.lowHashes.length - 1;
+    for (int i = 0; i < oldLow.length; i++) {
+      if (oldLow[i] != 0) {
+        int slot = mix(oldHigh[i]) & mask;
+        while (this.lowHashes[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        this.highHashes[slot] = oldHigh[i];
+        this.lowHashes[slot] = oldLow[i];
+        this.rowNumbers[slot] = oldRows[i];
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of a hash over the low bits used to pick a slot.
+   *
+   * @param hash the hash
+   * @return the mixed bits
+   */
+  private static int mix(long hash) {
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+  /**
+   * Hashes a name with 64-bit FNV-1a.
+   *
+   * @param name the name
+   * @return the hash
+   */
+  private static long fnv1a(String name) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Hashes a name as a polynomial in a different odd multiplier, finished with the MurmurHash3
+   * mixer, so that it does not collide together with fnv1a.
+   *
+   * @param name the name
+   * @return the hash
+   */
+  private static long polynomial(String name) {
+    long hash = name.length();
+    for (int i = 0; i < name.length(); i++) {
+      hash = hash * GOLDEN_GAMMA + name.charAt(i);
+    }
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  /**
+   * Returns the number of names claimed so far.
+   *
+   * @return the number of names
+   */
+  public synchronized long getNamesUsed() {
+    return this.usedCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "OutputNames{" +
+        "namesUsed=" + getNamesUsed() +
+        '}';
+  }
+}
@@ -0,0 +1,43 @@
+package autopopulate_templates;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for rendered documents. A TemplateWriter names every document, e.g. email-1.txt,
+ * and hands it to its sink, which decides where the bytes go: one file per document, one entry
+ * per document in an archive, or one line per document in a JSON Lines stream.
+ * <p>
+ * Sinks may be called from several rendering threads at once and must be safe for that. A
+ * document passed to write() may be a reused buffer, so a sink must be done with it, or have
+ * copied it, by the time write() returns. close() is called once after the last document.
+ */
+public interface OutputSink extends Closeable {
+
+  /**
+   * Write one rendered document.
+   *
+   * @param name     the name of the document, e.g. email-1.txt.
+   * @param document the rendered document.
+   * @throws IOException if the document cannot be written.
+   */
+  void write(String name, CharSequence document) throws IOException;
+
+  /**
+   * Make sure every document passed to write() so far has been handed to the operating system, so
+   * that it survives the process dying. Sinks that write before write() returns need do nothing.
+   *
+   * @throws IOException if a document could not be written.
+   */
+  default void flush() throws IOException {
+    // written before write() returned
+  }
+
+  /**
+   * Finish writing and release the sink's resources.
+   *
+   * @throws IOException if the output cannot be completed.
+   */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,66 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Creates the OutputSink an option's documents are written to, as chosen by the RunSettings.
+ */
+public final class OutputSinks {
+
+  private static final String JSON_LINES_EXTENSION = ".jsonl";
+
+  /**
+   * Not instantiable, all methods are static.
+   */
+  private OutputSinks() {
+  }
+
+  /**
+   * Open the sink for one option.
+   *
+   * @param settings  the settings of the run.
+   * @param outputDir the output directory of the option, used as a prefix.
+   * @param option    the option, e.g. email, which prefixes archive and stream file names.
+   * @return the open sink, to be closed once every row has been written.
+   * @throws IOException if the sink's file cannot be created.
+   */
+  public static OutputSink open(RunSettings settings, String outputDir, String option)
+      throws IOException {
+    return open(settings, outputDir, option, null);
+  }
+
+  /**
+   * Open the sink for one option, writing files under a limit shared with other jobs.
+   *
+   * @param settings  the settings of the run.
+   * @param outputDir the output directory of the option, used as a prefix.
+   * @param option    the option, e.g. email, which prefixes archive and stream file names.
+   * @param openFiles the permits for files being written, shared by every job of a scheduler, or
+   *                  null for no shared limit.
+   * @return the open sink, to be closed once every row has been written.
+   * @throws IOException if the sink's file cannot be created.
+   */
+  public static OutputSink open(RunSettings settings, String outputDir, String option,
+      Semaphore openFiles) throws IOException {
+    if (settings.getArchiveFormat() != null) {
+      return new ArchiveOutput(outputDir + option, settings.getArchiveFormat(),
+          settings.isCompressArchive());
+    }
+    switch (settings.getSinkType()) {
+      case JSONL:
+        return new JsonLinesSink(outputDir + option + JSON_LINES_EXTENSION);
+      case STDOUT:
+        return JsonLinesSink.toStdout();
+      default:
+        OutputSink files = new FileChannelSink(outputDir, settings.getMaxOpenFiles());
+        if (openFiles != null) {
+          files = new ThrottledSink(files, openFiles);
+        }
+        if (settings.getWriterMode() == RunSettings.WriterMode.VIRTUAL) {
+          return new AsyncFileWriter(files, settings.getMaxOpenFiles());
+        }
+        return files;
+    }
+  }
+}
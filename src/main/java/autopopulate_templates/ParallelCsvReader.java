@@ -0,0 +1,429 @@
+package autopopulate_templates;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a UTF-8 CSV file by parsing byte ranges of it on several threads, while still returning
+ * the rows in file order, so the output numbering is the same as with a sequential reader.
+ * <p>
+ * A byte range can only be parsed on its own if it starts at a record, and a line break inside a
+ * quoted field is not the end of a record. Before parsing, every fixed-size chunk of the file is
+ * scanned in parallel for its number of quote characters and for its first line break after an
+ * even and after an odd number of quotes. A line break is a LF, a CR followed by a LF, or a CR on
+ * its own, as for the other readers. Summing the quote counts of the chunks before a chunk
+ * tells whether it starts inside a quoted field, and so which of its two line breaks ends a
+ * record. Each range is then parsed by a MappedCsvReader.
+ * <p>
+ * A stray quote inside an unquoted value can fool the quote count. This is caught when the rows
+ * are handed out: every range must start exactly where the previous one stopped reading, and a
+ * range that does not is parsed again from the right offset on the calling thread.
+ */
+public class ParallelCsvReader implements CsvRowSource {
+
+  static final long DEFAULT_CHUNK_SIZE = 16L << 20; // bytes parsed by one task
+  private static final int CHUNKS_PER_THREAD = 2; // parsed chunks allowed to wait per thread
+
+  private final String csvFilePath;
+  private final FileChannel channel;
+  private final CsvHeaders headers;
+  private final long dataStart; // offset just after the header record
+  private final long dataLine; // line number at dataStart
+  private final long chunkSize;
+  private final int threads;
+  private final ExecutorService pool;
+  private final Deque<Future<Chunk>> pending;
+  private Set<String> projection;
+  private List<Long> rangeStarts;
+  private List<Long> rangeLines;
+  private int nextRange;
+  private long expectedOffset;
+  private long expectedLine;
+  private Chunk current;
+  private int currentRow;
+
+  /**
+   * Opens the CSV file and reads its header line.
+   *
+   * @param csvFilePath The path of the CSV file to be read.
+   * @param threads     The number of threads parsing the file.
+   * @throws FileNotFoundException If the CSV file does not exist.
+   * @throws IOException           If the file is empty or cannot be read.
+   */
+  public ParallelCsvReader(String csvFilePath, int threads) throws IOException {
+    this(csvFilePath, threads, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Opens the CSV file and reads its header line, splitting the rest into chunks of the given size.
+   *
+   * @param csvFilePath The path of the CSV file to be read.
+   * @param threads     The number of threads parsing the file.
+   * @param chunkSize   The number of bytes in a chunk.
+   * @throws FileNotFoundException If the CSV file does not exist.
+   * @throws IOException           If the file is empty or cannot be read.
+   */
+  ParallelCsvReader(String csvFilePath, int threads, long chunkSize) throws IOException {
+    this.csvFilePath = csvFilePath;
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+    try (MappedCsvReader headerReader = new MappedCsvReader(csvFilePath)) {
+      this.headers = headerReader.getCsvHeaders();
+      this.dataStart = headerReader.getOffset();
+      this.dataLine = headerReader.getLineNumber();
+    }
+    try {
+      this.channel = FileChannel.open(Paths.get(csvFilePath), StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("File not found: " + csvFilePath);
+    }
+    this.pool = Executors.newFixedThreadPool(threads);
+    this.pending = new ArrayDeque<>();
+  }
+
+  @Override
+  public String getCsvFilePath() {
+    return csvFilePath;
+  }
+
+  @Override
+  public Set<String> getHeaders() {
+    return this.headers.getNames();
+  }
+
+  @Override
+  public CsvHeaders getCsvHeaders() {
+    return this.headers;
+  }
+
+  /**
+   * Returns the offset just after the last record of the range whose rows are being handed out.
+   *
+   * @return the number of bytes of the file read so far
+   */
+  @Override
+  public long getBytesRead() {
+    return this.expectedOffset;
+  }
+
+  /**
+   * Decode only the columns with the given headers. The values of other columns are null in the
+   * rows returned by readRow().
+   *
+   * @param columns the headers referenced by the templates that will render the rows
+   */
+  @Override
+  public void project(Set<String> columns) {
+    this.projection = columns;
+  }
+
+  @Override
+  public String[] readRow() throws IOException {
+    if (this.rangeStarts == null) {
+      this.findRanges();
+    }
+    while (this.current == null || this.currentRow == this.current.rows.size()) {
+      if (this.current != null && this.current.failure != null) {
+        rethrow(this.current.failure);
+      }
+      if (this.nextRange == this.rangeStarts.size()) {
+        return null;
+      }
+      this.current = this.nextChunk();
+      this.currentRow = 0;
+    }
+    String[] row = this.current.rows.get(this.currentRow++);
+    if (row == null) {
+      throw this.current.malformed.poll();
+    }
+    return row;
+  }
+
+  /**
+   * Returns the number of ranges the file is parsed in, once the first row has been read.
+   *
+   * @return the number of ranges, or 0 if no row has been read yet
+   */
+  int getRangeCount() {
+    return this.rangeStarts == null ? 0 : this.rangeStarts.size();
+  }
+
+  /**
+   * Scan all chunks in parallel and work out the offset and line number at which each range of
+   * records starts. Chunks without a record boundary are merged into the range before them.
+   *
+   * @throws IOException if a chunk cannot be read
+   */
+  private void findRanges() throws IOException {
+    long fileSize = this.channel.size();
+    List<Future<ChunkScan>> scans = new ArrayList<>();
+    for (long start = this.dataStart; start < fileSize; start += this.chunkSize) {
+      long chunkStart = start;
+      long chunkEnd = Math.min(start + this.chunkSize, fileSize);
+      scans.add(this.pool.submit(() -> this.scan(chunkStart, chunkEnd, fileSize)));
+    }
+
+    this.rangeStarts = new ArrayList<>();
+    this.rangeLines = new ArrayList<>();
+    this.rangeStarts.add(this.dataStart);
+    this.rangeLines.add(this.dataLine);
+    long quotes = 0;
+    long lineBreaks = 0;
+    for (int i = 0; i < scans.size(); i++) {
+      ChunkScan scan = await(scans.get(i));
+      if (i > 0) {
+        // an odd number of quotes so far means this chunk starts inside a quoted field
+        boolean inQuotes = quotes % 2 == 1;
+        long boundary = inQuotes ? scan.oddBoundary : scan.evenBoundary;
+        if (boundary >= 0) {
+          this.rangeStarts.add(boundary);
+          this.rangeLines.add(this.dataLine + lineBreaks
+              + (inQuotes ? scan.oddLineBreaks : scan.evenLineBreaks));
+        }
+      }
+      // a CR on its own inside a quoted field is part of the value, not a line of the file
+      lineBreaks += scan.lineBreaks + scan.carriageReturns[(int) (quotes % 2)];
+      quotes += scan.quotes;
+    }
+    this.expectedOffset = this.dataStart;
+    this.expectedLine = this.dataLine;
+    for (int i = 0; i < this.threads * CHUNKS_PER_THREAD; i++) {
+      this.submitNextRange();
+    }
+  }
+
+  /**
+   * Count the quotes and line breaks of one chunk, and find its first line break after an even
+   * and after an odd number of quotes.
+   *
+   * @param start    the offset of the chunk
+   * @param end      the offset after the chunk
+   * @param fileSize the size of the file, to look one byte past the chunk for a CR's LF
+   * @return the counts and boundaries of the chunk
+   * @throws IOException if the chunk cannot be mapped
+   */
+  private ChunkScan scan(long start, long end, long fileSize) throws IOException {
+    int length = (int) (end - start);
+    int mapped = (int) (Math.min(end + 1, fileSize) - start);
+    MappedByteBuffer bytes = this.channel.map(FileChannel.MapMode.READ_ONLY, start, mapped);
+    ChunkScan scan = new ChunkScan();
+    for (int i = 0; i < length; i++) {
+      byte b = bytes.get(i);
+      int parity = (int) (scan.quotes % 2);
+      if (b == '"') {
+        scan.quotes++;
+      } else if (b == '\n') {
+        scan.lineBreaks++;
+        scan.lineBreak(parity, start + i + 1);
+      } else if (b == '\r' && (i + 1 == mapped || bytes.get(i + 1) != '\n')) {
+        // the LF of a CRLF is the line break
+        scan.carriageReturns[parity]++;
+        scan.lineBreak(parity, start + i + 1);
+      }
+    }
+    return scan;
+  }
+
+  /**
+   * Submit the next range that has not been submitted yet, if there is one.
+   */
+  private void submitNextRange() {
+    int range = this.nextRange + this.pending.size();
+    if (range >= this.rangeStarts.size()) {
+      return;
+    }
+    long start = this.rangeStarts.get(range);
+    long end = range + 1 < this.rangeStarts.size() ? this.rangeStarts.get(range + 1)
+        : Long.MAX_VALUE;
+    long line = this.rangeLines.get(range);
+    this.pending.add(this.pool.submit(() -> this.parse(start, end, line)));
+  }
+
+  /**
+   * Take the parsed chunk of the next range, parsing it again on this thread if it did not start
+   * where the previous range stopped.
+   *
+   * @return the rows of the next range
+   * @throws IOException if the range cannot be read
+   */
+  private Chunk nextChunk() throws IOException {
+    Chunk chunk = await(this.pending.poll());
+    this.nextRange++;
+    this.submitNextRange();
+    if (chunk.start != this.expectedOffset) {
+      // the quote count picked a line break inside a quoted field
+      chunk = this.parse(this.expectedOffset, chunk.end, this.expectedLine);
+    }
+    this.expectedOffset = chunk.endOffset;
+    this.expectedLine = chunk.endLine;
+    return chunk;
+  }
+
+  /**
+   * Parse the records that start within a range. A failure is kept with the rows read before it,
+   * so that it is only thrown once those rows have been handed out. Malformed rows are kept in
+   * their place among the others and parsing goes on after them.
+   *
+   * @param start     the offset of the first record
+   * @param end       the offset at or after which no record is read
+   * @param firstLine the line number at the start offset
+   * @return the rows of the range
+   * @throws IOException if the file cannot be mapped
+   */
+  private Chunk parse(long start, long end, long firstLine) throws IOException {
+    Chunk chunk = new Chunk(start, end);
+    try (MappedCsvReader reader = new MappedCsvReader(this.csvFilePath, this.channel,
+        this.headers, start, end, firstLine, MappedCsvReader.DEFAULT_WINDOW_SIZE)) {
+      if (this.projection != null) {
+        reader.project(this.projection);
+      }
+      try {
+        while (true) {
+          String[] row;
+          try {
+            row = reader.readRow();
+          } catch (MalformedRowException e) {
+            chunk.rows.add(null); // handed out in order, so bad rows can be skipped
+            chunk.malformed.add(e);
+            continue;
+          }
+          if (row == null) {
+            break;
+          }
+          chunk.rows.add(row);
+        }
+      } catch (IOException | RuntimeException e) {
+        chunk.failure = e;
+      }
+      chunk.endOffset = reader.getOffset();
+      chunk.endLine = reader.getLineNumber();
+    }
+    return chunk;
+  }
+
+  /**
+   * Wait for a task and return its result, rethrowing its failure.
+   *
+   * @param future the task
+   * @param <T>    the type of the result
+   * @return the result of the task
+   * @throws IOException if the task failed with an IOException or was interrupted
+   */
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing the csv file", e);
+    } catch (ExecutionException e) {
+      rethrow(e.getCause());
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Rethrow a failure captured on a worker thread on the calling thread.
+   *
+   * @param failure the failure
+   * @throws IOException if the failure was an IOException.
+   */
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+  }
+
+  /**
+   * Stops the parsing threads and closes the underlying file.
+   *
+   * @throws IOException If the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    this.pool.shutdownNow();
+    this.channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return "ParallelCsvReader{" +
+        "csvFilePath='" + csvFilePath + '\'' +
+        ", headers=" + getHeaders() +
+        ", threads=" + threads +
+        '}';
+  }
+
+  /**
+   * What the scan of one chunk found. Boundaries are offsets just after a line break, or -1.
+   */
+  private static class ChunkScan {
+
+    private long quotes;
+    private long lineBreaks; // LFs, which count as lines inside quoted fields too
+    // CRs on their own after an even and after an odd number of quotes
+    private final long[] carriageReturns = new long[2];
+    private long evenBoundary = -1;
+    private long evenLineBreaks;
+    private long oddBoundary = -1;
+    private long oddLineBreaks;
+
+    /**
+     * Record a line break as the boundary for its number of quotes, if it is the first one.
+     *
+     * @param parity the number of quotes before the line break, modulo 2
+     * @param offset the offset after the line break
+     */
+    private void lineBreak(int parity, long offset) {
+      // the boundary is outside quotes, so the CRs counted as lines are those of its parity
+      if (parity == 0 && this.evenBoundary < 0) {
+        this.evenBoundary = offset;
+        this.evenLineBreaks = this.lineBreaks + this.carriageReturns[0];
+      } else if (parity == 1 && this.oddBoundary < 0) {
+        this.oddBoundary = offset;
+        this.oddLineBreaks = this.lineBreaks + this.carriageReturns[1];
+      }
+    }
+  }
+
+  /**
+   * The rows parsed from one range, and where the parse stopped.
+   */
+  private static class Chunk {
+
+    private final long start;
+    private final long end;
+    private final List<String[]> rows = new ArrayList<>(); // null in place of a malformed row
+    private final Deque<MalformedRowException> malformed = new ArrayDeque<>();
+    private Exception failure;
+    private long endOffset;
+    private long endLine;
+
+    /**
+     * Constructs an empty chunk for a range.
+     *
+     * @param start the offset of the first record
+     * @param end   the offset at or after which no record is read
+     */
+    private Chunk(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package autopopulate_templates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prints a line of progress at a fixed interval while a CSV file is being generated: rows done out
+ * of the estimated total, rows per second, megabytes of CSV read per second, and the estimated
+ * time left. The total is estimated from the share of the file read so far. Everything is
+ * measured from where generating starts: the rows a resumed run skips count neither as rows nor as
+ * bytes read.
+ * <p>
+ * Writers only bump a LongAdder per row, and the reading thread publishes its position every few
+ * hundred rows; the line is built and printed by a background daemon thread. This works the same
+ * whether rows are rendered on one thread or many.
+ */
+public class ProgressReporter implements Closeable {
+
+  static final int SAMPLE_ROWS = 256; // rows read between two updates of the read position
+  private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final PrintStream out;
+  private final ScheduledExecutorService timer;
+  private final LongAdder rowsDone;
+  private volatile String csvFilePath;
+  private volatile long totalBytes;
+  private volatile long startBytes; // where reading started, after the header or skipped rows
+  private volatile long rowsRead;
+  private volatile long bytesRead;
+  private volatile long startNanos;
+
+  /**
+   * Constructs a ProgressReporter that prints a line at the given interval once a file is tracked.
+   *
+   * @param intervalSeconds the number of seconds between two lines, at least 1
+   * @param out             where to print, usually System.err
+   */
+  public ProgressReporter(long intervalSeconds, PrintStream out) {
+    this.out = out;
+    this.rowsDone = new LongAdder();
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "progress-reporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.timer.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Starts reporting on a new CSV file, after a summary line for the previous one if there was
+   * one. Rows already done by an earlier run must have been skipped by then.
+   *
+   * @param source the open source of the rows to be generated, at the first row to generate
+   * @throws IOException if the size of the file cannot be read
+   */
+  public synchronized void track(CsvRowSource source) throws IOException {
+    this.printSummary();
+    this.totalBytes = Files.size(Paths.get(source.getCsvFilePath()));
+    this.rowsDone.reset();
+    this.rowsRead = 0;
+    this.startBytes = source.getBytesRead();
+    this.bytesRead = this.startBytes;
+    this.startNanos = System.nanoTime();
+    this.csvFilePath = source.getCsvFilePath();
+  }
+
+  /**
+   * Publishes how far the reading thread has got. Called by the reading thread only.
+   *
+   * @param rows  the number of rows read so far
+   * @param bytes the number of bytes of the file read so far
+   */
+  public void inputAt(long rows, long bytes) {
+    this.rowsRead = rows;
+    this.bytesRead = bytes;
+  }
+
+  /**
+   * Counts one row whose documents have all been written. May be called from any thread.
+   */
+  public void rowDone() {
+    this.rowsDone.increment();
+  }
+
+  /**
+   * Prints a progress line for the file being tracked.
+   */
+  synchronized void report() {
+    if (this.csvFilePath != null) {
+      this.out.println(formatProgress(this.rowsDone.sum(), this.rowsRead,
+          this.bytesRead - this.startBytes, this.totalBytes - this.startBytes,
+          System.nanoTime() - this.startNanos));
+    }
+  }
+
+  /**
+   * Prints a summary line for the file being tracked, if any.
+   */
+  private void printSummary() {
+    if (this.csvFilePath != null) {
+      this.out.println(formatSummary(this.csvFilePath, this.rowsDone.sum(),
+          this.bytesRead - this.startBytes, System.nanoTime() - this.startNanos));
+    }
+  }
+
+  /**
+   * Builds a progress line.
+   *
+   * @param rowsDone     the rows whose documents have all been written
+   * @param rowsRead     the rows read so far
+   * @param bytesRead    the bytes of the file read so far
+   * @param totalBytes   the bytes of the file to read in all
+   * @param elapsedNanos the time since the file was opened
+   * @return the progress line
+   */
+  static String formatProgress(long rowsDone, long rowsRead, long bytesRead, long totalBytes,
+      long elapsedNanos) {
+    double seconds = Math.max(elapsedNanos, 1) / NANOS_PER_SECOND;
+    double rowsPerSecond = rowsDone / seconds;
+    StringBuilder line = new StringBuilder("Progress: ")
+        .append(String.format(Locale.ROOT, "%,d", rowsDone));
+    if (rowsRead > 0 && bytesRead > 0) {
+      // rows are assumed to be of about the same size all through the file
+      long totalRows = Math.max(rowsRead, Math.round((double) rowsRead * totalBytes / bytesRead));
+      line.append(String.format(Locale.ROOT, " / ~%,d rows (%.1f%%)", totalRows,
+          100.0 * rowsDone / totalRows));
+      line.append(String.format(Locale.ROOT, ", %,.0f rows/s, %.1f MB/s", rowsPerSecond,
+          bytesRead / BYTES_PER_MB / seconds));
+      if (rowsDone > 0) {
+        line.append(", ETA ")
+            .append(formatDuration(Math.round((totalRows - rowsDone) / rowsPerSecond)));
+      }
+    } else {
+      line.append(" rows");
+    }
+    return line.toString();
+  }
+
+  /**
+   * Builds the summary line of a finished file.
+   *
+   * @param csvFilePath  the file
+   * @param rowsDone     the rows whose documents have all been written
+   * @param bytesRead    the bytes of the file read
+   * @param elapsedNanos the time since the file was opened
+   * @return the summary line
+   */
+  static String formatSummary(String csvFilePath, long rowsDone, long bytesRead,
+      long elapsedNanos) {
+    double seconds = Math.max(elapsedNanos, 1) / NANOS_PER_SECOND;
+    return String.format(Locale.ROOT, "Done: %s, %,d rows in %s, %,.0f rows/s, %.1f MB/s",
+        csvFilePath, rowsDone, formatDuration(Math.round(seconds)), rowsDone / seconds,
+        bytesRead / BYTES_PER_MB / seconds);
+  }
+
+  /**
+   * Formats a number of seconds as h:mm:ss.
+   *
+   * @param seconds the number of seconds
+   * @return the formatted duration
+   */
+  static String formatDuration(long seconds) {
+    return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60,
+        seconds % 60);
+  }
+
+  /**
+   * Stops reporting, after a summary line for the file being tracked.
+   */
+  @Override
+  public synchronized void close() {
+    this.timer.shutdownNow();
+    this.printSummary();
+    this.csvFilePath = null;
+  }
+
+  @Override
+  public String toString() {
+    return "ProgressReporter{" +
+        "csvFilePath='" + csvFilePath + '\'' +
+        ", rowsDone=" + rowsDone +
+        ", rowsRead=" + rowsRead +
+        ", startBytes=" + startBytes +
+        ", bytesRead=" + bytesRead +
+        ", totalBytes=" + totalBytes +
+        '}';
+  }
+}
@@ -0,0 +1,124 @@
+package autopopulate_templates;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+
+/**
+ * Collects the malformed rows of a job instead of letting the first one abort it. Each rejected
+ * row is written as one line giving the csv file, the line number the row starts on, why it was
+ * rejected and its values, e.g.
+ * <pre>
+ * customers.csv:1289: expected 7 values but found 8: Ada,Lovelace,"12, Main St",...
+ * </pre>
+ * Values of columns that no template uses may not have been decoded and are written empty. A row
+ * longer than MalformedRowException.MAX_RECORD_CHARS is cut short and ends with
+ * MalformedRowException.TRUNCATED. Once
+ * more rows than the limit are rejected, the job fails after all, so that a file that is broken
+ * throughout is not silently turned into a handful of documents.
+ */
+public class RejectsFile implements Closeable {
+
+  static final long UNLIMITED = Long.MAX_VALUE;
+
+  private final String path;
+  private final long maxRejects;
+  private final BufferedWriter out;
+  private long rejected;
+
+  /**
+   * Creates the rejects file, replacing any file of a previous run.
+   *
+   * @param path       the path of the rejects file
+   * @param maxRejects the number of rows that may be rejected before the job fails
+   * @throws IOException if the file cannot be created
+   */
+  public RejectsFile(String path, long maxRejects) throws IOException {
+    this.path = path;
+    this.maxRejects = maxRejects;
+    try {
+      this.out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      throw new IOException("Directory not found: " + path);
+    }
+  }
+
+  /**
+   * Writes a malformed row to the rejects file.
+   *
+   * @param csvFilePath the csv file the row is in
+   * @param malformed   the exception the row was reported with
+   * @throws IOException              if the rejects file cannot be written
+   * @throws IllegalArgumentException if more rows than the limit have now been rejected
+   */
+  public synchronized void reject(String csvFilePath, MalformedRowException malformed)
+      throws IOException {
+    this.rejected++;
+    if (this.rejected > this.maxRejects) {
+      throw new IllegalArgumentException("More than " + this.maxRejects
+          + " malformed rows, the others are in " + this.path + ". In " + csvFilePath + ": "
+          + malformed.getMessage(), malformed);
+    }
+    // the text as read keeps the columns that were not decoded
+    String record = malformed.getRecord() != null ? malformed.getRecord()
+        : MalformedRowException.truncate(toRecord(malformed.getValues()));
+    this.out.write(csvFilePath + ":" + malformed.getLineNumber() + ": " + malformed.getReason()
+        + ": " + record);
+    this.out.newLine();
+  }
+
+  /**
+   * Joins values back into a csv record, quoting those that need it.
+   *
+   * @param values the values, null for those not decoded
+   * @return the record
+   */
+  static String toRecord(String[] values) {
+    StringBuilder record = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        record.append(',');
+      }
+      String value = values[i] == null ? "" : values[i];
+      if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+          || value.indexOf('\r') >= 0) {
+        record.append('"').append(value.replace("\"", "\"\"")).append('"');
+      } else {
+        record.append(value);
+      }
+    }
+    return record.toString();
+  }
+
+  /**
+   * Returns the number of rows rejected so far.
+   *
+   * @return the number of rows rejected
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Flushes and closes the rejects file.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    this.out.close();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "RejectsFile{" +
+        "path='" + path + '\'' +
+        ", maxRejects=" + maxRejects +
+        ", rejected=" + rejected +
+        '}';
+  }
+}
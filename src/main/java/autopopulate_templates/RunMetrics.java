@@ -0,0 +1,357 @@
+package autopopulate_templates;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a run did and where its time went: rows parsed and rendered, bytes written, the time
+ * spent in each stage, the latency of rendering and writing single documents, and the peak heap
+ * use. Counters are LongAdders, so worker threads can record without contending with each other.
+ * <p>
+ * Stage times are summed over all threads, so with several threads they can add up to more than
+ * the wall-clock time. Comparing the render and write times shows whether a run is CPU-bound or
+ * disk-bound. With --writer virtual the write time is the time spent handing documents over, as
+ * the files are written in the background.
+ * <p>
+ * The peak heap use is measured by the JVM for the whole process, so it is only reported for a
+ * run that no other run overlapped, e.g. not for the concurrent jobs of --server or --jobs-file.
+ * Runs that overlap neither reset the JVM's peak nor report it.
+ */
+public class RunMetrics {
+
+  /**
+   * How the report is printed.
+   */
+  public enum Format {
+    /**
+     * A summary for people to read.
+     */
+    TEXT,
+    /**
+     * One JSON object, for tools.
+     */
+    JSON
+  }
+
+  /**
+   * The stages of a run that are timed.
+   */
+  public enum Stage {
+    /**
+     * Reading and splitting CSV rows.
+     */
+    PARSE,
+    /**
+     * Reading templates and checking them against the CSV headers.
+     */
+    VALIDATE,
+    /**
+     * Filling templates with row values.
+     */
+    RENDER,
+    /**
+     * Handing rendered documents to the output.
+     */
+    WRITE
+  }
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+  static final long NOT_MEASURED = -1;
+
+  private static final Object RUNS = new Object(); // guards the two counters below
+  private static int runsInProgress;
+  private static long runsStarted;
+
+  private final LongAdder rowsParsed;
+  private final LongAdder rowsRejected;
+  private final LongAdder rowsRendered;
+  private final LongAdder bytesWritten;
+  private final Map<Stage, LongAdder> stageNanos;
+  private final LatencyHistogram renderLatency;
+  private final LatencyHistogram writeLatency;
+  private long startNanos;
+  private long elapsedNanos;
+  private long peakHeapBytes;
+  private boolean running;
+  private boolean alone; // whether no other run was in progress at start()
+  private long startSequence;
+
+  /**
+   * Constructs empty RunMetrics.
+   */
+  public RunMetrics() {
+    this.rowsParsed = new LongAdder();
+    this.rowsRejected = new LongAdder();
+    this.rowsRendered = new LongAdder();
+    this.bytesWritten = new LongAdder();
+    this.stageNanos = new EnumMap<>(Stage.class);
+    for (Stage stage : Stage.values()) {
+      this.stageNanos.put(stage, new LongAdder());
+    }
+    this.renderLatency = new LatencyHistogram();
+    this.writeLatency = new LatencyHistogram();
+  }
+
+  /**
+   * Marks the start of the run and, if no other run is in progress, resets the peak heap use
+   * measured by the JVM.
+   */
+  public void start() {
+    synchronized (RUNS) {
+      this.alone = runsInProgress == 0;
+      this.startSequence = ++runsStarted;
+      runsInProgress++;
+      this.running = true;
+      if (this.alone) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          if (pool.getType() == MemoryType.HEAP) {
+            pool.resetPeakUsage();
+          }
+        }
+      }
+    }
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Marks the end of the run and reads the peak heap use since start(), unless another run
+   * overlapped this one. Only the first call after start() counts.
+   */
+  public void finish() {
+    synchronized (RUNS) {
+      if (!this.running) {
+        return;
+      }
+      this.elapsedNanos = System.nanoTime() - this.startNanos;
+      this.running = false;
+      runsInProgress--;
+      if (!this.alone || runsStarted != this.startSequence) {
+        this.peakHeapBytes = NOT_MEASURED;
+        return;
+      }
+      long peak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+      this.peakHeapBytes = peak;
+    }
+  }
+
+  /**
+   * Adds time spent in a stage.
+   *
+   * @param stage the stage
+   * @param nanos the time in nanoseconds
+   */
+  public void addTime(Stage stage, long nanos) {
+    this.stageNanos.get(stage).add(nanos);
+  }
+
+  /**
+   * Counts one row read from a CSV file.
+   *
+   * @param nanos the time spent reading it
+   */
+  public void rowParsed(long nanos) {
+    this.rowsParsed.increment();
+    this.addTime(Stage.PARSE, nanos);
+  }
+
+  /**
+   * Counts one malformed row set aside instead of rendered.
+   */
+  public void rowRejected() {
+    this.rowsRejected.increment();
+  }
+
+  /**
+   * Counts one document rendered.
+   *
+   * @param nanos the time spent rendering it
+   */
+  public void rowRendered(long nanos) {
+    this.rowsRendered.increment();
+    this.addTime(Stage.RENDER, nanos);
+    this.renderLatency.record(nanos);
+  }
+
+  /**
+   * Counts one document written.
+   *
+   * @param bytes the size of the document in bytes
+   * @param nanos the time spent writing it
+   */
+  public void documentWritten(long bytes, long nanos) {
+    this.bytesWritten.add(bytes);
+    this.addTime(Stage.WRITE, nanos);
+    this.writeLatency.record(nanos);
+  }
+
+  /**
+   * Returns the number of rows read from CSV files.
+   *
+   * @return the number of rows parsed
+   */
+  public long getRowsParsed() {
+    return this.rowsParsed.sum();
+  }
+
+  /**
+   * Returns the number of malformed rows set aside.
+   *
+   * @return the number of rows rejected
+   */
+  public long getRowsRejected() {
+    return this.rowsRejected.sum();
+  }
+
+  /**
+   * Returns the number of documents rendered, over all options.
+   *
+   * @return the number of documents rendered
+   */
+  public long getRowsRendered() {
+    return this.rowsRendered.sum();
+  }
+
+  /**
+   * Returns the number of bytes of documents written, as UTF-8.
+   *
+   * @return the number of bytes written
+   */
+  public long getBytesWritten() {
+    return this.bytesWritten.sum();
+  }
+
+  /**
+   * Returns the time spent in a stage, summed over all threads.
+   *
+   * @param stage the stage
+   * @return the time in nanoseconds
+   */
+  public long getStageNanos(Stage stage) {
+    return this.stageNanos.get(stage).sum();
+  }
+
+  /**
+   * Returns the latencies of rendering single documents.
+   *
+   * @return the render latency histogram
+   */
+  public LatencyHistogram getRenderLatency() {
+    return renderLatency;
+  }
+
+  /**
+   * Returns the latencies of writing single documents.
+   *
+   * @return the write latency histogram
+   */
+  public LatencyHistogram getWriteLatency() {
+    return writeLatency;
+  }
+
+  /**
+   * Returns the wall-clock time between start() and finish().
+   *
+   * @return the time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the peak heap use between start() and finish().
+   *
+   * @return the peak heap use in bytes, or NOT_MEASURED if another run overlapped this one
+   */
+  public long getPeakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  /**
+   * Formats the metrics in the given format.
+   *
+   * @param format the format
+   * @return the report
+   */
+  public String format(Format format) {
+    return format == Format.JSON ? this.toJson() : this.toText();
+  }
+
+  /**
+   * Formats the metrics as a summary for people to read.
+   *
+   * @return the summary
+   */
+  public String toText() {
+    StringBuilder text = new StringBuilder("Run metrics:\n");
+    text.append(String.format(Locale.ROOT, "  elapsed          %12.1f ms%n",
+        this.elapsedNanos / NANOS_PER_MILLI));
+    text.append(String.format(Locale.ROOT, "  rows parsed      %12d%n", this.getRowsParsed()));
+    text.append(String.format(Locale.ROOT, "  rows rejected    %12d%n", this.getRowsRejected()));
+    text.append(String.format(Locale.ROOT, "  rows rendered    %12d%n", this.getRowsRendered()));
+    text.append(String.format(Locale.ROOT, "  bytes written    %12d%n", this.getBytesWritten()));
+    for (Stage stage : Stage.values()) {
+      text.append(String.format(Locale.ROOT, "  %-16s %12.1f ms%n",
+          stage.name().toLowerCase(Locale.ROOT) + " time",
+          this.getStageNanos(stage) / NANOS_PER_MILLI));
+    }
+    text.append(String.format(Locale.ROOT, "  render p50/p99   %12.1f / %.1f us%n",
+        this.renderLatency.getPercentile(50) / NANOS_PER_MICRO,
+        this.renderLatency.getPercentile(99) / NANOS_PER_MICRO));
+    text.append(String.format(Locale.ROOT, "  write p50/p99    %12.1f / %.1f us%n",
+        this.writeLatency.getPercentile(50) / NANOS_PER_MICRO,
+        this.writeLatency.getPercentile(99) / NANOS_PER_MICRO));
+    if (this.peakHeapBytes == NOT_MEASURED) {
+      text.append("  peak heap                 n/a (other runs overlapped)");
+    } else {
+      text.append(String.format(Locale.ROOT, "  peak heap        %12.1f MiB",
+          this.peakHeapBytes / (1024.0 * 1024.0)));
+    }
+    return text.toString();
+  }
+
+  /**
+   * Formats the metrics as one JSON object. Times are in nanoseconds.
+   *
+   * @return the JSON text
+   */
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{");
+    json.append("\"elapsedNanos\":").append(this.elapsedNanos);
+    json.append(",\"rowsParsed\":").append(this.getRowsParsed());
+    json.append(",\"rowsRendered\":").append(this.getRowsRendered());
+    json.append(",\"bytesWritten\":").append(this.getBytesWritten());
+    json.append(",\"stageNanos\":{");
+    for (Stage stage : Stage.values()) {
+      if (stage.ordinal() > 0) {
+        json.append(',');
+      }
+      json.append('"').append(stage.name().toLowerCase(Locale.ROOT)).append("\":")
+          .append(this.getStageNanos(stage));
+    }
+    json.append("},\"renderNanos\":{\"p50\":").append(this.renderLatency.getPercentile(50))
+        .append(",\"p99\":").append(this.renderLatency.getPercentile(99)).append('}');
+    json.append(",\"writeNanos\":{\"p50\":").append(this.writeLatency.getPercentile(50))
+        .append(",\"p99\":").append(this.writeLatency.getPercentile(99)).append('}');
+    json.append(",\"peakHeapBytes\":")
+        .append(this.peakHeapBytes == NOT_MEASURED ? "null" : Long.toString(this.peakHeapBytes));
+    json.append(",\"rowsRejected\":").append(this.getRowsRejected());
+    return json.append('}').toString();
+  }
+
+  @Override
+  public String toString() {
+    return "RunMetrics" + this.toJson();
+  }
+}
@@ -0,0 +1,667 @@
+package autopopulate_templates;
+
+import java.util.Objects;
+
+/**
+ * Holds the settings of a run that apply to every Option, such as how many threads to use. The
+ * defaults reproduce the original behaviour, so a RunSettings built with the no-argument
+ * constructor runs everything sequentially.
+ */
+public class RunSettings {
+
+  /**
+   * How output files are written.
+   */
+  public enum WriterMode {
+    /**
+     * Each file is written on the thread that rendered it.
+     */
+    SEQUENTIAL,
+    /**
+     * Each file is written by its own virtual-thread task, see AsyncFileWriter.
+     */
+    VIRTUAL
+  }
+
+  /**
+   * Where rendered documents are written, unless an archive is requested.
+   */
+  public enum SinkType {
+    /**
+     * One file per document in the output directory, see FileChannelSink.
+     */
+    FILES,
+    /**
+     * One JSON Lines file per option in the output directory, see JsonLinesSink.
+     */
+    JSONL,
+    /**
+     * JSON Lines on standard output, for piping into another program.
+     */
+    STDOUT
+  }
+
+  /**
+   * How the CSV file is read.
+   */
+  public enum InputMode {
+    /**
+     * Through a Reader in the platform charset, see CsvRowReader.
+     */
+    STREAM,
+    /**
+     * Memory-mapped and decoded as UTF-8, only for the columns templates use, see MappedCsvReader.
+     */
+    MAPPED,
+    /**
+     * Memory-mapped and parsed in chunks on the configured threads, see ParallelCsvReader.
+     */
+    PARALLEL
+  }
+
+  private static final int DEFAULT_THREADS = 1;
+  private static final int DEFAULT_MAX_OPEN_FILES = 256;
+  private static final int DEFAULT_MAX_JOBS = 4;
+
+  private int threads;
+  private WriterMode writerMode;
+  private int maxOpenFiles;
+  private SinkType sinkType;
+  private InputMode inputMode;
+  private ArchiveOutput.Format archiveFormat;
+  private boolean compressArchive;
+  private RunMetrics.Format metricsFormat;
+  private int progressInterval;
+  private boolean resume;
+  private boolean incremental;
+  private String templateCacheDir;
+  private int serverPort;
+  private String serverTokenFile;
+  private int maxJobs;
+  private String jobsFile;
+  private int totalThreads;
+  private int totalOpenFiles;
+  private int priority;
+  private boolean validateOnly;
+  private String rejectsFile;
+  private long maxRejects;
+  private int shardFanout;
+  private boolean dedup;
+
+  /**
+   * Constructs RunSettings with default values.
+   */
+  public RunSettings() {
+    this.threads = DEFAULT_THREADS;
+    this.writerMode = WriterMode.SEQUENTIAL;
+    this.maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    this.sinkType = SinkType.FILES;
+    this.inputMode = InputMode.STREAM;
+    this.archiveFormat = null;
+    this.compressArchive = false;
+    this.metricsFormat = null;
+    this.progressInterval = 0;
+    this.resume = false;
+    this.incremental = false;
+    this.templateCacheDir = null;
+    this.serverPort = 0;
+    this.serverTokenFile = JobServer.DEFAULT_TOKEN_FILE;
+    this.maxJobs = DEFAULT_MAX_JOBS;
+    this.jobsFile = null;
+    this.totalThreads = Runtime.getRuntime().availableProcessors();
+    this.totalOpenFiles = JobScheduler.DEFAULT_TOTAL_OPEN_FILES;
+    this.priority = 0;
+    this.validateOnly = false;
+    this.rejectsFile = null;
+    this.maxRejects = RejectsFile.UNLIMITED;
+    this.shardFanout = 0;
+    this.dedup = false;
+  }
+
+  /**
+   * Returns the number of worker threads used to render and write output files.
+   *
+   * @return the number of threads, 1 for sequential generation
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets the number of worker threads used to render and write output files.
+   *
+   * @param threads the number of threads, at least 1
+   * @throws IllegalArgumentException if threads is less than 1
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Returns how output files are written.
+   *
+   * @return the WriterMode
+   */
+  public WriterMode getWriterMode() {
+    return writerMode;
+  }
+
+  /**
+   * Sets how output files are written.
+   *
+   * @param writerMode the WriterMode
+   */
+  public void setWriterMode(WriterMode writerMode) {
+    this.writerMode = writerMode;
+  }
+
+  /**
+   * Returns the maximum number of output files open at the same time in VIRTUAL writer mode.
+   *
+   * @return the maximum number of open files
+   */
+  public int getMaxOpenFiles() {
+    return maxOpenFiles;
+  }
+
+  /**
+   * Sets the maximum number of output files open at the same time in VIRTUAL writer mode.
+   *
+   * @param maxOpenFiles the maximum number of open files, at least 1
+   * @throws IllegalArgumentException if maxOpenFiles is less than 1
+   */
+  public void setMaxOpenFiles(int maxOpenFiles) {
+    if (maxOpenFiles < 1) {
+      throw new IllegalArgumentException(
+          "Maximum number of open files must be at least 1: " + maxOpenFiles);
+    }
+    this.maxOpenFiles = maxOpenFiles;
+  }
+
+  /**
+   * Returns where rendered documents are written when no archive is requested.
+   *
+   * @return the SinkType
+   */
+  public SinkType getSinkType() {
+    return sinkType;
+  }
+
+  /**
+   * Sets where rendered documents are written when no archive is requested.
+   *
+   * @param sinkType the SinkType
+   */
+  public void setSinkType(SinkType sinkType) {
+    this.sinkType = sinkType;
+  }
+
+  /**
+   * Returns how the CSV file is read.
+   *
+   * @return the InputMode
+   */
+  public InputMode getInputMode() {
+    return inputMode;
+  }
+
+  /**
+   * Sets how the CSV file is read.
+   *
+   * @param inputMode the InputMode
+   */
+  public void setInputMode(InputMode inputMode) {
+    this.inputMode = inputMode;
+  }
+
+  /**
+   * Returns the format of the single archive each option is written to.
+   *
+   * @return the archive format, or null if every row is written to its own file
+   */
+  public ArchiveOutput.Format getArchiveFormat() {
+    return archiveFormat;
+  }
+
+  /**
+   * Sets the format of the single archive each option is written to.
+   *
+   * @param archiveFormat the archive format, or null to write every row to its own file
+   */
+  public void setArchiveFormat(ArchiveOutput.Format archiveFormat) {
+    this.archiveFormat = archiveFormat;
+  }
+
+  /**
+   * Returns whether archives are compressed.
+   *
+   * @return true if archives are compressed
+   */
+  public boolean isCompressArchive() {
+    return compressArchive;
+  }
+
+  /**
+   * Sets whether archives are compressed.
+   *
+   * @param compressArchive true to compress archives
+   */
+  public void setCompressArchive(boolean compressArchive) {
+    this.compressArchive = compressArchive;
+  }
+
+  /**
+   * Returns the format in which run metrics are reported at the end of the run.
+   *
+   * @return the metrics format, or null if the run is not measured
+   */
+  public RunMetrics.Format getMetricsFormat() {
+    return metricsFormat;
+  }
+
+  /**
+   * Sets the format in which run metrics are reported at the end of the run.
+   *
+   * @param metricsFormat the metrics format, or null to not measure the run
+   */
+  public void setMetricsFormat(RunMetrics.Format metricsFormat) {
+    this.metricsFormat = metricsFormat;
+  }
+
+  /**
+   * Returns the number of seconds between two progress lines.
+   *
+   * @return the progress interval in seconds, or 0 if no progress is reported
+   */
+  public int getProgressInterval() {
+    return progressInterval;
+  }
+
+  /**
+   * Sets the number of seconds between two progress lines.
+   *
+   * @param progressInterval the progress interval in seconds, or 0 to report no progress
+   * @throws IllegalArgumentException if progressInterval is negative
+   */
+  public void setProgressInterval(int progressInterval) {
+    if (progressInterval < 0) {
+      throw new IllegalArgumentException(
+          "Progress interval must not be negative: " + progressInterval);
+    }
+    this.progressInterval = progressInterval;
+  }
+
+  /**
+   * Returns whether generation checkpoints its progress and resumes from an earlier checkpoint.
+   *
+   * @return true if generation is resumable
+   */
+  public boolean isResume() {
+    return resume;
+  }
+
+  /**
+   * Sets whether generation checkpoints its progress and resumes from an earlier checkpoint.
+   *
+   * @param resume true to make generation resumable
+   */
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
+  /**
+   * Returns whether only documents whose row or template changed since the last run are written.
+   *
+   * @return true if generation is incremental
+   */
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * Sets whether only documents whose row or template changed since the last run are written.
+   *
+   * @param incremental true to make generation incremental
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * Returns the directory compiled templates are stored in between runs.
+   *
+   * @return the template cache directory, or null if templates are only cached in memory
+   */
+  public String getTemplateCacheDir() {
+    return templateCacheDir;
+  }
+
+  /**
+   * Sets the directory compiled templates are stored in between runs.
+   *
+   * @param templateCacheDir the template cache directory, or null to only cache in memory
+   */
+  public void setTemplateCacheDir(String templateCacheDir) {
+    this.templateCacheDir = templateCacheDir;
+  }
+
+  /**
+   * Returns the port on which jobs are accepted in server mode.
+   *
+   * @return the server port, or 0 if the program runs a single job and exits
+   */
+  public int getServerPort() {
+    return serverPort;
+  }
+
+  /**
+   * Sets the port on which jobs are accepted in server mode.
+   *
+   * @param serverPort the server port, or 0 to run a single job and exit
+   * @throws IllegalArgumentException if serverPort is not a valid port
+   */
+  public void setServerPort(int serverPort) {
+    if (serverPort < 0 || serverPort > 65535) {
+      throw new IllegalArgumentException("Server port must be between 0 and 65535: " + serverPort);
+    }
+    this.serverPort = serverPort;
+  }
+
+  /**
+   * Returns the number of jobs a server runs at once.
+   *
+   * @return the maximum number of concurrent jobs
+   */
+  public int getMaxJobs() {
+    return maxJobs;
+  }
+
+  /**
+   * Sets the number of jobs a server runs at once.
+   *
+   * @param maxJobs the maximum number of concurrent jobs, at least 1
+   * @throws IllegalArgumentException if maxJobs is less than 1
+   */
+  public void setMaxJobs(int maxJobs) {
+    if (maxJobs < 1) {
+      throw new IllegalArgumentException("Max jobs must be at least 1: " + maxJobs);
+    }
+    this.maxJobs = maxJobs;
+  }
+
+  /**
+   * Returns the file listing the jobs to run, one per line.
+   *
+   * @return the jobs file, or null if the options of a single job are given
+   */
+  public String getJobsFile() {
+    return jobsFile;
+  }
+
+  /**
+   * Sets the file listing the jobs to run, one per line.
+   *
+   * @param jobsFile the jobs file, or null to run the single job given by the options
+   */
+  public void setJobsFile(String jobsFile) {
+    this.jobsFile = jobsFile;
+  }
+
+  /**
+   * Returns the file the server writes the token to that every job request must send.
+   *
+   * @return the token file
+   */
+  public String getServerTokenFile() {
+    return serverTokenFile;
+  }
+
+  /**
+   * Sets the file the server writes the token to that every job request must send.
+   *
+   * @param serverTokenFile the token file
+   */
+  public void setServerTokenFile(String serverTokenFile) {
+    this.serverTokenFile = serverTokenFile;
+  }
+
+  /**
+   * Tells whether these settings start jobs of their own, from a server or a jobs file, rather
+   * than describe a single job.
+   *
+   * @return true if a server port or a jobs file is set
+   */
+  public boolean startsJobs() {
+    return serverPort != 0 || jobsFile != null;
+  }
+
+  /**
+   * Returns the number of rendering threads shared by all jobs running at once.
+   *
+   * @return the total number of threads
+   */
+  public int getTotalThreads() {
+    return totalThreads;
+  }
+
+  /**
+   * Sets the number of rendering threads shared by all jobs running at once.
+   *
+   * @param totalThreads the total number of threads, at least 1
+   * @throws IllegalArgumentException if totalThreads is less than 1
+   */
+  public void setTotalThreads(int totalThreads) {
+    if (totalThreads < 1) {
+      throw new IllegalArgumentException("Total threads must be at least 1: " + totalThreads);
+    }
+    this.totalThreads = totalThreads;
+  }
+
+  /**
+   * Returns the number of files all running jobs may be writing at once.
+   *
+   * @return the total number of open files
+   */
+  public int getTotalOpenFiles() {
+    return totalOpenFiles;
+  }
+
+  /**
+   * Sets the number of files all running jobs may be writing at once.
+   *
+   * @param totalOpenFiles the total number of open files, at least 1
+   * @throws IllegalArgumentException if totalOpenFiles is less than 1
+   */
+  public void setTotalOpenFiles(int totalOpenFiles) {
+    if (totalOpenFiles < 1) {
+      throw new IllegalArgumentException(
+          "Total open files must be at least 1: " + totalOpenFiles);
+    }
+    this.totalOpenFiles = totalOpenFiles;
+  }
+
+  /**
+   * Returns the priority of this job among the jobs of a scheduler.
+   *
+   * @return the priority, higher runs first
+   */
+  public int getPriority() {
+    return priority;
+  }
+
+  /**
+   * Sets the priority of this job among the jobs of a scheduler.
+   *
+   * @param priority the priority, higher runs first, 0 by default
+   */
+  public void setPriority(int priority) {
+    this.priority = priority;
+  }
+
+  /**
+   * Returns whether templates are only checked against the headers of their csv files, without
+   * generating any output.
+   *
+   * @return true if the run only validates
+   */
+  public boolean isValidateOnly() {
+    return validateOnly;
+  }
+
+  /**
+   * Sets whether templates are only checked against the headers of their csv files, without
+   * generating any output.
+   *
+   * @param validateOnly true to only validate
+   */
+  public void setValidateOnly(boolean validateOnly) {
+    this.validateOnly = validateOnly;
+  }
+
+  /**
+   * Returns the file malformed rows are written to instead of failing the run.
+   *
+   * @return the path of the rejects file, or null to fail on the first malformed row
+   */
+  public String getRejectsFile() {
+    return rejectsFile;
+  }
+
+  /**
+   * Sets the file malformed rows are written to instead of failing the run.
+   *
+   * @param rejectsFile the path of the rejects file, or null to fail on the first malformed row
+   */
+  public void setRejectsFile(String rejectsFile) {
+    this.rejectsFile = rejectsFile;
+  }
+
+  /**
+   * Returns the number of malformed rows that may be set aside before the run fails.
+   *
+   * @return the most rows rejected
+   */
+  public long getMaxRejects() {
+    return maxRejects;
+  }
+
+  /**
+   * Sets the number of malformed rows that may be set aside before the run fails.
+   *
+   * @param maxRejects the most rows rejected, at least 0
+   * @throws IllegalArgumentException if maxRejects is negative
+   */
+  public void setMaxRejects(long maxRejects) {
+    if (maxRejects < 0) {
+      throw new IllegalArgumentException("Max rejects cannot be negative: " + maxRejects);
+    }
+    this.maxRejects = maxRejects;
+  }
+
+  /**
+   * Returns the number of documents written to each subdirectory of an option's output.
+   *
+   * @return the fanout, or 0 to write every document into the output directory itself
+   */
+  public int getShardFanout() {
+    return shardFanout;
+  }
+
+  /**
+   * Sets the number of documents written to each subdirectory of an option's output.
+   *
+   * @param shardFanout the fanout, or 0 to write every document into the output directory itself
+   * @throws IllegalArgumentException if shardFanout is negative
+   */
+  public void setShardFanout(int shardFanout) {
+    if (shardFanout < 0) {
+      throw new IllegalArgumentException("Shard fanout cannot be negative: " + shardFanout);
+    }
+    this.shardFanout = shardFanout;
+  }
+
+  /**
+   * Returns whether rows that render to the same document are written only once.
+   *
+   * @return true to record duplicates in a dedup manifest instead of writing them
+   */
+  public boolean isDedup() {
+    return dedup;
+  }
+
+  /**
+   * Sets whether rows that render to the same document are written only once.
+   *
+   * @param dedup true to record duplicates in a dedup manifest instead of writing them
+   */
+  public void setDedup(boolean dedup) {
+    this.dedup = dedup;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RunSettings that = (RunSettings) o;
+    return threads == that.threads && maxOpenFiles == that.maxOpenFiles
+        && compressArchive == that.compressArchive && writerMode == that.writerMode
+        && sinkType == that.sinkType && inputMode == that.inputMode
+        && archiveFormat == that.archiveFormat && metricsFormat == that.metricsFormat
+        && progressInterval == that.progressInterval && resume == that.resume
+        && incremental == that.incremental
+        && Objects.equals(templateCacheDir, that.templateCacheDir)
+        && serverPort == that.serverPort
+        && Objects.equals(serverTokenFile, that.serverTokenFile) && maxJobs == that.maxJobs
+        && Objects.equals(jobsFile, that.jobsFile) && totalThreads == that.totalThreads
+        && totalOpenFiles == that.totalOpenFiles && priority == that.priority
+        && validateOnly == that.validateOnly && Objects.equals(rejectsFile, that.rejectsFile)
+        && maxRejects == that.maxRejects && shardFanout == that.shardFanout
+        && dedup == that.dedup;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(threads, writerMode, maxOpenFiles, sinkType, inputMode,
+        archiveFormat, compressArchive, metricsFormat, progressInterval, resume,
+        incremental, templateCacheDir, serverPort, serverTokenFile, maxJobs, jobsFile, totalThreads,
+        totalOpenFiles, priority, validateOnly, rejectsFile, maxRejects,
+        shardFanout, dedup);
+  }
+
+  @Override
+  public String toString() {
+    return "RunSettings{" +
+        "threads=" + threads +
+        ", writerMode=" + writerMode +
+        ", maxOpenFiles=" + maxOpenFiles +
+        ", sinkType=" + sinkType +
+        ", inputMode=" + inputMode +
+        ", archiveFormat=" + archiveFormat +
+        ", compressArchive=" + compressArchive +
+        ", metricsFormat=" + metricsFormat +
+        ", progressInterval=" + progressInterval +
+        ", resume=" + resume +
+        ", incremental=" + incremental +
+        ", templateCacheDir='" + templateCacheDir + '\'' +
+        ", serverPort=" + serverPort +
+        ", serverTokenFile='" + serverTokenFile + '\'' +
+        ", maxJobs=" + maxJobs +
+        ", jobsFile='" + jobsFile + '\'' +
+        ", totalThreads=" + totalThreads +
+        ", totalOpenFiles=" + totalOpenFiles +
+        ", priority=" + priority +
+        ", validateOnly=" + validateOnly +
+        ", rejectsFile='" + rejectsFile + '\'' +
+        ", maxRejects=" + maxRejects +
+        ", shardFanout=" + shardFanout +
+        ", dedup=" + dedup +
+        '}';
+  }
+}
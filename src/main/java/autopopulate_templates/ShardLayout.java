@@ -0,0 +1,103 @@
+package autopopulate_templates;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spreads the documents of an option over numbered subdirectories instead of one flat output
+ * directory, which slows down sharply once it holds millions of files. Documents are grouped by
+ * their number, fanout to a directory, so email-1234.txt goes to email/0001/email-1234.txt with a
+ * fanout of 1000, and consecutive rows end up next to each other.
+ * <p>
+ * Directories are created when their first document is written, and remembered so that later
+ * documents do not touch the file system for them again.
+ */
+public class ShardLayout {
+
+  private static final String SHARD_FORMAT = "%04d";
+
+  private final int fanout;
+  private final Set<String> createdDirs;
+
+  /**
+   * Constructs a ShardLayout.
+   *
+   * @param fanout the number of documents per directory, at least 1
+   * @throws IllegalArgumentException if fanout is less than 1
+   */
+  public ShardLayout(int fanout) {
+    if (fanout < 1) {
+      throw new IllegalArgumentException("Fanout must be at least 1: " + fanout);
+    }
+    this.fanout = fanout;
+    this.createdDirs = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Returns the directory of a document, relative to the output directory.
+   *
+   * @param option the option, e.g. email
+   * @param number the 1-based number of the document
+   * @return the directory, ending with a separator, e.g. email/0001/
+   */
+  public String directoryFor(String option, long number) {
+    return option + File.separator
+        + String.format(Locale.ROOT, SHARD_FORMAT, (number - 1) / this.fanout) + File.separator;
+  }
+
+  /**
+   * Creates the directory of a document unless this layout has already created it.
+   *
+   * @param outputDir the output directory, used as a prefix
+   * @param option    the option, e.g. email
+   * @param number    the 1-based number of the document
+   * @throws IOException if the directory cannot be created
+   */
+  public void createDirectoryFor(String outputDir, String option, long number)
+      throws IOException {
+    String directory = outputDir + this.directoryFor(option, number);
+    if (!this.createdDirs.contains(directory)) {
+      Files.createDirectories(Paths.get(directory));
+      this.createdDirs.add(directory);
+    }
+  }
+
+  /**
+   * Returns the number of documents per directory.
+   *
+   * @return the fanout
+   */
+  public int getFanout() {
+    return fanout;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ShardLayout that = (ShardLayout) o;
+    return fanout == that.fanout;
+  }
+
+  @Override
+  public int hashCode() {
+    return Integer.hashCode(fanout);
+  }
+
+  @Override
+  public String toString() {
+    return "ShardLayout{" +
+        "fanout=" + fanout +
+        ", createdDirs=" + createdDirs.size() +
+        '}';
+  }
+}
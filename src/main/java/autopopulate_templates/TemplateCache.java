@@ -0,0 +1,294 @@
+package autopopulate_templates;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps compiled templates so that a template file that has not changed is neither read nor
+ * scanned for placeholders again. Entries are keyed by the absolute path of the template file and
+ * are only used while the file has the same size and modification time as when it was compiled.
+ * <p>
+ * The most recently used templates are kept in memory, for processes that render many jobs against
+ * a few templates. Optionally, compiled templates are also stored in a directory, so that they
+ * survive from one run of the program to the next. Each one is stored in its own file, named after
+ * a hash of the template path, holding the literal segments and placeholder keys.
+ * <p>
+ * A template edited twice within the resolution of the file system's modification time without
+ * changing its size is not noticed; touching the file again makes it be read.
+ */
+public class TemplateCache {
+
+  static final int DEFAULT_CAPACITY = 64; // templates kept in memory
+  private static final String FILE_EXTENSION = ".template";
+  private static final int MAGIC = 0x54504c31; // "TPL1"
+  private static final TemplateCache SHARED = new TemplateCache(DEFAULT_CAPACITY, null);
+
+  /**
+   * A compiled template and the file attributes it was compiled from.
+   */
+  private static final class Entry {
+
+    private final long size;
+    private final long modified;
+    private final CompiledTemplate template;
+
+    /**
+     * Constructs an Entry.
+     *
+     * @param size     the size of the template file
+     * @param modified the modification time of the template file in nanoseconds
+     * @param template the compiled template
+     */
+    private Entry(long size, long modified, CompiledTemplate template) {
+      this.size = size;
+      this.modified = modified;
+      this.template = template;
+    }
+  }
+
+  private final int capacity;
+  private final Path directory; // null to keep templates in memory only
+  private final LinkedHashMap<String, Entry> entries; // in order of use, least recent first
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs an empty TemplateCache.
+   *
+   * @param capacity  the number of templates kept in memory, at least 1
+   * @param directory the directory to store compiled templates in, or null to keep them in
+   *                  memory only
+   * @throws IllegalArgumentException if capacity is less than 1
+   */
+  public TemplateCache(int capacity, Path directory) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+    }
+    this.capacity = capacity;
+    this.directory = directory;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns the in-memory cache shared by every run in this process.
+   *
+   * @return the shared cache
+   */
+  public static TemplateCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the compiled template of a template file, reading and compiling it only if it is not
+   * cached or has changed since it was cached.
+   *
+   * @param templatePath the path of the template file
+   * @return the compiled template
+   * @throws IOException if the file is missing or cannot be read
+   */
+  public CompiledTemplate get(String templatePath) throws IOException {
+    Path path = Paths.get(templatePath).toAbsolutePath().normalize();
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException("Directory not found: " + templatePath);
+    }
+    long size = attributes.size();
+    long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    String key = path.toString();
+
+    synchronized (this) {
+      Entry entry = this.entries.get(key);
+      if (entry != null && entry.size == size && entry.modified == modified) {
+        this.hits++;
+        return entry.template;
+      }
+      this.misses++;
+    }
+
+    Entry entry = this.directory == null ? null : this.load(key);
+    if (entry == null || entry.size != size || entry.modified != modified) {
+      entry = new Entry(size, modified,
+          CompiledTemplate.compile(TemplateReader.readTemplateFile(templatePath)));
+      if (this.directory != null) {
+        this.store(key, entry);
+      }
+    }
+    synchronized (this) {
+      this.entries.put(key, entry);
+      if (this.entries.size() > this.capacity) {
+        this.entries.remove(this.entries.keySet().iterator().next());
+      }
+    }
+    return entry.template;
+  }
+
+  /**
+   * Reads a compiled template from the cache directory.
+   *
+   * @param key the absolute path of the template file
+   * @return the entry, or null if there is none for the path or it cannot be read
+   */
+  private Entry load(String key) {
+    Path file = this.fileFor(key);
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(Files.readAllBytes(file)))) {
+      if (in.readInt() != MAGIC || !key.equals(readString(in))) {
+        return null;
+      }
+      long size = in.readLong();
+      long modified = in.readLong();
+      String source = readString(in);
+      String[] literals = new String[readCount(in)];
+      for (int i = 0; i < literals.length; i++) {
+        literals[i] = readString(in);
+      }
+      String[] keys = new String[readCount(in)];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = readString(in);
+      }
+      return new Entry(size, modified, CompiledTemplate.fromParts(source, literals, keys));
+    } catch (IOException | IllegalArgumentException e) {
+      return null; // missing or damaged, compile the template again
+    }
+  }
+
+  /**
+   * Writes a compiled template to the cache directory.
+   *
+   * @param key   the absolute path of the template file
+   * @param entry the entry to write
+   * @throws IOException if the cache directory cannot be written
+   */
+  private void store(String key, Entry entry) throws IOException {
+    Files.createDirectories(this.directory);
+    Path file = this.fileFor(key);
+    Path temp = AtomicFiles.tempFileFor(file);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      writeString(out, key);
+      out.writeLong(entry.size);
+      out.writeLong(entry.modified);
+      writeString(out, entry.template.getSource());
+      String[] literals = entry.template.getLiterals();
+      out.writeInt(literals.length);
+      for (String literal : literals) {
+        writeString(out, literal);
+      }
+      String[] keys = entry.template.getPlaceholderKeys();
+      out.writeInt(keys.length);
+      for (String placeholder : keys) {
+        writeString(out, placeholder);
+      }
+    }
+    AtomicFiles.replace(temp, file);
+  }
+
+  /**
+   * Returns the file a template is stored in within the cache directory.
+   *
+   * @param key the absolute path of the template file
+   * @return the cache file
+   */
+  private Path fileFor(String key) {
+    return this.directory.resolve(Checkpoint.hash(key) + FILE_EXTENSION);
+  }
+
+  /**
+   * Reads a string written by writeString(DataOutputStream, String).
+   *
+   * @param in the stream over the bytes of a whole cache file
+   * @return the string
+   * @throws IOException if the stream ends too early
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException("String length out of range: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the number of strings that follow, each of which takes at least four bytes.
+   *
+   * @param in the stream over the bytes of a whole cache file
+   * @return the number of strings
+   * @throws IOException if the count is out of range
+   */
+  private static int readCount(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > in.available() / Integer.BYTES) {
+      throw new IOException("Count out of range: " + count);
+    }
+    return count;
+  }
+
+  /**
+   * Writes a string of any length as its length and its UTF-8 bytes.
+   *
+   * @param out   the stream
+   * @param value the string
+   * @throws IOException if the stream cannot be written
+   */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Returns the number of lookups answered from memory.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups not answered from memory, whether then answered from the cache
+   * directory or by compiling the template file.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Returns the number of templates kept in memory.
+   *
+   * @return the number of templates
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "TemplateCache{" +
+        "capacity=" + capacity +
+        ", directory=" + directory +
+        ", templates=" + entries.keySet() +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        '}';
+  }
+}
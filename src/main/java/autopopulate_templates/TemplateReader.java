@@ -6,8 +6,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Class TemplateReader stores all information of template path, the set of headers from CSV data,
@@ -17,11 +15,8 @@ public class TemplateReader {
 
   private String templatePath;
   private String templateStr;
-
-  protected static final String PLACEHOLDER_PATTERN = "\\[\\[(\\w+)\\]\\]"; // recognize [[]]
-  private static final String SUBSTRING_LEFT = "[[";
-  private static final String SUBSTRING_RIGHT = "]]";
-  private static final Integer LEN_OF_SUBSTRING = 2;
+  private CompiledTemplate compiledTemplate;
+  private TemplateCache cache; // null to read and compile the template file every time
 
   /**
    * Constructor for reader taking in template path, and a set of headers from csv file.
@@ -31,7 +26,21 @@ public class TemplateReader {
    */
   public TemplateReader(String template_path, Set<String> headers)
       throws TemplateInformationNotMatchException, IOException {
+    this(template_path, headers, null);
+  }
+
+  /**
+   * Constructor for reader taking in template path, a set of headers from csv file, and a cache
+   * of compiled templates to take the template from if it is unchanged.
+   *
+   * @param template_path as String.
+   * @param headers       as Set.
+   * @param cache         the template cache, or null to always read the template file.
+   */
+  public TemplateReader(String template_path, Set<String> headers, TemplateCache cache)
+      throws TemplateInformationNotMatchException, IOException {
     this.templatePath = template_path;
+    this.cache = cache;
     this.readTemplate(headers);
   }
 
@@ -53,49 +62,58 @@ public class TemplateReader {
     return templateStr;
   }
 
+  /**
+   * Get the template compiled into literal segments and placeholder keys, ready for rendering.
+   *
+   * @return the compiled template.
+   */
+  public CompiledTemplate getCompiledTemplate() {
+    return compiledTemplate;
+  }
+
   /**
    * Read template to check whether the keywords that screened by regular expression in template can
-   * match to the header of set in csv data.
+   * match to the header of set in csv data. The template is compiled in the same single scan, so
+   * writers never need to look for placeholders again. With a cache, an unchanged template is
+   * neither read nor scanned again, and only its keys are checked against the headers.
    *
    * @throws TemplateInformationNotMatchException throws when the keywords in template failed to
    *                                              match to the header in set.
    */
   public void readTemplate(Set<String> headers)
       throws TemplateInformationNotMatchException, IOException {
-    StringBuilder templateStringBuilder = new StringBuilder();
-    try (BufferedReader reader = new BufferedReader(new FileReader(this.templatePath))) {
-      String line;
-      Pattern pattern = Pattern.compile(PLACEHOLDER_PATTERN); //give pattern
-      while ((line = reader.readLine()) != null) {
-        Matcher matcher = pattern.matcher(line);
-        while (matcher.find()) { // check whether keywords to replace can match headers
-          String match = matcher.group();
-          match = this.subString(match); // from [[email]] to email
-          if (!headers.contains(match)) { // if keywords not in headers, read terminates and create a new file failed
-            throw new TemplateInformationNotMatchException("The key words '" + match + "' to replace in template not found in the given csv file.");
-          }
-        }
-        templateStringBuilder.append(line + "\n"); // add valid line into string builder
+    CompiledTemplate compiled = this.cache == null
+        ? CompiledTemplate.compile(readTemplateFile(this.templatePath))
+        : this.cache.get(this.templatePath);
+    for (String key : compiled.getKeys()) { // check whether keywords to replace can match headers
+      if (!headers.contains(key)) { // if keywords not in headers, read terminates and create a new file failed
+        throw new TemplateInformationNotMatchException("The key words '" + key + "' to replace in template not found in the given csv file.");
       }
-      this.templateStr = templateStringBuilder.toString(); // convert to string
-    } catch (FileNotFoundException e) {
-      throw new FileNotFoundException("Directory not found: " + this.templatePath);
-    } catch (IOException e) {
-      throw new IOException("Error in reading the file: " + this.templatePath);
     }
+    this.compiledTemplate = compiled;
+    this.templateStr = compiled.getSource();
   }
 
   /**
-   * Return substring of given string taking in start index and end index, start index inclusive and
-   * end index exclusive.
+   * Read a template file line by line, ending every line with a newline.
    *
-   * @param str provided string as String.
-   * @return substring of provided string as String.
+   * @param templatePath the path of the template file.
+   * @return the template text.
+   * @throws IOException if the file is missing or cannot be read.
    */
-  protected static String subString(String str) {
-    int startIndex = str.indexOf(SUBSTRING_LEFT) + LEN_OF_SUBSTRING;
-    int endIndex = str.indexOf(SUBSTRING_RIGHT);
-    return str.substring(startIndex, endIndex);
+  static String readTemplateFile(String templatePath) throws IOException {
+    StringBuilder templateStringBuilder = new StringBuilder();
+    try (BufferedReader reader = new BufferedReader(new FileReader(templatePath))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        templateStringBuilder.append(line).append('\n'); // add line into string builder
+      }
+    } catch (FileNotFoundException e) {
+      throw new FileNotFoundException("Directory not found: " + templatePath);
+    } catch (IOException e) {
+      throw new IOException("Error in reading the file: " + templatePath);
+    }
+    return templateStringBuilder.toString();
   }
 
   @Override
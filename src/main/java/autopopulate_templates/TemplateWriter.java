@@ -1,13 +1,12 @@
 package autopopulate_templates;
 
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Class TemplateWriter stores all information about screened template, a list of maps that contains
@@ -18,6 +17,15 @@ public class TemplateWriter {
   private String option;
   private String outputDir;
   private String tempString;
+  private CompiledTemplate template;
+  private CompiledTemplate boundTemplate; // template bound to the headers of streamed rows
+  private OutputSink sink; // where rendered documents go, one file each by default
+  private ThreadLocal<StringBuilder> renderBuffers; // reused by each rendering thread
+  private RunMetrics metrics; // null unless the run is measured
+  private ShardLayout layout; // null to write every document into the output directory itself
+  private FilenamePattern filenamePattern; // null to number documents
+  private OutputNames names; // null unless names are checked for clashes
+  private DedupManifest dedup; // null to render every row
   private List<Map<String, String>> csvData;
 
   /**
@@ -30,10 +38,39 @@ public class TemplateWriter {
    */
   public TemplateWriter(String tempString, List<Map<String, String>> csvData, String option,
       String outputDir) {
-    this.tempString = tempString;
+    this(CompiledTemplate.compile(tempString), csvData, option, outputDir);
+  }
+
+  /**
+   * Constructor TemplateWriter taking in an already compiled template, a list of maps that contains
+   * all clients' information, and output path to save emails or letters.
+   *
+   * @param template  as CompiledTemplate, e.g. from TemplateReader.getCompiledTemplate().
+   * @param csvData   as List of Maps.
+   * @param option    prefix of output file names as String.
+   * @param outputDir path of output as String.
+   */
+  public TemplateWriter(CompiledTemplate template, List<Map<String, String>> csvData,
+      String option, String outputDir) {
+    this.tempString = template.getSource();
+    this.template = template;
     this.csvData = csvData;
     this.option = option;
     this.outputDir = outputDir;
+    this.sink = new FileChannelSink(outputDir);
+    this.renderBuffers = ThreadLocal.withInitial(StringBuilder::new);
+  }
+
+  /**
+   * Constructor TemplateWriter for streaming use, taking in compiled template and output path but
+   * no csv data. Rows are supplied later through generateOutput(CsvRowSource).
+   *
+   * @param template  as CompiledTemplate.
+   * @param option    prefix of output file names as String.
+   * @param outputDir path of output as String.
+   */
+  public TemplateWriter(CompiledTemplate template, String option, String outputDir) {
+    this(template, Collections.emptyList(), option, outputDir);
   }
 
   /**
@@ -42,50 +79,280 @@ public class TemplateWriter {
    * @throws IOException throws when failed in writing to file.
    */
   public void generateOutput() throws IOException {
-    Integer fileNameCounter = 1;
+    int fileNameCounter = 1;
     for (Map<String, String> row : this.csvData) {
-      String output = replacePlaceholders(row);
-      String fileName =
-          this.outputDir + this.option + "-" + fileNameCounter + ".txt";
-      writeToFile(fileName, output);
+      this.writeOutput(fileNameCounter, this.outputName(fileNameCounter),
+          this.template.render(row));
       fileNameCounter++;
     }
+    this.finish();
+  }
+
+  /**
+   * Generate output files to assigned location, pulling rows one at a time from the reader. Each
+   * row is rendered and written before the next one is parsed, so memory use does not grow with
+   * the size of the csv file.
+   *
+   * @param rowReader an open reader positioned after the header line.
+   * @throws IOException throws when failed in reading a row or writing to file.
+   */
+  public void generateOutput(CsvRowSource rowReader) throws IOException {
+    new BatchGenerator(rowReader, Collections.singletonList(this)).run();
+  }
+
+  /**
+   * Prepare this writer for rows stored in header order by binding its template to the headers.
+   * Must be called before writeRow(int, String[]).
+   *
+   * @param headers the headers of the rows that will be written.
+   * @throws IllegalArgumentException if the template uses a key that is not a header.
+   */
+  void bindHeaders(CsvHeaders headers) {
+    this.boundTemplate = this.template.bind(headers);
+    if (this.filenamePattern != null) {
+      this.filenamePattern.bindHeaders(headers);
+    }
+    if (this.dedup != null) {
+      this.dedup.bindHeaders(headers, this.template.getKeys());
+    }
+  }
+
+  /**
+   * Render one row stored in header order and write it to its numbered output file, or the file
+   * named by the filename pattern. The document is rendered into a buffer reused by the calling
+   * thread and handed to the sink as is. When deduplicating, a row that renders the same as a
+   * lower one is only recorded in the dedup manifest, and its name is not claimed if it is the
+   * lower row's.
+   *
+   * @param fileNameCounter the 1-based number of the row, used in the file name.
+   * @param row             the values of the row in header order.
+   * @throws IOException              throws when failed in writing to file.
+   * @throws IllegalArgumentException if the row's name is already used by another document.
+   */
+  void writeRow(int fileNameCounter, String[] row) throws IOException {
+    StringBuilder buffer = this.renderBuffers.get();
+    buffer.setLength(0);
+    String name = this.filenamePattern == null ? this.outputName(fileNameCounter)
+        : this.filenamePattern.nameFor(row, fileNameCounter);
+    DedupManifest.Match match = this.dedup == null ? null
+        : this.dedup.match(row, fileNameCounter, name);
+    if (this.names != null && (match == null || !match.isSameName())) {
+      this.names.claim(name, fileNameCounter);
+    }
+    if (match != null && match.isDuplicate()) {
+      if (!match.isSameName()) {
+        this.dedup.addDuplicate(name, match);
+      }
+      return;
+    }
+    if (this.metrics == null) {
+      this.boundTemplate.renderTo(row, buffer);
+      this.writeOutput(fileNameCounter, name, buffer);
+      return;
+    }
+
+    long start = System.nanoTime();
+    this.boundTemplate.renderTo(row, buffer);
+    long rendered = System.nanoTime();
+    this.writeOutput(fileNameCounter, name, buffer);
+    long written = System.nanoTime();
+    this.metrics.rowRendered(rendered - start);
+    this.metrics.documentWritten(DocumentEncoder.utf8Length(buffer), written - rendered);
+  }
+
+  /**
+   * Write one rendered row to its output file.
+   *
+   * @param fileNameCounter the 1-based number of the row.
+   * @param name            the name of the output file.
+   * @param output          the rendered row.
+   * @throws IOException throws when failed in writing to file.
+   */
+  private void writeOutput(int fileNameCounter, String name, CharSequence output)
+      throws IOException {
+    if (this.layout != null) {
+      this.layout.createDirectoryFor(this.outputDir, this.option, fileNameCounter);
+    }
+    this.sink.write(name, output);
+  }
+
+  /**
+   * Delete the numbered output file of a row that no longer exists, if there is one. Only for
+   * writers that write one file per document into the output directory.
+   *
+   * @param fileNameCounter the 1-based number of the row, used in the file name.
+   * @throws IOException throws when the file exists but cannot be deleted.
+   */
+  void deleteOutput(int fileNameCounter) throws IOException {
+    Files.deleteIfExists(Paths.get(this.outputDir + this.outputName(fileNameCounter)));
+  }
+
+  /**
+   * Delete the numbered output file a row had in an earlier layout, unless it is where this
+   * writer's layout puts it too.
+   *
+   * @param fileNameCounter the 1-based number of the row, used in the file name.
+   * @param layout          the earlier layout, or null if files were not sharded.
+   * @throws IOException throws when the file exists but cannot be deleted.
+   */
+  void deleteOutput(int fileNameCounter, ShardLayout layout) throws IOException {
+    String name = this.outputName(fileNameCounter, layout);
+    if (!name.equals(this.outputName(fileNameCounter))) {
+      Files.deleteIfExists(Paths.get(this.outputDir + name));
+    }
+  }
+
+  /**
+   * Name the output of one row.
+   *
+   * @param fileNameCounter the 1-based number of the row.
+   * @return the name of the output, e.g. email-1.txt, or email/0000/email-1.txt when sharded.
+   */
+  private String outputName(int fileNameCounter) {
+    return this.outputName(fileNameCounter, this.layout);
+  }
+
+  /**
+   * Name the output of one row in a layout.
+   *
+   * @param fileNameCounter the 1-based number of the row.
+   * @param layout          the layout, or null if files are not sharded.
+   * @return the name of the output in the layout.
+   */
+  private String outputName(int fileNameCounter, ShardLayout layout) {
+    String name = this.option + "-" + fileNameCounter + ".txt";
+    if (layout == null) {
+      return name;
+    }
+    return layout.directoryFor(this.option, fileNameCounter) + name;
   }
 
   /**
-   * Replace placeholders in template and return a copy of template.
+   * Returns the option this writer generates, which prefixes its output names.
    *
-   * @param row each map in csv data list as Map.
-   * @return copy of template as String.
+   * @return the option, e.g. email.
    */
-  private String replacePlaceholders(Map<String, String> row) {
-    String templateCopy = new String(this.tempString);
-    Pattern pattern = Pattern.compile(TemplateReader.PLACEHOLDER_PATTERN);
-    Matcher matcher = pattern.matcher(templateCopy);
-    while (matcher.find()) {
-      String placeholder = matcher.group();
-      String key = TemplateReader.subString(placeholder); // removing [[]]
-      templateCopy = templateCopy.replace(placeholder, row.get(key));
+  String getOption() {
+    return option;
+  }
+
+  /**
+   * Send rendered documents to the given sink instead of writing one file each into the output
+   * directory. The sink is closed by finish().
+   *
+   * @param sink the sink to write to.
+   */
+  void useSink(OutputSink sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * Write documents into the subdirectories of the given layout instead of straight into the
+   * output directory. Only for writers that write one file per document.
+   *
+   * @param layout the layout.
+   */
+  void useLayout(ShardLayout layout) {
+    this.layout = layout;
+  }
+
+  /**
+   * Name the output of every row with the given pattern instead of numbering it, and check that
+   * no two rows get the same name. Only for rows stored in header order, and not for incremental
+   * runs, which find outputs by number.
+   *
+   * @param filenamePattern the pattern.
+   */
+  void useFilenamePattern(FilenamePattern filenamePattern) {
+    this.filenamePattern = filenamePattern;
+    if (this.names == null) {
+      this.names = new OutputNames();
     }
-    return templateCopy;
   }
 
   /**
-   * Write a file taking a file name and output path.
+   * Claim the name of a row whose document an interrupted run already wrote, so that the rows
+   * generated after resuming are still checked against it.
+   *
+   * @param fileNameCounter the 1-based number of the row, used in the file name.
+   * @param row             the values of the row in header order.
+   * @throws IllegalArgumentException if the row's name is already used by another document.
+   */
+  void claimName(int fileNameCounter, String[] row) {
+    if (this.names != null) {
+      this.names.claim(this.filenamePattern == null ? this.outputName(fileNameCounter)
+          : this.filenamePattern.nameFor(row, fileNameCounter), fileNameCounter);
+    }
+  }
+
+  /**
+   * Tell whether this writer checks its names against the other documents of its output
+   * directory.
+   *
+   * @return true if it has names to claim.
+   */
+  boolean claimsNames() {
+    return this.names != null;
+  }
+
+  /**
+   * Check every name written against the given names, which other writers into the same output
+   * directory share, instead of only against the names of this writer's pattern.
+   *
+   * @param names the names of the output directory.
+   */
+  void useNames(OutputNames names) {
+    this.names = names;
+  }
+
+  /**
+   * Render each distinct document only once, and record the rows that would render the same as
+   * an earlier row in the given manifest instead of writing them. The manifest is closed by
+   * finish().
+   *
+   * @param dedup the dedup manifest.
+   */
+  void useDedup(DedupManifest dedup) {
+    this.dedup = dedup;
+  }
+
+  /**
+   * Record rendering and writing times and sizes of documents into the given metrics.
+   *
+   * @param metrics the metrics of the run.
+   */
+  void useMetrics(RunMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Make sure every document written so far has reached the file system.
+   *
+   * @throws IOException throws when a document could not be written.
+   */
+  void flush() throws IOException {
+    this.sink.flush();
+  }
+
+  /**
+   * Complete the output once every row has been written by closing the sink, and the dedup
+   * manifest if there is one. Documents written for rows that a lower identical row replaced as
+   * the original are deleted once the sink is closed.
    *
-   * @param fileName as String.
-   * @param output   as String.
-   * @throws IOException throws when there is an error in writing file.
+   * @throws IOException throws when the output cannot be completed.
    */
-  private void writeToFile(String fileName, String output) throws IOException {
+  void finish() throws IOException {
     try {
-      FileWriter fileWriter = new FileWriter(fileName);
-      fileWriter.write(output);
-      fileWriter.close();
-    } catch (FileNotFoundException e) {
-      throw new FileNotFoundException("Directory not found: " + fileName);
-    } catch (IOException e) {
-      throw new IOException("Error writing to file: " + fileName);
+      this.sink.close();
+      if (this.dedup != null) {
+        for (String name : this.dedup.getDisplaced()) {
+          Files.deleteIfExists(Paths.get(this.outputDir + name));
+        }
+      }
+    } finally {
+      if (this.dedup != null) {
+        this.dedup.close();
+      }
     }
   }
 
@@ -0,0 +1,94 @@
+package autopopulate_templates;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds how many documents are being written at once across every sink that shares its
+ * semaphore. A JobScheduler gives all of its jobs the same semaphore, so that running many jobs
+ * together cannot open more files at once than the disk is given.
+ */
+public class ThrottledSink implements OutputSink {
+
+  private final OutputSink delegate;
+  private final Semaphore openFiles;
+
+  /**
+   * Constructs a ThrottledSink.
+   *
+   * @param delegate  the sink that does the writing, one file per write.
+   * @param openFiles the permits for files being written, shared with other sinks.
+   */
+  public ThrottledSink(OutputSink delegate, Semaphore openFiles) {
+    this.delegate = delegate;
+    this.openFiles = openFiles;
+  }
+
+  /**
+   * Write one document once a permit is free.
+   *
+   * @param name     the name of the document, e.g. email-1.txt.
+   * @param document the rendered document.
+   * @throws IOException if the document cannot be written, or if interrupted while waiting.
+   */
+  @Override
+  public void write(String name, CharSequence document) throws IOException {
+    try {
+      this.openFiles.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting to write: " + name, e);
+    }
+    try {
+      this.delegate.write(name, document);
+    } finally {
+      this.openFiles.release();
+    }
+  }
+
+  /**
+   * Make sure every document written so far has reached the file system.
+   *
+   * @throws IOException if a document could not be written.
+   */
+  @Override
+  public void flush() throws IOException {
+    this.delegate.flush();
+  }
+
+  /**
+   * Close the wrapped sink.
+   *
+   * @throws IOException if the output cannot be completed.
+   */
+  @Override
+  public void close() throws IOException {
+    this.delegate.close();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ThrottledSink that = (ThrottledSink) o;
+    return Objects.equals(delegate, that.delegate) && openFiles == that.openFiles;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(delegate, System.identityHashCode(openFiles));
+  }
+
+  @Override
+  public String toString() {
+    return "ThrottledSink{" +
+        "delegate=" + delegate +
+        ", availableFiles=" + openFiles.availablePermits() +
+        '}';
+  }
+}
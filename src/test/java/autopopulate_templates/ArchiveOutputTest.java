@@ -0,0 +1,116 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchiveOutputTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  @Test
+  void zip_storedAndDeflated(@TempDir Path tempDir) throws IOException {
+    for (boolean compress : new boolean[]{false, true}) {
+      ArchiveOutput archive = new ArchiveOutput(tempDir.resolve("email-" + compress).toString(),
+          ArchiveOutput.Format.ZIP, compress);
+      archive.write("email-1.txt", "first");
+      archive.write("email-2.txt", "second");
+      archive.close();
+
+      try (ZipInputStream in = new ZipInputStream(
+          new FileInputStream(archive.getArchivePath()))) {
+        ZipEntry entry = in.getNextEntry();
+        assertEquals("email-1.txt", entry.getName());
+        assertEquals("first", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        entry = in.getNextEntry();
+        assertEquals("email-2.txt", entry.getName());
+        assertEquals("second", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        assertNull(in.getNextEntry());
+      }
+    }
+  }
+
+  @Test
+  void tar_gzipped(@TempDir Path tempDir) throws IOException {
+    ArchiveOutput archive = new ArchiveOutput(tempDir.resolve("letter").toString(),
+        ArchiveOutput.Format.TAR, true);
+    archive.write("letter-1.txt", "Dear James");
+    archive.close();
+    assertEquals(tempDir.resolve("letter.tar.gz").toString(), archive.getArchivePath());
+
+    try (InputStream in = new GZIPInputStream(new FileInputStream(archive.getArchivePath()))) {
+      byte[] tar = in.readAllBytes();
+      assertEquals(4 * 512, tar.length); // header, one data block, two end blocks
+      assertEquals("letter-1.txt", new String(tar, 0, 12, StandardCharsets.UTF_8));
+      assertEquals(0, tar[12]);
+      assertEquals(10, Long.parseLong(new String(tar, 124, 11, StandardCharsets.US_ASCII), 8));
+      assertEquals("Dear James", new String(tar, 512, 10, StandardCharsets.UTF_8));
+      assertEquals(0, tar[522]);
+    }
+  }
+
+  @Test
+  void tar_longNameInPaxHeader(@TempDir Path tempDir) throws IOException {
+    String name = "\u00e9".repeat(60) + "-1.txt"; // 126 bytes in UTF-8
+    ArchiveOutput archive = new ArchiveOutput(tempDir.resolve("letter").toString(),
+        ArchiveOutput.Format.TAR, false);
+    archive.write(name, "Dear James");
+    archive.close();
+
+    byte[] tar = Files.readAllBytes(Paths.get(archive.getArchivePath()));
+    assertEquals(6 * 512, tar.length); // pax header and record, header, data, two end blocks
+    assertEquals('x', tar[156]);
+    String record = "136 path=" + name + "\n";
+    assertEquals(record, new String(tar, 512, 136, StandardCharsets.UTF_8));
+    assertEquals('0', tar[1024 + 156]);
+    assertEquals("\u00e9".repeat(50), new String(tar, 1024, 100, StandardCharsets.UTF_8));
+    assertEquals("Dear James", new String(tar, 1536, 10, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void paxRecord_lengthCountsItsOwnDigits() {
+    assertEquals("9 path=a\n", new String(ArchiveOutput.paxRecord("path", new byte[]{'a'}),
+        StandardCharsets.US_ASCII));
+    byte[] name = "n".repeat(91).getBytes(StandardCharsets.US_ASCII); // 98 bytes without digits
+    assertEquals("101 path=" + "n".repeat(91) + "\n",
+        new String(ArchiveOutput.paxRecord("path", name), StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  void templateWriter_writesArchive(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[last_name]]"),
+        "email", outputDir);
+    writer.useSink(new ArchiveOutput(outputDir + "email", ArchiveOutput.Format.ZIP, true));
+    try (CsvRowReader rowReader = new CsvRowReader(CSV_PATH)) {
+      writer.generateOutput(rowReader);
+    }
+
+    try (ZipInputStream in = new ZipInputStream(
+        Files.newInputStream(tempDir.resolve("email.zip")))) {
+      String[] names = new String[3];
+      for (int i = 0; i < 3; i++) {
+        names[i] = in.getNextEntry().getName();
+      }
+      assertEquals(Arrays.asList("email-1.txt", "email-2.txt", "email-3.txt"),
+          Arrays.asList(names));
+      assertNull(in.getNextEntry());
+    }
+    assertEquals(1, tempDir.toFile().list().length);
+  }
+}
@@ -0,0 +1,100 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncFileWriterTest {
+
+  @Test
+  void submit_writesEveryFileBeforeClose(@TempDir Path tempDir) throws IOException {
+    OutputSink files = new FileChannelSink(tempDir.toString() + File.separator);
+    try (AsyncFileWriter asyncWriter = new AsyncFileWriter(files, 4)) {
+      StringBuilder reused = new StringBuilder();
+      for (int i = 1; i <= 200; i++) {
+        reused.setLength(0);
+        asyncWriter.write("letter-" + i + ".txt", reused.append("letter ").append(i));
+      }
+    }
+    for (int i = 1; i <= 200; i++) {
+      assertEquals("letter " + i, Files.readString(tempDir.resolve("letter-" + i + ".txt")));
+    }
+  }
+
+  @Test
+  void close_reportsFailedWrite(@TempDir Path tempDir) throws IOException {
+    AsyncFileWriter asyncWriter = new AsyncFileWriter(
+        new FileChannelSink(tempDir + File.separator + "missing" + File.separator), 1);
+    asyncWriter.write("a.txt", "a");
+    assertThrows(IOException.class, asyncWriter::close);
+  }
+
+  @Test
+  void flush_returnsWhileOthersKeepWriting() throws Exception {
+    OutputSink slow = new OutputSink() {
+      @Override
+      public void write(String name, CharSequence document) throws IOException {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    AtomicBoolean done = new AtomicBoolean();
+    try (AsyncFileWriter asyncWriter = new AsyncFileWriter(slow, 2)) {
+      Thread[] writers = new Thread[4];
+      for (int t = 0; t < writers.length; t++) {
+        writers[t] = new Thread(() -> {
+          try {
+            while (!done.get()) {
+              asyncWriter.write("a.txt", "a");
+            }
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+        writers[t].start();
+      }
+      try {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+          for (int i = 0; i < 20; i++) {
+            asyncWriter.flush();
+          }
+        });
+      } finally {
+        done.set(true);
+        for (Thread writer : writers) {
+          writer.join();
+        }
+      }
+    }
+  }
+
+  @Test
+  void templateWriter_usesAsyncWriter(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    String csvPath = "." + File.separator + "src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "csv-processor-test.csv";
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[first_name]]"),
+        "letter", outputDir);
+    writer.useSink(new AsyncFileWriter(new FileChannelSink(outputDir), 2));
+    try (CsvRowReader rowReader = new CsvRowReader(csvPath)) {
+      writer.generateOutput(rowReader);
+    }
+    assertEquals("Josephine", Files.readString(tempDir.resolve("letter-2.txt")));
+  }
+}
@@ -0,0 +1,248 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchGeneratorTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  @Test
+  void run_rendersEveryWriterFromOnePass(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    TemplateWriter emailWriter = new TemplateWriter(
+        CompiledTemplate.compile("To: [[email]]"), "email", outputDir);
+    TemplateWriter letterWriter = new TemplateWriter(
+        CompiledTemplate.compile("Dear [[first_name]] [[last_name]]"), "letter", outputDir);
+
+    try (CsvRowReader rowReader = new CsvRowReader(CSV_PATH)) {
+      new BatchGenerator(rowReader, Arrays.asList(emailWriter, letterWriter)).run();
+    }
+
+    assertEquals("To: jbutt@gmail.com", Files.readString(tempDir.resolve("email-1.txt")));
+    assertEquals("To: art@venere.org", Files.readString(tempDir.resolve("email-3.txt")));
+    assertEquals("Dear James Butt", Files.readString(tempDir.resolve("letter-1.txt")));
+    assertEquals("Dear Art Venere", Files.readString(tempDir.resolve("letter-3.txt")));
+    assertFalse(Files.exists(tempDir.resolve("letter-4.txt")));
+  }
+
+  @Test
+  void run_parallelKeepsSequentialFileNumbers(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id,name\n");
+    for (int i = 1; i <= 1000; i++) {
+      csvContent.append(i).append(",member").append(i).append('\n');
+    }
+    Files.writeString(csv, csvContent);
+    Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[id]]:[[name]]"),
+        "email", outputDir.toString() + File.separator);
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      new BatchGenerator(rowReader, Arrays.asList(writer), 4).run();
+    }
+
+    for (int i = 1; i <= 1000; i++) {
+      assertEquals(i + ":member" + i,
+          Files.readString(outputDir.resolve("email-" + i + ".txt")));
+    }
+    assertFalse(Files.exists(outputDir.resolve("email-1001.txt")));
+  }
+
+  @Test
+  void run_resumesAfterCheckpointedRows(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    CompiledTemplate template = CompiledTemplate.compile("To: [[email]]");
+    Checkpoint inputs = Checkpoint.of(CSV_PATH, Collections.singletonMap("email", template));
+    Path checkpointFile = Checkpoint.pathFor(outputDir, CSV_PATH);
+    inputs.withRowsDone(2).write(checkpointFile);
+
+    TemplateWriter writer = new TemplateWriter(template, "email", outputDir);
+    try (CsvRowReader rowReader = new CsvRowReader(CSV_PATH)) {
+      BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer));
+      generator.useCheckpointer(new Checkpointer(checkpointFile, inputs, 1));
+      generator.run();
+    }
+
+    assertFalse(Files.exists(tempDir.resolve("email-1.txt")));
+    assertFalse(Files.exists(tempDir.resolve("email-2.txt")));
+    assertEquals("To: art@venere.org", Files.readString(tempDir.resolve("email-3.txt")));
+    assertFalse(Files.exists(checkpointFile));
+  }
+
+  @Test
+  void run_resumeChecksNamesOfSkippedRows(@TempDir Path tempDir) throws IOException {
+    Path csv = Files.writeString(tempDir.resolve("members.csv"),
+        "id,email\n1,ann@example.com\n2,bob@example.com\n3,Ann@Example.com\n");
+    String outputDir = tempDir.toString() + File.separator;
+    CompiledTemplate template = CompiledTemplate.compile("To: [[email]]");
+    Checkpoint inputs = Checkpoint.of(csv.toString(), Collections.singletonMap("email", template),
+        Collections.singletonMap("email", "[[email]].txt"));
+    Path checkpointFile = Checkpoint.pathFor(outputDir, csv.toString());
+    inputs.withRowsDone(2).write(checkpointFile);
+
+    TemplateWriter writer = new TemplateWriter(template, "email", outputDir);
+    writer.useFilenamePattern(new FilenamePattern("[[email]].txt"));
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer));
+      generator.useCheckpointer(new Checkpointer(checkpointFile, inputs, 1));
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class, generator::run);
+      assertTrue(e.getMessage().startsWith("Output name of row 3 is already used"));
+    }
+  }
+
+  @Test
+  void run_incrementalOnlyRewritesChangedRows(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    Files.writeString(csv, "id,name,note\n1,Ann,a\n2,Bob,b\n3,Cid,c\n");
+    Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+    String prefix = outputDir.toString() + File.separator;
+    generateIncrementally(csv, prefix, "[[id]]:[[name]]", 1);
+
+    Files.writeString(outputDir.resolve("email-1.txt"), "kept");
+    Files.writeString(outputDir.resolve("email-2.txt"), "kept");
+    Files.writeString(csv, "id,name,note\n1,Ann,changed\n2,Bea,b\n");
+    generateIncrementally(csv, prefix, "[[id]]:[[name]]", 4);
+
+    assertEquals("kept", Files.readString(outputDir.resolve("email-1.txt")));
+    assertEquals("2:Bea", Files.readString(outputDir.resolve("email-2.txt")));
+    assertFalse(Files.exists(outputDir.resolve("email-3.txt")));
+
+    generateIncrementally(csv, prefix, "[[name]]", 1);
+    assertEquals("Ann", Files.readString(outputDir.resolve("email-1.txt")));
+  }
+
+  @Test
+  void run_incrementalMovesDocumentsWhenShardingChanges(@TempDir Path tempDir)
+      throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    Files.writeString(csv, "id,name\n1,Ann\n2,Bob\n3,Cid\n");
+    Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+    String prefix = outputDir.toString() + File.separator;
+    generateIncrementally(csv, prefix, "[[name]]", 1, 0);
+
+    Files.writeString(csv, "id,name\n1,Ann\n2,Bob\n");
+    generateIncrementally(csv, prefix, "[[name]]", 2, 2);
+    ShardLayout layout = new ShardLayout(2);
+    for (int n = 1; n <= 3; n++) {
+      assertFalse(Files.exists(outputDir.resolve("email-" + n + ".txt")));
+    }
+    assertEquals("Ann", Files.readString(
+        Paths.get(prefix + layout.directoryFor("email", 1) + "email-1.txt")));
+    assertEquals("Bob", Files.readString(
+        Paths.get(prefix + layout.directoryFor("email", 2) + "email-2.txt")));
+
+    generateIncrementally(csv, prefix, "[[name]]", 1, 0);
+    assertFalse(Files.exists(Paths.get(prefix + layout.directoryFor("email", 1) + "email-1.txt")));
+    assertEquals("Bob", Files.readString(outputDir.resolve("email-2.txt")));
+  }
+
+  /**
+   * Generate emails from a csv file in an incremental run.
+   *
+   * @param csv       the csv file.
+   * @param outputDir the output directory, ending with a separator.
+   * @param template  the email template.
+   * @param threads   the number of threads.
+   * @throws IOException if generating fails.
+   */
+  private static void generateIncrementally(Path csv, String outputDir, String template,
+      int threads) throws IOException {
+    generateIncrementally(csv, outputDir, template, threads, 0);
+  }
+
+  /**
+   * Generate emails from a csv file in an incremental run, in shards.
+   *
+   * @param csv         the csv file.
+   * @param outputDir   the output directory, ending with a separator.
+   * @param template    the email template.
+   * @param threads     the number of threads.
+   * @param shardFanout the shard fanout, or 0 to write into the output directory itself.
+   * @throws IOException if generating fails.
+   */
+  private static void generateIncrementally(Path csv, String outputDir, String template,
+      int threads, int shardFanout) throws IOException {
+    CompiledTemplate compiled = CompiledTemplate.compile(template);
+    TemplateWriter writer = new TemplateWriter(compiled, "email", outputDir);
+    if (shardFanout > 0) {
+      writer.useLayout(new ShardLayout(shardFanout));
+    }
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer), threads);
+      generator.useManifest(new ManifestTracker(OutputManifest.pathFor(outputDir, csv.toString()),
+          Collections.singletonMap("email", compiled), shardFanout));
+      generator.run();
+    }
+  }
+
+  @Test
+  void run_parallelReportsWriteFailure(@TempDir Path tempDir) throws IOException {
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[email]]"), "email",
+        tempDir.resolve("missing-dir").toString() + File.separator);
+    try (CsvRowReader rowReader = new CsvRowReader(CSV_PATH)) {
+      BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer), 2);
+      assertThrows(IOException.class, generator::run);
+    }
+  }
+
+  @Test
+  void run_setsMalformedRowsAside(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id,name\n");
+    for (int i = 1; i <= 600; i++) {
+      csvContent.append(i).append(i % 100 == 0 ? ",bad,\"x, y\"\n" : ",member\n");
+    }
+    Files.writeString(csv, csvContent);
+    for (int threads : new int[]{1, 4}) {
+      Path outputDir = Files.createDirectory(tempDir.resolve("out" + threads));
+      TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[id]]"), "email",
+          outputDir.toString() + File.separator);
+      Path rejectsPath = tempDir.resolve("rejects" + threads + ".txt");
+      try (CsvRowReader rowReader = new CsvRowReader(csv.toString());
+          RejectsFile rejects = new RejectsFile(rejectsPath.toString(), 10)) {
+        BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer), threads);
+        generator.useRejects(rejects);
+        generator.run();
+        assertEquals(6, rejects.getRejected());
+      }
+
+      // rejected rows take no file number
+      assertEquals("99", Files.readString(outputDir.resolve("email-99.txt")));
+      assertEquals("101", Files.readString(outputDir.resolve("email-100.txt")));
+      assertEquals("599", Files.readString(outputDir.resolve("email-594.txt")));
+      assertFalse(Files.exists(outputDir.resolve("email-595.txt")));
+      List<String> lines = Files.readAllLines(rejectsPath);
+      assertEquals(6, lines.size());
+      assertEquals(csv + ":101: expected 2 values but found 3: 100,bad,\"x, y\"", lines.get(0));
+    }
+  }
+
+  @Test
+  void run_failsPastMaxRejects(@TempDir Path tempDir) throws IOException {
+    Path csv = Files.writeString(tempDir.resolve("members.csv"), "id,name\n1\n2\n3,c\n");
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[id]]"), "email",
+        tempDir.toString() + File.separator);
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString());
+        RejectsFile rejects = new RejectsFile(tempDir.resolve("rejects.txt").toString(), 1)) {
+      BatchGenerator generator = new BatchGenerator(rowReader, Arrays.asList(writer));
+      generator.useRejects(rejects);
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class, generator::run);
+      assertTrue(e.getMessage().startsWith("More than 1 malformed rows"));
+    }
+  }
+}
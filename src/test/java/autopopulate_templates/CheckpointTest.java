@@ -0,0 +1,80 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  @Test
+  void write_readsBackTheSameCheckpoint(@TempDir Path tempDir) throws IOException {
+    Checkpoint checkpoint = Checkpoint.of(CSV_PATH,
+        Collections.singletonMap("email", CompiledTemplate.compile("To: [[email]]")))
+        .withRowsDone(42);
+    Path file = tempDir.resolve("customers.checkpoint");
+    checkpoint.write(file);
+
+    assertEquals(checkpoint, Checkpoint.read(file));
+    assertEquals(42, Checkpoint.read(file).getRowsDone());
+    assertFalse(Files.exists(tempDir.resolve("customers.checkpoint.tmp")));
+  }
+
+  @Test
+  void read_missingFile(@TempDir Path tempDir) throws IOException {
+    assertNull(Checkpoint.read(tempDir.resolve("missing.checkpoint")));
+  }
+
+  @Test
+  void read_invalidFile(@TempDir Path tempDir) throws IOException {
+    Path file = tempDir.resolve("broken.checkpoint");
+    Files.writeString(file, "rows.done=many\n");
+    assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file));
+  }
+
+  @Test
+  void pathFor() {
+    assertEquals(Paths.get("out" + File.separator + "customers.checkpoint"),
+        Checkpoint.pathFor("out" + File.separator, "data" + File.separator + "customers.csv"));
+  }
+
+  @Test
+  void hasSameInputs() throws IOException {
+    Checkpoint checkpoint = Checkpoint.of(CSV_PATH,
+        Collections.singletonMap("email", CompiledTemplate.compile("To: [[email]]")));
+    Checkpoint otherTemplate = Checkpoint.of(CSV_PATH,
+        Collections.singletonMap("email", CompiledTemplate.compile("From: [[email]]")));
+
+    assertTrue(checkpoint.hasSameInputs(checkpoint.withRowsDone(10)));
+    assertFalse(checkpoint.hasSameInputs(otherTemplate));
+  }
+
+  @Test
+  void hasSameInputs_comparesFilenamePatterns(@TempDir Path tempDir) throws IOException {
+    Map<String, CompiledTemplate> templates =
+        Collections.singletonMap("email", CompiledTemplate.compile("To: [[email]]"));
+    Checkpoint named = Checkpoint.of(CSV_PATH, templates,
+        Collections.singletonMap("email", "[[email]].txt")).withRowsDone(3);
+    Path file = tempDir.resolve("customers.checkpoint");
+    named.write(file);
+
+    assertEquals(named, Checkpoint.read(file));
+    assertFalse(named.hasSameInputs(Checkpoint.of(CSV_PATH, templates)));
+    assertFalse(named.hasSameInputs(Checkpoint.of(CSV_PATH, templates,
+        Collections.singletonMap("email", "[[first_name]].txt"))));
+  }
+}
@@ -0,0 +1,54 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointerTest {
+
+  private static Checkpoint INPUTS = new Checkpoint("customers.csv", 100, 1000,
+      Collections.singletonMap("email", "abc"), 0);
+
+  @Test
+  void rowsDone_onlyCountsRowsBelowTheWatermark(@TempDir Path tempDir) throws IOException {
+    Checkpointer checkpointer = new Checkpointer(tempDir.resolve("c.checkpoint"), INPUTS, 4);
+
+    assertEquals(-1, checkpointer.rowsDone(3, 2)); // rows 3-4, row 1 not done yet
+    assertEquals(-1, checkpointer.rowsDone(7, 2)); // rows 7-8, still no row 1
+    assertEquals(-1, checkpointer.rowsDone(1, 1)); // watermark 1, since 2 is missing
+    assertEquals(4, checkpointer.rowsDone(2, 1)); // rows 1-4 are done
+    assertEquals(8, checkpointer.rowsDone(5, 2)); // joins up with rows 7-8
+  }
+
+  @Test
+  void save_resumesFromSavedRows(@TempDir Path tempDir) throws IOException {
+    Path file = tempDir.resolve("c.checkpoint");
+    Checkpointer checkpointer = new Checkpointer(file, INPUTS, 1);
+    checkpointer.save(checkpointer.rowsDone(1, 5));
+    checkpointer.save(3); // older than the saved checkpoint
+
+    assertEquals(5, Checkpoint.read(file).getRowsDone());
+    Checkpointer resumed = new Checkpointer(file, INPUTS, 1);
+    assertEquals(5, resumed.getResumedRows());
+    assertEquals(-1, resumed.rowsDone(7, 1));
+    assertEquals(7, resumed.rowsDone(6, 1));
+
+    resumed.complete();
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  void constructor_otherInputs(@TempDir Path tempDir) throws IOException {
+    Path file = tempDir.resolve("c.checkpoint");
+    new Checkpoint("customers.csv", 200, 1000, Collections.singletonMap("email", "abc"), 3)
+        .write(file);
+    assertThrows(IllegalArgumentException.class, () -> new Checkpointer(file, INPUTS, 1));
+  }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -190,6 +191,430 @@ class CommandLineParserTest {
     });
   }
 
+  @Test
+  void getRunSettings_default() {
+    assertEquals(1, commandLineParser1.getRunSettings().getThreads());
+  }
+
+  @Test
+  void getRunSettings_threads() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--threads", "8"
+    };
+    assertEquals(8, new CommandLineParser(args).getRunSettings().getThreads());
+  }
+
+  @Test
+  void getRunSettings_virtualWriter() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--writer", "virtual",
+        "--max-open-files", "64"
+    };
+    RunSettings settings = new CommandLineParser(args).getRunSettings();
+    assertEquals(RunSettings.WriterMode.VIRTUAL, settings.getWriterMode());
+    assertEquals(64, settings.getMaxOpenFiles());
+  }
+
+  @Test
+  void getRunSettings_archive() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--archive", "tar",
+        "--compress"
+    };
+    RunSettings settings = new CommandLineParser(args).getRunSettings();
+    assertEquals(ArchiveOutput.Format.TAR, settings.getArchiveFormat());
+    assertTrue(settings.isCompressArchive());
+  }
+
+  @Test
+  void getRunSettings_sink() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--letter",
+        "--letter-template", "letter-template.txt",
+        "--output-dir", "." + fileSeparator + "output-letters",
+        "--csv-file", "customer.csv",
+        "--sink", "stdout"
+    };
+    assertEquals(RunSettings.SinkType.STDOUT,
+        new CommandLineParser(args).getRunSettings().getSinkType());
+    args[args.length - 1] = "s3";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_input() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--letter",
+        "--letter-template", "letter-template.txt",
+        "--output-dir", "." + fileSeparator + "output-letters",
+        "--csv-file", "customer.csv",
+        "--input", "mmap"
+    };
+    assertEquals(RunSettings.InputMode.MAPPED,
+        new CommandLineParser(args).getRunSettings().getInputMode());
+    args[args.length - 1] = "nio";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_metrics() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--metrics", "json"
+    };
+    assertEquals(RunMetrics.Format.JSON,
+        new CommandLineParser(args).getRunSettings().getMetricsFormat());
+    args[args.length - 1] = "xml";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_progress() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--progress", "10"
+    };
+    assertEquals(10, new CommandLineParser(args).getRunSettings().getProgressInterval());
+    args[args.length - 1] = "0";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_resume() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--resume"
+    };
+    assertTrue(new CommandLineParser(args).getRunSettings().isResume());
+  }
+
+  @Test
+  void testOption_resumeWithSink() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--sink", "jsonl",
+        "--resume"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_incremental() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--incremental"
+    };
+    assertTrue(new CommandLineParser(args).getRunSettings().isIncremental());
+  }
+
+  @Test
+  void testOption_incrementalWithResume() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--resume",
+        "--incremental"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_templateCache() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--template-cache", "cache"
+    };
+    assertEquals("cache", new CommandLineParser(args).getRunSettings().getTemplateCacheDir());
+  }
+
+  @Test
+  void getRunSettings_validateOnly() throws IllegalArgumentException {
+    CommandLineParser parser = new CommandLineParser(new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--csv-file", "customer.csv",
+        "--validate-only"
+    });
+    assertTrue(parser.getRunSettings().isValidateOnly());
+    assertEquals(1, parser.getOptionsList().size());
+  }
+
+  @Test
+  void getRunSettings_rejectsFile() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--rejects-file", "rejects.txt",
+        "--max-rejects", "0"
+    };
+    RunSettings settings = new CommandLineParser(args).getRunSettings();
+    assertEquals("rejects.txt", settings.getRejectsFile());
+    assertEquals(0, settings.getMaxRejects());
+    args[args.length - 1] = "-1";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email-template.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--resume",
+          "--rejects-file", "rejects.txt"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email-template.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--max-rejects", "5"});
+    });
+  }
+
+  @Test
+  void getRunSettings_shardFanout() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--shard-fanout", "1000"
+    };
+    assertEquals(1000, new CommandLineParser(args).getRunSettings().getShardFanout());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email-template.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--shard-fanout", "10",
+          "--sink", "jsonl"});
+    });
+  }
+
+  @Test
+  void getRunSettings_dedup() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--dedup"
+    };
+    assertTrue(new CommandLineParser(args).getRunSettings().isDedup());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email-template.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--dedup", "--incremental"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email-template.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--dedup", "--archive", "zip"});
+    });
+  }
+
+  @Test
+  void getOptionsList_filenamePattern() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--letter",
+        "--letter-template", "letter-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--letter-filename", "[[email]]-letter.txt"
+    };
+    List<Option> options = new CommandLineParser(args).getOptionsList();
+    assertNull(options.get(0).getFilenamePattern());
+    assertEquals("[[email]]-letter.txt", options.get(1).getFilenamePattern());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--letter", "--letter-template", "letter.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--email-filename", "[[id]]"});
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--email", "--email-template", "email.txt",
+          "--output-dir", "out", "--csv-file", "customer.csv", "--email-filename", "[[id]]",
+          "--incremental"});
+    });
+  }
+
+  @Test
+  void getRunSettings_server() throws IllegalArgumentException {
+    CommandLineParser parser = new CommandLineParser(
+        new String[]{"--server", "8080", "--max-jobs", "8"});
+    assertEquals(8080, parser.getRunSettings().getServerPort());
+    assertEquals(8, parser.getRunSettings().getMaxJobs());
+    assertTrue(parser.getOptionsList().isEmpty());
+    assertEquals("jobs-server.token", parser.getRunSettings().getServerTokenFile());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--server", "70000"});
+    });
+  }
+
+  @Test
+  void getRunSettings_tokenFile() throws IllegalArgumentException {
+    CommandLineParser parser = new CommandLineParser(
+        new String[]{"--server", "8080", "--token-file", "run/server.token"});
+    assertEquals("run/server.token", parser.getRunSettings().getServerTokenFile());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--jobs-file", "jobs.txt", "--token-file", "t"});
+    });
+  }
+
+  @Test
+  void testOption_maxJobsWithoutServer() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--max-jobs", "2"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void getRunSettings_jobsFile() throws IllegalArgumentException {
+    CommandLineParser parser = new CommandLineParser(new String[]{"--jobs-file", "jobs.txt",
+        "--max-jobs", "3", "--total-threads", "12", "--total-open-files", "100"});
+    assertEquals("jobs.txt", parser.getRunSettings().getJobsFile());
+    assertEquals(3, parser.getRunSettings().getMaxJobs());
+    assertEquals(12, parser.getRunSettings().getTotalThreads());
+    assertEquals(100, parser.getRunSettings().getTotalOpenFiles());
+    assertTrue(parser.getOptionsList().isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(new String[]{"--jobs-file", "jobs.txt", "--server", "8080"});
+    });
+  }
+
+  @Test
+  void getRunSettings_priority() throws IllegalArgumentException {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--priority", "-2"
+    };
+    assertEquals(-2, new CommandLineParser(args).getRunSettings().getPriority());
+    args[args.length - 1] = "high";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void testOption_totalThreadsWithoutJobs() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--total-threads", "8"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void testOption_sinkWithArchive() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--sink", "jsonl",
+        "--archive", "zip"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void testOption_compressWithoutArchive() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--compress"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void testOption_unknownWriter() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--writer", "async"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
+  @Test
+  void testOption_invalidThreads() {
+    String[] args = new String[]{
+        "--email",
+        "--email-template", "email-template.txt",
+        "--output-dir", "." + fileSeparator + "output-emails",
+        "--csv-file", "customer.csv",
+        "--threads", "0"
+    };
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+    args[args.length - 1] = "many";
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CommandLineParser(args);
+    });
+  }
+
   @Test
   void testEquals() {
     assertTrue(commandLineParser1.equals(commandLineParser1));
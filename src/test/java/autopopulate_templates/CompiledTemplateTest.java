@@ -0,0 +1,94 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompiledTemplateTest {
+
+  private CompiledTemplate template;
+  private Map<String, String> row;
+
+  @BeforeEach
+  void setUp() {
+    template = CompiledTemplate.compile("Dear [[first_name]] [[last_name]],\n"
+        + "your email is [[email]]. Bye [[first_name]]!");
+    row = new HashMap<>();
+    row.put("first_name", "James");
+    row.put("last_name", "Butt");
+    row.put("email", "jbutt@gmail.com");
+    row.put("state", "LA");
+  }
+
+  @Test
+  void render() {
+    assertEquals("Dear James Butt,\nyour email is jbutt@gmail.com. Bye James!",
+        template.render(row));
+  }
+
+  @Test
+  void render_placeholderAtBothEnds() {
+    CompiledTemplate edges = CompiledTemplate.compile("[[first_name]][[last_name]]");
+    assertEquals("JamesButt", edges.render(row));
+  }
+
+  @Test
+  void render_noPlaceholders() {
+    CompiledTemplate plain = CompiledTemplate.compile("Nothing to replace [[ here ]].");
+    assertEquals("Nothing to replace [[ here ]].", plain.render(row));
+  }
+
+  @Test
+  void render_valueLooksLikePlaceholder() {
+    row.put("last_name", "[[email]]");
+    assertEquals("Dear James [[email]],\nyour email is jbutt@gmail.com. Bye James!",
+        template.render(row));
+  }
+
+  @Test
+  void render_missingValue() {
+    row.remove("email");
+    assertThrows(IllegalArgumentException.class, () -> template.render(row));
+  }
+
+  @Test
+  void render_boundToHeaders() {
+    CsvHeaders headers = new CsvHeaders(new String[]{"state", "email", "last_name", "first_name"});
+    CompiledTemplate bound = template.bind(headers);
+    assertEquals("Dear James Butt,\nyour email is jbutt@gmail.com. Bye James!",
+        bound.render(new String[]{"LA", "jbutt@gmail.com", "Butt", "James"}));
+  }
+
+  @Test
+  void bind_missingHeader() {
+    CsvHeaders headers = new CsvHeaders(new String[]{"first_name", "last_name"});
+    assertThrows(IllegalArgumentException.class, () -> template.bind(headers));
+  }
+
+  @Test
+  void render_arrayWithoutBinding() {
+    assertThrows(IllegalStateException.class,
+        () -> template.render(new String[]{"James", "Butt", "jbutt@gmail.com"}));
+  }
+
+  @Test
+  void getKeys() {
+    assertEquals(Arrays.asList("first_name", "last_name", "email"),
+        new ArrayList<>(template.getKeys()));
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(template, CompiledTemplate.compile(template.getSource()));
+    assertNotEquals(template, CompiledTemplate.compile("[[email]]"));
+    assertEquals(template.hashCode(),
+        CompiledTemplate.compile(template.getSource()).hashCode());
+  }
+}
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -30,6 +31,9 @@ class CsvFileProcessorTest {
   private static String EXCEPTION_FILE_PATH4 = "." + fileSeparator + "src" + fileSeparator + "test"
       + fileSeparator + "resources" + fileSeparator + "csv"
       + "-processor-test-exception3.csv";
+  private static String EMPTY_CELLS_FILE_PATH = "." + fileSeparator + "src" + fileSeparator
+      + "test" + fileSeparator + "resources" + fileSeparator + "csv"
+      + "-processor-test-empty-cells.csv";
   private CsvFileProcessor csvFileProcessor;
 
   Map<String, String> expectedResult1;
@@ -95,6 +99,30 @@ class CsvFileProcessorTest {
     });
   }
 
+  @Test
+  public void emptyCellsKeepTheirColumn() throws IOException {
+    CsvFileProcessor emptyCellsProcessor = new CsvFileProcessor(EMPTY_CELLS_FILE_PATH);
+    assertEquals(2, emptyCellsProcessor.getCsvData().size());
+    assertEquals("", emptyCellsProcessor.getCsvData().get(0).get("phone1"));
+    assertEquals("jbutt@gmail.com", emptyCellsProcessor.getCsvData().get(0).get("email"));
+    assertEquals("", emptyCellsProcessor.getCsvData().get(1).get("last_name"));
+    assertEquals("4 B Blue Ridge Blvd\nSuite 2",
+        emptyCellsProcessor.getCsvData().get(1).get("address"));
+    assertEquals("", emptyCellsProcessor.getCsvData().get(1).get("email"));
+  }
+
+  @Test
+  public void projectionKeepsOnlyTheGivenColumns() throws IOException {
+    CsvFileProcessor projected = new CsvFileProcessor(FILE_PATH, Set.of("first_name", "email"));
+    assertEquals(3, projected.getRows().size());
+    assertEquals("James", projected.getCsvData().get(0).get("first_name"));
+    assertEquals("jbutt@gmail.com", projected.getCsvData().get(0).get("email"));
+    assertNull(projected.getCsvData().get(0).get("company_name"));
+    assertThrows(IllegalArgumentException.class, () -> {
+      new CsvFileProcessor(EXCEPTION_FILE_PATH4, Set.of("first_name"));
+    });
+  }
+
   @Test
   public void getFirstElement() {
     assertEquals(expectedResult1, csvFileProcessor.getCsvData().get(0));
@@ -115,6 +143,13 @@ class CsvFileProcessorTest {
     assertThrows(IndexOutOfBoundsException.class, () -> csvFileProcessor.getCsvData().get(3));
   }
 
+  @Test
+  public void getRows() {
+    assertEquals(3, csvFileProcessor.getRows().size());
+    CsvHeaders headers = csvFileProcessor.getCsvHeaders();
+    assertEquals("Venere", csvFileProcessor.getRows().get(2)[headers.indexOf("last_name")]);
+  }
+
   @Test
   public void testToString() {
     List<Map<String, String>> resultList = new ArrayList<>();
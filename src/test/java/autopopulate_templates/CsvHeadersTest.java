@@ -0,0 +1,60 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CsvHeadersTest {
+
+  private CsvHeaders headers;
+
+  @BeforeEach
+  void setUp() {
+    headers = new CsvHeaders(new String[]{"first_name", "last_name", "email"});
+  }
+
+  @Test
+  void indexOf() {
+    assertEquals(0, headers.indexOf("first_name"));
+    assertEquals(2, headers.indexOf("email"));
+    assertEquals(-1, headers.indexOf("phone1"));
+  }
+
+  @Test
+  void getNameIsInterned() {
+    String name = new String(new char[]{'e', 'm', 'a', 'i', 'l'});
+    CsvHeaders other = new CsvHeaders(new String[]{name});
+    assertSame("email", other.getName(0));
+    assertEquals(1, other.size());
+  }
+
+  @Test
+  void getNames() {
+    assertEquals(Arrays.asList("first_name", "last_name", "email"),
+        new ArrayList<>(headers.getNames()));
+  }
+
+  @Test
+  void toMap() {
+    Map<String, String> expected = new HashMap<>();
+    expected.put("first_name", "James");
+    expected.put("last_name", "Butt");
+    expected.put("email", "jbutt@gmail.com");
+    assertEquals(expected, headers.toMap(new String[]{"James", "Butt", "jbutt@gmail.com"}));
+  }
+
+  @Test
+  void testEquals() {
+    assertTrue(headers.equals(new CsvHeaders(new String[]{"first_name", "last_name", "email"})));
+    assertFalse(headers.equals(new CsvHeaders(new String[]{"first_name", "email"})));
+    assertFalse(headers.equals(null));
+  }
+}
@@ -0,0 +1,93 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvRowReaderTest {
+
+  private static String fileSeparator = File.separator;
+  private static String FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test.csv";
+  private static String EMPTY_FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test-exception1.csv";
+  private static String MISMATCH_FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test-exception3.csv";
+
+  @Test
+  void getHeaders() throws IOException {
+    try (CsvRowReader rowReader = new CsvRowReader(FILE_PATH)) {
+      assertEquals(Arrays.asList("first_name", "last_name", "company_name", "address", "state",
+          "phone1", "email"), new ArrayList<>(rowReader.getHeaders()));
+    }
+  }
+
+  @Test
+  void readRow_matchesCsvFileProcessor() throws IOException {
+    List<Map<String, String>> streamed = new ArrayList<>();
+    try (CsvRowReader rowReader = new CsvRowReader(FILE_PATH)) {
+      String[] row;
+      while ((row = rowReader.readRow()) != null) {
+        streamed.add(rowReader.getCsvHeaders().toMap(row));
+      }
+      assertNull(rowReader.readRow());
+    }
+    assertEquals(new CsvFileProcessor(FILE_PATH).getCsvData(), streamed);
+  }
+
+  @Test
+  void skipRows_continuesWithTheNextRow() throws IOException {
+    try (CsvRowReader rowReader = new CsvRowReader(FILE_PATH)) {
+      assertEquals(2, rowReader.skipRows(2));
+      assertEquals("Art", rowReader.readRow()[0]);
+      assertEquals(0, rowReader.skipRows(5));
+      assertNull(rowReader.readRow());
+    }
+  }
+
+  @Test
+  void emptyFile() {
+    assertThrows(IOException.class, () -> new CsvRowReader(EMPTY_FILE_PATH));
+  }
+
+  @Test
+  void noFile() {
+    assertThrows(FileNotFoundException.class, () -> new CsvRowReader("no-such-file.csv"));
+  }
+
+  @Test
+  void readRow_numberOfValuesNotMatch() throws IOException {
+    try (CsvRowReader rowReader = new CsvRowReader(MISMATCH_FILE_PATH)) {
+      assertThrows(IllegalArgumentException.class, () -> {
+        while (rowReader.readRow() != null) {
+          // keep reading until the malformed row is hit
+        }
+      });
+    }
+  }
+
+  @Test
+  void readRow_continuesAfterMalformedRow(@TempDir Path tempDir) throws IOException {
+    Path file = Files.writeString(tempDir.resolve("bad.csv"), "a,b\n1,x\n2,x,extra\n3,x\n");
+    try (CsvRowReader rowReader = new CsvRowReader(file.toString())) {
+      assertEquals("1", rowReader.readRow()[0]);
+      MalformedRowException e = assertThrows(MalformedRowException.class, rowReader::readRow);
+      assertEquals(3, e.getLineNumber());
+      assertEquals("expected 2 values but found 3", e.getReason());
+      assertEquals("3", rowReader.readRow()[0]);
+      assertNull(rowReader.readRow());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+
+class CsvTokenizerTest {
+
+  private static CsvTokenizer tokenizerOf(String csv) {
+    return new CsvTokenizer(new StringReader(csv));
+  }
+
+  @Test
+  void nextRecord_plainFields() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf("a,b,c\nd,e,f\n");
+    assertArrayEquals(new String[]{"a", "b", "c"}, tokenizer.nextRecord());
+    assertArrayEquals(new String[]{"d", "e", "f"}, tokenizer.nextRecord());
+    assertNull(tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_keepsEmptyFields() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf(",a,,b,\n");
+    assertArrayEquals(new String[]{"", "a", "", "b", ""}, tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_quotedFields() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf("\"Benton, John B Jr\",\"say \"\"hi\"\"\",\"\"\n");
+    assertArrayEquals(new String[]{"Benton, John B Jr", "say \"hi\"", ""},
+        tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_embeddedLineBreaks() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf("a,\"line1\r\nline2\",b\r\nc,d,e");
+    assertArrayEquals(new String[]{"a", "line1\r\nline2", "b"}, tokenizer.nextRecord());
+    assertEquals(1, tokenizer.getRecordLineNumber());
+    assertArrayEquals(new String[]{"c", "d", "e"}, tokenizer.nextRecord());
+    assertEquals(3, tokenizer.getRecordLineNumber());
+    assertNull(tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_trimsUnquotedAndSkipsBlankLines() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf("  a , b\n   \n\n\" c \",d\n");
+    assertArrayEquals(new String[]{"a", "b"}, tokenizer.nextRecord());
+    assertArrayEquals(new String[]{" c ", "d"}, tokenizer.nextRecord());
+    assertEquals(4, tokenizer.getRecordLineNumber());
+    assertNull(tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_projectedColumns() throws IOException {
+    CsvTokenizer tokenizer = tokenizerOf("a,\"b,\r\nb\",c\n  \n d ,e,f,extra\n");
+    tokenizer.project(new boolean[]{true, false, true});
+    assertArrayEquals(new String[]{"a", null, "c"}, tokenizer.nextRecord());
+    assertArrayEquals(new String[]{"d", null, "f", null}, tokenizer.nextRecord());
+    assertEquals(4, tokenizer.getRecordLineNumber());
+    assertNull(tokenizer.nextRecord());
+  }
+
+  @Test
+  void getRecordText_keepsColumnsNotRead() throws IOException {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      longValue.append((char) ('a' + i % 26));
+    }
+    CsvTokenizer tokenizer = tokenizerOf("x,y\r\n\n 1 ,\"" + longValue + "\",extra\r\n2,z");
+    tokenizer.project(new boolean[]{true, false});
+    tokenizer.keepRecordText(true);
+    tokenizer.nextRecord();
+    assertEquals("x,y", tokenizer.getRecordText());
+    assertArrayEquals(new String[]{"1", null, null}, tokenizer.nextRecord());
+    assertEquals(" 1 ,\"" + longValue + "\",extra", tokenizer.getRecordText());
+    tokenizer.nextRecord();
+    assertEquals("2,z", tokenizer.getRecordText());
+  }
+
+  @Test
+  void getRecordText_keptOnlyWhenAsked() throws IOException {
+    String rest = "y\n".repeat(MalformedRowException.MAX_RECORD_CHARS);
+    CsvTokenizer tokenizer = tokenizerOf("a,b\n1,\"" + rest);
+    tokenizer.project(new boolean[]{true, false});
+    tokenizer.nextRecord();
+    assertNull(tokenizer.getRecordText());
+    assertThrows(MalformedRowException.class, tokenizer::nextRecord);
+    assertNull(tokenizer.getRecordText());
+
+    // a record running to the end of the input is kept only up to the limit
+    tokenizer = tokenizerOf("a,b\n1,\"" + rest);
+    tokenizer.project(new boolean[]{true, false});
+    tokenizer.keepRecordText(true);
+    tokenizer.nextRecord();
+    MalformedRowException e = assertThrows(MalformedRowException.class, tokenizer::nextRecord);
+    assertEquals(("1,\"" + rest).substring(0, MalformedRowException.MAX_RECORD_CHARS)
+        + MalformedRowException.TRUNCATED, e.getRecord());
+    assertTrue(tokenizer.getRecordText().length() < MalformedRowException.MAX_RECORD_CHARS * 2);
+  }
+
+  @Test
+  void nextRecord_longFieldAcrossBuffers() throws IOException {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longValue.append((char) ('a' + i % 26));
+    }
+    CsvTokenizer tokenizer = tokenizerOf("x," + longValue + ",\"" + longValue + "\"\n");
+    assertArrayEquals(new String[]{"x", longValue.toString(), longValue.toString()},
+        tokenizer.nextRecord());
+  }
+
+  @Test
+  void nextRecord_unterminatedQuote() {
+    CsvTokenizer tokenizer = tokenizerOf("a,\"never closed\n");
+    assertThrows(IllegalArgumentException.class, tokenizer::nextRecord);
+  }
+}
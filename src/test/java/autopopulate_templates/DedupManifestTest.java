@@ -0,0 +1,81 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DedupManifestTest {
+
+  @Test
+  void match_comparesOnlyTheTemplateColumns(@TempDir Path tempDir) throws IOException {
+    try (DedupManifest dedup = new DedupManifest(tempDir.resolve("email.dedup"), 10)) {
+      dedup.bindHeaders(new CsvHeaders(new String[]{"id", "city", "plan"}),
+          Set.of("plan", "city"));
+      assertFalse(dedup.match(new String[]{"1", "Paris", "gold"}, 1, "email-1.txt")
+          .isDuplicate());
+      assertFalse(dedup.match(new String[]{"2", "Paris", "basic"}, 2, "email-2.txt")
+          .isDuplicate());
+      assertTrue(dedup.match(new String[]{"3", "Paris", "gold"}, 3, "email-3.txt")
+          .isDuplicate());
+      assertTrue(dedup.match(new String[]{"4", "Paris", "basic"}, 4, "email-4.txt")
+          .isDuplicate());
+    }
+  }
+
+  @Test
+  void match_stopsRememberingAtTheLimit(@TempDir Path tempDir) throws IOException {
+    try (DedupManifest dedup = new DedupManifest(tempDir.resolve("email.dedup"), 1)) {
+      dedup.bindHeaders(new CsvHeaders(new String[]{"city"}), Set.of("city"));
+      assertFalse(dedup.match(new String[]{"Paris"}, 1, "email-1.txt").isDuplicate());
+      assertFalse(dedup.match(new String[]{"Oslo"}, 2, "email-2.txt").isDuplicate());
+      assertFalse(dedup.match(new String[]{"Oslo"}, 3, "email-3.txt").isDuplicate());
+      assertTrue(dedup.match(new String[]{"Paris"}, 4, "email-4.txt").isDuplicate());
+    }
+  }
+
+  @Test
+  void match_lowestRowIsTheOriginal(@TempDir Path tempDir) throws IOException {
+    Path file = DedupManifest.pathFor(tempDir.toString() + File.separator, "letter");
+    assertEquals(tempDir.resolve("letter.dedup"), file);
+    DedupManifest dedup = new DedupManifest(file, 10);
+    dedup.bindHeaders(new CsvHeaders(new String[]{"city"}), Set.of("city"));
+    String[] row = {"Paris"};
+    DedupManifest.Match match = dedup.match(row, 5, "letter-5.txt");
+    assertFalse(match.isDuplicate());
+    match = dedup.match(row, 7, "letter-7.txt");
+    dedup.addDuplicate("letter-7.txt", match);
+    assertFalse(dedup.match(row, 2, "letter-2.txt").isDuplicate());
+    match = dedup.match(row, 3, "letter-3.txt");
+    dedup.addDuplicate("letter-3.txt", match);
+    assertEquals(List.of("letter-5.txt"), dedup.getDisplaced());
+    dedup.close();
+
+    assertEquals(3, dedup.getDuplicates());
+    assertEquals(List.of("letter-7.txt\tletter-2.txt", "letter-3.txt\tletter-2.txt",
+        "letter-5.txt\tletter-2.txt"), Files.readAllLines(file));
+    assertFalse(Files.exists(tempDir.resolve("letter.dedup.part")));
+  }
+
+  @Test
+  void match_sameNameIsNotListed(@TempDir Path tempDir) throws IOException {
+    Path file = tempDir.resolve("letter.dedup");
+    try (DedupManifest dedup = new DedupManifest(file, 10)) {
+      dedup.bindHeaders(new CsvHeaders(new String[]{"city"}), Set.of("city"));
+      assertFalse(dedup.match(new String[]{"Paris"}, 4, "Paris.txt").isSameName());
+      DedupManifest.Match match = dedup.match(new String[]{"Paris"}, 1, "Paris.txt");
+      assertTrue(match.isDuplicate());
+      assertTrue(match.isSameName());
+      assertTrue(dedup.getDisplaced().isEmpty());
+    }
+    assertEquals(List.of(), Files.readAllLines(file));
+  }
+}
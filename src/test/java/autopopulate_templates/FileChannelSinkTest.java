@@ -0,0 +1,77 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileChannelSinkTest {
+
+  @Test
+  void write_encodesUtf8(@TempDir Path tempDir) throws IOException {
+    FileChannelSink sink = new FileChannelSink(tempDir.toString() + File.separator);
+    sink.write("email-1.txt", new StringBuilder("Gr\u00fc\u00dfe, Jos\u00e9 \u2713"));
+    sink.close();
+    assertEquals("Gr\u00fc\u00dfe, Jos\u00e9 \u2713",
+        new String(Files.readAllBytes(tempDir.resolve("email-1.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void write_largeDocumentReplacesExistingFile(@TempDir Path tempDir) throws IOException {
+    Files.writeString(tempDir.resolve("letter-1.txt"), "an older and longer document");
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      large.append("\u00e9").append(i % 10);
+    }
+    FileChannelSink sink = new FileChannelSink(tempDir.toString() + File.separator);
+    sink.write("letter-1.txt", large);
+    assertEquals(large.toString(), Files.readString(tempDir.resolve("letter-1.txt")));
+    sink.write("letter-1.txt", "short");
+    assertEquals("short", Files.readString(tempDir.resolve("letter-1.txt")));
+  }
+
+  @Test
+  void write_reusesAtMostIdleEncoders(@TempDir Path tempDir) throws Exception {
+    FileChannelSink sink = new FileChannelSink(tempDir.toString() + File.separator, 2);
+    sink.write("email-1.txt", "one");
+    assertEquals(1, sink.getIdleEncoderCount());
+    sink.write("email-2.txt", "two");
+    assertEquals(1, sink.getIdleEncoderCount());
+
+    Thread[] writers = new Thread[8];
+    for (int i = 0; i < writers.length; i++) {
+      String name = "letter-" + i + ".txt";
+      writers[i] = new Thread(() -> {
+        try {
+          sink.write(name, "x".repeat(200_000));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      writers[i].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertTrue(sink.getIdleEncoderCount() <= 2);
+    for (int i = 0; i < writers.length; i++) {
+      assertEquals(200_000, Files.size(tempDir.resolve("letter-" + i + ".txt")));
+    }
+  }
+
+  @Test
+  void write_missingDirectory(@TempDir Path tempDir) {
+    FileChannelSink sink = new FileChannelSink(
+        tempDir.resolve("missing").toString() + File.separator);
+    assertThrows(FileNotFoundException.class, () -> sink.write("email-1.txt", "x"));
+  }
+}
@@ -0,0 +1,65 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FilenamePatternTest {
+
+  /**
+   * Create a pattern bound to the headers id and email.
+   *
+   * @param pattern the pattern.
+   * @return the bound pattern.
+   */
+  private static FilenamePattern bound(String pattern) {
+    FilenamePattern filenamePattern = new FilenamePattern(pattern);
+    filenamePattern.bindHeaders(new CsvHeaders(new String[]{"id", "email"}));
+    return filenamePattern;
+  }
+
+  @Test
+  void nameFor_rendersColumns() {
+    FilenamePattern pattern = bound("[[email]]-letter.txt");
+    assertEquals("ada@example.com-letter.txt",
+        pattern.nameFor(new String[]{"1", "ada@example.com"}, 1));
+  }
+
+  @Test
+  void sanitize_keepsNamesInsideOutputDirectory() {
+    assertEquals("_.._.._etc_passwd", FilenamePattern.sanitize("../../etc/passwd"));
+    assertEquals("a_b_c_d_e", FilenamePattern.sanitize("a\\b:c\nd|e"));
+    assertEquals("_..", FilenamePattern.sanitize(".."));
+    assertEquals("_", FilenamePattern.sanitize(""));
+    assertEquals("Jos\u00e9 Smith.txt", FilenamePattern.sanitize("Jos\u00e9 Smith.txt"));
+  }
+
+  @Test
+  void nameFor_sanitizedNamesCollide() {
+    FilenamePattern pattern = bound("[[email]].txt");
+    OutputNames names = new OutputNames();
+    names.claim(pattern.nameFor(new String[]{"1", "ada@example.com"}, 1), 1);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> names.claim(pattern.nameFor(new String[]{"2", "Ada@Example.com"}, 2), 2));
+    assertTrue(e.getMessage().startsWith("Output name of row 2 is already used"));
+    // values that only differ in characters replaced by sanitizing collide too
+    names.claim(pattern.nameFor(new String[]{"3", "a/b"}, 3), 3);
+    assertThrows(IllegalArgumentException.class,
+        () -> names.claim(pattern.nameFor(new String[]{"4", "a:b"}, 4), 4));
+  }
+
+  @Test
+  void nameFor_tooLong() {
+    FilenamePattern pattern = bound("[[email]]");
+    assertThrows(IllegalArgumentException.class,
+        () -> pattern.nameFor(new String[]{"1", "x".repeat(256)}, 1));
+    // the limit is in bytes: each e with an accent takes two in UTF-8
+    assertThrows(IllegalArgumentException.class,
+        () -> pattern.nameFor(new String[]{"1", "\u00e9".repeat(128)}, 1));
+    assertEquals(255, DocumentEncoder.utf8Length(
+        pattern.nameFor(new String[]{"1", "\u00e9".repeat(127) + "x"}, 1)));
+    assertThrows(IllegalArgumentException.class, () -> new FilenamePattern(""));
+  }
+}
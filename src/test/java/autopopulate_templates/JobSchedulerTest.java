@@ -0,0 +1,116 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobSchedulerTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  /**
+   * Parse the arguments of an email job.
+   *
+   * @param template  the email template.
+   * @param outputDir the output directory.
+   * @param extra     further arguments.
+   * @return the parsed job.
+   */
+  private static CommandLineParser emailJob(Path template, Path outputDir, String... extra) {
+    List<String> args = new ArrayList<>(List.of("--email", "--email-template",
+        template.toString(), "--output-dir", outputDir.toString() + File.separator,
+        "--csv-file", CSV_PATH));
+    args.addAll(List.of(extra));
+    return new CommandLineParser(args.toArray(new String[0]));
+  }
+
+  @Test
+  void submit_runsEveryJob(@TempDir Path tempDir) throws Exception {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    try (JobScheduler scheduler = new JobScheduler(2, 4, 3)) {
+      for (int i = 0; i < 5; i++) {
+        Path outputDir = Files.createDirectory(tempDir.resolve("out" + i));
+        CommandLineParser job = i == 0 ? emailJob(template, outputDir, "--metrics", "json")
+            : emailJob(template, outputDir, "--priority", Integer.toString(i));
+        results.add(scheduler.submit("job " + i, job.getOptionsList(), job.getRunSettings()));
+      }
+    }
+
+    assertTrue(results.get(0).get().startsWith("{\"elapsedNanos\":"));
+    for (int i = 1; i < 5; i++) {
+      assertNull(results.get(i).get());
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals("To: art@venere.org\n",
+          Files.readString(tempDir.resolve("out" + i).resolve("email-3.txt")));
+    }
+  }
+
+  @Test
+  void submit_reportsFailure(@TempDir Path tempDir)
+      throws Exception, TemplateInformationNotMatchException {
+    CommandLineParser job = emailJob(tempDir.resolve("missing.txt"), tempDir);
+    CompletableFuture<String> result;
+    try (JobScheduler scheduler = new JobScheduler(1, 1, 1)) {
+      result = scheduler.submit("missing", job.getOptionsList(), job.getRunSettings());
+    }
+    ExecutionException e = assertThrows(ExecutionException.class, result::get);
+    assertTrue(e.getCause() instanceof FileNotFoundException);
+    assertSame(e.getCause(), JobScheduler.unwrap(e.getCause()));
+  }
+
+  @Test
+  void submit_limitsThreadsToShare(@TempDir Path tempDir) throws Exception {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    CommandLineParser job = emailJob(template, tempDir, "--threads", "8");
+    try (JobScheduler scheduler = new JobScheduler(2, 5, 10)) {
+      assertEquals(2, scheduler.getThreadsPerJob());
+      scheduler.submit("wide", job.getOptionsList(), job.getRunSettings()).get();
+    }
+    assertEquals(2, job.getRunSettings().getThreads());
+  }
+
+  @Test
+  void submit_afterClose(@TempDir Path tempDir) throws IOException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    CommandLineParser job = emailJob(template, tempDir);
+    JobScheduler scheduler = new JobScheduler(1, 1, 1);
+    scheduler.close();
+    assertThrows(IllegalStateException.class,
+        () -> scheduler.submit("late", job.getOptionsList(), job.getRunSettings()));
+    assertThrows(IllegalArgumentException.class, () -> new JobScheduler(0, 1, 1));
+  }
+
+  @Test
+  void throttledSink_releasesPermits(@TempDir Path tempDir) throws IOException {
+    Semaphore openFiles = new Semaphore(1);
+    ThrottledSink sink = new ThrottledSink(
+        new FileChannelSink(tempDir.toString() + File.separator), openFiles);
+    sink.write("email-1.txt", "hello");
+    assertEquals(1, openFiles.availablePermits());
+    assertEquals("hello", Files.readString(tempDir.resolve("email-1.txt")));
+
+    ThrottledSink missing = new ThrottledSink(
+        new FileChannelSink(tempDir.resolve("none").toString() + File.separator), openFiles);
+    assertThrows(IOException.class, () -> missing.write("email-1.txt", "x"));
+    assertEquals(1, openFiles.availablePermits());
+    sink.close();
+  }
+}
@@ -0,0 +1,168 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobServerTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  private JobScheduler scheduler;
+  private JobServer server;
+  private HttpClient client;
+  private Path tokenFile;
+  private String token;
+
+  @BeforeEach
+  void setUp(@TempDir Path tokenDir) throws IOException {
+    scheduler = new JobScheduler(2, 2, 16);
+    tokenFile = tokenDir.resolve("server.token");
+    server = new JobServer(0, scheduler, tokenFile);
+    server.start();
+    client = HttpClient.newHttpClient();
+    token = Files.readString(tokenFile);
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+    scheduler.close();
+  }
+
+  /**
+   * Send a request to the server's /jobs endpoint.
+   *
+   * @param method the HTTP method.
+   * @param body   the body of the request.
+   * @return the response.
+   * @throws Exception if the request fails.
+   */
+  private HttpResponse<String> send(String method, String body) throws Exception {
+    return send(newRequest(method, body).header(JobServer.TOKEN_HEADER, token));
+  }
+
+  /**
+   * Start building a request to the server's /jobs endpoint.
+   *
+   * @param method the HTTP method.
+   * @param body   the body of the request.
+   * @return the request builder.
+   */
+  private HttpRequest.Builder newRequest(String method, String body) {
+    return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/jobs"))
+        .method(method, HttpRequest.BodyPublishers.ofString(body));
+  }
+
+  /**
+   * Send a request.
+   *
+   * @param request the request builder.
+   * @return the response.
+   * @throws Exception if the request fails.
+   */
+  private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  void post_runsJob(@TempDir Path tempDir) throws Exception {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    String outputDir = tempDir.toString() + File.separator;
+
+    HttpResponse<String> response = send("POST", String.join("\n", "--email",
+        "--email-template", template.toString(), "--output-dir", outputDir,
+        "--csv-file", CSV_PATH, "--metrics", "json", ""));
+
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().startsWith("Done.\n{\"elapsedNanos\":"));
+    assertEquals("To: jbutt@gmail.com\n", Files.readString(tempDir.resolve("email-1.txt")));
+    assertEquals("To: art@venere.org\n", Files.readString(tempDir.resolve("email-3.txt")));
+  }
+
+  @Test
+  void post_invalidArguments() throws Exception {
+    HttpResponse<String> response = send("POST", "--email\n--csv-file\ncustomer.csv\n");
+    assertEquals(400, response.statusCode());
+    assertTrue(response.body().startsWith("Option --email provided but no --email-template"));
+    assertEquals(400, send("POST", "--server\n8080\n").statusCode());
+  }
+
+  @Test
+  void post_missingTemplate(@TempDir Path tempDir) throws Exception {
+    HttpResponse<String> response = send("POST", String.join("\n", "--email",
+        "--email-template", tempDir.resolve("missing.txt").toString(),
+        "--output-dir", tempDir.toString() + File.separator, "--csv-file", CSV_PATH));
+    assertEquals(500, response.statusCode());
+    assertTrue(response.body().startsWith("Directory not found: "));
+  }
+
+  @Test
+  void get_notAllowed() throws Exception {
+    assertEquals(405, send("GET", "").statusCode());
+  }
+
+  @Test
+  void post_withoutTokenRefused() throws Exception {
+    assertEquals(401, send(newRequest("POST", "--email\n")).statusCode());
+    assertEquals(401, send(newRequest("POST", "--email\n")
+        .header(JobServer.TOKEN_HEADER, token + "x")).statusCode());
+  }
+
+  @Test
+  void post_fromWebPageRefused() throws Exception {
+    assertEquals(403, send(newRequest("POST", "--email\n")
+        .header(JobServer.TOKEN_HEADER, token)
+        .header("Origin", "http://example.com")).statusCode());
+
+    // a browser after DNS rebinding still sends the name it resolved
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      OutputStream out = socket.getOutputStream();
+      out.write(("POST /jobs HTTP/1.1\r\nHost: attacker.example:" + server.getPort()
+          + "\r\n" + JobServer.TOKEN_HEADER + ": " + token
+          + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      InputStream in = socket.getInputStream();
+      String statusLine = new String(in.readAllBytes(), StandardCharsets.US_ASCII).split("\r\n")[0];
+      assertEquals("HTTP/1.1 403 Forbidden", statusLine);
+    }
+  }
+
+  @Test
+  void post_bodyTooLarge() throws Exception {
+    assertEquals(413, send("POST", "x".repeat(64 * 1024 + 1)).statusCode());
+  }
+
+  @Test
+  void close_deletesTokenFile() {
+    assertEquals(43, token.length());
+    server.close();
+    assertFalse(Files.exists(tokenFile));
+  }
+
+  @Test
+  void parseArguments() {
+    assertArrayEquals(new String[]{"--email", "--csv-file", "my customers.csv"},
+        JobServer.parseArguments("--email\r\n\n  --csv-file\nmy customers.csv  \n"));
+  }
+}
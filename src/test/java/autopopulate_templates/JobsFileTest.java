@@ -0,0 +1,47 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobsFileTest {
+
+  @Test
+  void splitLine_quotedArguments() {
+    assertArrayEquals(new String[]{"--csv-file", "my customers.csv", "--email"},
+        JobsFile.splitLine("  --csv-file \"my customers.csv\"\t--email "));
+    assertArrayEquals(new String[]{"--output-dir", ""}, JobsFile.splitLine("--output-dir \"\""));
+  }
+
+  @Test
+  void splitLine_unclosedQuote() {
+    assertThrows(IllegalArgumentException.class, () -> JobsFile.splitLine("--csv-file \"a.csv"));
+  }
+
+  @Test
+  void read_skipsBlankLinesAndComments(@TempDir Path tempDir) throws IOException {
+    Path file = Files.writeString(tempDir.resolve("jobs.txt"),
+        "# nightly jobs\n--email --csv-file a.csv\n\n   \n--letter --csv-file b.csv\n");
+    Map<Integer, String[]> jobs = JobsFile.read(file.toString());
+    assertEquals(2, jobs.size());
+    assertArrayEquals(new String[]{"--email", "--csv-file", "a.csv"}, jobs.get(2));
+    assertArrayEquals(new String[]{"--letter", "--csv-file", "b.csv"}, jobs.get(5));
+  }
+
+  @Test
+  void read_reportsLineOfError(@TempDir Path tempDir) throws IOException {
+    Path file = Files.writeString(tempDir.resolve("jobs.txt"), "--email\n--csv-file \"a.csv\n");
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> JobsFile.read(file.toString()));
+    assertTrue(e.getMessage().startsWith(file + " line 2: "));
+    assertThrows(IOException.class, () -> JobsFile.read(tempDir.resolve("none.txt").toString()));
+  }
+}
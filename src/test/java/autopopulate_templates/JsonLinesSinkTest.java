@@ -0,0 +1,46 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JsonLinesSinkTest {
+
+  @Test
+  void write_escapesContent() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonLinesSink sink = new JsonLinesSink("test", out, false);
+    sink.write("email-1.txt", "Hi \"Jo\"\\\nBye\t\u0001\u00e9");
+    sink.close();
+    assertEquals("{\"name\":\"email-1.txt\",\"content\":\"Hi \\\"Jo\\\"\\\\\\nBye\\t\\u0001\u00e9\"}\n",
+        out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void templateWriter_writesOneLinePerRow(@TempDir Path tempDir) throws IOException {
+    String csvPath = "." + File.separator + "src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "csv-processor-test.csv";
+    String outputDir = tempDir.toString() + File.separator;
+    RunSettings settings = new RunSettings();
+    settings.setSinkType(RunSettings.SinkType.JSONL);
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[state]]"), "letter",
+        outputDir);
+    writer.useSink(OutputSinks.open(settings, outputDir, "letter"));
+    try (CsvRowReader rowReader = new CsvRowReader(csvPath)) {
+      writer.generateOutput(rowReader);
+    }
+    assertEquals(Arrays.asList(
+            "{\"name\":\"letter-1.txt\",\"content\":\"LA\"}",
+            "{\"name\":\"letter-2.txt\",\"content\":\"MI\"}",
+            "{\"name\":\"letter-3.txt\",\"content\":\"NJ\"}"),
+        Files.readAllLines(tempDir.resolve("letter.jsonl")));
+  }
+}
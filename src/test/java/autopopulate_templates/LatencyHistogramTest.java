@@ -0,0 +1,51 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void getPercentile_empty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  void getPercentile_smallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    assertEquals(10, histogram.getCount());
+    assertEquals(5, histogram.getPercentile(50));
+    assertEquals(10, histogram.getPercentile(99));
+  }
+
+  @Test
+  void getPercentile_withinOneEighth() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000);
+    }
+    long p50 = histogram.getPercentile(50);
+    long p99 = histogram.getPercentile(99);
+    assertTrue(p50 >= 50000000L && p50 <= 50000000L * 9 / 8, "p50 was " + p50);
+    assertTrue(p99 >= 99000000L && p99 <= 99000000L * 9 / 8, "p99 was " + p99);
+  }
+
+  @Test
+  void bucketOf_upperBoundOfAgree() {
+    long[] values = {0, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE};
+    for (long value : values) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value);
+      if (bucket > 0) {
+        assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < value);
+      }
+    }
+  }
+}
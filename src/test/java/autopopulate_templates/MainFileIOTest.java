@@ -0,0 +1,178 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MainFileIOTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  @Test
+  void runJob_mismatchFailsBeforeAnyOutput(@TempDir Path tempDir) throws IOException {
+    Path good = Files.writeString(tempDir.resolve("good.txt"), "To: [[email]]");
+    Path typo = Files.writeString(tempDir.resolve("typo.txt"), "Dear [[frist_name]]");
+    Path otherCsv = Files.writeString(tempDir.resolve("other.csv"), "first_name\nAda\n");
+    String outputDir = tempDir.toString() + File.separator;
+    List<Option> options = List.of(
+        new Option("email", CSV_PATH, good.toString(), outputDir),
+        new Option("letter", otherCsv.toString(), typo.toString(), outputDir));
+
+    assertThrows(TemplateInformationNotMatchException.class,
+        () -> MainFileIO.runJob(options, new RunSettings()));
+    assertFalse(Files.exists(tempDir.resolve("email-1.txt")));
+  }
+
+  @Test
+  void runJob_validateOnlyWritesNothing(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    RunSettings settings = new RunSettings();
+    settings.setValidateOnly(true);
+    List<Option> options = List.of(new Option("email", CSV_PATH, template.toString(), null));
+
+    assertNull(MainFileIO.runJob(options, settings));
+    try (var files = Files.list(tempDir)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  void validate_readsOnlyTheHeader(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    // a row that cannot be parsed is never reached
+    Path csv = Files.writeString(tempDir.resolve("big.csv"), "email\n\"unterminated\n");
+    Path typo = Files.writeString(tempDir.resolve("typo.txt"), "To: [[emial]]");
+
+    MainFileIO.validate(List.of(new Option("email", csv.toString(), template.toString(), null)),
+        new TemplateCache(1, null));
+
+    assertThrows(TemplateInformationNotMatchException.class, () -> MainFileIO.validate(
+        List.of(new Option("email", csv.toString(), typo.toString(), null)),
+        new TemplateCache(1, null)));
+    assertThrows(IOException.class, () -> MainFileIO.validate(
+        List.of(new Option("email", tempDir.resolve("none.csv").toString(),
+            template.toString(), null)), new TemplateCache(1, null)));
+  }
+
+  @Test
+  void runJob_namesOutputsWithPattern(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    Option option = new Option("email", CSV_PATH, template.toString(),
+        tempDir.toString() + File.separator);
+    option.setFilenamePattern("[[last_name]]-[[first_name]].txt");
+    RunSettings settings = new RunSettings();
+    settings.setThreads(2);
+
+    MainFileIO.runJob(List.of(option), settings);
+
+    assertEquals("To: jbutt@gmail.com\n", Files.readString(tempDir.resolve("Butt-James.txt")));
+    assertEquals("To: art@venere.org\n", Files.readString(tempDir.resolve("Venere-Art.txt")));
+    assertFalse(Files.exists(tempDir.resolve("email-1.txt")));
+
+    option.setFilenamePattern("[[member_id]].txt");
+    assertThrows(TemplateInformationNotMatchException.class,
+        () -> MainFileIO.runJob(List.of(option), settings));
+  }
+
+  @Test
+  void runJob_rejectsKeepTheRowAsWritten(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "Hi [[name]]");
+    Path csv = Files.writeString(tempDir.resolve("m.csv"),
+        "id,name,note\n1,Ann,x\n2,Bob,y,extra\n3,Cy,\"a, b\"\n");
+    Path rejects = tempDir.resolve("rejects.txt");
+    RunSettings settings = new RunSettings();
+    settings.setRejectsFile(rejects.toString());
+
+    // the stream reader does not decode id and note, the rejects file still has them
+    MainFileIO.runJob(List.of(new Option("email", csv.toString(), template.toString(),
+        tempDir.toString() + File.separator)), settings);
+
+    assertEquals(List.of(csv + ":3: expected 3 values but found 4: 2,Bob,y,extra"),
+        Files.readAllLines(rejects));
+    assertEquals("Hi Cy", Files.readString(tempDir.resolve("email-2.txt")).trim());
+  }
+
+  @Test
+  void runJob_rejectsUnterminatedQuote(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "Hi [[name]]");
+    Path csv = Files.writeString(tempDir.resolve("m.csv"), "id,name,note\n1,Ann,x\n2,\"Bob,y\n");
+    for (RunSettings.InputMode mode : RunSettings.InputMode.values()) {
+      Path rejects = tempDir.resolve(mode + "-rejects.txt");
+      Path outputDir = Files.createDirectory(tempDir.resolve(mode.toString()));
+      RunSettings settings = new RunSettings();
+      settings.setInputMode(mode);
+      settings.setRejectsFile(rejects.toString());
+
+      MainFileIO.runJob(List.of(new Option("email", csv.toString(), template.toString(),
+          outputDir.toString() + File.separator)), settings);
+
+      assertEquals(List.of(csv + ":3: unterminated quoted field: 2,\"Bob,y"),
+          Files.readAllLines(rejects));
+      assertEquals("Hi Ann", Files.readString(outputDir.resolve("email-1.txt")).trim());
+    }
+  }
+
+  @Test
+  void runJob_rejectsTruncateUnterminatedQuote(@TempDir Path tempDir)
+      throws IOException, TemplateInformationNotMatchException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "Hi [[name]]");
+    String rest = "y\n3,Cid,z\n".repeat(20_000);
+    Path csv = Files.writeString(tempDir.resolve("m.csv"), "id,name,note\n1,Ann,x\n2,\"Bob,"
+        + rest);
+    for (RunSettings.InputMode mode : RunSettings.InputMode.values()) {
+      Path rejects = tempDir.resolve(mode + "-rejects.txt");
+      Path outputDir = Files.createDirectory(tempDir.resolve(mode.toString()));
+      RunSettings settings = new RunSettings();
+      settings.setInputMode(mode);
+      settings.setRejectsFile(rejects.toString());
+
+      MainFileIO.runJob(List.of(new Option("email", csv.toString(), template.toString(),
+          outputDir.toString() + File.separator)), settings);
+
+      // the row runs to the end of the file, and only its start is kept
+      String expected = csv + ":3: unterminated quoted field: "
+          + ("2,\"Bob," + rest).substring(0, MalformedRowException.MAX_RECORD_CHARS)
+          + MalformedRowException.TRUNCATED;
+      assertEquals(List.of(expected.split("\n", -1)), Files.readAllLines(rejects));
+    }
+  }
+
+  @Test
+  void runJob_namesClashAcrossOptions(@TempDir Path tempDir) throws IOException {
+    Path email = Files.writeString(tempDir.resolve("email.txt"), "Email [[first_name]]");
+    Path letter = Files.writeString(tempDir.resolve("letter.txt"), "Letter [[first_name]]");
+    Path csv = Files.writeString(tempDir.resolve("m.csv"), "id,first_name\n1,Ann\n2,Bo\n");
+    String outputDir = tempDir.toString() + File.separator;
+    Option emails = new Option("email", csv.toString(), email.toString(), outputDir);
+    emails.setFilenamePattern("[[id]].txt");
+    Option letters = new Option("letter", csv.toString(), letter.toString(), outputDir);
+    letters.setFilenamePattern("[[id]].txt");
+
+    assertThrows(IllegalArgumentException.class,
+        () -> MainFileIO.runJob(List.of(emails, letters), new RunSettings()));
+
+    // a pattern may not render the name of another option's numbered document either
+    Path numbered = Files.writeString(tempDir.resolve("n.csv"), "id,first_name\n1,Ann\n"
+        + "letter-1,Bo\n");
+    Option named = new Option("email", numbered.toString(), email.toString(), outputDir);
+    named.setFilenamePattern("[[id]].txt");
+    Option plain = new Option("letter", numbered.toString(), letter.toString(), outputDir);
+    assertThrows(IllegalArgumentException.class,
+        () -> MainFileIO.runJob(List.of(named, plain), new RunSettings()));
+  }
+}
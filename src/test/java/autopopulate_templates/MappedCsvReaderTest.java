@@ -0,0 +1,168 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedCsvReaderTest {
+
+  private static String fileSeparator = File.separator;
+  private static String FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test.csv";
+  private static String EMPTY_FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test-exception1.csv";
+  private static String MISMATCH_FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test-exception3.csv";
+  private static String CSV = "id, name ,note\r\n"
+      + "1,\"Smith, Jane\",\"said \"\"hi\"\"\nand left\"\n"
+      + "   \n"
+      + "2, Gr\u00fc\u00dfe ,\"\" tail  \n"
+      + "3,,\n";
+
+  @Test
+  void readRow_matchesCsvRowReader() throws IOException {
+    try (CsvRowReader expected = new CsvRowReader(FILE_PATH);
+        MappedCsvReader actual = new MappedCsvReader(FILE_PATH)) {
+      assertEquals(expected.getCsvHeaders(), actual.getCsvHeaders());
+      String[] row;
+      while ((row = expected.readRow()) != null) {
+        assertArrayEquals(row, actual.readRow());
+      }
+      assertNull(actual.readRow());
+    }
+  }
+
+  @Test
+  void readRow_quotedFieldsAcrossSmallWindows(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("notes.csv");
+    Files.write(csv, CSV.getBytes(StandardCharsets.UTF_8));
+    List<String[]> expected = new ArrayList<>();
+    try (CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(CSV))) {
+      String[] record;
+      while ((record = tokenizer.nextRecord()) != null) {
+        expected.add(record);
+      }
+    }
+
+    for (long windowSize : new long[]{40, 64, MappedCsvReader.DEFAULT_WINDOW_SIZE}) {
+      List<String[]> actual = new ArrayList<>();
+      try (MappedCsvReader reader = new MappedCsvReader(csv.toString(), windowSize)) {
+        actual.add(reader.getCsvHeaders().getNames().toArray(new String[0]));
+        String[] row;
+        while ((row = reader.readRow()) != null) {
+          actual.add(row);
+        }
+      }
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertArrayEquals(expected.get(i), actual.get(i));
+      }
+    }
+  }
+
+  @Test
+  void project_leavesOtherColumnsNull(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("notes.csv");
+    Files.write(csv, CSV.getBytes(StandardCharsets.UTF_8));
+    try (MappedCsvReader reader = new MappedCsvReader(csv.toString())) {
+      reader.project(new HashSet<>(Arrays.asList("name")));
+      assertArrayEquals(new String[]{null, "Smith, Jane", null}, reader.readRow());
+      assertArrayEquals(new String[]{null, "Gr\u00fc\u00dfe", null}, reader.readRow());
+      assertArrayEquals(new String[]{null, "", null}, reader.readRow());
+      assertNull(reader.readRow());
+    }
+  }
+
+  @Test
+  void readRow_malformedRowKeepsItsText(@TempDir Path tempDir) throws IOException {
+    Path csv = Files.writeString(tempDir.resolve("m.csv"), "id,name\n1,Ann\n2,Bob,extra\r\n");
+    try (MappedCsvReader reader = new MappedCsvReader(csv.toString(), 16)) {
+      reader.project(new HashSet<>(Arrays.asList("name")));
+      assertArrayEquals(new String[]{null, "Ann"}, reader.readRow());
+      MalformedRowException e = assertThrows(MalformedRowException.class, reader::readRow);
+      assertEquals("2,Bob,extra", e.getRecord());
+    }
+  }
+
+  @Test
+  void readRow_recordLargerThanWindowIsSkipped(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("wide.csv");
+    Files.write(csv, ("a,b\n1,0123456789012345678901234567890123456789\r\n"
+        + "2,\"x\ny,\"\"\n0123456789012345678901234567890123456789\"\n3,z\n4\n")
+        .getBytes(StandardCharsets.UTF_8));
+    try (MappedCsvReader reader = new MappedCsvReader(csv.toString(), 16)) {
+      MalformedRowException e = assertThrows(MalformedRowException.class, reader::readRow);
+      assertEquals(2, e.getLineNumber());
+      assertEquals("record larger than 16 bytes", e.getReason());
+      assertEquals("1,01234567890123" + MalformedRowException.TRUNCATED, e.getRecord());
+      e = assertThrows(MalformedRowException.class, reader::readRow);
+      assertEquals(3, e.getLineNumber());
+      assertArrayEquals(new String[]{"3", "z"}, reader.readRow());
+      e = assertThrows(MalformedRowException.class, reader::readRow);
+      assertEquals(7, e.getLineNumber());
+      assertEquals("4", e.getRecord());
+      assertNull(reader.readRow());
+    }
+  }
+
+  @Test
+  void readRow_unterminatedQuoteLargerThanWindow(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("open.csv");
+    Files.write(csv, "a,b\n1,x\n2,\"0123456789\n0123456789\n0123456789\n"
+        .getBytes(StandardCharsets.UTF_8));
+    try (MappedCsvReader reader = new MappedCsvReader(csv.toString(), 16)) {
+      assertArrayEquals(new String[]{"1", "x"}, reader.readRow());
+      MalformedRowException e = assertThrows(MalformedRowException.class, reader::readRow);
+      assertEquals(3, e.getLineNumber());
+      assertEquals("unterminated quoted field", e.getReason());
+      assertNull(reader.readRow());
+    }
+  }
+
+  @Test
+  void skipRows_acrossSmallWindows(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("quoted.csv");
+    Files.write(csv, CSV.getBytes(StandardCharsets.UTF_8));
+    try (MappedCsvReader rowReader = new MappedCsvReader(csv.toString(), 40)) {
+      assertEquals(2, rowReader.skipRows(2));
+      assertArrayEquals(new String[]{"3", "", ""}, rowReader.readRow());
+      assertEquals(0, rowReader.skipRows(1));
+    }
+  }
+
+  @Test
+  void emptyFile() {
+    assertThrows(IOException.class, () -> new MappedCsvReader(EMPTY_FILE_PATH));
+  }
+
+  @Test
+  void noFile() {
+    assertThrows(FileNotFoundException.class, () -> new MappedCsvReader("no-such-file.csv"));
+  }
+
+  @Test
+  void readRow_numberOfValuesNotMatch() throws IOException {
+    try (MappedCsvReader reader = new MappedCsvReader(MISMATCH_FILE_PATH)) {
+      assertThrows(IllegalArgumentException.class, () -> {
+        while (reader.readRow() != null) {
+          // keep reading until the malformed row is hit
+        }
+      });
+    }
+  }
+}
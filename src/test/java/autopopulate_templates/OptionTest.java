@@ -91,7 +91,7 @@ class OptionTest {
   void testHashCode() {
     String templatePath = "." + fileSeparator + "resources" + fileSeparator + "email-template.txt";
     String outputDir = "." + fileSeparator + "output";
-    int expectedHashCode = Objects.hash("email", "customers.csv", templatePath, outputDir);
+    int expectedHashCode = Objects.hash("email", "customers.csv", templatePath, outputDir, null);
     assertEquals(expectedHashCode, option1.hashCode());
   }
 
@@ -104,6 +104,7 @@ class OptionTest {
         ", csvFilePath='" + "customers.csv" + '\'' +
         ", templatePath='" + templatePath + '\'' +
         ", outputDir='" + outputDir + '\'' +
+        ", filenamePattern='" + null + '\'' +
         '}';
     assertEquals(expectedStr, option1.toString());
   }
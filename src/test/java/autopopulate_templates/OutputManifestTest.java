@@ -0,0 +1,59 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutputManifestTest {
+
+  @Test
+  void write_readsBackTheSameManifest(@TempDir Path tempDir) throws IOException {
+    OutputManifest manifest = OutputManifest.of(
+        Collections.singletonMap("email", CompiledTemplate.compile("To: [[email]]")), 16);
+    for (long i = 0; i < 3000; i++) {
+      manifest.addRow(i * 31);
+    }
+    Path file = tempDir.resolve("customers.manifest");
+    manifest.write(file);
+
+    OutputManifest read = OutputManifest.read(file);
+    assertEquals(manifest, read);
+    assertEquals(3000, read.getRowCount());
+    assertEquals(2999 * 31, read.getRowHash(3000));
+    assertEquals(Checkpoint.hash("To: [[email]]"), read.getTemplateHash("email"));
+    assertNull(read.getTemplateHash("letter"));
+    assertEquals(16, read.getShardFanout());
+  }
+
+  @Test
+  void read_missingFile(@TempDir Path tempDir) throws IOException {
+    assertNull(OutputManifest.read(tempDir.resolve("missing.manifest")));
+  }
+
+  @Test
+  void read_invalidFile(@TempDir Path tempDir) throws IOException {
+    Path file = tempDir.resolve("broken.manifest");
+    Files.writeString(file, "rows");
+    assertThrows(IllegalArgumentException.class, () -> OutputManifest.read(file));
+  }
+
+  @Test
+  void hashRow_onlyHashesTheGivenColumns() {
+    int[] columns = {0, 2};
+    long hash = OutputManifest.hashRow(new String[]{"a", "b", "c"}, columns);
+    assertEquals(hash, OutputManifest.hashRow(new String[]{"a", "x", "c"}, columns));
+    assertNotEquals(hash, OutputManifest.hashRow(new String[]{"a", "b", "d"}, columns));
+    assertNotEquals(OutputManifest.hashRow(new String[]{"ab", "", ""}, columns),
+        OutputManifest.hashRow(new String[]{"a", "", "b"}, columns));
+    assertNotEquals(OutputManifest.hashRow(new String[]{"", "", null}, columns),
+        OutputManifest.hashRow(new String[]{"", "", ""}, columns));
+  }
+}
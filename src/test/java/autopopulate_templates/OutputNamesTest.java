@@ -0,0 +1,41 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class OutputNamesTest {
+
+  @Test
+  void claim_ignoresCase() {
+    OutputNames names = new OutputNames();
+    names.claim("email-1.txt", 1);
+    names.claim("email-2.txt", 2);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> names.claim("EMAIL-1.txt", 3));
+    assertEquals("Output name of row 3 is already used by the document of row 1: EMAIL-1.txt",
+        e.getMessage());
+    assertEquals(2, names.getNamesUsed());
+  }
+
+  @Test
+  void claim_sameFirstHashIsNoClash() {
+    OutputNames names = new OutputNames();
+    assertEquals(0, names.claim(42, 1, 1));
+    assertEquals(0, names.claim(42, 3, 2));
+    assertEquals(0, names.claim(7, 1, 3));
+    assertEquals(2, names.claim(42, 3, 4));
+    assertEquals(3, names.getNamesUsed());
+  }
+
+  @Test
+  void claim_manyDistinctNames() {
+    OutputNames names = new OutputNames();
+    for (int i = 0; i < 200000; i++) {
+      names.claim(i + ".txt", i + 1);
+    }
+    assertEquals(200000, names.getNamesUsed());
+    assertThrows(IllegalArgumentException.class, () -> names.claim("123456.txt", 200001));
+  }
+}
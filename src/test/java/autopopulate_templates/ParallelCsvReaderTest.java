@@ -0,0 +1,152 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelCsvReaderTest {
+
+  private static String fileSeparator = File.separator;
+  private static String FILE_PATH = "." + fileSeparator + "src" + fileSeparator + "test"
+      + fileSeparator + "resources" + fileSeparator + "csv-processor-test.csv";
+
+  @Test
+  void readRow_matchesMappedCsvReader() throws IOException {
+    assertSameRows(FILE_PATH, 64);
+    assertSameRows(FILE_PATH, ParallelCsvReader.DEFAULT_CHUNK_SIZE);
+  }
+
+  @Test
+  void readRow_quotedLineBreaksAcrossChunks(@TempDir Path tempDir) throws IOException {
+    StringBuilder csv = new StringBuilder("id,note,size\n");
+    for (int i = 1; i <= 300; i++) {
+      csv.append(i).append(",\"line one, ").append(i).append("\nline \"\"two\"\"\r\nthree\",")
+          .append(i % 7 == 0 ? "5'10\"" : "M").append(i % 10 == 0 ? "\r\n\n" : "\n");
+    }
+    Path file = tempDir.resolve("notes.csv");
+    Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    for (long chunkSize : new long[]{7, 50, 333, 4096}) {
+      assertSameRows(file.toString(), chunkSize);
+    }
+  }
+
+  @Test
+  void readRow_carriageReturnLineBreaks(@TempDir Path tempDir) throws IOException {
+    StringBuilder csv = new StringBuilder("id,note\r");
+    for (int i = 1; i <= 300; i++) {
+      if (i % 25 == 0) {
+        csv.append("bad\r");
+      } else if (i % 3 == 0) {
+        csv.append(i).append(",\"one\rtwo \"\"").append(i).append("\"\"\r\nthree\"\r");
+      } else {
+        csv.append(i).append(",plain\r");
+      }
+    }
+    Path file = tempDir.resolve("mac.csv");
+    Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    for (long chunkSize : new long[]{5, 64, 1000}) {
+      try (MappedCsvReader expected = new MappedCsvReader(file.toString());
+          ParallelCsvReader reader = new ParallelCsvReader(file.toString(), 3, chunkSize)) {
+        for (int i = 1; i <= 300; i++) {
+          if (i % 25 == 0) {
+            long line = assertThrows(MalformedRowException.class, expected::readRow)
+                .getLineNumber();
+            assertEquals(line,
+                assertThrows(MalformedRowException.class, reader::readRow).getLineNumber());
+          } else {
+            assertArrayEquals(expected.readRow(), reader.readRow());
+          }
+        }
+        assertNull(expected.readRow());
+        assertNull(reader.readRow());
+        // the file is split at its line breaks, not parsed as one range
+        assertTrue(reader.getRangeCount() > 1);
+      }
+    }
+  }
+
+  @Test
+  void project_leavesOtherColumnsNull() throws IOException {
+    try (ParallelCsvReader reader = new ParallelCsvReader(FILE_PATH, 2, 64)) {
+      reader.project(new HashSet<>(Arrays.asList("state")));
+      assertArrayEquals(new String[]{null, null, null, null, "LA", null, null}, reader.readRow());
+    }
+  }
+
+  @Test
+  void readRow_numberOfValuesNotMatch(@TempDir Path tempDir) throws IOException {
+    StringBuilder csv = new StringBuilder("a,b\n");
+    for (int i = 0; i < 100; i++) {
+      csv.append(i).append(",x\n");
+    }
+    csv.append("oops\n");
+    Path file = tempDir.resolve("bad.csv");
+    Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    try (ParallelCsvReader reader = new ParallelCsvReader(file.toString(), 4, 32)) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(String.valueOf(i), reader.readRow()[0]);
+      }
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+          reader::readRow);
+      assertTrue(e.getMessage().contains("(line 102)"));
+    }
+  }
+
+  @Test
+  void readRow_continuesAfterMalformedRows(@TempDir Path tempDir) throws IOException {
+    StringBuilder csv = new StringBuilder("a,b\n");
+    for (int i = 0; i < 100; i++) {
+      csv.append(i % 10 == 5 ? "bad\n" : i + ",x\n");
+    }
+    Path file = tempDir.resolve("bad.csv");
+    Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    try (ParallelCsvReader reader = new ParallelCsvReader(file.toString(), 4, 32)) {
+      for (int i = 0; i < 100; i++) {
+        if (i % 10 == 5) {
+          MalformedRowException e = assertThrows(MalformedRowException.class, reader::readRow);
+          assertEquals(i + 2, e.getLineNumber());
+        } else {
+          assertEquals(String.valueOf(i), reader.readRow()[0]);
+        }
+      }
+      assertNull(reader.readRow());
+    }
+  }
+
+  /**
+   * Reads a file with ParallelCsvReader and MappedCsvReader and checks that the rows are the same.
+   *
+   * @param path      the csv file
+   * @param chunkSize the chunk size of the parallel reader
+   * @throws IOException if the file cannot be read
+   */
+  private static void assertSameRows(String path, long chunkSize) throws IOException {
+    List<String[]> expected = new ArrayList<>();
+    try (MappedCsvReader reader = new MappedCsvReader(path)) {
+      String[] row;
+      while ((row = reader.readRow()) != null) {
+        expected.add(row);
+      }
+    }
+    try (ParallelCsvReader reader = new ParallelCsvReader(path, 3, chunkSize)) {
+      for (String[] row : expected) {
+        assertArrayEquals(row, reader.readRow());
+      }
+      assertNull(reader.readRow());
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProgressReporterTest {
+
+  @Test
+  void formatProgress() {
+    // a quarter of a 4 MiB file read in 2 seconds, 1,000 of an estimated 4,000 rows done
+    assertEquals("Progress: 1,000 / ~4,000 rows (25.0%), 500 rows/s, 0.5 MB/s, ETA 0:00:06",
+        ProgressReporter.formatProgress(1000, 1000, 1 << 20, 4 << 20,
+            TimeUnit.SECONDS.toNanos(2)));
+    assertEquals("Progress: 0 rows", ProgressReporter.formatProgress(0, 0, 0, 100, 1));
+  }
+
+  @Test
+  void formatDuration() {
+    assertEquals("0:00:00", ProgressReporter.formatDuration(0));
+    assertEquals("1:01:05", ProgressReporter.formatDuration(3665));
+  }
+
+  @Test
+  void report_leavesOutSkippedRows(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id\n");
+    for (int i = 1; i <= 1000; i++) {
+      csvContent.append(String.format(Locale.ROOT, "%04d", i)).append('\n');
+    }
+    Files.writeString(csv, csvContent);
+
+    // resumed after 500 rows, and 256 of the 500 left read since
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ProgressReporter progress = new ProgressReporter(60,
+        new PrintStream(out, true, StandardCharsets.UTF_8));
+        MappedCsvReader rowReader = new MappedCsvReader(csv.toString())) {
+      rowReader.skipRows(500);
+      progress.track(rowReader);
+      for (int i = 0; i < 256; i++) {
+        rowReader.readRow();
+        progress.rowDone();
+      }
+      progress.inputAt(256, rowReader.getBytesRead());
+      progress.report();
+    }
+    String report = out.toString(StandardCharsets.UTF_8);
+    assertTrue(report.startsWith("Progress: 256 / ~500 rows (51.2%), "), report);
+  }
+
+  @Test
+  void batchGenerator_reportsEveryRow(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id\n");
+    for (int i = 1; i <= 1000; i++) {
+      csvContent.append(i).append('\n');
+    }
+    Files.writeString(csv, csvContent);
+    Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+    TemplateWriter writer = new TemplateWriter(CompiledTemplate.compile("[[id]]"), "email",
+        outputDir.toString() + File.separator);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ProgressReporter progress = new ProgressReporter(60,
+        new PrintStream(out, true, StandardCharsets.UTF_8));
+        CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      BatchGenerator generator = new BatchGenerator(rowReader,
+          Collections.singletonList(writer), 3);
+      generator.useProgress(progress);
+      generator.run();
+    }
+    String report = out.toString(StandardCharsets.UTF_8);
+    assertTrue(report.startsWith("Done: " + csv + ", 1,000 rows in "), report);
+  }
+}
@@ -0,0 +1,58 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RejectsFileTest {
+
+  @Test
+  void toRecord_quotesWhereNeeded() {
+    assertEquals("a,\"b,c\",\"say \"\"hi\"\"\",,\"x\ny\"",
+        RejectsFile.toRecord(new String[]{"a", "b,c", "say \"hi\"", null, "x\ny"}));
+  }
+
+  @Test
+  void reject_writesOneLinePerRow(@TempDir Path tempDir) throws IOException {
+    Path path = tempDir.resolve("rejects.txt");
+    Files.writeString(path, "from an earlier run\n");
+    try (RejectsFile rejects = new RejectsFile(path.toString(), 2)) {
+      rejects.reject("a.csv", new MalformedRowException(4, new String[]{"1"}, 2));
+      rejects.reject("b.csv", new MalformedRowException(9, new String[]{"1", "2", "3"}, 2));
+      assertThrows(IllegalArgumentException.class,
+          () -> rejects.reject("b.csv", new MalformedRowException(12, new String[]{"x"}, 2)));
+      assertEquals(3, rejects.getRejected());
+    }
+    assertEquals(List.of("a.csv:4: expected 2 values but found 1: 1",
+        "b.csv:9: expected 2 values but found 3: 1,2,3"), Files.readAllLines(path));
+  }
+
+  @Test
+  void reject_truncatesLongRows(@TempDir Path tempDir) throws IOException {
+    Path path = tempDir.resolve("rejects.txt");
+    String longValue = "x".repeat(MalformedRowException.MAX_RECORD_CHARS + 10);
+    try (RejectsFile rejects = new RejectsFile(path.toString(), 2)) {
+      rejects.reject("a.csv", MalformedRowException.unterminatedQuote(3, "\"" + longValue));
+      rejects.reject("a.csv", new MalformedRowException(5, new String[]{longValue}, 2));
+    }
+    List<String> lines = Files.readAllLines(path);
+    assertEquals("a.csv:3: unterminated quoted field: \""
+        + longValue.substring(0, MalformedRowException.MAX_RECORD_CHARS - 1)
+        + MalformedRowException.TRUNCATED, lines.get(0));
+    assertEquals("a.csv:5: expected 2 values but found 1: "
+        + longValue.substring(0, MalformedRowException.MAX_RECORD_CHARS)
+        + MalformedRowException.TRUNCATED, lines.get(1));
+  }
+
+  @Test
+  void constructor_missingDirectory(@TempDir Path tempDir) {
+    assertThrows(IOException.class,
+        () -> new RejectsFile(tempDir.resolve("none").resolve("r.txt").toString(), 1));
+  }
+}
@@ -0,0 +1,85 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RunMetricsTest {
+
+  private static String CSV_PATH = "." + File.separator + "src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "csv-processor-test.csv";
+
+  @Test
+  void batchGenerator_recordsEveryStage(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    TemplateWriter emailWriter = new TemplateWriter(
+        CompiledTemplate.compile("To: [[state]]"), "email", outputDir);
+    TemplateWriter letterWriter = new TemplateWriter(
+        CompiledTemplate.compile("\u00e9[[state]]"), "letter", outputDir);
+    RunMetrics metrics = new RunMetrics();
+    metrics.start();
+    try (CsvRowReader rowReader = new CsvRowReader(CSV_PATH)) {
+      BatchGenerator generator = new BatchGenerator(rowReader,
+          Arrays.asList(emailWriter, letterWriter), 2);
+      generator.useMetrics(metrics);
+      generator.run();
+    }
+    metrics.finish();
+
+    assertEquals(3, metrics.getRowsParsed());
+    assertEquals(6, metrics.getRowsRendered());
+    // "To: LA" takes 6 bytes in UTF-8, and "\\u00e9LA" takes 4
+    assertEquals(3 * (6 + 4), metrics.getBytesWritten());
+    assertEquals(6, metrics.getRenderLatency().getCount());
+    assertEquals(6, metrics.getWriteLatency().getCount());
+    assertTrue(metrics.getStageNanos(RunMetrics.Stage.WRITE) > 0);
+    assertTrue(metrics.getElapsedNanos() > 0);
+    assertTrue(metrics.getPeakHeapBytes() > 0);
+  }
+
+  @Test
+  void finish_noPeakHeapWhenRunsOverlap() {
+    RunMetrics first = new RunMetrics();
+    RunMetrics second = new RunMetrics();
+    first.start();
+    second.start();
+    second.finish();
+    first.finish();
+    assertEquals(RunMetrics.NOT_MEASURED, first.getPeakHeapBytes());
+    assertEquals(RunMetrics.NOT_MEASURED, second.getPeakHeapBytes());
+    assertTrue(first.format(RunMetrics.Format.JSON).contains("\"peakHeapBytes\":null"));
+    assertTrue(first.format(RunMetrics.Format.TEXT).contains("peak heap                 n/a"));
+
+    RunMetrics third = new RunMetrics();
+    third.start();
+    third.finish();
+    assertTrue(third.getPeakHeapBytes() > 0);
+  }
+
+  @Test
+  void format() {
+    RunMetrics metrics = new RunMetrics();
+    metrics.start();
+    metrics.rowParsed(100);
+    metrics.rowRendered(2000);
+    metrics.documentWritten(42, 3000);
+    metrics.addTime(RunMetrics.Stage.VALIDATE, 500);
+    metrics.finish();
+
+    String json = metrics.format(RunMetrics.Format.JSON);
+    assertTrue(json.startsWith("{\"elapsedNanos\":"));
+    assertTrue(json.contains("\"rowsParsed\":1,\"rowsRendered\":1,\"bytesWritten\":42,"
+        + "\"stageNanos\":{\"parse\":100,\"validate\":500,\"render\":2000,\"write\":3000},"
+        + "\"renderNanos\":{\"p50\":2047,\"p99\":2047},"
+        + "\"writeNanos\":{\"p50\":3071,\"p99\":3071},\"peakHeapBytes\":"));
+    String text = metrics.format(RunMetrics.Format.TEXT);
+    assertTrue(text.contains("bytes written              42"));
+    assertTrue(text.contains("validate time             0.0 ms"));
+  }
+}
@@ -0,0 +1,54 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RunSettingsTest {
+
+  private RunSettings settings;
+
+  @BeforeEach
+  void setUp() {
+    settings = new RunSettings();
+  }
+
+  @Test
+  void getThreads() {
+    assertEquals(1, settings.getThreads());
+    settings.setThreads(4);
+    assertEquals(4, settings.getThreads());
+  }
+
+  @Test
+  void setThreads_invalid() {
+    assertThrows(IllegalArgumentException.class, () -> settings.setThreads(0));
+  }
+
+  @Test
+  void getWriterMode() {
+    assertEquals(RunSettings.WriterMode.SEQUENTIAL, settings.getWriterMode());
+    settings.setWriterMode(RunSettings.WriterMode.VIRTUAL);
+    assertEquals(RunSettings.WriterMode.VIRTUAL, settings.getWriterMode());
+  }
+
+  @Test
+  void setMaxOpenFiles_invalid() {
+    assertEquals(256, settings.getMaxOpenFiles());
+    assertThrows(IllegalArgumentException.class, () -> settings.setMaxOpenFiles(0));
+  }
+
+  @Test
+  void testEquals() {
+    RunSettings other = new RunSettings();
+    assertTrue(settings.equals(other));
+    assertEquals(settings.hashCode(), other.hashCode());
+    other.setThreads(2);
+    assertFalse(settings.equals(other));
+    assertFalse(settings.equals(null));
+  }
+}
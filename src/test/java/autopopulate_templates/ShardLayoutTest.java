@@ -0,0 +1,46 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardLayoutTest {
+
+  @Test
+  void directoryFor_groupsByNumber() {
+    ShardLayout layout = new ShardLayout(1000);
+    assertEquals("email" + File.separator + "0000" + File.separator,
+        layout.directoryFor("email", 1));
+    assertEquals("email" + File.separator + "0000" + File.separator,
+        layout.directoryFor("email", 1000));
+    assertEquals("email" + File.separator + "0001" + File.separator,
+        layout.directoryFor("email", 1234));
+    assertEquals("letter" + File.separator + "12345" + File.separator,
+        layout.directoryFor("letter", 12345001));
+    assertThrows(IllegalArgumentException.class, () -> new ShardLayout(0));
+  }
+
+  @Test
+  void createDirectoryFor_createsEachDirectoryOnce(@TempDir Path tempDir) throws IOException {
+    String outputDir = tempDir.toString() + File.separator;
+    ShardLayout layout = new ShardLayout(2);
+    layout.createDirectoryFor(outputDir, "email", 3);
+    Path shard = tempDir.resolve("email").resolve("0001");
+    assertTrue(Files.isDirectory(shard));
+
+    // the layout remembers the directory and does not look for it again
+    Files.delete(shard);
+    layout.createDirectoryFor(outputDir, "email", 4);
+    assertFalse(Files.exists(shard));
+    layout.createDirectoryFor(outputDir, "email", 5);
+    assertTrue(Files.isDirectory(tempDir.resolve("email").resolve("0002")));
+  }
+}
@@ -0,0 +1,90 @@
+package autopopulate_templates;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCacheTest {
+
+  @Test
+  void get_reusesUnchangedTemplate(@TempDir Path tempDir) throws IOException {
+    Path template = tempDir.resolve("email.txt");
+    Files.writeString(template, "To: [[email]]");
+    TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY, null);
+
+    CompiledTemplate first = cache.get(template.toString());
+    assertSame(first, cache.get(template.toString()));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    Files.writeString(template, "Dear [[first_name]]");
+    CompiledTemplate changed = cache.get(template.toString());
+    assertEquals("Dear [[first_name]]\n", changed.getSource());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  void get_evictsLeastRecentlyUsed(@TempDir Path tempDir) throws IOException {
+    Path email = Files.writeString(tempDir.resolve("email.txt"), "[[email]]");
+    Path letter = Files.writeString(tempDir.resolve("letter.txt"), "[[address]]");
+    TemplateCache cache = new TemplateCache(1, null);
+
+    CompiledTemplate first = cache.get(email.toString());
+    cache.get(letter.toString());
+    assertEquals(1, cache.size());
+    assertNotSame(first, cache.get(email.toString()));
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  void get_readsCompiledTemplateFromDirectory(@TempDir Path tempDir) throws IOException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]], [[email]]");
+    FileTime modified = Files.getLastModifiedTime(template);
+    Path directory = tempDir.resolve("cache");
+    new TemplateCache(TemplateCache.DEFAULT_CAPACITY, directory).get(template.toString());
+
+    // same size and time, so only a template taken from the cache directory has the old text
+    Files.writeString(template, "To: [[phone]], [[phone]]");
+    Files.setLastModifiedTime(template, modified);
+    CompiledTemplate cached = new TemplateCache(TemplateCache.DEFAULT_CAPACITY, directory)
+        .get(template.toString());
+    assertEquals("To: [[email]], [[email]]\n", cached.getSource());
+    assertEquals(CompiledTemplate.compile("To: [[email]], [[email]]\n").toString(),
+        cached.toString());
+  }
+
+  @Test
+  void get_recompilesDamagedCacheFile(@TempDir Path tempDir) throws IOException {
+    Path template = Files.writeString(tempDir.resolve("email.txt"), "To: [[email]]");
+    Path directory = tempDir.resolve("cache");
+    new TemplateCache(TemplateCache.DEFAULT_CAPACITY, directory).get(template.toString());
+    try (Stream<Path> files = Files.list(directory)) {
+      Files.writeString(files.findFirst().get(), "damaged");
+    }
+
+    assertEquals("To: [[email]]\n", new TemplateCache(TemplateCache.DEFAULT_CAPACITY, directory)
+        .get(template.toString()).getSource());
+  }
+
+  @Test
+  void get_missingTemplate(@TempDir Path tempDir) {
+    TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY, null);
+    assertThrows(FileNotFoundException.class,
+        () -> cache.get(tempDir.resolve("missing.txt").toString()));
+  }
+
+  @Test
+  void constructor_invalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new TemplateCache(0, null));
+  }
+}
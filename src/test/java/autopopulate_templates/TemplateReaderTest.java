@@ -47,6 +47,12 @@ class TemplateReaderTest {
     assertEquals(expectedStr, testReader.getTemplateStr());
   }
 
+  @Test
+  void getCompiledTemplate() {
+    assertEquals(CompiledTemplate.compile(expectedStr), testReader.getCompiledTemplate());
+    assertEquals(headers, testReader.getCompiledTemplate().getKeys());
+  }
+
   @Test
   void testConstructor_exception1() {
     Set<String> anotherHeaders = new HashSet<>();
@@ -56,6 +62,20 @@ class TemplateReaderTest {
     });
   }
 
+  @Test
+  void testConstructor_cachedTemplateIsStillChecked()
+      throws TemplateInformationNotMatchException, IOException {
+    TemplateCache cache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY, null);
+    TemplateReader cachedReader = new TemplateReader(testPath, headers, cache);
+    assertEquals(testReader, cachedReader);
+    Set<String> anotherHeaders = new HashSet<>();
+    anotherHeaders.add("first_name");
+    assertThrows(TemplateInformationNotMatchException.class, () -> {
+      new TemplateReader(testPath, anotherHeaders, cache);
+    });
+    assertEquals(1, cache.getHits());
+  }
+
   @Test
   void testConstructor_exception2() {
     assertThrows(FileNotFoundException.class, () -> {
@@ -6,13 +6,17 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class TemplateWriterTest {
   private TemplateWriter testWriter;
@@ -65,6 +69,96 @@ class TemplateWriterTest {
     }
   }
 
+  @Test
+  void testGenerateOutput_streaming(@TempDir Path tempDir) throws IOException {
+    String csvPath = "." + File.separator + "src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "csv-processor-test.csv";
+    TemplateWriter streamingWriter = new TemplateWriter(CompiledTemplate.compile(testTempString),
+        "email", tempDir.toString() + File.separator);
+    try (CsvRowReader rowReader = new CsvRowReader(csvPath)) {
+      streamingWriter.generateOutput(rowReader);
+    }
+    assertEquals("Hi there! I am Art Venere. I am working at Chemel, James L Cpa. If you have any "
+            + "question, please reach me at 856-636-8749 OR art@venere.org. Thanks!",
+        Files.readString(tempDir.resolve("email-3.txt")));
+    assertFalse(Files.exists(tempDir.resolve("email-4.txt")));
+  }
+
+  @Test
+  void testGenerateOutput_sharded(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id\n");
+    for (int i = 1; i <= 25; i++) {
+      csvContent.append(i).append('\n');
+    }
+    Files.writeString(csv, csvContent);
+    TemplateWriter shardedWriter = new TemplateWriter(CompiledTemplate.compile("[[id]]"),
+        "email", tempDir.toString() + File.separator);
+    shardedWriter.useLayout(new ShardLayout(10));
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      new BatchGenerator(rowReader, List.of(shardedWriter), 3).run();
+    }
+    assertEquals("1", Files.readString(tempDir.resolve("email/0000/email-1.txt")));
+    assertEquals("10", Files.readString(tempDir.resolve("email/0000/email-10.txt")));
+    assertEquals("11", Files.readString(tempDir.resolve("email/0001/email-11.txt")));
+    assertEquals("25", Files.readString(tempDir.resolve("email/0002/email-25.txt")));
+    assertFalse(Files.exists(tempDir.resolve("email-1.txt")));
+
+    shardedWriter.deleteOutput(25);
+    assertFalse(Files.exists(tempDir.resolve("email/0002/email-25.txt")));
+  }
+
+  @Test
+  void testGenerateOutput_dedup(@TempDir Path tempDir) throws IOException {
+    Path csv = tempDir.resolve("members.csv");
+    StringBuilder csvContent = new StringBuilder("id,plan\n");
+    for (int i = 1; i <= 3000; i++) {
+      csvContent.append(i).append(',').append(i % 3 == 0 ? "gold" : "basic").append('\n');
+    }
+    Files.writeString(csv, csvContent);
+    for (int round = 0; round < 3; round++) {
+      Path outputDir = Files.createDirectory(tempDir.resolve("out" + round));
+      String prefix = outputDir.toString() + File.separator;
+      TemplateWriter dedupWriter = new TemplateWriter(
+          CompiledTemplate.compile("Plan: [[plan]]"), "email", prefix);
+      dedupWriter.useDedup(new DedupManifest(DedupManifest.pathFor(prefix, "email"), 10));
+      try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+        new BatchGenerator(rowReader, List.of(dedupWriter), 3).run();
+      }
+
+      // one document per plan, written for its lowest row; every other row is listed
+      List<String> duplicates = Files.readAllLines(outputDir.resolve("email.dedup"));
+      assertEquals(2998, duplicates.size());
+      Map<String, String> originals = new HashMap<>();
+      for (String line : duplicates) {
+        String[] names = line.split("\t");
+        assertFalse(Files.exists(outputDir.resolve(names[0])));
+        originals.put(names[1], Files.readString(outputDir.resolve(names[1])));
+      }
+      assertEquals(Map.of("email-1.txt", "Plan: basic", "email-3.txt", "Plan: gold"), originals);
+    }
+  }
+
+  @Test
+  void testGenerateOutput_dedupNamedAfterTheTemplateColumns(@TempDir Path tempDir)
+      throws IOException {
+    Path csv = Files.writeString(tempDir.resolve("members.csv"),
+        "id,plan\n1,basic\n2,gold\n3,basic\n");
+    String outputDir = tempDir.toString() + File.separator;
+    TemplateWriter dedupWriter = new TemplateWriter(CompiledTemplate.compile("Plan: [[plan]]"),
+        "email", outputDir);
+    dedupWriter.useFilenamePattern(new FilenamePattern("[[plan]].txt"));
+    dedupWriter.useDedup(new DedupManifest(DedupManifest.pathFor(outputDir, "email"), 10));
+    try (CsvRowReader rowReader = new CsvRowReader(csv.toString())) {
+      new BatchGenerator(rowReader, List.of(dedupWriter), 2).run();
+    }
+
+    // identical rows share their file, so there is nothing to list
+    assertEquals("Plan: basic", Files.readString(tempDir.resolve("basic.txt")));
+    assertEquals("Plan: gold", Files.readString(tempDir.resolve("gold.txt")));
+    assertEquals(List.of(), Files.readAllLines(tempDir.resolve("email.dedup")));
+  }
+
   @Test
   void testEquals() {
     TemplateWriter anotherWriter = new TemplateWriter(testTempString, testCsvData, testOptionStr, testOutputDir);